@@ -0,0 +1,95 @@
+package com.example.soap.benchmark;
+
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.model.Client;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectures du cache : par id, par email et recherche par sous-chaînes de ville et de nom.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class CacheLookupBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class CacheState {
+        
+        @Param({"10000", "100000", "1000000", "5000000"})
+        public int size;
+        
+        @Param({"objects", "compact", "tiered"})
+        public String storageMode;
+        
+        ClientCacheService cacheService;
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            cacheService = newCacheService(storageMode);
+            cacheService.reloadCache(ClientDataset.builder(ClientDataset.generate(size)));
+        }
+    }
+    
+    /**
+     * Clés tirées par thread, pour ne pas mesurer un générateur partagé
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        
+        private final SplittableRandom random = new SplittableRandom(42);
+        
+        long nextId(int size) {
+            return 1 + random.nextInt(size);
+        }
+        
+        String nextVille() {
+            return ClientDataset.VILLES[random.nextInt(ClientDataset.VILLES.length)].substring(0, 5);
+        }
+        
+        String nextNom() {
+            return ClientDataset.NOMS[random.nextInt(ClientDataset.NOMS.length)] + (1 + random.nextInt(9)) + "2";
+        }
+    }
+    
+    @Benchmark
+    public Client getClientById(CacheState state, Keys keys) {
+        return state.cacheService.getClientById(keys.nextId(state.size));
+    }
+    
+    @Benchmark
+    public Client getClientByEmail(CacheState state, Keys keys) {
+        return state.cacheService.getClientByEmail(ClientDataset.email(keys.nextId(state.size)));
+    }
+    
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Client> searchClients(CacheState state, Keys keys) {
+        return state.cacheService.searchClients(keys.nextVille(), keys.nextNom());
+    }
+    
+    static ClientCacheService newCacheService(String storageMode) {
+        // Sans snapshot ni journal disque : seul le cache en mémoire est mesuré
+        return new ClientCacheService(new SoapMetricsService(new SimpleMeterRegistry()),
+            0.5, 3, "codePostal,ville,nom,prenom,telephone", storageMode, 100_000,
+            System.getProperty("java.io.tmpdir"), false, "", false, "");
+    }
+}
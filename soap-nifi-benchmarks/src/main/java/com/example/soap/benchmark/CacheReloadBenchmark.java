@@ -0,0 +1,73 @@
+package com.example.soap.benchmark;
+
+import com.example.soap.cache.ClientCacheBuilder;
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.model.Client;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rechargement complet du cache pendant que des lecteurs interrogent la génération publiée.
+ * Le score du groupe « reload » est la durée d'un rechargement, celui des lecteurs leur latence
+ * pendant les rechargements.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms12g", "-Xmx12g"})
+@State(Scope.Group)
+public class CacheReloadBenchmark {
+    
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int size;
+    
+    @Param({"objects", "compact", "tiered"})
+    public String storageMode;
+    
+    private ClientCacheService cacheService;
+    private ClientCacheBuilder builder;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        cacheService = CacheLookupBenchmark.newCacheService(storageMode);
+        builder = ClientDataset.builder(ClientDataset.generate(size));
+        cacheService.reloadCache(builder);
+    }
+    
+    @State(Scope.Thread)
+    public static class ReaderKeys {
+        
+        private final SplittableRandom random = new SplittableRandom(7);
+    }
+    
+    @Benchmark
+    @Group("reloadUnderReads")
+    @GroupThreads(1)
+    public long reload() {
+        cacheService.reloadCache(builder);
+        return cacheService.getGeneration();
+    }
+    
+    @Benchmark
+    @Group("reloadUnderReads")
+    @GroupThreads(3)
+    public Client read(ReaderKeys keys) {
+        return cacheService.getClientById(1 + (long) keys.random.nextInt(size));
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.soap.benchmark;
+
+import com.example.soap.cache.ClientCacheBuilder;
+import com.example.soap.model.Client;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Jeu de clients synthétiques, déterministe pour une taille donnée,
+ * proche des exports NiFi (villes et codes postaux répétitifs, champs texte courts).
+ */
+public final class ClientDataset {
+    
+    public static final String[] VILLES = {
+        "Ouagadougou", "Bobo-Dioulasso", "Koudougou", "Banfora", "Ouahigouya",
+        "Pouytenga", "Kaya", "Tenkodogo", "Fada N'Gourma", "Dédougou"
+    };
+    
+    public static final String[] NOMS = {
+        "Ouedraogo", "Sawadogo", "Kabore", "Traore", "Zongo", "Compaore", "Kone", "Sanou"
+    };
+    
+    private ClientDataset() {
+    }
+    
+    public static List<Client> generate(int size) {
+        Random random = new Random(size);
+        List<Client> clients = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            String nom = NOMS[random.nextInt(NOMS.length)];
+            Client client = new Client((long) i, nom + i, "Prenom" + random.nextInt(5000), email(i));
+            client.setTelephone(String.format("+226 7%d %02d %02d %02d", random.nextInt(10),
+                random.nextInt(100), random.nextInt(100), random.nextInt(100)));
+            client.setAdresse(random.nextInt(500) + " avenue Kwame Nkrumah");
+            int ville = random.nextInt(VILLES.length);
+            client.setVille(new String(VILLES[ville]));
+            client.setCodePostal(String.format("%02d BP %d", ville + 1, 1000 + ville));
+            clients.add(client);
+        }
+        return clients;
+    }
+    
+    public static ClientCacheBuilder builder(List<Client> clients) {
+        return new ClientCacheBuilder(clients.size()).addAll(clients);
+    }
+    
+    public static String email(long id) {
+        return "client" + id + "@example.bf";
+    }
+    
+    /**
+     * Écrit les clients dans un fichier JSON au format des exports NiFi (tableau d'objets)
+     */
+    public static File writeJson(List<Client> clients, ObjectMapper mapper) throws IOException {
+        File file = File.createTempFile("clients_bench_", ".json");
+        file.deleteOnExit();
+        return writeJson(clients, mapper, file);
+    }
+    
+    public static File writeJson(List<Client> clients, ObjectMapper mapper, File file) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(file, JsonEncoding.UTF8)) {
+            generator.writeStartArray();
+            for (Client client : clients) {
+                mapper.writeValue(generator, client);
+            }
+            generator.writeEndArray();
+        }
+        return file;
+    }
+}
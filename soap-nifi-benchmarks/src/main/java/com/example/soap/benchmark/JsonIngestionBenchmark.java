@@ -0,0 +1,63 @@
+package com.example.soap.benchmark;
+
+import com.example.soap.cache.ClientCacheBuilder;
+import com.example.soap.watcher.ClientJsonStreamReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecture en flux d'un export NiFi, comme FileWatcherService.processFile,
+ * jusqu'au builder prêt à être publié dans le cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class JsonIngestionBenchmark {
+    
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int size;
+    
+    private File file;
+    private ClientJsonStreamReader reader;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Même configuration que FileWatcherService
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        file = ClientDataset.writeJson(ClientDataset.generate(size), objectMapper);
+        reader = new ClientJsonStreamReader(objectMapper, Integer.MAX_VALUE);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+    
+    @Benchmark
+    public ClientCacheBuilder parse() throws IOException {
+        ClientCacheBuilder builder = new ClientCacheBuilder(size);
+        reader.read(file, builder::add);
+        return builder;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.soap.benchmark;
+
+import com.example.soap.annotation.MonitorSoapMethod;
+import com.example.soap.aop.ClientSoapMonitoringAspect;
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.metrics.ResourceAccounting;
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.model.Client;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût de l'aspect de monitoring sur une lecture du cache : appel direct comparé à l'appel
+ * au travers du proxy AOP, avec le registre Prometheus de production, différents taux d'échantillonnage,
+ * et avec ou sans la mesure du CPU et des allocations par appel.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class MonitoringOverheadBenchmark {
+    
+    private static final int SIZE = 100_000;
+    
+    @Param({"1.0", "0.1", "0.01"})
+    public double sampleRate;
+    
+    @Param({"false", "true"})
+    public boolean resourceAccounting;
+    
+    private MonitoredLookup direct;
+    private MonitoredLookup monitored;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        ClientCacheService cacheService = CacheLookupBenchmark.newCacheService("objects");
+        cacheService.reloadCache(ClientDataset.builder(ClientDataset.generate(SIZE)));
+        direct = new MonitoredLookup(cacheService);
+        
+        SoapMetricsService metricsService = new SoapMetricsService(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new MonitoredLookup(cacheService));
+        proxyFactory.setProxyTargetClass(true);
+        ResourceAccounting accounting = new ResourceAccounting(metricsService, new StandardEnvironment());
+        accounting.setEnabled(resourceAccounting);
+        proxyFactory.addAspect(new ClientSoapMonitoringAspect(metricsService, accounting, new DefaultListableBeanFactory(),
+            sampleRate));
+        monitored = proxyFactory.getProxy();
+    }
+    
+    @State(Scope.Thread)
+    public static class Keys {
+        
+        private final SplittableRandom random = new SplittableRandom(42);
+        
+        long nextId() {
+            return 1 + random.nextInt(SIZE);
+        }
+    }
+    
+    @Benchmark
+    public Client direct(Keys keys) {
+        return direct.getClientById(keys.nextId());
+    }
+    
+    @Benchmark
+    public Client monitored(Keys keys) {
+        return monitored.getClientById(keys.nextId());
+    }
+    
+    /**
+     * Équivalent de ClientSoapServiceImpl.getClientById, sans les champs injectés
+     */
+    public static class MonitoredLookup {
+        
+        private final ClientCacheService cacheService;
+        
+        public MonitoredLookup(ClientCacheService cacheService) {
+            this.cacheService = cacheService;
+        }
+        
+        @MonitorSoapMethod("getClientById")
+        public Client getClientById(long id) {
+            return cacheService.getClientById(id);
+        }
+    }
+}
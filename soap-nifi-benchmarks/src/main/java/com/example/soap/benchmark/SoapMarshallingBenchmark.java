@@ -0,0 +1,117 @@
+package com.example.soap.benchmark;
+
+import com.example.soap.model.Client;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sérialisation d'une réponse getAllClients comme la fait CXF : un Marshaller JAXB en mode fragment
+ * écrit chaque élément {@code return} dans l'enveloppe SOAP via un XMLStreamWriter Woodstox (StaxUtils),
+ * et lecture inverse côté client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class SoapMarshallingBenchmark {
+    
+    private static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String SERVICE_NS = "http://service.soap.example.com/";
+    private static final QName RETURN = new QName("return");
+    
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int size;
+    
+    private JAXBContext context;
+    private List<Client> clients;
+    private byte[] response;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        context = JAXBContext.newInstance(Client.class);
+        clients = ClientDataset.generate(size);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        write(clients, buffer);
+        response = buffer.toByteArray();
+    }
+    
+    @Benchmark
+    public long marshal() throws Exception {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        write(clients, out);
+        return out.getByteCount();
+    }
+    
+    @Benchmark
+    public List<Client> unmarshal() throws Exception {
+        Unmarshaller unmarshaller = context.createUnmarshaller();
+        XMLStreamReader reader = StaxUtils.createXMLStreamReader(new ByteArrayInputStream(response));
+        List<Client> result = new ArrayList<>(size);
+        try {
+            while (reader.hasNext()) {
+                if (reader.getEventType() == XMLStreamConstants.START_ELEMENT
+                        && RETURN.getLocalPart().equals(reader.getLocalName())) {
+                    // unmarshal laisse le lecteur sur l'événement suivant l'élément lu
+                    result.add(unmarshaller.unmarshal(reader, Client.class).getValue());
+                } else {
+                    reader.next();
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+    
+    private void write(List<Client> clients, OutputStream out) throws JAXBException, XMLStreamException {
+        Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        XMLStreamWriter writer = StaxUtils.createXMLStreamWriter(out, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("soap", "Envelope", SOAP_NS);
+        writer.writeNamespace("soap", SOAP_NS);
+        writer.writeStartElement("soap", "Body", SOAP_NS);
+        writer.writeStartElement("ns2", "getAllClientsResponse", SERVICE_NS);
+        writer.writeNamespace("ns2", SERVICE_NS);
+        for (Client client : clients) {
+            marshaller.marshal(new JAXBElement<>(RETURN, Client.class, client), writer);
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Mesure l'occupation mémoire d'une génération du cache selon le mode de stockage.
+ * Les clients sont générés en flux pour que seule la génération construite reste sur le tas.
+ * En mode tiered, les enregistrements projetés hors tas ne sont pas comptés. Placé dans le paquet
+ * du cache pour accéder aux stockages, qui n'en sortent pas.
+ *
+ * Usage : java -Xmx4g -cp target/benchmarks.jar com.example.soap.cache.ClientStoreMemoryBenchmark [nombre de clients]
+ */
+public final class ClientStoreMemoryBenchmark {
+    
+    private static final String[] VILLES = {
+        "Ouagadougou", "Bobo-Dioulasso", "Koudougou", "Banfora", "Ouahigouya",
+        "Pouytenga", "Kaya", "Tenkodogo", "Fada N'Gourma", "Dédougou"
+    };
+    
+    private static final String[] NOMS = {
+        "Ouedraogo", "Sawadogo", "Kabore", "Traore", "Zongo", "Compaore", "Kone", "Sanou"
+    };
+    
+    // Mode tiered : seuls les index restent sur le tas, le niveau chaud est vide après construction
+    private static final TieredStorage TIERED = new TieredStorage(100_000, Paths.get(System.getProperty("java.io.tmpdir")));
+    
+    private ClientStoreMemoryBenchmark() {
+    }
+    
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("Clients: %,d%n", count);
+        
+        long objectsStore = measure(ClientStore.Mode.OBJECTS, count, false);
+        long compactStore = measure(ClientStore.Mode.COMPACT, count, false);
+        long tieredStore = measure(ClientStore.Mode.TIERED, count, false);
+        long objectsTotal = measure(ClientStore.Mode.OBJECTS, count, true);
+        long compactTotal = measure(ClientStore.Mode.COMPACT, count, true);
+        long tieredTotal = measure(ClientStore.Mode.TIERED, count, true);
+        
+        System.out.printf("%-26s %14s %14s %8s %14s %8s%n", "", "objects", "compact", "ratio", "tiered", "ratio");
+        print("store (bytes/client)", objectsStore, compactStore, tieredStore, count);
+        print("store + search index", objectsTotal, compactTotal, tieredTotal, count);
+    }
+    
+    private static void print(String label, long objects, long compact, long tiered, int count) {
+        System.out.printf("%-26s %14.1f %14.1f %7.2fx %14.1f %7.2fx%n",
+            label, (double) objects / count, (double) compact / count, (double) objects / compact,
+            (double) tiered / count, (double) objects / tiered);
+    }
+    
+    /**
+     * Octets retenus sur le tas par le stockage seul, ou par une génération complète avec son index
+     */
+    private static long measure(ClientStore.Mode mode, int count, boolean withSearchIndex) {
+        long before = usedHeap();
+        Object retained;
+        if (withSearchIndex) {
+            ClientCacheSnapshot snapshot = ClientCacheSnapshot.empty(3, mode.factory(TIERED));
+            generate(count, snapshot::put);
+            retained = snapshot;
+        } else {
+            ClientStore store = mode.factory(TIERED).create(count);
+            generate(count, store::put);
+            store.trim();
+            retained = store;
+        }
+        long after = usedHeap();
+        Reference.reachabilityFence(retained);
+        return after - before;
+    }
+    
+    private static void generate(int count, Consumer<Client> sink) {
+        Random random = new Random(42);
+        for (int i = 1; i <= count; i++) {
+            String nom = NOMS[random.nextInt(NOMS.length)];
+            Client client = new Client((long) i, nom + i, "Prenom" + random.nextInt(5000),
+                "client" + i + "@example.bf");
+            client.setTelephone(String.format("+226 7%d %02d %02d %02d", random.nextInt(10),
+                random.nextInt(100), random.nextInt(100), random.nextInt(100)));
+            client.setAdresse(random.nextInt(500) + " avenue Kwame Nkrumah");
+            int ville = random.nextInt(VILLES.length);
+            // Nouvelle instance, comme une valeur lue dans un export JSON
+            client.setVille(new String(VILLES[ville]));
+            client.setCodePostal(String.format("%02d BP %d", ville + 1, 1000 + ville));
+            sink.accept(client);
+        }
+    }
+    
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.soap.loadtest;
+
+import com.example.soap.benchmark.ClientDataset;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Construit les enveloppes SOAP envoyées au service, sur le jeu de données généré par ClientDataset.
+ * Les créations utilisent des ids au-delà du jeu de données, et les suppressions ne portent que
+ * sur ces clients créés pour que le jeu lu reste stable pendant le test.
+ */
+final class ClientWorkload {
+    
+    private static final String ENVELOPE_START = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<soap:Body>";
+    private static final String ENVELOPE_END = "</soap:Body></soap:Envelope>";
+    private static final String SERVICE_NS = "http://service.soap.example.com/";
+    
+    private final int datasetSize;
+    private final AtomicLong nextCreatedId;
+    private final Queue<Long> createdIds = new ConcurrentLinkedQueue<>();
+    
+    ClientWorkload(int datasetSize) {
+        this.datasetSize = datasetSize;
+        this.nextCreatedId = new AtomicLong(Math.max(datasetSize, 1_000_000_000L));
+    }
+    
+    /**
+     * Requête pour l'opération tirée ; une suppression sans client créé disponible devient une création
+     */
+    SoapRequest request(SoapOperation operation, SplittableRandom random) {
+        switch (operation) {
+            case GET_CLIENT_BY_ID:
+                return build(operation, element("id", Long.toString(randomId(random))));
+            case GET_CLIENT_BY_EMAIL:
+                return build(operation, element("email", ClientDataset.email(randomId(random))));
+            case SEARCH_CLIENTS:
+                String ville = ClientDataset.VILLES[random.nextInt(ClientDataset.VILLES.length)];
+                String nom = ClientDataset.NOMS[random.nextInt(ClientDataset.NOMS.length)];
+                return build(operation, element("ville", ville.substring(0, Math.min(5, ville.length())))
+                    + element("nom", nom + (1 + random.nextInt(9)) + "2"));
+            case UPDATE_CLIENT:
+                long id = randomId(random);
+                return build(operation, element("id", Long.toString(id))
+                    + "<client>" + element("telephone", telephone(random)) + "</client>");
+            case DELETE_CLIENT:
+                Long created = createdIds.poll();
+                if (created != null) {
+                    return build(operation, element("id", created.toString()));
+                }
+                return create(random);
+            case CREATE_CLIENT:
+                return create(random);
+            case GET_ALL_CLIENTS:
+                return build(operation, "");
+            default:
+                throw new IllegalArgumentException("Unsupported operation: " + operation);
+        }
+    }
+    
+    private SoapRequest create(SplittableRandom random) {
+        long id = nextCreatedId.incrementAndGet();
+        // L'id est réutilisable dès l'envoi : une suppression concurrente peut au pire ne rien trouver
+        createdIds.add(id);
+        String client = "<client>"
+            + element("id", Long.toString(id))
+            + element("nom", ClientDataset.NOMS[random.nextInt(ClientDataset.NOMS.length)] + id)
+            + element("prenom", "Charge" + random.nextInt(5000))
+            + element("email", ClientDataset.email(id))
+            + element("telephone", telephone(random))
+            + element("ville", ClientDataset.VILLES[random.nextInt(ClientDataset.VILLES.length)])
+            + "</client>";
+        return build(SoapOperation.CREATE_CLIENT, client);
+    }
+    
+    private long randomId(SplittableRandom random) {
+        return 1 + random.nextInt(datasetSize);
+    }
+    
+    private static String telephone(SplittableRandom random) {
+        return String.format("+226 6%d %02d %02d %02d", random.nextInt(10),
+            random.nextInt(100), random.nextInt(100), random.nextInt(100));
+    }
+    
+    private static String element(String name, String value) {
+        return "<" + name + ">" + escape(value) + "</" + name + ">";
+    }
+    
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+    
+    private static SoapRequest build(SoapOperation operation, String parameters) {
+        String name = operation.operationName();
+        String envelope = ENVELOPE_START
+            + "<ns:" + name + " xmlns:ns=\"" + SERVICE_NS + "\">" + parameters + "</ns:" + name + ">"
+            + ENVELOPE_END;
+        return new SoapRequest(operation, envelope.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    static final class SoapRequest {
+        
+        final SoapOperation operation;
+        final byte[] body;
+        
+        SoapRequest(SoapOperation operation, byte[] body) {
+            this.operation = operation;
+            this.body = body;
+        }
+    }
+}
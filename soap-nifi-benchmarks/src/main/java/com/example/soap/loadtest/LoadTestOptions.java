@@ -0,0 +1,96 @@
+package com.example.soap.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options du test de charge, passées sous la forme {@code --nom=valeur}.
+ */
+final class LoadTestOptions {
+    
+    static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: java -cp benchmarks.jar com.example.soap.loadtest.SoapLoadTest [--option=value ...]",
+        "  --mode=closed|open        closed: each thread chains requests; open: requests start at --rate (default closed)",
+        "  --rate=N                  planned requests per second, required in open mode; in closed mode it only",
+        "                            sets the expected interval used to correct latencies (default: warm-up mean)",
+        "  --threads=N               client threads (default 16)",
+        "  --duration=S              measured seconds (default 60)",
+        "  --warmup=S                discarded warm-up seconds (default 15)",
+        "  --clients=N               generated clients loaded by the application (default 100000)",
+        "  --mix=op:weight,...       operation mix (default " + OperationMix.DEFAULT + ")",
+        "  --storage-mode=MODE       cache.storage.mode of the started application",
+        "  --url=URL                 target an already running endpoint instead of starting the application;",
+        "                            its cache must hold the dataset generated for --clients",
+        "  --report=FILE             JSON report (default loadtest-report.json)",
+        "  --baseline=FILE           report to compare against",
+        "  --tolerance=PCT           allowed p50/p99/p999 increase over the baseline (default 10)");
+        
+    String url;
+    String mode = "closed";
+    long rate;
+    int threads = 16;
+    Duration duration = Duration.ofSeconds(60);
+    Duration warmup = Duration.ofSeconds(15);
+    int clients = 100_000;
+    OperationMix mix = OperationMix.parse(OperationMix.DEFAULT);
+    String storageMode;
+    String report = "loadtest-report.json";
+    String baseline;
+    double tolerancePercent = 10;
+    
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        
+        LoadTestOptions options = new LoadTestOptions();
+        options.url = values.remove("url");
+        options.mode = values.getOrDefault("mode", options.mode);
+        values.remove("mode");
+        options.rate = longValue(values.remove("rate"), options.rate);
+        options.threads = (int) longValue(values.remove("threads"), options.threads);
+        options.duration = Duration.ofSeconds(longValue(values.remove("duration"), options.duration.getSeconds()));
+        options.warmup = Duration.ofSeconds(longValue(values.remove("warmup"), options.warmup.getSeconds()));
+        options.clients = (int) longValue(values.remove("clients"), options.clients);
+        String mix = values.remove("mix");
+        if (mix != null) {
+            options.mix = OperationMix.parse(mix);
+        }
+        options.storageMode = values.remove("storage-mode");
+        options.report = values.getOrDefault("report", options.report);
+        values.remove("report");
+        options.baseline = values.remove("baseline");
+        String tolerance = values.remove("tolerance");
+        if (tolerance != null) {
+            options.tolerancePercent = Double.parseDouble(tolerance);
+        }
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+        
+        if (!options.isOpenLoop() && !"closed".equals(options.mode)) {
+            throw new IllegalArgumentException("Unknown mode: " + options.mode);
+        }
+        if (options.isOpenLoop() && options.rate <= 0) {
+            throw new IllegalArgumentException("Open-loop mode requires --rate");
+        }
+        if (options.threads <= 0 || options.clients <= 0) {
+            throw new IllegalArgumentException("--threads and --clients must be positive");
+        }
+        return options;
+    }
+    
+    private static long longValue(String value, long defaultValue) {
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+    
+    boolean isOpenLoop() {
+        return "open".equals(mode);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.soap.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Rapport d'un test de charge : percentiles par opération (en microsecondes), écrits en JSON
+ * pour servir de référence aux exécutions suivantes, et comparaison avec une référence.
+ */
+final class LoadTestReport {
+    
+    private static final String TOTAL = "total";
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] COMPARED = {"p50", "p99", "p999"};
+    private static final double NANOS_PER_MICRO = 1000.0;
+    
+    private final ObjectNode root;
+    
+    private LoadTestReport(ObjectNode root) {
+        this.root = root;
+    }
+    
+    static LoadTestReport of(LoadTestResult result, LoadTestOptions options, long correctionIntervalNanos,
+            ObjectMapper mapper) {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("timestamp", Instant.now().toString());
+        root.put("mode", options.mode);
+        root.put("rate", options.rate);
+        root.put("threads", options.threads);
+        root.put("clients", options.clients);
+        root.put("mix", options.mix.toString());
+        root.put("durationSeconds", result.elapsedNanos() / 1e9);
+        root.put("correctionIntervalMicros", correctionIntervalNanos / NANOS_PER_MICRO);
+        
+        ObjectNode operations = root.putObject("operations");
+        OperationStats total = new OperationStats();
+        for (Map.Entry<SoapOperation, OperationStats> entry : result.stats().entrySet()) {
+            operations.set(entry.getKey().operationName(), toJson(entry.getValue(), result.elapsedNanos(), mapper));
+            total.add(entry.getValue());
+        }
+        root.set(TOTAL, toJson(total, result.elapsedNanos(), mapper));
+        return new LoadTestReport(root);
+    }
+    
+    static LoadTestReport read(File file, ObjectMapper mapper) throws IOException {
+        return new LoadTestReport((ObjectNode) mapper.readTree(file));
+    }
+    
+    private static ObjectNode toJson(OperationStats stats, long elapsedNanos, ObjectMapper mapper) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("count", stats.count());
+        node.put("errors", stats.errors);
+        node.put("throughput", round(stats.count() / (elapsedNanos / 1e9)));
+        node.set("responseTime", percentiles(stats.responseTime, mapper));
+        node.set("serviceTime", percentiles(stats.serviceTime, mapper));
+        return node;
+    }
+    
+    private static ObjectNode percentiles(Histogram histogram, ObjectMapper mapper) {
+        ObjectNode node = mapper.createObjectNode();
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            node.put(PERCENTILE_NAMES[i], micros(histogram.getValueAtPercentile(PERCENTILES[i])));
+        }
+        node.put("max", micros(histogram.getMaxValue()));
+        node.put("mean", round(histogram.getMean() / NANOS_PER_MICRO));
+        return node;
+    }
+    
+    void write(File file, ObjectMapper mapper) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, root);
+    }
+    
+    /**
+     * Écrit la distribution complète de chaque opération au format .hgrm (HdrHistogram),
+     * à côté du rapport, pour tracer les courbes de percentiles
+     */
+    static void writeDistributions(LoadTestResult result, File report) throws IOException {
+        String prefix = report.getPath().replaceFirst("\\.json$", "");
+        for (Map.Entry<SoapOperation, OperationStats> entry : result.stats().entrySet()) {
+            File file = new File(prefix + "-" + entry.getKey().operationName() + ".hgrm");
+            try (PrintStream out = new PrintStream(file, StandardCharsets.UTF_8.name())) {
+                entry.getValue().responseTime.outputPercentileDistribution(out, NANOS_PER_MICRO);
+            }
+        }
+    }
+    
+    void print(PrintStream out) {
+        out.printf("%nMode: %s, threads: %d, rate: %s, duration: %.1f s, mix: %s%n",
+            root.get("mode").asText(), root.get("threads").asInt(),
+            root.get("rate").asLong() > 0 ? root.get("rate").asText() + "/s" : "unbounded",
+            root.get("durationSeconds").asDouble(), root.get("mix").asText());
+        printTable(out, "Response time (coordinated-omission corrected, us)", "responseTime");
+        printTable(out, "Service time (us)", "serviceTime");
+    }
+    
+    private void printTable(PrintStream out, String title, String field) {
+        out.printf("%n%s%n", title);
+        out.printf("%-20s %10s %7s %10s %10s %10s %10s %10s %10s%n",
+            "operation", "count", "errors", "ops/s", "p50", "p90", "p99", "p999", "max");
+        Iterator<Map.Entry<String, JsonNode>> operations = root.get("operations").fields();
+        while (operations.hasNext()) {
+            Map.Entry<String, JsonNode> entry = operations.next();
+            printRow(out, entry.getKey(), entry.getValue(), field);
+        }
+        printRow(out, TOTAL, root.get(TOTAL), field);
+    }
+    
+    private static void printRow(PrintStream out, String name, JsonNode stats, String field) {
+        JsonNode times = stats.get(field);
+        out.printf("%-20s %10d %7d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+            name, stats.get("count").asLong(), stats.get("errors").asLong(), stats.get("throughput").asDouble(),
+            times.get("p50").asDouble(), times.get("p90").asDouble(), times.get("p99").asDouble(),
+            times.get("p999").asDouble(), times.get("max").asDouble());
+    }
+    
+    /**
+     * Compare les temps de réponse p50/p99/p999 à une référence et retourne le nombre de
+     * percentiles dégradés au-delà de la tolérance
+     */
+    int compareTo(LoadTestReport baseline, double tolerancePercent, PrintStream out) {
+        for (String setting : new String[] {"mode", "rate", "threads", "clients", "mix"}) {
+            if (!root.get(setting).equals(baseline.root.get(setting))) {
+                out.printf("%nWarning: baseline %s differs (%s vs %s), results may not be comparable%n",
+                    setting, baseline.root.get(setting), root.get(setting));
+            }
+        }
+        
+        out.printf("%nComparison with baseline from %s (response time, us, tolerance %.1f%%)%n",
+            baseline.root.path("timestamp").asText("?"), tolerancePercent);
+        out.printf("%-20s %6s %12s %12s %9s%n", "operation", "", "baseline", "current", "change");
+        int regressions = 0;
+        Iterator<Map.Entry<String, JsonNode>> operations = root.get("operations").fields();
+        while (operations.hasNext()) {
+            Map.Entry<String, JsonNode> entry = operations.next();
+            JsonNode previous = baseline.root.get("operations").get(entry.getKey());
+            regressions += compare(out, entry.getKey(), entry.getValue(), previous, tolerancePercent);
+        }
+        regressions += compare(out, TOTAL, root.get(TOTAL), baseline.root.get(TOTAL), tolerancePercent);
+        out.printf("%n%s%n", regressions == 0 ? "No regression" : regressions + " percentile(s) regressed");
+        return regressions;
+    }
+    
+    private static int compare(PrintStream out, String name, JsonNode current, JsonNode previous,
+            double tolerancePercent) {
+        if (previous == null || previous.get("count").asLong() == 0 || current.get("count").asLong() == 0) {
+            out.printf("%-20s %6s %12s%n", name, "", "no baseline");
+            return 0;
+        }
+        int regressions = 0;
+        for (String percentile : COMPARED) {
+            double before = previous.get("responseTime").get(percentile).asDouble();
+            double after = current.get("responseTime").get(percentile).asDouble();
+            double change = before > 0 ? (after - before) * 100 / before : 0;
+            boolean regressed = change > tolerancePercent;
+            if (regressed) {
+                regressions++;
+            }
+            out.printf("%-20s %6s %12.1f %12.1f %+8.1f%%%s%n", name, percentile, before, after, change,
+                regressed ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+    
+    private static double micros(long nanos) {
+        return round(nanos / NANOS_PER_MICRO);
+    }
+    
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
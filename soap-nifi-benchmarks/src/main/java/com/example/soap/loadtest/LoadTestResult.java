@@ -0,0 +1,43 @@
+package com.example.soap.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Mesures fusionnées d'une phase du test, par opération.
+ */
+final class LoadTestResult {
+    
+    private final Map<SoapOperation, OperationStats> stats = new EnumMap<>(SoapOperation.class);
+    private final long elapsedNanos;
+    
+    LoadTestResult(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    void add(Map<SoapOperation, OperationStats> workerStats) {
+        workerStats.forEach((operation, operationStats) ->
+            stats.computeIfAbsent(operation, o -> new OperationStats()).add(operationStats));
+    }
+    
+    Map<SoapOperation, OperationStats> stats() {
+        return stats;
+    }
+    
+    long elapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Temps de service moyen toutes opérations confondues, en nanosecondes
+     */
+    long meanServiceNanos() {
+        double total = 0;
+        long count = 0;
+        for (OperationStats operationStats : stats.values()) {
+            total += operationStats.serviceTime.getMean() * operationStats.count();
+            count += operationStats.count();
+        }
+        return count == 0 ? 0 : (long) (total / count);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.soap.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Répartition pondérée des opérations, ex. {@code getClientById:40,searchClients:15}.
+ */
+final class OperationMix {
+    
+    static final String DEFAULT = "getClientById:40,getClientByEmail:20,searchClients:15,"
+        + "createClient:8,updateClient:10,deleteClient:6,getAllClients:1";
+        
+    private final SoapOperation[] operations;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+    
+    private OperationMix(Map<SoapOperation, Integer> weights) {
+        this.operations = new SoapOperation[weights.size()];
+        this.cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<SoapOperation, Integer> entry : weights.entrySet()) {
+            total += entry.getValue();
+            operations[i] = entry.getKey();
+            cumulativeWeights[i] = total;
+            i++;
+        }
+        this.totalWeight = total;
+    }
+    
+    static OperationMix parse(String spec) {
+        Map<SoapOperation, Integer> weights = new EnumMap<>(SoapOperation.class);
+        for (String part : spec.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Invalid mix entry (expected operation:weight): " + part);
+            }
+            int weight = Integer.parseInt(nameAndWeight[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + nameAndWeight[0]);
+            }
+            if (weight > 0) {
+                weights.merge(SoapOperation.fromName(nameAndWeight[0].trim()), weight, Integer::sum);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("Operation mix is empty: " + spec);
+        }
+        return new OperationMix(weights);
+    }
+    
+    SoapOperation next(SplittableRandom random) {
+        int value = random.nextInt(totalWeight);
+        int i = 0;
+        while (value >= cumulativeWeights[i]) {
+            i++;
+        }
+        return operations[i];
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        int previous = 0;
+        for (int i = 0; i < operations.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(operations[i].operationName()).append(':').append(cumulativeWeights[i] - previous);
+            previous = cumulativeWeights[i];
+        }
+        return builder.toString();
+    }
+}
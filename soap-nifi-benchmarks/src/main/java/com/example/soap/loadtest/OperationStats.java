@@ -0,0 +1,27 @@
+package com.example.soap.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Mesures d'une opération : temps de réponse corrigé de l'omission coordonnée
+ * (depuis l'instant où la requête aurait dû partir), temps de service brut et erreurs.
+ * Chaque thread a ses propres instances, fusionnées en fin de test.
+ */
+final class OperationStats {
+    
+    private static final int SIGNIFICANT_DIGITS = 3;
+    
+    final Histogram responseTime = new Histogram(SIGNIFICANT_DIGITS);
+    final Histogram serviceTime = new Histogram(SIGNIFICANT_DIGITS);
+    long errors;
+    
+    void add(OperationStats other) {
+        responseTime.add(other.responseTime);
+        serviceTime.add(other.serviceTime);
+        errors += other.errors;
+    }
+    
+    long count() {
+        return serviceTime.getTotalCount();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.soap.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Envoie des requêtes SOAP depuis un pool de threads, en boucle fermée (chaque thread enchaîne
+ * ses requêtes) ou ouverte (départs planifiés à débit fixe, indépendamment des réponses).
+ *
+ * En boucle ouverte le temps de réponse est mesuré depuis le départ planifié, ce qui compte l'attente
+ * subie quand le service ou les threads prennent du retard. En boucle fermée il est corrigé a posteriori
+ * avec l'intervalle attendu entre deux requêtes d'un thread (recordValueWithExpectedInterval).
+ */
+final class SoapLoadGenerator {
+    
+    private final HttpClient httpClient;
+    private final URI endpoint;
+    private final ClientWorkload workload;
+    private final OperationMix mix;
+    private final int threads;
+    
+    SoapLoadGenerator(HttpClient httpClient, URI endpoint, ClientWorkload workload, OperationMix mix, int threads) {
+        this.httpClient = httpClient;
+        this.endpoint = endpoint;
+        this.workload = workload;
+        this.mix = mix;
+        this.threads = threads;
+    }
+    
+    /**
+     * Exécute une phase du test
+     *
+     * @param ratePerSecond débit planifié en boucle ouverte, 0 pour la boucle fermée
+     * @param expectedIntervalNanos intervalle attendu par thread en boucle fermée, 0 sans correction
+     */
+    LoadTestResult run(Duration duration, long ratePerSecond, long expectedIntervalNanos, long seed)
+            throws InterruptedException {
+        long intervalNanos = ratePerSecond > 0 ? Math.max(1, 1_000_000_000L / ratePerSecond) : 0;
+        AtomicLong ticket = new AtomicLong();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "soap-load-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        List<Future<Map<SoapOperation, OperationStats>>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            SplittableRandom random = new SplittableRandom(seed + i);
+            workers.add(executor.submit(() -> work(random, start, end, intervalNanos, ticket, expectedIntervalNanos)));
+        }
+        
+        List<Map<SoapOperation, OperationStats>> results = new ArrayList<>(threads);
+        try {
+            for (Future<Map<SoapOperation, OperationStats>> worker : workers) {
+                results.add(worker.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        LoadTestResult result = new LoadTestResult(System.nanoTime() - start);
+        results.forEach(result::add);
+        return result;
+    }
+    
+    private Map<SoapOperation, OperationStats> work(SplittableRandom random, long start, long end,
+            long intervalNanos, AtomicLong ticket, long expectedIntervalNanos) throws InterruptedException {
+        Map<SoapOperation, OperationStats> stats = new EnumMap<>(SoapOperation.class);
+        while (true) {
+            long intended;
+            if (intervalNanos > 0) {
+                intended = start + ticket.getAndIncrement() * intervalNanos;
+                if (intended >= end) {
+                    break;
+                }
+                parkUntil(intended);
+            } else {
+                intended = System.nanoTime();
+                if (intended >= end) {
+                    break;
+                }
+            }
+            
+            ClientWorkload.SoapRequest request = workload.request(mix.next(random), random);
+            long sent = System.nanoTime();
+            boolean succeeded = send(request);
+            long done = System.nanoTime();
+            
+            OperationStats operationStats = stats.computeIfAbsent(request.operation, o -> new OperationStats());
+            if (!succeeded) {
+                operationStats.errors++;
+                continue;
+            }
+            operationStats.serviceTime.recordValue(done - sent);
+            if (intervalNanos > 0) {
+                operationStats.responseTime.recordValue(done - intended);
+            } else if (expectedIntervalNanos > 0) {
+                operationStats.responseTime.recordValueWithExpectedInterval(done - sent, expectedIntervalNanos);
+            } else {
+                operationStats.responseTime.recordValue(done - sent);
+            }
+        }
+        return stats;
+    }
+    
+    private boolean send(ClientWorkload.SoapRequest request) throws InterruptedException {
+        HttpRequest httpRequest = HttpRequest.newBuilder(endpoint)
+            .header("Content-Type", "text/xml; charset=UTF-8")
+            .header("SOAPAction", "\"\"")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(request.body))
+            .build();
+        try {
+            // La réponse est lue entièrement puis ignorée
+            HttpResponse<Void> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    private static void parkUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
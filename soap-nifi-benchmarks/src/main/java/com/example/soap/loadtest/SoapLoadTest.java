@@ -0,0 +1,132 @@
+package com.example.soap.loadtest;
+
+import com.example.soap.SoapClientServiceApplication;
+import com.example.soap.benchmark.ClientDataset;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test de charge de bout en bout de /soap/ClientService, sans dépendance réseau externe :
+ * l'application est démarrée dans ce processus sur un port éphémère, avec un export NiFi généré,
+ * puis sollicitée selon le mix d'opérations. Le code de sortie vaut 2 si la comparaison
+ * avec la référence (--baseline) détecte une régression.
+ */
+public final class SoapLoadTest {
+    
+    private static final long SEED = 42;
+    
+    private SoapLoadTest() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+        
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        
+        Path workDirectory = null;
+        ConfigurableApplicationContext application = null;
+        int regressions;
+        try {
+            URI endpoint;
+            if (options.url != null) {
+                endpoint = URI.create(options.url);
+            } else {
+                workDirectory = Files.createTempDirectory("soap-loadtest");
+                application = startApplication(options, workDirectory, mapper);
+                int port = ((ServletWebServerApplicationContext) application).getWebServer().getPort();
+                endpoint = URI.create("http://localhost:" + port + "/soap/ClientService");
+            }
+            regressions = run(options, endpoint, mapper);
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+            if (workDirectory != null) {
+                FileSystemUtils.deleteRecursively(workDirectory);
+            }
+        }
+        System.exit(regressions > 0 ? 2 : 0);
+    }
+    
+    /**
+     * Démarre l'application sur un port éphémère ; le fichier généré est chargé pendant le démarrage
+     */
+    private static ConfigurableApplicationContext startApplication(LoadTestOptions options, Path directory,
+            ObjectMapper mapper) throws IOException {
+        System.out.printf("Generating %,d clients in %s%n", options.clients, directory);
+        ClientDataset.writeJson(ClientDataset.generate(options.clients), mapper,
+            directory.resolve("clients_1.json").toFile());
+            
+        List<String> args = new ArrayList<>();
+        args.add("--server.port=0");
+        args.add("--nifi.output.directory=" + directory);
+        args.add("--cache.snapshot.enabled=false");
+        if (options.storageMode != null) {
+            args.add("--cache.storage.mode=" + options.storageMode);
+        }
+        return new SpringApplicationBuilder(SoapClientServiceApplication.class)
+            .run(args.toArray(new String[0]));
+    }
+    
+    private static int run(LoadTestOptions options, URI endpoint, ObjectMapper mapper) throws Exception {
+        HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+        SoapLoadGenerator generator = new SoapLoadGenerator(httpClient, endpoint,
+            new ClientWorkload(options.clients), options.mix, options.threads);
+        long rate = options.isOpenLoop() ? options.rate : 0;
+        
+        System.out.printf("Warming up %s for %d s (%s loop, %d threads)%n", endpoint,
+            options.warmup.getSeconds(), options.mode, options.threads);
+        LoadTestResult warmup = generator.run(options.warmup, rate, 0, SEED);
+        
+        // Boucle fermée : intervalle attendu entre deux requêtes d'un thread, donné par --rate
+        // ou à défaut estimé sur le préchauffage
+        long correctionInterval = 0;
+        if (!options.isOpenLoop()) {
+            correctionInterval = options.rate > 0
+                ? options.threads * 1_000_000_000L / options.rate
+                : warmup.meanServiceNanos();
+        }
+        
+        System.out.printf("Measuring for %d s%n", options.duration.getSeconds());
+        LoadTestResult result = generator.run(options.duration, rate, correctionInterval, SEED + options.threads);
+        
+        LoadTestReport report = LoadTestReport.of(result, options, correctionInterval, mapper);
+        report.print(System.out);
+        File reportFile = new File(options.report);
+        report.write(reportFile, mapper);
+        LoadTestReport.writeDistributions(result, reportFile);
+        System.out.printf("%nReport written to %s%n", reportFile.getAbsolutePath());
+        
+        if (options.baseline == null) {
+            return 0;
+        }
+        return report.compareTo(LoadTestReport.read(new File(options.baseline), mapper),
+            options.tolerancePercent, System.out);
+    }
+}
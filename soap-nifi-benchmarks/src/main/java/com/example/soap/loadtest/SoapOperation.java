@@ -0,0 +1,37 @@
+package com.example.soap.loadtest;
+
+/**
+ * Opérations de ClientService pilotées par le générateur de charge.
+ */
+enum SoapOperation {
+    
+    GET_CLIENT_BY_ID("getClientById"),
+    GET_CLIENT_BY_EMAIL("getClientByEmail"),
+    SEARCH_CLIENTS("searchClients"),
+    CREATE_CLIENT("createClient"),
+    UPDATE_CLIENT("updateClient"),
+    DELETE_CLIENT("deleteClient"),
+    GET_ALL_CLIENTS("getAllClients");
+    
+    private final String operationName;
+    
+    SoapOperation(String operationName) {
+        this.operationName = operationName;
+    }
+    
+    /**
+     * Nom de l'opération dans le WSDL, utilisé aussi dans le mix et le rapport
+     */
+    String operationName() {
+        return operationName;
+    }
+    
+    static SoapOperation fromName(String name) {
+        for (SoapOperation operation : values()) {
+            if (operation.operationName.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown SOAP operation: " + name);
+    }
+}
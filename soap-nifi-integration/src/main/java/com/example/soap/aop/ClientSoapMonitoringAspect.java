@@ -1,48 +1,146 @@
 package com.example.soap.aop;
 
 import com.example.soap.annotation.MonitorSoapMethod;
+import com.example.soap.metrics.ResourceAccounting;
+import com.example.soap.metrics.SoapMethodMeters;
 import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.metrics.StreamedResponse;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Aspect
 @Component
-public class ClientSoapMonitoringAspect {  // ← Changer le nom de la classe ici
+public class ClientSoapMonitoringAspect implements SmartInitializingSingleton {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClientSoapMonitoringAspect.class);
     
     private final SoapMetricsService metricsService;
+    private final ResourceAccounting resourceAccounting;
+    private final ConfigurableListableBeanFactory beanFactory;
+    
+    // Proportion des appels chronométrés ; les compteurs de requêtes et d'erreurs restent exhaustifs
+    private final double sampleRate;
     
-    public ClientSoapMonitoringAspect(SoapMetricsService metricsService) {  // ← Et ici
+    // Métriques de chaque méthode annotée, résolues au démarrage
+    private final ConcurrentHashMap<Method, SoapMethodMeters> metersByMethod = new ConcurrentHashMap<>();
+    
+    public ClientSoapMonitoringAspect(SoapMetricsService metricsService, ResourceAccounting resourceAccounting,
+            ConfigurableListableBeanFactory beanFactory, @Value("${soap.monitoring.sample-rate:1.0}") double sampleRate) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("soap.monitoring.sample-rate must be between 0 and 1: " + sampleRate);
+        }
         this.metricsService = metricsService;
+        this.resourceAccounting = resourceAccounting;
+        this.beanFactory = beanFactory;
+        this.sampleRate = sampleRate;
     }
     
-    @Around("@annotation(monitorSoapMethod)")
-    public Object monitorSoapMethod(ProceedingJoinPoint joinPoint, MonitorSoapMethod monitorSoapMethod) throws Throwable {
-        String methodName = monitorSoapMethod.value().isEmpty() 
-            ? getMethodName(joinPoint) 
-            : monitorSoapMethod.value();
-        
-        long startTime = System.currentTimeMillis();
-        boolean success = false;
+    /**
+     * Résout les compteurs et timers de toutes les méthodes annotées une fois les singletons créés
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            Class<?> beanType = beanFactory.getType(beanName, false);
+            if (beanType == null) {
+                continue;
+            }
+            Class<?> userType = ClassUtils.getUserClass(beanType);
+            if (!AnnotationUtils.isCandidateClass(userType, MonitorSoapMethod.class)) {
+                continue;
+            }
+            Map<Method, MonitorSoapMethod> annotated = MethodIntrospector.selectMethods(userType,
+                (MethodIntrospector.MetadataLookup<MonitorSoapMethod>) method ->
+                    AnnotatedElementUtils.findMergedAnnotation(method, MonitorSoapMethod.class));
+            annotated.forEach((method, annotation) -> metersByMethod.computeIfAbsent(method,
+                key -> metricsService.methodMeters(meterName(key, annotation))));
+        }
+        logger.info("SOAP monitoring ready for {} methods (timing sample rate: {})",
+            metersByMethod.size(), sampleRate);
+    }
+    
+    // Pointcut sans liaison de l'annotation : correspondance statique, sans évaluation à chaque appel
+    @Around("@annotation(com.example.soap.annotation.MonitorSoapMethod)")
+    public Object monitorSoapMethod(ProceedingJoinPoint joinPoint) throws Throwable {
+        SoapMethodMeters meters = meters(joinPoint);
+        meters.recordRequest();
+        if (meters.isTrackingArguments()) {
+            meters.recordArguments(joinPoint.getArgs());
+        }
         
+        boolean timed = sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        long startNanos = timed ? System.nanoTime() : 0L;
+        // CPU et allocations du thread d'exécution, mesurés seulement quand la mesure est activée
+        boolean accounted = resourceAccounting.isEnabled();
+        long cpuStart = accounted ? resourceAccounting.currentThreadCpuNanos() : 0L;
+        long allocatedStart = accounted ? resourceAccounting.currentThreadAllocatedBytes() : 0L;
+        Object result = null;
         try {
-            metricsService.incrementRequest(methodName);
-            Object result = joinPoint.proceed();
-            success = true;
+            result = joinPoint.proceed();
             return result;
-        } catch (Exception e) {
-            metricsService.incrementError(methodName, e.getClass().getSimpleName());
+        } catch (Throwable e) {
+            meters.recordError(e);
             throw e;
         } finally {
-            long duration = System.currentTimeMillis() - startTime;
-            metricsService.recordRequest(methodName, startTime, success);
+            if (result instanceof StreamedResponse) {
+                // Durée et erreur d'écriture connues à la fermeture du flux de la réponse
+                ((StreamedResponse) result).whenWritten(error -> {
+                    if (error != null) {
+                        meters.recordError(error);
+                    }
+                    if (timed) {
+                        meters.recordDuration(System.nanoTime() - startNanos);
+                    }
+                });
+            } else if (timed) {
+                meters.recordDuration(System.nanoTime() - startNanos);
+            }
+            if (accounted) {
+                recordResourceUsage(meters, cpuStart, allocatedStart);
+            }
+        }
+    }
+    
+    private SoapMethodMeters meters(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        SoapMethodMeters meters = metersByMethod.get(method);
+        if (meters == null) {
+            // Bean créé après le démarrage (portée prototype, initialisation paresseuse...)
+            meters = metersByMethod.computeIfAbsent(method, key -> metricsService.methodMeters(meterName(key,
+                AnnotatedElementUtils.findMergedAnnotation(key, MonitorSoapMethod.class))));
+            logger.debug("Resolved SOAP meters lazily for {}", meters.getMethodName());
         }
+        return meters;
     }
     
-    private String getMethodName(ProceedingJoinPoint joinPoint) {
-        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
-        return signature.getDeclaringType().getSimpleName() + "." + signature.getName();
+    private void recordResourceUsage(SoapMethodMeters meters, long cpuStart, long allocatedStart) {
+        long cpu = resourceAccounting.currentThreadCpuNanos();
+        long allocated = resourceAccounting.currentThreadAllocatedBytes();
+        if (cpuStart >= 0 && allocatedStart >= 0 && cpu >= 0 && allocated >= 0) {
+            meters.recordResourceUsage(cpu - cpuStart, allocated - allocatedStart);
+        }
+    }
+    
+    private static String meterName(Method method, MonitorSoapMethod monitorSoapMethod) {
+        return monitorSoapMethod.value().isEmpty()
+            ? method.getDeclaringClass().getSimpleName() + "." + method.getName()
+            : monitorSoapMethod.value();
     }
-}
\ No newline at end of file
+}
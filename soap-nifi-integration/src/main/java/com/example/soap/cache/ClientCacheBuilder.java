@@ -0,0 +1,81 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accumule les clients d'un export NiFi un par un avant publication dans le cache.
+ * Un id en double remplace l'enregistrement précédent (le dernier lu gagne).
+ */
+public class ClientCacheBuilder {
+    
+    private final Map<Long, Client> clients;
+    private int skipped;
+    private int duplicates;
+    
+    public ClientCacheBuilder() {
+        this(1024);
+    }
+    
+    public ClientCacheBuilder(int expectedSize) {
+        this.clients = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+    }
+    
+    /**
+     * Ajoute un client ; ignoré s'il n'a pas d'id
+     */
+    public boolean add(Client client) {
+        if (client == null || client.getId() == null) {
+            skipped++;
+            return false;
+        }
+        if (clients.put(client.getId(), client) != null) {
+            duplicates++;
+        }
+        return true;
+    }
+    
+    public ClientCacheBuilder addAll(Collection<Client> source) {
+        for (Client client : source) {
+            add(client);
+        }
+        return this;
+    }
+    
+    /**
+     * Ajoute les clients d'un builder rempli séparément (une partition d'export) ;
+     * ses clients remplacent ceux déjà présents avec le même id
+     */
+    public ClientCacheBuilder merge(ClientCacheBuilder partition) {
+        for (Client client : partition.clients.values()) {
+            if (clients.put(client.getId(), client) != null) {
+                duplicates++;
+            }
+        }
+        skipped += partition.skipped;
+        duplicates += partition.duplicates;
+        return this;
+    }
+    
+    /**
+     * Clients retenus, indexés par id
+     */
+    public Map<Long, Client> getClients() {
+        return clients;
+    }
+    
+    public int size() {
+        return clients.size();
+    }
+    
+    public int getSkipped() {
+        return skipped;
+    }
+    
+    public int getDuplicates() {
+        return duplicates;
+    }
+}
@@ -1,73 +1,540 @@
 package com.example.soap.cache;
 
+import com.example.soap.metrics.SoapMetricsService;
 import com.example.soap.model.Client;
+import com.example.soap.model.ClientField;
+import com.example.soap.model.ClientPage;
+import com.example.soap.model.ClientSearchCriteria;
+import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 @Service
 public class ClientCacheService {
     
     private static final Logger logger = LoggerFactory.getLogger(ClientCacheService.class);
     
-    // Cache thread-safe des clients
-    private final Map<Long, Client> clientCache = new ConcurrentHashMap<>();
+    // Curseur de pagination : génération (long) puis ordinal (int)
+    private static final int CURSOR_BYTES = Long.BYTES + Integer.BYTES;
     
-    // Index par email pour recherche rapide
-    private final Map<String, Client> emailIndex = new ConcurrentHashMap<>();
+    // Nombre de clients portés par l'overlay d'une génération au-delà duquel il est intégré à une copie de la base
+    private static final int OVERLAY_FOLD_THRESHOLD = 1024;
+    
+    private final SoapMetricsService metricsService;
+    
+    // Au-delà de cette proportion de clients modifiés, un rechargement complet est préféré au delta
+    private final double maxDeltaChangeRatio;
+    
+    // Taille des n-grammes de l'index de recherche
+    private final int searchGramSize;
+    
+    // Champs dotés d'un index trié pour la recherche multicritère
+    private final Set<ClientField> sortedFields;
+    
+    // Représentation des clients en mémoire
+    private final ClientStore.Factory storeFactory;
+    
+    // Réglages et compteurs du mode tiered, null dans les autres modes
+    private final TieredStorage tieredStorage;
+    
+    // Génération publiée, jamais modifiée : les lecteurs la lisent sans verrou.
+    // Son numéro change à chaque rechargement, complet ou delta, et pas aux mutations SOAP.
+    private volatile ClientCacheSnapshot snapshot;
+    
+    // Sérialise les écrivains (rechargements et mutations)
+    private final Object writeLock = new Object();
+    
+    // Intègre l'overlay des mutations SOAP à une copie de la base, hors du verrou d'écriture
+    private final ExecutorService overlayFolder = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "cache-overlay-fold");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean foldPending = new AtomicBoolean();
+    
+    // Snapshot binaire de la dernière génération, pour un démarrage sans relire le JSON
+    private final Path snapshotPath;
+    private final ExecutorService snapshotWriter;
+    private final AtomicBoolean snapshotPending = new AtomicBoolean();
+    private volatile long snapshotLoadNanos;
+    private volatile long snapshotBytes;
+    
+    // Journal des mutations SOAP, réappliqué sur chaque génération chargée
+    private final ClientMutationJournal journal;
+    
+    public ClientCacheService(SoapMetricsService metricsService,
+                              @Value("${cache.delta.max-change-ratio:0.5}") double maxDeltaChangeRatio,
+                              @Value("${cache.search.ngram-size:3}") int searchGramSize,
+                              @Value("${cache.search.sorted-fields:codePostal,ville,nom,prenom,telephone}") String sortedFields,
+                              @Value("${cache.storage.mode:objects}") String storageMode,
+                              @Value("${cache.storage.tiered.hot-capacity:100000}") int tieredHotCapacity,
+                              @Value("${cache.storage.tiered.directory:${java.io.tmpdir}}") String tieredDirectory,
+                              @Value("${cache.snapshot.enabled:true}") boolean snapshotEnabled,
+                              @Value("${cache.snapshot.path:${nifi.output.directory:C:/nifi-1/output}/clients-cache.snapshot}") String snapshotPath,
+                              @Value("${cache.journal.enabled:true}") boolean journalEnabled,
+                              @Value("${cache.journal.path:${nifi.output.directory:C:/nifi-1/output}/clients-mutations.journal}") String journalPath) {
+        this.metricsService = metricsService;
+        this.maxDeltaChangeRatio = maxDeltaChangeRatio;
+        this.searchGramSize = searchGramSize;
+        this.sortedFields = parseFields(sortedFields);
+        ClientStore.Mode mode = ClientStore.Mode.parse(storageMode);
+        this.tieredStorage = mode == ClientStore.Mode.TIERED
+            ? new TieredStorage(tieredHotCapacity, Paths.get(tieredDirectory))
+            : null;
+        this.storeFactory = mode.factory(tieredStorage);
+        this.snapshot = ClientCacheSnapshot.empty(searchGramSize, this.sortedFields, storeFactory);
+        this.snapshotPath = snapshotEnabled ? Paths.get(snapshotPath) : null;
+        this.snapshotWriter = snapshotEnabled ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.journal = journalEnabled ? openJournal(Paths.get(journalPath)) : null;
+        if (journal != null) {
+            // Mutations rejouées dès le démarrage, avant même le premier chargement
+            journal.forEach(mutation -> apply(snapshot, mutation));
+        }
+        metricsService.registerGauge("soap_cache_generation",
+            "Generation number of the published client cache", this, ClientCacheService::getGeneration);
+        metricsService.registerGauge("soap_cache_size",
+            "Number of clients in the published cache", this, ClientCacheService::getCacheSize);
+        metricsService.registerGauge("soap_cache_snapshot_load_seconds",
+            "Time spent loading the binary cache snapshot at startup", this,
+            service -> service.snapshotLoadNanos / 1e9);
+        metricsService.registerGauge("soap_cache_snapshot_bytes",
+            "Size of the last binary cache snapshot loaded or written", this,
+            service -> service.snapshotBytes);
+        if (tieredStorage != null) {
+            registerTierMetrics(tieredStorage);
+        }
+    }
+    
+    /**
+     * Lectures, taux de succès, sorties et occupation des deux niveaux du mode tiered
+     */
+    private void registerTierMetrics(TieredStorage tiered) {
+        String lookups = "Client lookups by tier of the tiered cache storage and result";
+        metricsService.registerFunctionCounter("soap_cache_tier_lookups_total", lookups,
+            Tags.of("tier", "hot", "result", "hit"), tiered, TieredStorage::hotHits);
+        metricsService.registerFunctionCounter("soap_cache_tier_lookups_total", lookups,
+            Tags.of("tier", "hot", "result", "miss"), tiered, TieredStorage::hotMisses);
+        metricsService.registerFunctionCounter("soap_cache_tier_lookups_total", lookups,
+            Tags.of("tier", "mapped", "result", "hit"), tiered, TieredStorage::mappedHits);
+        metricsService.registerFunctionCounter("soap_cache_tier_lookups_total", lookups,
+            Tags.of("tier", "mapped", "result", "miss"), tiered, TieredStorage::mappedMisses);
+            
+        String ratio = "Share of lookups reaching a tier that it served";
+        metricsService.registerGauge("soap_cache_tier_hit_ratio", ratio, Tags.of("tier", "hot"), tiered,
+            t -> TieredStorage.hitRatio(t.hotHits(), t.hotMisses()));
+        metricsService.registerGauge("soap_cache_tier_hit_ratio", ratio, Tags.of("tier", "mapped"), tiered,
+            t -> TieredStorage.hitRatio(t.mappedHits(), t.mappedMisses()));
+            
+        // size : victime remplacée par un candidat plus fréquent ; admission : candidat refusé par TinyLFU
+        String evictions = "Clients dropped from the hot tier, by cause";
+        metricsService.registerFunctionCounter("soap_cache_tier_evictions_total", evictions,
+            Tags.of("tier", "hot", "cause", "size"), tiered, TieredStorage::evictions);
+        metricsService.registerFunctionCounter("soap_cache_tier_evictions_total", evictions,
+            Tags.of("tier", "hot", "cause", "admission"), tiered, TieredStorage::rejections);
+            
+        String entries = "Clients held by each tier of the published cache";
+        metricsService.registerGauge("soap_cache_tier_entries", entries, Tags.of("tier", "hot"), this,
+            service -> ((TieredClientStore) service.snapshot.store()).hotSize());
+        metricsService.registerGauge("soap_cache_tier_entries", entries, Tags.of("tier", "mapped"), this,
+            ClientCacheService::getCacheSize);
+        metricsService.registerGauge("soap_cache_tier_mapped_bytes",
+            "Bytes of memory-mapped segments used by the published cache", this,
+            service -> ((TieredClientStore) service.snapshot.store()).mappedBytes());
+    }
+    
+    private static Set<ClientField> parseFields(String fields) {
+        Set<ClientField> parsed = EnumSet.noneOf(ClientField.class);
+        for (String field : fields.split(",")) {
+            if (!field.trim().isEmpty()) {
+                parsed.add(ClientField.parse(field));
+            }
+        }
+        return parsed;
+    }
+    
+    private ClientMutationJournal openJournal(Path path) {
+        try {
+            return ClientMutationJournal.open(path, metricsService);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open mutation journal " + path + ": " + e.getMessage(), e);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        overlayFolder.shutdownNow();
+        if (snapshotWriter != null) {
+            // Laisse se terminer l'écriture en cours pour ne pas perdre la dernière génération
+            snapshotWriter.shutdown();
+            snapshotWriter.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
     
     /**
      * Recharge complètement le cache avec une nouvelle liste de clients
      */
-    public synchronized void reloadCache(List<Client> clients) {
-        logger.info("Reloading client cache with {} clients", clients.size());
+    public void reloadCache(List<Client> clients) {
+        reloadCache(new ClientCacheBuilder(clients.size()).addAll(clients));
+    }
+    
+    /**
+     * Recharge complètement le cache à partir des clients accumulés par un builder.
+     * La nouvelle génération est construite à côté puis publiée d'un seul coup :
+     * les lecteurs voient soit l'ancienne génération complète, soit la nouvelle.
+     */
+    public void reloadCache(ClientCacheBuilder builder) {
+        publish(builder, true);
+        persistSnapshot();
+    }
+    
+    /**
+     * Publie une génération construite à partir du builder et des mutations journalisées ;
+     * pour un export NiFi ({@code fromSource}), les mutations qu'il contient déjà sont oubliées
+     */
+    private void publish(ClientCacheBuilder builder, boolean fromSource) {
+        logger.info("Reloading client cache with {} clients", builder.size());
+        long journalSeq = journal != null ? journal.applyTo(builder, fromSource) : 0L;
         
-        // Vider les caches
-        clientCache.clear();
-        emailIndex.clear();
+        long buildStart = System.nanoTime();
+        ClientCacheSnapshot next = ClientCacheSnapshot.build(snapshot.getGeneration() + 1, builder, searchGramSize,
+            sortedFields, storeFactory);
+        long buildNanos = System.nanoTime() - buildStart;
         
-        // Recharger
-        for (Client client : clients) {
-            if (client.getId() != null) {
-                clientCache.put(client.getId(), client);
-                if (client.getEmail() != null) {
-                    emailIndex.put(client.getEmail().toLowerCase(), client);
+        long swapStart = System.nanoTime();
+        synchronized (writeLock) {
+            if (next.getGeneration() <= snapshot.getGeneration()) {
+                // Un autre rechargement a été publié pendant la construction
+                next = ClientCacheSnapshot.build(snapshot.getGeneration() + 1, builder, searchGramSize,
+                    sortedFields, storeFactory);
+            }
+            if (journal != null) {
+                // Mutations journalisées pendant la construction
+                ClientCacheSnapshot target = next;
+                journal.forEachSince(journalSeq, mutation -> apply(target, mutation));
+            }
+            snapshot = next;
+        }
+        long swapNanos = System.nanoTime() - swapStart;
+        metricsService.recordCacheSwap(buildNanos, swapNanos);
+        
+        logger.info("Cache reloaded successfully. Generation: {}, total clients: {}, build: {} ms",
+            next.getGeneration(), next.size(), buildNanos / 1_000_000);
+    }
+    
+    /**
+     * Recharge le cache en n'appliquant que les clients insérés, modifiés ou supprimés
+     * depuis la génération publiée. Le delta est calculé et appliqué sans verrou sur une copie
+     * de la génération publiée, qui n'est jamais modifiée, puis la copie est publiée d'un seul coup : les lecteurs ne voient
+     * jamais un delta à moitié appliqué. Les clients inchangés conservent leur instance.
+     * Le delta publie un nouveau numéro de génération : les curseurs de pagination en cours expirent.
+     * Si le cache est vide ou si trop de clients ont changé, bascule sur un rechargement complet.
+     */
+    public ClientDelta reloadIncremental(ClientCacheBuilder builder) {
+        long journalSeq = journal != null ? journal.applyTo(builder, true) : 0L;
+        ClientCacheSnapshot current = snapshot;
+        ClientDelta delta;
+        if (current.size() == 0) {
+            delta = new ClientDelta();
+            delta.markFullReload();
+        } else {
+            long diffStart = System.nanoTime();
+            ClientCacheSnapshot next = current.copy(current.getGeneration() + 1);
+            delta = ClientDeltaEngine.diff(next.searchIndex(), builder.getClients());
+            int base = Math.max(current.size(), builder.size());
+            if (delta.getChangeCount() > base * maxDeltaChangeRatio) {
+                delta.markFullReload();
+            } else {
+                next.applyDelta(delta);
+                if (publishDelta(current.getGeneration(), next, journalSeq)) {
+                    metricsService.recordCacheDelta(delta.getInsertCount(), delta.getUpdateCount(),
+                        delta.getDeleteCount(), System.nanoTime() - diffStart);
+                } else {
+                    // Un rechargement complet a été publié pendant le calcul du delta
+                    delta.markFullReload();
                 }
             }
         }
         
-        logger.info("Cache reloaded successfully. Total clients: {}", clientCache.size());
+        if (delta.isFullReload()) {
+            logger.info("Delta not applicable ({}), falling back to full reload", delta);
+            // Le journal a déjà été appliqué au builder
+            publish(builder, false);
+            persistSnapshot();
+        } else {
+            logger.info("Cache updated incrementally. Generation: {}, {}", getGeneration(), delta);
+            persistSnapshot();
+        }
+        return delta;
     }
     
     /**
-     * Ajoute ou met à jour un client dans le cache
+     * Publie la génération issue du delta si aucun rechargement n'a été publié depuis la copie,
+     * après y avoir appliqué les mutations journalisées depuis la lecture de l'export.
+     * Sans journal, comme pour un rechargement complet, l'export l'emporte sur les mutations concurrentes.
      */
-    public void putClient(Client client) {
-        if (client.getId() != null) {
-            clientCache.put(client.getId(), client);
-            if (client.getEmail() != null) {
-                emailIndex.put(client.getEmail().toLowerCase(), client);
+    private boolean publishDelta(long currentGeneration, ClientCacheSnapshot next, long journalSeq) {
+        synchronized (writeLock) {
+            if (snapshot.getGeneration() != currentGeneration) {
+                return false;
+            }
+            if (journal != null) {
+                journal.forEachSince(journalSeq, mutation -> apply(next, mutation));
             }
-            logger.debug("Client added/updated in cache: {}", client.getId());
+            snapshot = next;
+            return true;
+        }
+    }
+    
+    /**
+     * Charge le cache depuis le snapshot binaire s'il existe et n'est pas plus ancien
+     * que le dernier export NiFi ; retourne false si le JSON doit être relu
+     */
+    public boolean loadSnapshot(long newestSourceModified) {
+        if (snapshotPath == null) {
+            return false;
+        }
+        File file = snapshotPath.toFile();
+        if (!file.isFile()) {
+            logger.info("No cache snapshot found at {}", snapshotPath);
+            return false;
+        }
+        if (file.lastModified() < newestSourceModified) {
+            logger.info("Cache snapshot {} is older than the newest export, ignoring it", snapshotPath);
+            return false;
+        }
+        
+        long start = System.nanoTime();
+        try {
+            ClientCacheBuilder builder = ClientSnapshotFile.read(snapshotPath);
+            publish(builder, false);
+            snapshotLoadNanos = System.nanoTime() - start;
+            snapshotBytes = file.length();
+            logger.info("Cache loaded from snapshot {} ({} clients, {} bytes) in {} ms",
+                snapshotPath, builder.size(), snapshotBytes, snapshotLoadNanos / 1_000_000);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot load cache snapshot {}: {}", snapshotPath, e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Planifie l'écriture du snapshot de la génération publiée ;
+     * les demandes rapprochées sont regroupées en une seule écriture
+     */
+    private void persistSnapshot() {
+        if (snapshotWriter == null || !snapshotPending.compareAndSet(false, true)) {
+            return;
+        }
+        snapshotWriter.execute(this::writeSnapshot);
+    }
+    
+    /**
+     * Sérialise la génération publiée au fil de son parcours, hors du verrou et sans copie :
+     * elle n'est plus modifiée une fois publiée
+     */
+    private void writeSnapshot() {
+        snapshotPending.set(false);
+        ClientCacheSnapshot current = snapshot;
+        long snapshotGeneration = current.getGeneration();
+        int count = current.size();
+        long start = System.nanoTime();
+        try {
+            snapshotBytes = ClientSnapshotFile.write(snapshotPath, snapshotGeneration, count, current::forEach);
+            metricsService.recordSnapshotWrite(System.nanoTime() - start);
+            logger.info("Cache snapshot written to {} (generation {}, {} clients, {} bytes)",
+                snapshotPath, snapshotGeneration, count, snapshotBytes);
+        } catch (IOException e) {
+            logger.error("Failed to write cache snapshot {}: {}", snapshotPath, e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Ajoute ou met à jour un client dans le cache et retourne le client remplacé, ou null.
+     * Avec journal, le client n'est publié qu'une fois sa mutation persistée.
+     */
+    public Client putClient(Client client) {
+        if (client.getId() == null) {
+            return null;
+        }
+        long ticket = journal != null ? journal.put(client) : 0L;
+        awaitJournal(ticket);
+        List<Client> previous = new ArrayList<>(1);
+        synchronized (writeLock) {
+            if (isPublishable(client.getId(), ticket)) {
+                snapshot = snapshot.withClients(Collections.singletonList(client), previous);
+            }
+        }
+        foldOverlayIfNeeded();
+        logger.debug("Client added/updated in cache: {}", client.getId());
+        return previous.isEmpty() ? null : previous.get(0);
+    }
+    
+    /**
+     * Ajoute ou met à jour un lot de clients en une seule passe d'écriture
+     * et retourne les clients remplacés (sans les ajouts) ; échoue si une mutation n'a pu être journalisée
+     */
+    public List<Client> putClients(Collection<Client> clients) {
+        Set<Long> failed = new HashSet<>();
+        List<Client> previous = putClients(clients, failed);
+        throwIfFailed(failed);
+        return previous;
+    }
+    
+    /**
+     * Comme {@link #putClients(Collection)}, mais un client dont la mutation n'a pu être journalisée
+     * n'est pas publié et son id est ajouté à {@code failed} ; les autres clients du lot sont publiés
+     */
+    public List<Client> putClients(Collection<Client> clients, Set<Long> failed) {
+        List<Client> batch = new ArrayList<>(clients.size());
+        for (Client client : clients) {
+            if (client != null && client.getId() != null) {
+                batch.add(client);
+            }
+        }
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long[] tickets = new long[batch.size()];
+        if (journal != null) {
+            for (int i = 0; i < tickets.length; i++) {
+                Client client = batch.get(i);
+                tickets[i] = journalMutation(client.getId(), () -> journal.put(client), failed);
+            }
+        }
+        awaitJournal(batch, Client::getId, tickets, failed);
+        List<Client> previous = new ArrayList<>(batch.size());
+        synchronized (writeLock) {
+            List<Client> published = new ArrayList<>(batch.size());
+            for (int i = 0; i < tickets.length; i++) {
+                if (isPublishable(batch.get(i).getId(), tickets[i])) {
+                    published.add(batch.get(i));
+                }
+            }
+            snapshot = snapshot.withClients(published, previous);
         }
+        foldOverlayIfNeeded();
+        logger.debug("{} clients added/updated in cache", batch.size());
+        previous.removeIf(Objects::isNull);
+        return previous;
+    }
+    
+    /**
+     * Supprime un lot de clients en une seule passe d'écriture et retourne les clients supprimés ;
+     * échoue si une suppression n'a pu être journalisée
+     */
+    public List<Client> deleteClients(Collection<Long> ids) {
+        Set<Long> failed = new HashSet<>();
+        List<Client> removed = deleteClients(ids, failed);
+        throwIfFailed(failed);
+        return removed;
+    }
+    
+    /**
+     * Comme {@link #deleteClients(Collection)}, mais un client dont la suppression n'a pu être journalisée
+     * reste publié et son id est ajouté à {@code failed}. Un id répété n'est supprimé qu'une fois.
+     */
+    public List<Client> deleteClients(Collection<Long> ids, Set<Long> failed) {
+        Set<Long> unique = new LinkedHashSet<>(ids);
+        unique.remove(null);
+        List<Long> batch = new ArrayList<>(unique);
+        long[] tickets = new long[batch.size()];
+        if (journal != null) {
+            for (int i = 0; i < tickets.length; i++) {
+                Long id = batch.get(i);
+                if (snapshot.get(id) != null) {
+                    tickets[i] = journalMutation(id, () -> journal.delete(id), failed);
+                }
+            }
+        }
+        awaitJournal(batch, id -> id, tickets, failed);
+        List<Client> removed = new ArrayList<>();
+        synchronized (writeLock) {
+            List<Long> published = new ArrayList<>(batch.size());
+            for (int i = 0; i < tickets.length; i++) {
+                if (isPublishable(batch.get(i), tickets[i])) {
+                    published.add(batch.get(i));
+                }
+            }
+            snapshot = snapshot.withoutClients(published, removed);
+        }
+        foldOverlayIfNeeded();
+        logger.debug("{} clients removed from cache", removed.size());
+        return removed;
     }
     
     /**
      * Récupère tous les clients
      */
     public List<Client> getAllClients() {
-        return new ArrayList<>(clientCache.values());
+        List<Client> clients = new ArrayList<>(snapshot.size());
+        snapshot.forEach(clients::add);
+        return clients;
+    }
+    
+    /**
+     * Récupère une page de clients à partir d'un curseur opaque (null ou vide pour la première page).
+     * Le curseur est lié à la génération publiée par le dernier rechargement, complet ou delta ;
+     * les mutations SOAP appliquées entre-temps ne l'invalident pas.
+     */
+    public ClientPage getClientsPage(String cursor, int limit) {
+        ClientCacheSnapshot current = snapshot;
+        int fromOrdinal = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            ByteBuffer decoded = decodeCursor(cursor);
+            if (decoded.getLong() != current.getGeneration()) {
+                throw new IllegalStateException("Cursor expired: the client cache was reloaded, restart pagination");
+            }
+            fromOrdinal = decoded.getInt();
+        }
+        
+        List<Client> clients = new ArrayList<>(Math.min(limit, current.size()));
+        int nextOrdinal = current.page(fromOrdinal, limit, clients);
+        String nextCursor = nextOrdinal < 0 ? null : encodeCursor(current.getGeneration(), nextOrdinal);
+        return new ClientPage(clients, nextCursor, current.getGeneration());
+    }
+    
+    /**
+     * Parcourt tous les clients de la génération publiée sans copie intermédiaire
+     */
+    public void forEachClient(Consumer<Client> action) {
+        snapshot.forEach(action);
     }
     
     /**
      * Récupère un client par ID
      */
     public Client getClientById(Long id) {
-        return clientCache.get(id);
+        if (id == null) {
+            return null;
+        }
+        return snapshot.get(id);
     }
     
     /**
@@ -77,53 +544,206 @@ public class ClientCacheService {
         if (email == null) {
             return null;
         }
-        return emailIndex.get(email.toLowerCase());
+        return snapshot.getByEmail(ClientCacheSnapshot.normalizeEmail(email));
     }
     
     /**
-     * Recherche des clients par critères
+     * Recherche des clients par critères (sous-chaînes de la ville et du nom, via l'index de n-grammes)
      */
     public List<Client> searchClients(String ville, String nom) {
-        return clientCache.values().stream()
-            .filter(client -> {
-                boolean match = true;
-                if (ville != null && !ville.isEmpty()) {
-                    match = client.getVille() != null && 
-                            client.getVille().toLowerCase().contains(ville.toLowerCase());
-                }
-                if (match && nom != null && !nom.isEmpty()) {
-                    match = client.getNom() != null && 
-                            client.getNom().toLowerCase().contains(nom.toLowerCase());
-                }
-                return match;
-            })
-            .collect(Collectors.toList());
+        return snapshot.search(ville, nom);
+    }
+    
+    /**
+     * Recherche multicritère (égalité, préfixe, intervalle) triée et limitée à {@code maxResults} clients,
+     * servie par les index triés des champs configurés (cache.search.sorted-fields)
+     */
+    public List<Client> findClients(ClientSearchCriteria criteria, int maxResults) {
+        return snapshot.find(new ClientQuery(criteria, maxResults));
+    }
+    
+    /**
+     * Ordre des résultats de la recherche multicritère, pour fusionner des résultats partiels
+     */
+    public static Comparator<Client> resultOrder(ClientSearchCriteria criteria) {
+        return ClientQuery.order(criteria);
     }
     
     /**
      * Supprime un client du cache
      */
     public boolean deleteClient(Long id) {
-        Client removed = clientCache.remove(id);
-        if (removed != null && removed.getEmail() != null) {
-            emailIndex.remove(removed.getEmail().toLowerCase());
-            logger.debug("Client removed from cache: {}", id);
+        return removeClient(id) != null;
+    }
+    
+    /**
+     * Supprime un client du cache et retourne le client supprimé, ou null
+     */
+    public Client removeClient(Long id) {
+        if (id == null) {
+            return null;
+        }
+        long ticket = journal != null && snapshot.get(id) != null ? journal.delete(id) : 0L;
+        awaitJournal(ticket);
+        List<Client> removed = new ArrayList<>(1);
+        synchronized (writeLock) {
+            if (isPublishable(id, ticket)) {
+                snapshot = snapshot.withoutClients(Collections.singletonList(id), removed);
+            }
+        }
+        foldOverlayIfNeeded();
+        if (removed.isEmpty()) {
+            return null;
+        }
+        logger.debug("Client removed from cache: {}", id);
+        return removed.get(0);
+    }
+    
+    /**
+     * Planifie l'intégration de l'overlay de la génération publiée à une copie de sa base
+     * une fois qu'il dépasse {@link #OVERLAY_FOLD_THRESHOLD} clients
+     */
+    private void foldOverlayIfNeeded() {
+        if (snapshot.overlaySize() < OVERLAY_FOLD_THRESHOLD || !foldPending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            overlayFolder.execute(this::foldOverlay);
+        } catch (RejectedExecutionException e) {
+            // Service arrêté
+            foldPending.set(false);
+        }
+    }
+    
+    /**
+     * Copie la base avec l'overlay sans verrou, puis publie sous le verrou la copie avec
+     * les seules mutations arrivées pendant la copie ; abandonné si un rechargement a été publié entre-temps
+     */
+    private void foldOverlay() {
+        try {
+            ClientCacheSnapshot source = snapshot;
+            ClientCacheSnapshot folded = source.copy();
+            synchronized (writeLock) {
+                if (snapshot.hasSameBase(source)) {
+                    snapshot = snapshot.rebase(folded, source);
+                }
+            }
+        } finally {
+            foldPending.set(false);
+        }
+    }
+    
+    /**
+     * Attend la persistance des mutations journalisées jusqu'au ticket (0 : rien à attendre).
+     * Appelé hors du verrou d'écriture pour que les écrivains concurrents partagent le même fsync,
+     * et avant la publication : une mutation dont l'écriture échoue n'est jamais visible.
+     */
+    private void awaitJournal(long ticket) {
+        if (ticket > 0) {
+            journal.awaitDurable(ticket);
+        }
+    }
+    
+    /**
+     * Journalise la mutation d'un élément de lot ; retourne 0 et ajoute l'id à {@code failed}
+     * si le journal la refuse après un échec d'écriture
+     */
+    private long journalMutation(Long id, LongSupplier mutation, Set<Long> failed) {
+        try {
+            return mutation.getAsLong();
+        } catch (UncheckedIOException e) {
+            logger.error("Mutation of client {} not journaled: {}", id, e.getMessage());
+            failed.add(id);
+            return 0L;
+        }
+    }
+    
+    /**
+     * Attend la persistance des mutations d'un lot. Si l'écriture échoue, les mutations déjà
+     * persistées par un commit précédent restent publiables ; les autres reçoivent le ticket 0
+     * (non publiable) et leur id est ajouté à {@code failed}.
+     */
+    private <T> void awaitJournal(List<T> batch, Function<T, Long> id, long[] tickets, Set<Long> failed) {
+        long last = 0L;
+        for (long ticket : tickets) {
+            last = Math.max(last, ticket);
+        }
+        try {
+            awaitJournal(last);
+        } catch (UncheckedIOException e) {
+            logger.error("Mutation journal write failed for a batch of {} clients: {}", batch.size(), e.getMessage());
+            for (int i = 0; i < tickets.length; i++) {
+                if (tickets[i] > 0 && !journal.isDurable(tickets[i])) {
+                    tickets[i] = 0L;
+                    failed.add(id.apply(batch.get(i)));
+                }
+            }
+        }
+    }
+    
+    private static void throwIfFailed(Set<Long> failed) {
+        if (!failed.isEmpty()) {
+            throw new UncheckedIOException(new IOException("Mutation journal write failed for clients " + failed));
+        }
+    }
+    
+    /**
+     * Vrai si la mutation persistée sous ce ticket est à publier : sans journal toujours ;
+     * avec journal, seulement si elle a été journalisée et qu'aucune mutation plus récente
+     * du même client ne l'a remplacée (son écrivain la publiera après sa propre persistance).
+     * Appelé sous le verrou d'écriture.
+     */
+    private boolean isPublishable(Long id, long ticket) {
+        if (journal == null) {
             return true;
         }
-        return false;
+        return ticket > 0 && !journal.isSuperseded(id, ticket);
+    }
+    
+    private static void apply(ClientCacheSnapshot target, ClientMutationJournal.Mutation mutation) {
+        if (mutation.isDelete()) {
+            target.remove(mutation.id);
+        } else {
+            target.put(mutation.copyClient());
+        }
+    }
+    
+    private static String encodeCursor(long snapshotGeneration, int ordinal) {
+        ByteBuffer buffer = ByteBuffer.allocate(CURSOR_BYTES).putLong(snapshotGeneration).putInt(ordinal);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+    
+    private static ByteBuffer decodeCursor(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (bytes.length != CURSOR_BYTES) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+    
+    /**
+     * Retourne le numéro de la génération publiée
+     */
+    public long getGeneration() {
+        return snapshot.getGeneration();
     }
     
     /**
      * Retourne le nombre de clients en cache
      */
     public int getCacheSize() {
-        return clientCache.size();
+        return snapshot.size();
     }
     
     /**
      * Vérifie si le cache est vide
      */
     public boolean isEmpty() {
-        return clientCache.isEmpty();
+        return snapshot.size() == 0;
     }
-}
\ No newline at end of file
+}
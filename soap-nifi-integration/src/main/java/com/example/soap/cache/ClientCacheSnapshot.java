@@ -0,0 +1,273 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientField;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Génération du cache : le stockage par id et email et l'index de recherche, construits ensemble
+ * hors ligne puis publiés par un unique échange de référence dans {@link ClientCacheService}.
+ * Une génération issue d'un rechargement incrémental est une copie de la précédente, qui en partage
+ * les clients et les enregistrements, à laquelle le delta est appliqué avant publication.
+ * Une génération publiée n'est plus modifiée : une mutation SOAP produit une nouvelle instance qui
+ * partage le stockage et l'index (la base) et porte les clients modifiés dans un {@link ClientOverlay}.
+ */
+final class ClientCacheSnapshot {
+    
+    private final long generation;
+    
+    // Clients par id et par email
+    private final ClientStore store;
+    
+    // Ordinaux, n-grammes pour la recherche par nom et ville, index triés de la recherche multicritère
+    private final ClientSearchIndex searchIndex;
+    
+    // Mutations SOAP publiées depuis la construction de la base
+    private final ClientOverlay overlay;
+    
+    private ClientCacheSnapshot(long generation, int expectedSize, int gramSize, Set<ClientField> sortedFields,
+                                ClientStore.Factory storeFactory) {
+        this.generation = generation;
+        this.store = storeFactory.create(expectedSize);
+        this.searchIndex = new ClientSearchIndex(gramSize, sortedFields, expectedSize, store);
+        this.overlay = ClientOverlay.EMPTY;
+    }
+    
+    private ClientCacheSnapshot(long generation, ClientStore store, ClientSearchIndex searchIndex,
+                                ClientOverlay overlay) {
+        this.generation = generation;
+        this.store = store;
+        this.searchIndex = searchIndex;
+        this.overlay = overlay;
+    }
+    
+    static ClientCacheSnapshot empty(int gramSize, ClientStore.Factory storeFactory) {
+        return empty(gramSize, EnumSet.noneOf(ClientField.class), storeFactory);
+    }
+    
+    static ClientCacheSnapshot empty(int gramSize, Set<ClientField> sortedFields, ClientStore.Factory storeFactory) {
+        return new ClientCacheSnapshot(0, 16, gramSize, sortedFields, storeFactory);
+    }
+    
+    /**
+     * Construit une nouvelle génération complète à partir d'un builder
+     */
+    static ClientCacheSnapshot build(long generation, ClientCacheBuilder builder, int gramSize,
+                                     Set<ClientField> sortedFields, ClientStore.Factory storeFactory) {
+        ClientCacheSnapshot snapshot = new ClientCacheSnapshot(generation, builder.size(), gramSize, sortedFields,
+            storeFactory);
+        for (Client client : builder.getClients().values()) {
+            snapshot.put(client);
+        }
+        snapshot.store.trim();
+        snapshot.searchIndex.trim();
+        return snapshot;
+    }
+    
+    /**
+     * Copie de cette génération, overlay compris, modifiable sans effet sur elle, pour construire la suivante.
+     * Les ordinaux et le numéro de génération sont conservés : les curseurs de pagination restent valides.
+     * Faite sans verrou sur une génération publiée, dont la base n'est plus modifiée.
+     */
+    ClientCacheSnapshot copy() {
+        return copy(generation);
+    }
+    
+    /**
+     * Copie sous un autre numéro de génération, pour une génération qui expire les curseurs distribués
+     */
+    ClientCacheSnapshot copy(long nextGeneration) {
+        ClientStore copiedStore = store.copy();
+        ClientCacheSnapshot copy = new ClientCacheSnapshot(nextGeneration, copiedStore, searchIndex.copy(copiedStore),
+            ClientOverlay.EMPTY);
+        overlay.applyTo(copy);
+        return copy;
+    }
+    
+    /**
+     * Génération avec les clients ajoutés ou remplacés, sans modifier celle-ci ; les clients remplacés
+     * (null pour un ajout) sont ajoutés à {@code previous} dans l'ordre du lot
+     */
+    ClientCacheSnapshot withClients(Collection<Client> clients, List<Client> previous) {
+        Map<Long, Client> written = new HashMap<>();
+        for (Client client : clients) {
+            previous.add(written.containsKey(client.getId()) ? written.get(client.getId()) : get(client.getId()));
+            written.put(client.getId(), client);
+        }
+        return new ClientCacheSnapshot(generation, store, searchIndex, overlay.putAll(clients, this::inBase));
+    }
+    
+    /**
+     * Génération sans les clients donnés, sans modifier celle-ci ; les clients présents sont ajoutés à {@code removed}
+     */
+    ClientCacheSnapshot withoutClients(Collection<Long> ids, List<Client> removed) {
+        Set<Long> seen = new HashSet<>();
+        for (Long id : ids) {
+            Client client = seen.add(id) ? get(id) : null;
+            if (client != null) {
+                removed.add(client);
+            }
+        }
+        return new ClientCacheSnapshot(generation, store, searchIndex, overlay.removeAll(ids, this::inBase));
+    }
+    
+    /**
+     * Reporte sur {@code folded}, copie de {@code source} overlay compris, les mutations publiées depuis {@code source}
+     */
+    ClientCacheSnapshot rebase(ClientCacheSnapshot folded, ClientCacheSnapshot source) {
+        return new ClientCacheSnapshot(generation, folded.store, folded.searchIndex,
+            overlay.since(source.overlay, folded::inBase));
+    }
+    
+    /**
+     * Vrai si les deux générations partagent la même base (seuls leurs overlays diffèrent)
+     */
+    boolean hasSameBase(ClientCacheSnapshot other) {
+        return store == other.store;
+    }
+    
+    int overlaySize() {
+        return overlay.size();
+    }
+    
+    private boolean inBase(long id) {
+        return searchIndex.ordinal(id) != LongIntHashMap.MISSING;
+    }
+    
+    long getGeneration() {
+        return generation;
+    }
+    
+    ClientStore store() {
+        return store;
+    }
+    
+    ClientSearchIndex searchIndex() {
+        return searchIndex;
+    }
+    
+    Client get(Long id) {
+        return overlay.shadows(id) ? overlay.get(id) : store.get(id);
+    }
+    
+    /**
+     * Un client de la base dont l'overlay porte une autre version ne répond plus à son ancien email
+     */
+    Client getByEmail(String normalizedEmail) {
+        Client client = overlay.getByEmail(normalizedEmail);
+        if (client != null) {
+            return client;
+        }
+        client = store.getByEmail(normalizedEmail);
+        return client == null || overlay.shadows(client.getId()) ? null : client;
+    }
+    
+    int size() {
+        return store.size() + overlay.sizeDelta();
+    }
+    
+    void forEach(Consumer<Client> action) {
+        if (overlay.isEmpty()) {
+            store.forEach(action);
+            return;
+        }
+        store.forEach(client -> {
+            if (!overlay.shadows(client.getId())) {
+                action.accept(client);
+            }
+        });
+        overlay.forEach(action);
+    }
+    
+    List<Client> search(String ville, String nom) {
+        return searchIndex.search(ville, nom, overlay);
+    }
+    
+    List<Client> find(ClientQuery query) {
+        return searchIndex.find(query, overlay);
+    }
+    
+    int page(int fromOrdinal, int limit, List<Client> out) {
+        return searchIndex.page(fromOrdinal, limit, out, overlay);
+    }
+    
+    /**
+     * Ajoute ou remplace un client et maintient les index.
+     * Réservé à la construction d'une génération pas encore publiée.
+     */
+    Client put(Client client) {
+        Client previous = store.put(client);
+        searchIndex.put(client, previous);
+        return previous;
+    }
+    
+    /**
+     * Ajoute ou remplace un lot de clients ; l'index de recherche est mis à jour en une passe.
+     * Retourne les clients remplacés, null pour un ajout, dans l'ordre du lot
+     */
+    List<Client> putAll(Collection<Client> batch) {
+        return putAll(batch, false);
+    }
+    
+    private List<Client> putAll(Collection<Client> batch, boolean reuseFreedOrdinals) {
+        List<Client> added = new ArrayList<>(batch.size());
+        List<Client> previous = new ArrayList<>(batch.size());
+        for (Client client : batch) {
+            added.add(client);
+            previous.add(store.put(client));
+        }
+        searchIndex.putAll(added, previous, reuseFreedOrdinals);
+        return previous;
+    }
+    
+    /**
+     * Applique un delta de rechargement. Les suppressions passent d'abord, et les insertions
+     * réutilisent les ordinaux libérés plutôt que d'allonger les tableaux de l'index.
+     * Réservé à une copie publiée sous un nouveau numéro de génération : les curseurs émis avant
+     * expirent, aucun ne peut donc désigner un ordinal réutilisé.
+     */
+    void applyDelta(ClientDelta delta) {
+        removeAll(delta.getDeletes());
+        putAll(delta.getInserts(), true);
+        putAll(delta.getUpdates(), false);
+    }
+    
+    /**
+     * Retire un lot de clients et retourne ceux qui étaient présents
+     */
+    List<Client> removeAll(Collection<Long> ids) {
+        List<Client> removed = new ArrayList<>();
+        for (Long id : ids) {
+            Client client = store.remove(id);
+            if (client != null) {
+                removed.add(client);
+            }
+        }
+        searchIndex.removeAll(removed);
+        return removed;
+    }
+    
+    /**
+     * Retire un client et ses entrées d'index
+     */
+    Client remove(Long id) {
+        Client removed = store.remove(id);
+        if (removed != null) {
+            searchIndex.remove(removed);
+        }
+        return removed;
+    }
+    
+    static String normalizeEmail(String email) {
+        return email.toLowerCase();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Différence entre le cache publié et un nouvel export NiFi : insertions, mises à jour et suppressions.
+ */
+public class ClientDelta {
+    
+    private final List<Client> inserts = new ArrayList<>();
+    private final List<Client> updates = new ArrayList<>();
+    private final List<Long> deletes = new ArrayList<>();
+    private int unchanged;
+    private boolean fullReload;
+    
+    void insert(Client client) {
+        inserts.add(client);
+    }
+    
+    void update(Client client) {
+        updates.add(client);
+    }
+    
+    void delete(Long id) {
+        deletes.add(id);
+    }
+    
+    void unchanged() {
+        unchanged++;
+    }
+    
+    void markFullReload() {
+        this.fullReload = true;
+    }
+    
+    List<Client> getInserts() {
+        return inserts;
+    }
+    
+    List<Client> getUpdates() {
+        return updates;
+    }
+    
+    List<Long> getDeletes() {
+        return deletes;
+    }
+    
+    public int getInsertCount() {
+        return inserts.size();
+    }
+    
+    public int getUpdateCount() {
+        return updates.size();
+    }
+    
+    public int getDeleteCount() {
+        return deletes.size();
+    }
+    
+    public int getUnchangedCount() {
+        return unchanged;
+    }
+    
+    public int getChangeCount() {
+        return inserts.size() + updates.size() + deletes.size();
+    }
+    
+    /**
+     * Indique si le delta a été abandonné au profit d'un rechargement complet
+     */
+    public boolean isFullReload() {
+        return fullReload;
+    }
+    
+    @Override
+    public String toString() {
+        return "ClientDelta{" +
+                "inserts=" + inserts.size() +
+                ", updates=" + updates.size() +
+                ", deletes=" + deletes.size() +
+                ", unchanged=" + unchanged +
+                ", fullReload=" + fullReload +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.Map;
+
+/**
+ * Calcule le delta entre deux ensembles de clients à l'aide d'une empreinte de contenu par id.
+ * L'empreinte des clients publiés est celle enregistrée par l'index à leur écriture :
+ * seuls les clients entrants sont hachés.
+ */
+final class ClientDeltaEngine {
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private ClientDeltaEngine() {
+    }
+    
+    /**
+     * Compare les clients courants aux clients entrants ; un client est considéré
+     * inchangé lorsque son empreinte de contenu est identique
+     */
+    static ClientDelta diff(ClientSearchIndex current, Map<Long, Client> incoming) {
+        ClientDelta delta = new ClientDelta();
+        
+        for (Client client : incoming.values()) {
+            int ordinal = current.ordinal(client.getId());
+            if (ordinal == LongIntHashMap.MISSING) {
+                delta.insert(client);
+            } else if (current.contentHash(ordinal) != contentHash(client)) {
+                delta.update(client);
+            } else {
+                delta.unchanged();
+            }
+        }
+        
+        current.forEachId(id -> {
+            if (!incoming.containsKey(id)) {
+                delta.delete(id);
+            }
+        });
+        return delta;
+    }
+    
+    /**
+     * Empreinte FNV-1a 64 bits de tous les champs d'un client, calculée sans allocation
+     */
+    static long contentHash(Client client) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, client.getId() == null ? 0L : client.getId());
+        hash = mix(hash, client.getNom());
+        hash = mix(hash, client.getPrenom());
+        hash = mix(hash, client.getEmail());
+        hash = mix(hash, client.getTelephone());
+        hash = mix(hash, client.getAdresse());
+        hash = mix(hash, client.getVille());
+        hash = mix(hash, client.getCodePostal());
+        return hash;
+    }
+    
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            // Distingue null de la chaîne vide
+            hash ^= 0xff;
+            return hash * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        // Séparateur de champ
+        hash ^= 0xfe;
+        return hash * FNV_PRIME;
+    }
+}
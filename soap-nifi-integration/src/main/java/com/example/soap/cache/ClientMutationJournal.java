@@ -0,0 +1,606 @@
+package com.example.soap.cache;
+
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.model.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal des mutations SOAP (ajouts, mises à jour, suppressions), écrit en ajout seul.
+ * Chaque enregistrement est préfixé par sa longueur et son CRC32C ; un enregistrement tronqué
+ * par un arrêt brutal est ignoré et retiré à l'ouverture.
+ *
+ * Les écrivains ajoutent leurs enregistrements à une file puis attendent leur persistance :
+ * un thread unique écrit toute la file d'un coup et la synchronise sur disque (group commit),
+ * si bien qu'un fsync couvre toutes les mutations arrivées pendant le précédent. Seules les
+ * mutations persistées sont réappliquées sur une génération : les autres sont publiées par leur
+ * écrivain une fois persistées.
+ *
+ * La dernière mutation de chaque client reste en mémoire pour être réappliquée sur chaque
+ * génération chargée depuis NiFi ; elle est oubliée, et le journal compacté, une fois que
+ * l'export NiFi contient le même état.
+ */
+final class ClientMutationJournal {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClientMutationJournal.class);
+    
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int FRAME_HEADER_BYTES = Integer.BYTES * 2;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    
+    private final Path path;
+    private final SoapMetricsService metricsService;
+    
+    // Écriture du fichier : thread de commit et compaction
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private FileChannel channel;
+    private long fileBytes;
+    // Dernier numéro couvert par une compaction : un lot pris avant elle n'est plus à écrire
+    private long compactedSeq;
+    
+    // État protégé par le moniteur du journal
+    private final Map<Long, Mutation> latestById = new LinkedHashMap<>();
+    private List<Mutation> queue = new ArrayList<>();
+    private long lastSeq;
+    private long durableSeq;
+    // Première erreur d'écriture : le journal refuse ensuite toute mutation jusqu'au redémarrage
+    private IOException failure;
+    private boolean closed;
+    
+    private final Thread committer;
+    
+    private ClientMutationJournal(Path path, SoapMetricsService metricsService) {
+        this.path = path;
+        this.metricsService = metricsService;
+        this.committer = new Thread(this::commitLoop, "cache-journal");
+        this.committer.setDaemon(true);
+    }
+    
+    /**
+     * Ouvre le journal, relit ses enregistrements valides et démarre le thread de commit
+     */
+    static ClientMutationJournal open(Path path, SoapMetricsService metricsService) throws IOException {
+        ClientMutationJournal journal = new ClientMutationJournal(path, metricsService);
+        journal.replay();
+        journal.committer.start();
+        metricsService.registerGauge("soap_journal_pending_mutations",
+            "Client mutations kept in the journal until a NiFi export contains them", journal,
+            ClientMutationJournal::size);
+        metricsService.registerGauge("soap_journal_bytes", "Size of the client mutation journal file", journal,
+            j -> j.fileBytes);
+        return journal;
+    }
+    
+    private void replay() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        long validBytes = 0;
+        int records = 0;
+        if (size > 0) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32C checksum = new CRC32C();
+            while (buffer.remaining() >= FRAME_HEADER_BYTES) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice().limit(length);
+                checksum.reset();
+                checksum.update(payload.duplicate());
+                if ((int) checksum.getValue() != crc) {
+                    break;
+                }
+                byte[] record = new byte[FRAME_HEADER_BYTES + length];
+                ByteBuffer.wrap(record).putInt(length).putInt(crc).put(payload);
+                Mutation mutation = decode(record);
+                latestById.put(mutation.id, mutation);
+                lastSeq = Math.max(lastSeq, mutation.seq);
+                buffer.position(buffer.position() + length);
+                validBytes = buffer.position();
+                records++;
+            }
+        }
+        durableSeq = lastSeq;
+        if (validBytes < size) {
+            logger.warn("Mutation journal {}: dropping {} bytes of incomplete or corrupt records",
+                path, size - validBytes);
+            channel.truncate(validBytes);
+            channel.force(true);
+        }
+        channel.position(validBytes);
+        fileBytes = validBytes;
+        if (records > 0) {
+            logger.info("Mutation journal {}: replayed {} records, {} clients with pending mutations",
+                path, records, latestById.size());
+        }
+        if (records > latestById.size()) {
+            // Même protocole que les compactions suivantes, bien que le thread de commit ne tourne pas encore
+            compact();
+        }
+    }
+    
+    /**
+     * Ajoute l'état d'un client à la file du prochain commit ; retourne le ticket à attendre
+     */
+    synchronized long put(Client client) {
+        return enqueue(PUT, client.getId(), copy(client));
+    }
+    
+    synchronized long delete(Long id) {
+        return enqueue(DELETE, id, null);
+    }
+    
+    private long enqueue(byte type, Long id, Client client) {
+        if (closed) {
+            throw new IllegalStateException("Mutation journal is closed");
+        }
+        if (failure != null) {
+            // Un enregistrement a pu être écrit partiellement : la suite du fichier ne serait pas relue
+            throw new UncheckedIOException("Mutation journal unavailable after a write failure", failure);
+        }
+        Mutation mutation = new Mutation(++lastSeq, type, id, client, System.nanoTime());
+        // L'état précédent reste la version persistée du client tant que la mutation ne l'est pas
+        mutation.previous = latestById.remove(id);
+        latestById.put(id, mutation);
+        queue.add(mutation);
+        if (queue.size() == 1) {
+            notifyAll();
+        }
+        return mutation.seq;
+    }
+    
+    /**
+     * Vrai si une mutation plus récente du client a suivi celle du ticket : c'est à son écrivain
+     * de la publier. Une mutation oubliée car absorbée par un export NiFi n'est pas remplacée.
+     */
+    synchronized boolean isSuperseded(Long id, long ticket) {
+        Mutation mutation = latestById.get(id);
+        return mutation != null && mutation.seq > ticket;
+    }
+    
+    /**
+     * Vrai si la mutation du ticket est écrite et synchronisée sur disque, même après un échec ultérieur
+     */
+    synchronized boolean isDurable(long ticket) {
+        return ticket <= durableSeq;
+    }
+    
+    /**
+     * Attend que le ticket soit écrit et synchronisé sur disque
+     */
+    void awaitDurable(long ticket) {
+        synchronized (this) {
+            boolean interrupted = false;
+            while (durableSeq < ticket && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durableSeq < ticket) {
+                throw new UncheckedIOException("Mutation journal write failed", failure);
+            }
+        }
+    }
+    
+    private void commitLoop() {
+        while (true) {
+            List<Mutation> batch;
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch = queue;
+                queue = new ArrayList<>();
+                if (failure != null) {
+                    notifyAll();
+                    continue;
+                }
+            }
+            
+            IOException error = null;
+            long syncStart = System.nanoTime();
+            fileLock.lock();
+            try {
+                // Une compaction faite depuis la prise du lot contient déjà l'état qu'il décrit
+                if (compactedSeq < batch.get(batch.size() - 1).seq) {
+                    fileBytes += write(channel, batch);
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                fileLock.unlock();
+            }
+            long now = System.nanoTime();
+            
+            synchronized (this) {
+                if (error != null) {
+                    logger.error("Failed to write mutation journal {}: {}", path, error.getMessage(), error);
+                    failure = error;
+                } else {
+                    durableSeq = Math.max(durableSeq, batch.get(batch.size() - 1).seq);
+                    forgetPrevious(batch);
+                }
+                notifyAll();
+            }
+            if (error == null) {
+                metricsService.recordJournalBatch(batch.size(), now - syncStart);
+                for (Mutation mutation : batch) {
+                    metricsService.recordJournalCommit(now - mutation.enqueuedNanos);
+                }
+            }
+        }
+    }
+    
+    private static long write(FileChannel target, List<Mutation> mutations) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[mutations.size()];
+        long total = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(mutations.get(i).record);
+            total += buffers[i].remaining();
+        }
+        long written = 0;
+        while (written < total) {
+            written += target.write(buffers);
+        }
+        return total;
+    }
+    
+    /**
+     * Réapplique les mutations persistées sur les clients d'une nouvelle génération avant sa construction.
+     * Pour un export NiFi ({@code fromSource}), les mutations déjà contenues dans l'export sont
+     * oubliées et le journal est compacté ; retourne le numéro de persistance pris en compte,
+     * à passer à {@link #forEachSince} lors de la publication.
+     */
+    long applyTo(ClientCacheBuilder builder, boolean fromSource) {
+        long[] appliedSeq = new long[1];
+        if (absorb(builder, fromSource, appliedSeq) > 0) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // Le journal non compacté reste valide : ses mutations absorbées seront réabsorbées
+                logger.error("Failed to compact mutation journal {}: {}", path, e.getMessage(), e);
+            }
+        }
+        return appliedSeq[0];
+    }
+    
+    /**
+     * Applique les mutations persistées au builder et oublie celles que l'export contient déjà ;
+     * retourne le nombre de mutations oubliées
+     */
+    private synchronized int absorb(ClientCacheBuilder builder, boolean fromSource, long[] appliedSeqOut) {
+        long appliedSeq = durableSeq;
+        appliedSeqOut[0] = appliedSeq;
+        Map<Long, Client> clients = builder.getClients();
+        int absorbed = 0;
+        Iterator<Mutation> iterator = latestById.values().iterator();
+        while (iterator.hasNext()) {
+            Mutation latest = iterator.next();
+            Mutation mutation = latest.durable(appliedSeq);
+            if (mutation == null) {
+                continue;
+            }
+            Client source = clients.get(mutation.id);
+            if (fromSource && mutation.isAbsorbedBy(source)) {
+                // Une mutation plus récente, pas encore persistée, reste en attente
+                if (mutation == latest) {
+                    iterator.remove();
+                    absorbed++;
+                }
+            } else if (mutation.type == DELETE) {
+                clients.remove(mutation.id);
+            } else {
+                clients.put(mutation.id, copy(mutation.client));
+            }
+        }
+        if (absorbed > 0) {
+            logger.info("Mutation journal: {} mutations absorbed by the NiFi export, {} still pending",
+                absorbed, latestById.size());
+        }
+        return absorbed;
+    }
+    
+    /**
+     * Applique les mutations persistées après {@code seq} à une génération construite entre-temps
+     */
+    synchronized void forEachSince(long seq, Consumer<Mutation> action) {
+        for (Mutation latest : latestById.values()) {
+            Mutation mutation = latest.durable(durableSeq);
+            if (mutation != null && mutation.seq > seq) {
+                action.accept(mutation);
+            }
+        }
+    }
+    
+    /**
+     * Applique toutes les mutations à une génération, sans tenir compte de leur absorption
+     */
+    synchronized void forEach(Consumer<Mutation> action) {
+        latestById.values().forEach(action);
+    }
+    
+    synchronized int size() {
+        return latestById.size();
+    }
+    
+    /**
+     * Réécrit le journal avec la dernière mutation de chaque client, dans un fichier temporaire
+     * renommé atomiquement. Le verrou du fichier est pris d'abord : un lot déjà pris par le thread
+     * de commit l'attend puis n'est pas écrit, la compaction le couvrant. Sans cela, une mutation
+     * oubliée car absorbée par l'export serait réécrite après la compaction et rejouée au redémarrage.
+     * Le moniteur du journal n'est tenu que pour relever l'état à écrire et vider la file du prochain
+     * commit, puis pour publier leur persistance : l'écriture, la synchronisation et le renommage
+     * du fichier compacté ne bloquent ni put, ni delete, ni awaitDurable.
+     */
+    private void compact() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        List<Mutation> mutations;
+        List<Mutation> drained;
+        long coveredSeq;
+        fileLock.lock();
+        try {
+            synchronized (this) {
+                mutations = new ArrayList<>(latestById.values());
+                drained = queue;
+                queue = new ArrayList<>();
+                coveredSeq = lastSeq;
+            }
+            try {
+                try (FileChannel compacted = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    write(compacted, mutations);
+                    compacted.force(true);
+                } catch (IOException e) {
+                    Files.deleteIfExists(temp);
+                    throw e;
+                }
+                // Le fichier courant est fermé avant d'être remplacé, puis rouvert en ajout
+                channel.close();
+                try {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    fileBytes = channel.size();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    // Le journal non compacté reste valide : la file vidée repasse devant les mutations
+                    // arrivées depuis, avant que le thread de commit puisse reprendre le fichier
+                    drained.addAll(queue);
+                    queue = drained;
+                    notifyAll();
+                }
+                throw e;
+            }
+            compactedSeq = coveredSeq;
+        } finally {
+            fileLock.unlock();
+        }
+        synchronized (this) {
+            durableSeq = Math.max(durableSeq, coveredSeq);
+            forgetPrevious(drained);
+            notifyAll();
+        }
+        logger.info("Mutation journal {} compacted to {} records ({} bytes)", path, mutations.size(), fileBytes);
+    }
+    
+    /**
+     * Écrit les mutations en file puis arrête le thread de commit
+     */
+    void close() throws InterruptedException, IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        committer.join(30_000);
+        fileLock.lock();
+        try {
+            channel.close();
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    
+    private static void forgetPrevious(List<Mutation> mutations) {
+        for (Mutation mutation : mutations) {
+            mutation.previous = null;
+        }
+    }
+    
+    private static Client copy(Client client) {
+        Client copy = new Client();
+        copy.setId(client.getId());
+        copy.setNom(client.getNom());
+        copy.setPrenom(client.getPrenom());
+        copy.setEmail(client.getEmail());
+        copy.setTelephone(client.getTelephone());
+        copy.setAdresse(client.getAdresse());
+        copy.setVille(client.getVille());
+        copy.setCodePostal(client.getCodePostal());
+        return copy;
+    }
+    
+    /**
+     * Enregistrement : longueur, CRC32C, puis numéro de séquence, type, id et, pour un ajout,
+     * les champs texte préfixés par leur longueur UTF-8 (-1 pour null)
+     */
+    private static byte[] encode(long seq, byte type, Long id, Client client) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeLong(seq);
+            out.writeByte(type);
+            out.writeLong(id);
+            if (type == PUT) {
+                writeString(out, client.getNom());
+                writeString(out, client.getPrenom());
+                writeString(out, client.getEmail());
+                writeString(out, client.getTelephone());
+                writeString(out, client.getAdresse());
+                writeString(out, client.getVille());
+                writeString(out, client.getCodePostal());
+            }
+            out.flush();
+            byte[] record = bytes.toByteArray();
+            int length = record.length - FRAME_HEADER_BYTES;
+            CRC32C checksum = new CRC32C();
+            checksum.update(record, FRAME_HEADER_BYTES, length);
+            ByteBuffer.wrap(record).putInt(length).putInt((int) checksum.getValue());
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static Mutation decode(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record, FRAME_HEADER_BYTES, record.length - FRAME_HEADER_BYTES);
+        long seq = buffer.getLong();
+        byte type = buffer.get();
+        long id = buffer.getLong();
+        if (type == DELETE) {
+            return new Mutation(seq, type, id, null, record);
+        }
+        if (type != PUT) {
+            throw new IOException("Unknown journal record type: " + type);
+        }
+        Client client = new Client();
+        client.setId(id);
+        client.setNom(readString(buffer));
+        client.setPrenom(readString(buffer));
+        client.setEmail(readString(buffer));
+        client.setTelephone(readString(buffer));
+        client.setAdresse(readString(buffer));
+        client.setVille(readString(buffer));
+        client.setCodePostal(readString(buffer));
+        return new Mutation(seq, type, id, client, record);
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IOException("Journal string length out of bounds: " + length);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+            StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    /**
+     * Dernière mutation connue d'un client ; {@code client} est null pour une suppression
+     */
+    static final class Mutation {
+        
+        final long seq;
+        final byte type;
+        final Long id;
+        final Client client;
+        final byte[] record;
+        final long enqueuedNanos;
+        // Mutation remplacée, conservée tant que celle-ci n'est pas persistée (moniteur du journal)
+        private Mutation previous;
+        
+        Mutation(long seq, byte type, Long id, Client client, long enqueuedNanos) {
+            this(seq, type, id, client, encode(seq, type, id, client), enqueuedNanos);
+        }
+        
+        private Mutation(long seq, byte type, Long id, Client client, byte[] record) {
+            this(seq, type, id, client, record, 0L);
+        }
+        
+        private Mutation(long seq, byte type, Long id, Client client, byte[] record, long enqueuedNanos) {
+            this.seq = seq;
+            this.type = type;
+            this.id = id;
+            this.client = client;
+            this.record = record;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+        
+        /**
+         * Dernière version persistée jusqu'à {@code durableSeq}, ou null si le client n'en a pas
+         */
+        private Mutation durable(long durableSeq) {
+            Mutation mutation = this;
+            while (mutation != null && mutation.seq > durableSeq) {
+                mutation = mutation.previous;
+            }
+            return mutation;
+        }
+        
+        boolean isDelete() {
+            return type == DELETE;
+        }
+        
+        /**
+         * Copie du client à publier, pour que la génération ne partage pas l'instance du journal
+         */
+        Client copyClient() {
+            return copy(client);
+        }
+        
+        /**
+         * Vrai si l'export NiFi contient déjà l'effet de cette mutation
+         */
+        boolean isAbsorbedBy(Client source) {
+            if (type == DELETE) {
+                return source == null;
+            }
+            return source != null && ClientDeltaEngine.contentHash(source) == ClientDeltaEngine.contentHash(client);
+        }
+    }
+}
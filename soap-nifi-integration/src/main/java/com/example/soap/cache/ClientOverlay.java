@@ -0,0 +1,206 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Mutations SOAP portées par une génération publiée sans modifier sa base (stockage et index) :
+ * clients ajoutés, remplacés ou supprimés depuis la construction de la base.
+ * Immuable : chaque mutation produit un nouvel overlay, publié avec la génération par un échange
+ * de référence. Un client absent de la base reçoit une position, dans l'ordre de son premier ajout,
+ * qui prolonge les ordinaux de la base pour la pagination.
+ */
+final class ClientOverlay {
+    
+    static final ClientOverlay EMPTY = new ClientOverlay(new LinkedHashMap<>());
+    
+    // Dernier état de chaque client modifié, dans l'ordre de première modification
+    private final LinkedHashMap<Long, Entry> entries;
+    
+    // Clients présents de l'overlay par email en minuscules
+    private final Map<String, Client> byEmail;
+    
+    // Ids absents de la base, par position
+    private final long[] added;
+    
+    // Différence entre le nombre de clients de la génération et celui de sa base
+    private final int sizeDelta;
+    
+    private ClientOverlay(LinkedHashMap<Long, Entry> entries) {
+        this.entries = entries;
+        this.byEmail = new HashMap<>();
+        List<Long> addedIds = new ArrayList<>();
+        int delta = 0;
+        for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+            Client client = entry.getValue().client;
+            if (client != null) {
+                delta++;
+                if (client.getEmail() != null) {
+                    byEmail.put(ClientCacheSnapshot.normalizeEmail(client.getEmail()), client);
+                }
+            }
+            if (entry.getValue().position < 0) {
+                delta--;
+            } else {
+                addedIds.add(entry.getKey());
+            }
+        }
+        this.added = new long[addedIds.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = addedIds.get(i);
+        }
+        this.sizeDelta = delta;
+    }
+    
+    int size() {
+        return entries.size();
+    }
+    
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+    
+    /**
+     * Vrai si l'overlay porte le dernier état du client : la base ne fait alors plus foi pour lui
+     */
+    boolean shadows(long id) {
+        return entries.containsKey(id);
+    }
+    
+    /**
+     * Client de l'overlay, ou null s'il y a été supprimé (ou n'y figure pas)
+     */
+    Client get(long id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.client : null;
+    }
+    
+    Client getByEmail(String normalizedEmail) {
+        return byEmail.get(normalizedEmail);
+    }
+    
+    int sizeDelta() {
+        return sizeDelta;
+    }
+    
+    /**
+     * Nombre de positions attribuées aux clients absents de la base, supprimés compris
+     */
+    int addedCount() {
+        return added.length;
+    }
+    
+    /**
+     * Client ajouté à cette position, ou null s'il a été supprimé depuis
+     */
+    Client added(int position) {
+        return entries.get(added[position]).client;
+    }
+    
+    /**
+     * Parcourt les clients présents de l'overlay
+     */
+    void forEach(Consumer<Client> action) {
+        for (Entry entry : entries.values()) {
+            if (entry.client != null) {
+                action.accept(entry.client);
+            }
+        }
+    }
+    
+    /**
+     * Overlay avec les clients ajoutés ou remplacés ; {@code inBase} indique si la base contient l'id
+     */
+    ClientOverlay putAll(Collection<Client> clients, LongPredicate inBase) {
+        if (clients.isEmpty()) {
+            return this;
+        }
+        LinkedHashMap<Long, Entry> next = new LinkedHashMap<>(entries);
+        int positions = added.length;
+        for (Client client : clients) {
+            Entry existing = next.get(client.getId());
+            int position = existing != null ? existing.position : inBase.test(client.getId()) ? -1 : positions++;
+            next.put(client.getId(), new Entry(client, position));
+        }
+        return new ClientOverlay(next);
+    }
+    
+    /**
+     * Overlay avec les clients supprimés ; un id inconnu de la base et de l'overlay est ignoré
+     */
+    ClientOverlay removeAll(Collection<Long> ids, LongPredicate inBase) {
+        LinkedHashMap<Long, Entry> next = null;
+        for (Long id : ids) {
+            Entry existing = next != null ? next.get(id) : entries.get(id);
+            if (existing == null && !inBase.test(id)) {
+                continue;
+            }
+            if (next == null) {
+                next = new LinkedHashMap<>(entries);
+            }
+            // Un client ajouté puis supprimé garde sa position
+            next.put(id, new Entry(null, existing != null ? existing.position : -1));
+        }
+        return next == null ? this : new ClientOverlay(next);
+    }
+    
+    /**
+     * Applique l'overlay à une copie modifiable de la base, dans l'ordre des positions :
+     * chaque client ajouté y reçoit l'ordinal correspondant à sa position, supprimé compris
+     */
+    void applyTo(ClientCacheSnapshot target) {
+        for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+            Client client = entry.getValue().client;
+            if (client != null) {
+                target.put(client);
+            } else {
+                if (entry.getValue().position >= 0) {
+                    // Réserve l'ordinal de la position : les curseurs déjà distribués restent justes
+                    Client reserved = new Client();
+                    reserved.setId(entry.getKey());
+                    target.put(reserved);
+                }
+                target.remove(entry.getKey());
+            }
+        }
+    }
+    
+    /**
+     * Overlay des mutations arrivées depuis {@code folded}, appliqué à la base issue de {@code folded} :
+     * les entrées inchangées depuis y figurent déjà, {@code inBase} décrit la nouvelle base
+     */
+    ClientOverlay since(ClientOverlay folded, LongPredicate inBase) {
+        LinkedHashMap<Long, Entry> next = new LinkedHashMap<>();
+        int count = 0;
+        for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+            if (folded.entries.get(entry.getKey()) == entry.getValue()) {
+                continue;
+            }
+            int position = inBase.test(entry.getKey()) ? -1 : count++;
+            next.put(entry.getKey(), new Entry(entry.getValue().client, position));
+        }
+        return next.isEmpty() ? EMPTY : new ClientOverlay(next);
+    }
+    
+    /**
+     * Dernier état d'un client : le client, ou null pour une suppression ; position -1 si la base le contient
+     */
+    private static final class Entry {
+        
+        final Client client;
+        final int position;
+        
+        Entry(Client client, int position) {
+            this.client = client;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientCriterion;
+import com.example.soap.model.ClientField;
+import com.example.soap.model.ClientSearchCriteria;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Requête multicritère validée et normalisée : critères en minuscules, ordre des résultats et limite.
+ * Chaque client candidat est revérifié sur tous les critères, les index ne servant qu'à réduire les candidats.
+ */
+final class ClientQuery {
+    
+    /**
+     * Critère normalisé
+     */
+    static final class Term {
+        
+        final ClientField field;
+        final ClientCriterion.Operator operator;
+        final String value;
+        final String from;
+        final String to;
+        
+        Term(ClientCriterion criterion) {
+            if (criterion == null || criterion.getField() == null || criterion.getOperator() == null) {
+                throw new IllegalArgumentException("A search criterion needs a field and an operator");
+            }
+            this.field = criterion.getField();
+            this.operator = criterion.getOperator();
+            this.value = criterion.getValue() != null ? normalize(criterion.getValue()) : null;
+            this.from = criterion.getFrom() != null ? normalize(criterion.getFrom()) : null;
+            this.to = criterion.getTo() != null ? normalize(criterion.getTo()) : null;
+            if (operator == ClientCriterion.Operator.RANGE ? from == null && to == null : value == null) {
+                throw new IllegalArgumentException("Incomplete search criterion: " + criterion);
+            }
+        }
+        
+        boolean matches(Client client) {
+            String fieldValue = field.read(client);
+            if (fieldValue == null) {
+                return false;
+            }
+            String normalized = normalize(fieldValue);
+            switch (operator) {
+                case EQUALS:
+                    return normalized.equals(value);
+                case PREFIX:
+                    return normalized.startsWith(value);
+                default:
+                    return (from == null || normalized.compareTo(from) >= 0)
+                        && (to == null || normalized.compareTo(to) <= 0);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return operator == ClientCriterion.Operator.RANGE
+                ? field + " in [" + from + ", " + to + "]"
+                : field + " " + operator + " " + value;
+        }
+    }
+    
+    private final List<Term> terms;
+    private final Comparator<Client> order;
+    private final int limit;
+    
+    ClientQuery(ClientSearchCriteria criteria, int maxResults) {
+        List<Term> parsed = new ArrayList<>();
+        if (criteria.getCriteria() != null) {
+            for (ClientCriterion criterion : criteria.getCriteria()) {
+                parsed.add(new Term(criterion));
+            }
+        }
+        this.terms = Collections.unmodifiableList(parsed);
+        this.order = order(criteria);
+        this.limit = criteria.getLimit() <= 0 ? maxResults : Math.min(criteria.getLimit(), maxResults);
+    }
+    
+    List<Term> getTerms() {
+        return terms;
+    }
+    
+    Comparator<Client> getOrder() {
+        return order;
+    }
+    
+    int getLimit() {
+        return limit;
+    }
+    
+    boolean matches(Client client) {
+        for (Term term : terms) {
+            if (!term.matches(client)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Ordre des résultats : clé de tri normalisée (valeurs absentes en dernier), puis id croissant
+     */
+    static Comparator<Client> order(ClientSearchCriteria criteria) {
+        Comparator<Client> byId = Comparator.comparing(Client::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+        ClientField sortBy = criteria.getSortBy();
+        if (sortBy == null) {
+            return criteria.isDescending() ? byId.reversed() : byId;
+        }
+        Comparator<String> values = criteria.isDescending()
+            ? Comparator.<String>naturalOrder().reversed()
+            : Comparator.naturalOrder();
+        Comparator<Client> byField = Comparator.comparing(
+            client -> sortKey(sortBy.read(client)), Comparator.nullsLast(values));
+        return byField.thenComparing(byId);
+    }
+    
+    private static String sortKey(String value) {
+        return value != null ? normalize(value) : null;
+    }
+    
+    /**
+     * Normalisation commune aux index triés et aux critères
+     */
+    static String normalize(String value) {
+        return value.toLowerCase();
+    }
+}
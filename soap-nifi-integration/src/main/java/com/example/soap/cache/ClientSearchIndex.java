@@ -0,0 +1,494 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Index de recherche d'une génération du cache : attribue un ordinal dense à chaque client
+ * et maintient les index de n-grammes sur {@code nom} et {@code ville}, ainsi que les index triés
+ * des champs configurés pour la recherche multicritère.
+ * Seuls les ids et les empreintes de contenu sont conservés par ordinal, les clients sont relus dans le stockage.
+ * Les recherches prennent le verrou de lecture, les mises à jour le verrou d'écriture.
+ * Les recherches reçoivent l'overlay de la génération publiée : les clients qu'il porte remplacent
+ * ceux de l'index, qui n'est plus modifié après publication.
+ */
+final class ClientSearchIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClientSearchIndex.class);
+    
+    // Un critère n'est intersecté que s'il a au plus ce facteur de fois plus d'ordinaux que le critère directeur ;
+    // au-delà, il est vérifié sur chaque candidat plutôt que matérialisé
+    private static final int INTERSECT_RATIO = 8;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final LongIntHashMap ordinalById;
+    private final NGramIndex nomIndex;
+    private final NGramIndex villeIndex;
+    private final Map<ClientField, SortedFieldIndex> sortedIndexes = new EnumMap<>(ClientField.class);
+    private final ClientStore store;
+    
+    // Id par ordinal ; un ordinal est vivant tant que ordinalById pointe vers lui
+    private long[] ids;
+    private int nextOrdinal;
+    
+    // Ordinaux libérés par les suppressions, réutilisés par les insertions d'un delta
+    private int[] freeOrdinals = new int[16];
+    private int freeCount;
+    
+    // Empreinte de contenu par ordinal, calculée à l'écriture pour comparer les rechargements sans relire les clients
+    private long[] hashes;
+    
+    ClientSearchIndex(int gramSize, Set<ClientField> sortedFields, int expectedSize, ClientStore store) {
+        this.ordinalById = new LongIntHashMap(expectedSize);
+        this.nomIndex = new NGramIndex(gramSize);
+        this.villeIndex = new NGramIndex(gramSize);
+        for (ClientField field : sortedFields) {
+            sortedIndexes.put(field, new SortedFieldIndex());
+        }
+        this.store = store;
+        this.ids = new long[Math.max(16, expectedSize)];
+        this.hashes = new long[ids.length];
+    }
+    
+    private ClientSearchIndex(ClientSearchIndex source, ClientStore store) {
+        this.ordinalById = source.ordinalById.copy();
+        this.nomIndex = source.nomIndex.copy();
+        this.villeIndex = source.villeIndex.copy();
+        for (Map.Entry<ClientField, SortedFieldIndex> index : source.sortedIndexes.entrySet()) {
+            sortedIndexes.put(index.getKey(), index.getValue().copy());
+        }
+        this.store = store;
+        this.ids = source.ids.clone();
+        this.hashes = source.hashes.clone();
+        this.nextOrdinal = source.nextOrdinal;
+        this.freeOrdinals = Arrays.copyOf(source.freeOrdinals, Math.max(16, source.freeCount));
+        this.freeCount = source.freeCount;
+    }
+    
+    /**
+     * Copie de l'index pour la génération suivante, sur la copie du stockage ; les ordinaux sont conservés.
+     * Prend le verrou d'écriture : les listes de postings changent de propriétaire.
+     */
+    ClientSearchIndex copy(ClientStore copiedStore) {
+        lock.writeLock().lock();
+        try {
+            return new ClientSearchIndex(this, copiedStore);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Indexe un client ajouté ou remplacé ; un client remplacé conserve son ordinal
+     */
+    void put(Client client, Client previous) {
+        put(client, previous, false);
+    }
+    
+    /**
+     * Avec {@code reuseFreedOrdinals}, un client ajouté reprend un ordinal libéré s'il en reste.
+     * Réservé aux deltas : ailleurs, les ordinaux ajoutés prolongent ceux de l'index, comme les
+     * positions de l'overlay et les curseurs de pagination l'attendent.
+     */
+    private void put(Client client, Client previous, boolean reuseFreedOrdinals) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalById.get(client.getId());
+            if (ordinal == LongIntHashMap.MISSING) {
+                if (reuseFreedOrdinals && freeCount > 0) {
+                    ordinal = freeOrdinals[--freeCount];
+                } else {
+                    ordinal = nextOrdinal++;
+                    if (ordinal == ids.length) {
+                        ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1));
+                        hashes = Arrays.copyOf(hashes, ids.length);
+                    }
+                }
+                ids[ordinal] = client.getId();
+                ordinalById.put(client.getId(), ordinal);
+            } else if (previous != null) {
+                nomIndex.remove(ordinal, previous.getNom());
+                villeIndex.remove(ordinal, previous.getVille());
+                removeSorted(ordinal, previous);
+            }
+            hashes[ordinal] = ClientDeltaEngine.contentHash(client);
+            nomIndex.add(ordinal, client.getNom());
+            villeIndex.add(ordinal, client.getVille());
+            for (Map.Entry<ClientField, SortedFieldIndex> index : sortedIndexes.entrySet()) {
+                index.getValue().add(ordinal, index.getKey().read(client));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Ordinal du client, ou {@link LongIntHashMap#MISSING} s'il n'est pas indexé
+     */
+    int ordinal(long id) {
+        lock.readLock().lock();
+        try {
+            return ordinalById.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Empreinte de contenu enregistrée pour l'ordinal lors de la dernière écriture du client
+     */
+    long contentHash(int ordinal) {
+        lock.readLock().lock();
+        try {
+            return hashes[ordinal];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Parcourt les ids des clients indexés, dans l'ordre des ordinaux
+     */
+    void forEachId(LongConsumer action) {
+        lock.readLock().lock();
+        try {
+            for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+                if (isLive(ordinal)) {
+                    action.accept(ids[ordinal]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Indexe un lot de clients sous une seule prise du verrou d'écriture
+     */
+    void putAll(List<Client> clients, List<Client> previous, boolean reuseFreedOrdinals) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < clients.size(); i++) {
+                put(clients.get(i), previous.get(i), reuseFreedOrdinals);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Retire un lot de clients sous une seule prise du verrou d'écriture
+     */
+    void removeAll(List<Client> removed) {
+        lock.writeLock().lock();
+        try {
+            for (Client client : removed) {
+                remove(client);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    void remove(Client removed) {
+        lock.writeLock().lock();
+        try {
+            int ordinal = ordinalById.remove(removed.getId());
+            if (ordinal != LongIntHashMap.MISSING) {
+                nomIndex.remove(ordinal, removed.getNom());
+                villeIndex.remove(ordinal, removed.getVille());
+                removeSorted(ordinal, removed);
+                if (freeCount == freeOrdinals.length) {
+                    freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+                }
+                freeOrdinals[freeCount++] = ordinal;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Termine une construction complète
+     */
+    void trim() {
+        lock.writeLock().lock();
+        try {
+            nomIndex.trim();
+            villeIndex.trim();
+            for (SortedFieldIndex index : sortedIndexes.values()) {
+                index.trim();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void removeSorted(int ordinal, Client client) {
+        for (Map.Entry<ClientField, SortedFieldIndex> index : sortedIndexes.entrySet()) {
+            index.getValue().remove(ordinal, index.getKey().read(client));
+        }
+    }
+    
+    /**
+     * Recherche multicritère. Le planificateur estime la sélectivité de chaque critère indexé,
+     * part du plus sélectif et intersecte les critères assez proches ; les autres sont vérifiés
+     * sur chaque candidat. Les {@code limit} premiers résultats sont retenus dans un tas borné,
+     * sans trier l'ensemble des correspondances.
+     */
+    List<Client> find(ClientQuery query, ClientOverlay overlay) {
+        lock.readLock().lock();
+        try {
+            int[] candidates = plan(query);
+            int limit = query.getLimit();
+            if (limit <= 0) {
+                return Collections.emptyList();
+            }
+            Comparator<Client> order = query.getOrder();
+            // Tas inversé : sa tête est le moins bon des résultats retenus
+            PriorityQueue<Client> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+            int count = candidates != null ? candidates.length : nextOrdinal;
+            for (int i = 0; i < count; i++) {
+                offer(best, limit, query, baseClient(candidates != null ? candidates[i] : i, overlay));
+            }
+            // Les clients de l'overlay ne figurent pas dans l'index : tous sont vérifiés
+            overlay.forEach(client -> offer(best, limit, query, client));
+            List<Client> result = new ArrayList<>(best);
+            result.sort(order);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private static void offer(PriorityQueue<Client> best, int limit, ClientQuery query, Client client) {
+        if (client == null || !query.matches(client)) {
+            return;
+        }
+        if (best.size() < limit) {
+            best.add(client);
+        } else if (query.getOrder().compare(client, best.peek()) < 0) {
+            best.poll();
+            best.add(client);
+        }
+    }
+    
+    /**
+     * Ordinaux candidats (triés) pour la requête, ou null pour un parcours de tous les ordinaux
+     */
+    private int[] plan(ClientQuery query) {
+        List<ClientQuery.Term> indexed = new ArrayList<>();
+        List<Integer> estimates = new ArrayList<>();
+        int cap = Integer.MAX_VALUE;
+        for (ClientQuery.Term term : query.getTerms()) {
+            SortedFieldIndex index = sortedIndexes.get(term.field);
+            if (index == null) {
+                continue;
+            }
+            int estimate = index.count(term, cap);
+            indexed.add(term);
+            estimates.add(estimate);
+            if (estimate < cap / INTERSECT_RATIO) {
+                cap = estimate * INTERSECT_RATIO;
+            }
+        }
+        if (indexed.isEmpty()) {
+            logger.debug("Query plan: full scan of {} ordinals", nextOrdinal);
+            return null;
+        }
+        
+        Integer[] byEstimate = new Integer[indexed.size()];
+        for (int i = 0; i < byEstimate.length; i++) {
+            byEstimate[i] = i;
+        }
+        Arrays.sort(byEstimate, Comparator.comparingInt(estimates::get));
+        
+        ClientQuery.Term driving = indexed.get(byEstimate[0]);
+        int[] candidates = sortedIndexes.get(driving.field).ordinals(driving);
+        List<ClientQuery.Term> intersected = new ArrayList<>();
+        for (int i = 1; i < byEstimate.length && candidates.length > 0; i++) {
+            ClientQuery.Term term = indexed.get(byEstimate[i]);
+            if (estimates.get(byEstimate[i]) <= (long) candidates.length * INTERSECT_RATIO) {
+                candidates = intersect(candidates, sortedIndexes.get(term.field).ordinals(term));
+                intersected.add(term);
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Query plan: driving {} (~{}), intersected {}, {} candidates",
+                driving, estimates.get(byEstimate[0]), intersected, candidates.length);
+        }
+        return candidates;
+    }
+    
+    /**
+     * Clients dont la ville et le nom contiennent les sous-chaînes données (insensible à la casse)
+     */
+    List<Client> search(String ville, String nom, ClientOverlay overlay) {
+        String villeQuery = normalize(ville);
+        String nomQuery = normalize(nom);
+        
+        lock.readLock().lock();
+        try {
+            int[] candidates = null;
+            if (villeQuery != null) {
+                candidates = villeIndex.candidates(villeQuery);
+            }
+            if (nomQuery != null) {
+                candidates = intersect(candidates, nomIndex.candidates(nomQuery));
+            }
+            
+            List<Client> result = new ArrayList<>();
+            if (candidates == null) {
+                // Requêtes trop courtes pour l'index : parcours des ordinaux
+                for (int ordinal = 0; ordinal < nextOrdinal; ordinal++) {
+                    addIfMatches(result, baseClient(ordinal, overlay), villeQuery, nomQuery);
+                }
+            } else {
+                for (int ordinal : candidates) {
+                    addIfMatches(result, baseClient(ordinal, overlay), villeQuery, nomQuery);
+                }
+            }
+            overlay.forEach(client -> addIfMatches(result, client, villeQuery, nomQuery));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Copie au plus {@code limit} clients à partir de l'ordinal donné et retourne
+     * l'ordinal où reprendre, ou -1 une fois la fin atteinte.
+     * Les clients ajoutés par l'overlay suivent le dernier ordinal de l'index, dans l'ordre de leur position.
+     */
+    int page(int fromOrdinal, int limit, List<Client> out, ClientOverlay overlay) {
+        lock.readLock().lock();
+        try {
+            int end = nextOrdinal + overlay.addedCount();
+            int ordinal = Math.max(0, fromOrdinal);
+            while (ordinal < end && out.size() < limit) {
+                Client client = client(ordinal++, overlay);
+                if (client != null) {
+                    out.add(client);
+                }
+            }
+            while (ordinal < end && client(ordinal, overlay) == null) {
+                ordinal++;
+            }
+            return ordinal < end ? ordinal : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private boolean isLive(int ordinal) {
+        return ordinalById.get(ids[ordinal]) == ordinal;
+    }
+    
+    /**
+     * Client vivant à cet ordinal de l'index, relu dans le stockage, ou null s'il est supprimé
+     * ou si l'overlay en porte une autre version
+     */
+    private Client baseClient(int ordinal, ClientOverlay overlay) {
+        return isLive(ordinal) && !overlay.shadows(ids[ordinal]) ? store.get(ids[ordinal]) : null;
+    }
+    
+    /**
+     * Client à cet ordinal, version de l'overlay comprise ; au-delà de l'index, client ajouté par l'overlay
+     */
+    private Client client(int ordinal, ClientOverlay overlay) {
+        if (ordinal >= nextOrdinal) {
+            return overlay.added(ordinal - nextOrdinal);
+        }
+        if (!isLive(ordinal)) {
+            return null;
+        }
+        long id = ids[ordinal];
+        return overlay.shadows(id) ? overlay.get(id) : store.get(id);
+    }
+    
+    private static void addIfMatches(List<Client> result, Client client, String villeQuery, String nomQuery) {
+        if (client != null
+                && (villeQuery == null || containsNormalized(client.getVille(), villeQuery))
+                && (nomQuery == null || containsNormalized(client.getNom(), nomQuery))) {
+            result.add(client);
+        }
+    }
+    
+    /**
+     * Intersection de deux ensembles d'ordinaux triés ; null représente « tous les ordinaux »
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    /**
+     * Recherche de sous-chaîne insensible à la casse, sans allocation
+     */
+    static boolean containsNormalized(String value, String normalizedQuery) {
+        if (value == null) {
+            return false;
+        }
+        int last = value.length() - normalizedQuery.length();
+        for (int start = 0; start <= last; start++) {
+            int i = 0;
+            while (i < normalizedQuery.length()
+                    && Character.toLowerCase(value.charAt(start + i)) == normalizedQuery.charAt(i)) {
+                i++;
+            }
+            if (i == normalizedQuery.length()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Met la requête en minuscules caractère par caractère, comme les n-grammes indexés
+     */
+    static String normalize(String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        char[] chars = new char[query.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(query.charAt(i));
+        }
+        return new String(chars);
+    }
+}
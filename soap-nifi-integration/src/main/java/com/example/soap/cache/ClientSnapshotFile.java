@@ -0,0 +1,252 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Format binaire du snapshot du cache :
+ * en-tête (magic, version, génération, date, nombre de clients), puis un enregistrement par client
+ * (id puis champs texte préfixés par leur longueur UTF-8, -1 pour null), et CRC32C final du contenu.
+ */
+final class ClientSnapshotFile {
+    
+    static final int MAGIC = 0x434C4E53;
+    static final int VERSION = 1;
+    
+    private static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES * 2 + Integer.BYTES;
+    private static final int TRAILER_BYTES = Integer.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    // Taille des fenêtres projetées à la lecture, sous la limite de 2 Go d'un MappedByteBuffer
+    private static final int WINDOW_SIZE = 1 << 30;
+    
+    private ClientSnapshotFile() {
+    }
+    
+    /**
+     * Écrit le snapshot dans un fichier temporaire puis le renomme atomiquement ;
+     * retourne la taille du fichier écrit. Les clients sont sérialisés au fil du parcours,
+     * sans copie : {@code clients} doit parcourir exactement {@code count} clients.
+     */
+    static long write(Path target, long generation, int count, Consumer<Consumer<Client>> clients) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = Channels.newOutputStream(channel);
+            CRC32C checksum = new CRC32C();
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new CheckedOutputStream(raw, checksum), BUFFER_SIZE));
+                
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(count);
+            int[] written = new int[1];
+            try {
+                clients.accept(client -> {
+                    try {
+                        writeClient(out, client);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    written[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (written[0] != count) {
+                throw new IOException("Snapshot announced " + count + " clients but " + written[0] + " were written");
+            }
+            out.flush();
+            
+            // Le checksum couvre tout ce qui précède, il est écrit hors du flux contrôlé
+            channel.write(ByteBuffer.allocate(TRAILER_BYTES).putInt(0, (int) checksum.getValue()));
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+    
+    private static void writeClient(DataOutputStream out, Client client) throws IOException {
+        out.writeLong(client.getId());
+        writeString(out, client.getNom());
+        writeString(out, client.getPrenom());
+        writeString(out, client.getEmail());
+        writeString(out, client.getTelephone());
+        writeString(out, client.getAdresse());
+        writeString(out, client.getVille());
+        writeString(out, client.getCodePostal());
+    }
+    
+    /**
+     * Projette le snapshot en mémoire, vérifie son format et son checksum, puis décode les clients
+     */
+    static ClientCacheBuilder read(Path source) throws IOException {
+        return read(source, WINDOW_SIZE);
+    }
+    
+    /**
+     * Lecture par fenêtres projetées de {@code windowSize} octets au plus : un snapshot de plus de 2 Go
+     * est relu sans repasser par le JSON
+     */
+    static ClientCacheBuilder read(Path source, int windowSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES) {
+                throw new IOException("Snapshot is truncated: " + size + " bytes");
+            }
+            long contentLength = size - TRAILER_BYTES;
+            CRC32C checksum = new CRC32C();
+            for (long start = 0; start < contentLength; start += windowSize) {
+                checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(windowSize, contentLength - start)));
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            if (channel.read(trailer, contentLength) != TRAILER_BYTES) {
+                throw new IOException("Snapshot checksum cannot be read");
+            }
+            if ((int) checksum.getValue() != trailer.getInt(0)) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            return decode(new MappedInput(channel, contentLength, windowSize));
+        }
+    }
+    
+    private static ClientCacheBuilder decode(MappedInput input) throws IOException {
+        if (input.getInt() != MAGIC) {
+            throw new IOException("Not a client cache snapshot");
+        }
+        int version = input.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        input.getLong(); // génération
+        input.getLong(); // date d'écriture
+        int count = input.getInt();
+        
+        ClientCacheBuilder builder = new ClientCacheBuilder(count);
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < count; i++) {
+            Client client = new Client();
+            client.setId(input.getLong());
+            client.setNom(readString(input, scratch));
+            client.setPrenom(readString(input, scratch));
+            client.setEmail(readString(input, scratch));
+            client.setTelephone(readString(input, scratch));
+            client.setAdresse(readString(input, scratch));
+            client.setVille(readString(input, scratch));
+            client.setCodePostal(readString(input, scratch));
+            builder.add(client);
+        }
+        return builder;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(MappedInput input, byte[] scratch) throws IOException {
+        int length = input.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > input.remaining()) {
+            throw new IOException("Snapshot string length out of bounds: " + length);
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        input.get(bytes, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Lecture séquentielle du contenu par fenêtres projetées successives ; une valeur à cheval
+     * sur deux fenêtres est relue depuis une fenêtre projetée à partir de son premier octet
+     */
+    private static final class MappedInput {
+        
+        private final FileChannel channel;
+        private final long limit;
+        private final int windowSize;
+        private MappedByteBuffer window;
+        private long windowStart;
+        
+        MappedInput(FileChannel channel, long limit, int windowSize) throws IOException {
+            this.channel = channel;
+            this.limit = limit;
+            this.windowSize = windowSize;
+            map(0);
+        }
+        
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return window.getInt();
+        }
+        
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            return window.getLong();
+        }
+        
+        void get(byte[] bytes, int length) throws IOException {
+            int done = 0;
+            while (done < length) {
+                if (!window.hasRemaining()) {
+                    map(position());
+                }
+                int count = Math.min(window.remaining(), length - done);
+                window.get(bytes, done, count);
+                done += count;
+            }
+        }
+        
+        long remaining() {
+            return limit - position();
+        }
+        
+        private long position() {
+            return windowStart + window.position();
+        }
+        
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) {
+                return;
+            }
+            if (remaining() < bytes) {
+                throw new IOException("Snapshot record overruns the content at byte " + position());
+            }
+            map(position());
+        }
+        
+        private void map(long start) throws IOException {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, limit - start));
+            windowStart = start;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Stockage des clients d'une génération du cache, par id et par email.
+ * Les écritures sont sérialisées par l'appelant ; les lectures peuvent être concurrentes.
+ */
+interface ClientStore {
+    
+    Client get(long id);
+    
+    /**
+     * Client dont l'email, mis en minuscules, est égal à celui donné
+     */
+    Client getByEmail(String normalizedEmail);
+    
+    /**
+     * Ajoute ou remplace un client et retourne la version précédente
+     */
+    Client put(Client client);
+    
+    Client remove(long id);
+    
+    int size();
+    
+    void forEach(Consumer<Client> action);
+    
+    void forEachId(LongConsumer action);
+    
+    /**
+     * Libère la capacité inutilisée après une construction complète
+     */
+    void trim();
+    
+    /**
+     * Copie indépendante pour construire la génération suivante par différence ; les clients ou
+     * enregistrements déjà écrits sont partagés, seules les tables qui les référencent sont dupliquées
+     */
+    ClientStore copy();
+    
+    /**
+     * Crée le stockage d'une génération pour le nombre de clients attendu
+     */
+    interface Factory {
+        
+        ClientStore create(int expectedSize);
+    }
+    
+    /**
+     * Mode de stockage choisi par {@code cache.storage.mode}
+     */
+    enum Mode {
+        
+        // Un objet Client par enregistrement, tables de hachage standard
+        OBJECTS,
+        
+        // Enregistrements encodés en octets, Client matérialisé à la lecture
+        COMPACT,
+        
+        // Enregistrements dans un fichier projeté en mémoire, clients les plus demandés gardés en objets
+        TIERED;
+        
+        /**
+         * Fabrique des stockages de ce mode ; {@code tiered} n'est utilisé qu'en mode TIERED
+         */
+        Factory factory(TieredStorage tiered) {
+            switch (this) {
+                case COMPACT:
+                    return CompactClientStore::new;
+                case TIERED:
+                    return expectedSize -> new TieredClientStore(expectedSize, tiered);
+                default:
+                    return ObjectClientStore::new;
+            }
+        }
+        
+        static Mode parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown cache storage mode: " + value);
+            }
+        }
+    }
+}
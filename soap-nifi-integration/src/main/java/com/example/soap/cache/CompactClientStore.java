@@ -0,0 +1,585 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Stockage compact : chaque client est une ligne encodée en octets dans des pages de 1 Mo,
+ * indexée par une table primitive id -> ligne. {@code ville} et {@code codePostal} sont codés
+ * par dictionnaire, les autres champs en UTF-8 préfixés par leur longueur.
+ * L'index email ne stocke que des numéros de ligne : la clé est relue dans la ligne.
+ * Les objets Client ne sont matérialisés qu'à la lecture.
+ */
+final class CompactClientStore implements ClientStore {
+    
+    private static final int PAGE_BITS = 20;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << (Integer.SIZE - PAGE_BITS);
+    private static final float EMAIL_LOAD_FACTOR = 0.6f;
+    
+    // Nombre de clients matérialisés par prise du verrou de lecture lors d'un parcours
+    private static final int ITERATION_CHUNK = 1024;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final LongIntHashMap rowById;
+    private long[] idByRow;
+    private int[] addressByRow;
+    private int rowCount;
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+    private volatile int size;
+    
+    // Pages d'enregistrements ; une adresse code la page (bits de poids fort) et la position
+    private byte[][] pages = new byte[4][];
+    private int pageCount;
+    private int pageUsed;
+    private long liveBytes;
+    private long garbageBytes;
+    
+    private final StringDictionary villes;
+    private final StringDictionary codesPostaux;
+    
+    // Index email : ligne + 1 par case (0 = vide) et empreinte de l'email en minuscules
+    private int[] emailRows;
+    private int[] emailHashes;
+    private int emailCount;
+    private int emailMask;
+    
+    // Tampon d'encodage, utilisé sous le verrou d'écriture
+    private byte[] scratch = new byte[512];
+    
+    CompactClientStore(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.rowById = new LongIntHashMap(capacity);
+        this.idByRow = new long[capacity];
+        this.addressByRow = new int[capacity];
+        this.villes = new StringDictionary();
+        this.codesPostaux = new StringDictionary();
+        allocateEmailTable(Integer.highestOneBit(Math.max(16, (int) (capacity / EMAIL_LOAD_FACTOR)) - 1) << 1);
+    }
+    
+    /**
+     * Copie : un enregistrement écrit n'est jamais modifié, les pages sont donc partagées,
+     * sauf la page en cours de remplissage, dupliquée pour que chaque génération y ajoute les siens
+     */
+    private CompactClientStore(CompactClientStore source) {
+        this.rowById = source.rowById.copy();
+        this.idByRow = source.idByRow.clone();
+        this.addressByRow = source.addressByRow.clone();
+        this.rowCount = source.rowCount;
+        this.freeRows = source.freeRows.clone();
+        this.freeRowCount = source.freeRowCount;
+        this.size = source.size;
+        this.pages = source.pages.clone();
+        this.pageCount = source.pageCount;
+        this.pageUsed = source.pageUsed;
+        if (pageCount > 0) {
+            pages[pageCount - 1] = pages[pageCount - 1].clone();
+        }
+        this.liveBytes = source.liveBytes;
+        this.garbageBytes = source.garbageBytes;
+        this.villes = source.villes.copy();
+        this.codesPostaux = source.codesPostaux.copy();
+        this.emailRows = source.emailRows.clone();
+        this.emailHashes = source.emailHashes.clone();
+        this.emailCount = source.emailCount;
+        this.emailMask = source.emailMask;
+    }
+    
+    @Override
+    public Client get(long id) {
+        lock.readLock().lock();
+        try {
+            int row = rowById.get(id);
+            return row == LongIntHashMap.MISSING ? null : materialize(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public Client getByEmail(String normalizedEmail) {
+        int hash = emailHash(normalizedEmail);
+        lock.readLock().lock();
+        try {
+            int slot = hash & emailMask;
+            while (emailRows[slot] != 0) {
+                int row = emailRows[slot] - 1;
+                if (emailHashes[slot] == hash && equalsLowerCase(readEmail(row), normalizedEmail)) {
+                    return materialize(row);
+                }
+                slot = (slot + 1) & emailMask;
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public Client put(Client client) {
+        lock.writeLock().lock();
+        try {
+            int length = encode(client);
+            long id = client.getId();
+            int row = rowById.get(id);
+            Client previous = null;
+            if (row == LongIntHashMap.MISSING) {
+                row = allocateRow();
+                idByRow[row] = id;
+                rowById.put(id, row);
+                size++;
+            } else {
+                previous = materialize(row);
+                if (previous.getEmail() != null) {
+                    removeEmail(row, emailHash(previous.getEmail()));
+                }
+                int previousLength = recordLength(addressByRow[row]);
+                liveBytes -= previousLength;
+                garbageBytes += previousLength;
+            }
+            addressByRow[row] = append(length);
+            liveBytes += length;
+            if (client.getEmail() != null) {
+                insertEmail(row, emailHash(client.getEmail()), client.getEmail());
+            }
+            compactIfNeeded();
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public Client remove(long id) {
+        lock.writeLock().lock();
+        try {
+            int row = rowById.remove(id);
+            if (row == LongIntHashMap.MISSING) {
+                return null;
+            }
+            Client removed = materialize(row);
+            if (removed.getEmail() != null) {
+                removeEmail(row, emailHash(removed.getEmail()));
+            }
+            int length = recordLength(addressByRow[row]);
+            liveBytes -= length;
+            garbageBytes += length;
+            releaseRow(row);
+            size--;
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Parcours faiblement cohérent, par tranches, pour ne pas bloquer les écrivains
+     * pendant toute la durée du traitement
+     */
+    @Override
+    public void forEach(Consumer<Client> action) {
+        List<Client> chunk = new ArrayList<>(ITERATION_CHUNK);
+        int row = 0;
+        while (true) {
+            lock.readLock().lock();
+            try {
+                for (; row < rowCount && chunk.size() < ITERATION_CHUNK; row++) {
+                    if (isLive(row)) {
+                        chunk.add(materialize(row));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
+            chunk.forEach(action);
+            chunk.clear();
+        }
+    }
+    
+    @Override
+    public void forEachId(LongConsumer action) {
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                if (isLive(row)) {
+                    action.accept(idByRow[row]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public void trim() {
+        lock.writeLock().lock();
+        try {
+            idByRow = Arrays.copyOf(idByRow, Math.max(16, rowCount));
+            addressByRow = Arrays.copyOf(addressByRow, Math.max(16, rowCount));
+            if (pageCount > 0 && pageUsed < pages[pageCount - 1].length) {
+                pages[pageCount - 1] = Arrays.copyOf(pages[pageCount - 1], pageUsed);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public ClientStore copy() {
+        lock.readLock().lock();
+        try {
+            return new CompactClientStore(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private boolean isLive(int row) {
+        return rowById.get(idByRow[row]) == row;
+    }
+    
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if (rowCount == idByRow.length) {
+            int capacity = rowCount + (rowCount >> 1);
+            idByRow = Arrays.copyOf(idByRow, capacity);
+            addressByRow = Arrays.copyOf(addressByRow, capacity);
+        }
+        return rowCount++;
+    }
+    
+    private void releaseRow(int row) {
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+        }
+        freeRows[freeRowCount++] = row;
+    }
+    
+    // ---- Encodage des enregistrements ----
+    
+    /**
+     * Encode le client dans le tampon de l'écrivain et retourne la longueur de l'enregistrement
+     */
+    private int encode(Client client) {
+        int position = 0;
+        position = writeString(position, client.getNom());
+        position = writeString(position, client.getPrenom());
+        position = writeString(position, client.getEmail());
+        position = writeString(position, client.getTelephone());
+        position = writeString(position, client.getAdresse());
+        position = writeVarInt(position, villes.encode(client.getVille()));
+        position = writeVarInt(position, codesPostaux.encode(client.getCodePostal()));
+        return position;
+    }
+    
+    private int writeString(int position, String value) {
+        if (value == null) {
+            return writeVarInt(position, 0);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        position = writeVarInt(position, bytes.length + 1);
+        ensureScratch(position + bytes.length);
+        System.arraycopy(bytes, 0, scratch, position, bytes.length);
+        return position + bytes.length;
+    }
+    
+    private int writeVarInt(int position, int value) {
+        ensureScratch(position + 5);
+        while ((value & ~0x7F) != 0) {
+            scratch[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        scratch[position++] = (byte) value;
+        return position;
+    }
+    
+    private void ensureScratch(int capacity) {
+        if (capacity > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(capacity, scratch.length * 2));
+        }
+    }
+    
+    /**
+     * Copie l'enregistrement encodé à la fin de la page courante et retourne son adresse
+     */
+    private int append(int length) {
+        if (pageCount == 0 || pageUsed + length > pages[pageCount - 1].length) {
+            if (pageCount == MAX_PAGES) {
+                throw new IllegalStateException("Compact client store is full");
+            }
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pageCount * 2);
+            }
+            // Un enregistrement plus grand qu'une page occupe sa propre page
+            pages[pageCount++] = new byte[Math.max(PAGE_SIZE, length)];
+            pageUsed = 0;
+        }
+        int address = ((pageCount - 1) << PAGE_BITS) | pageUsed;
+        System.arraycopy(scratch, 0, pages[pageCount - 1], pageUsed, length);
+        pageUsed += length;
+        return address;
+    }
+    
+    /**
+     * Réécrit les enregistrements vivants dans de nouvelles pages quand plus de la moitié
+     * de l'espace est occupé par des versions remplacées ou supprimées
+     */
+    private void compactIfNeeded() {
+        if (garbageBytes < PAGE_SIZE || garbageBytes < liveBytes) {
+            return;
+        }
+        byte[][] oldPages = pages;
+        pages = new byte[Math.max(4, (int) (liveBytes / PAGE_SIZE) + 2)][];
+        pageCount = 0;
+        pageUsed = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (isLive(row)) {
+                int address = addressByRow[row];
+                byte[] page = oldPages[address >>> PAGE_BITS];
+                int offset = address & (PAGE_SIZE - 1);
+                int length = recordLength(page, offset);
+                ensureScratch(length);
+                System.arraycopy(page, offset, scratch, 0, length);
+                addressByRow[row] = append(length);
+            }
+        }
+        garbageBytes = 0;
+    }
+    
+    // ---- Décodage ----
+    
+    private Client materialize(int row) {
+        int address = addressByRow[row];
+        byte[] page = pages[address >>> PAGE_BITS];
+        Cursor cursor = new Cursor(address & (PAGE_SIZE - 1));
+        Client client = new Client();
+        client.setId(idByRow[row]);
+        client.setNom(readString(page, cursor));
+        client.setPrenom(readString(page, cursor));
+        client.setEmail(readString(page, cursor));
+        client.setTelephone(readString(page, cursor));
+        client.setAdresse(readString(page, cursor));
+        client.setVille(villes.decode(readVarInt(page, cursor)));
+        client.setCodePostal(codesPostaux.decode(readVarInt(page, cursor)));
+        return client;
+    }
+    
+    private String readEmail(int row) {
+        int address = addressByRow[row];
+        byte[] page = pages[address >>> PAGE_BITS];
+        Cursor cursor = new Cursor(address & (PAGE_SIZE - 1));
+        skipString(page, cursor);
+        skipString(page, cursor);
+        return readString(page, cursor);
+    }
+    
+    private int recordLength(int address) {
+        return recordLength(pages[address >>> PAGE_BITS], address & (PAGE_SIZE - 1));
+    }
+    
+    private static int recordLength(byte[] page, int offset) {
+        Cursor cursor = new Cursor(offset);
+        for (int i = 0; i < 5; i++) {
+            skipString(page, cursor);
+        }
+        readVarInt(page, cursor);
+        readVarInt(page, cursor);
+        return cursor.position - offset;
+    }
+    
+    private static String readString(byte[] page, Cursor cursor) {
+        int length = readVarInt(page, cursor) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(page, cursor.position, length, StandardCharsets.UTF_8);
+        cursor.position += length;
+        return value;
+    }
+    
+    private static void skipString(byte[] page, Cursor cursor) {
+        int length = readVarInt(page, cursor) - 1;
+        if (length > 0) {
+            cursor.position += length;
+        }
+    }
+    
+    private static int readVarInt(byte[] page, Cursor cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = page[cursor.position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+    
+    private static final class Cursor {
+        
+        int position;
+        
+        Cursor(int position) {
+            this.position = position;
+        }
+    }
+    
+    // ---- Index email ----
+    
+    private void insertEmail(int row, int hash, String email) {
+        if (emailCount + 1 > emailRows.length * EMAIL_LOAD_FACTOR) {
+            resizeEmailTable(emailRows.length << 1);
+        }
+        int slot = hash & emailMask;
+        while (emailRows[slot] != 0) {
+            // Même email qu'un autre client : le dernier écrit gagne, comme pour l'index objet
+            if (emailHashes[slot] == hash && equalsLowerCase(readEmail(emailRows[slot] - 1), email)) {
+                emailRows[slot] = row + 1;
+                return;
+            }
+            slot = (slot + 1) & emailMask;
+        }
+        emailRows[slot] = row + 1;
+        emailHashes[slot] = hash;
+        emailCount++;
+    }
+    
+    /**
+     * Retire l'entrée email de la ligne si elle pointe encore vers elle (décalage arrière)
+     */
+    private void removeEmail(int row, int hash) {
+        int slot = hash & emailMask;
+        while (emailRows[slot] != 0) {
+            if (emailRows[slot] == row + 1) {
+                shiftBackEmail(slot);
+                emailCount--;
+                return;
+            }
+            slot = (slot + 1) & emailMask;
+        }
+    }
+    
+    private void shiftBackEmail(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & emailMask;
+            if (emailRows[slot] == 0) {
+                break;
+            }
+            int ideal = emailHashes[slot] & emailMask;
+            if (((slot - ideal) & emailMask) >= ((slot - gap) & emailMask)) {
+                emailRows[gap] = emailRows[slot];
+                emailHashes[gap] = emailHashes[slot];
+                gap = slot;
+            }
+        }
+        emailRows[gap] = 0;
+    }
+    
+    private void allocateEmailTable(int capacity) {
+        emailRows = new int[capacity];
+        emailHashes = new int[capacity];
+        emailMask = capacity - 1;
+    }
+    
+    private void resizeEmailTable(int capacity) {
+        int[] oldRows = emailRows;
+        int[] oldHashes = emailHashes;
+        allocateEmailTable(capacity);
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] != 0) {
+                int slot = oldHashes[i] & emailMask;
+                while (emailRows[slot] != 0) {
+                    slot = (slot + 1) & emailMask;
+                }
+                emailRows[slot] = oldRows[i];
+                emailHashes[slot] = oldHashes[i];
+            }
+        }
+    }
+    
+    /**
+     * Empreinte de l'email en minuscules, caractère par caractère, sans copie
+     */
+    static int emailHash(String email) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < email.length(); i++) {
+            hash ^= Character.toLowerCase(email.charAt(i));
+            hash *= 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+    
+    static boolean equalsLowerCase(String value, String other) {
+        if (value == null || value.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.toLowerCase(value.charAt(i)) != Character.toLowerCase(other.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Dictionnaire d'un champ à faible cardinalité ; le code 0 représente null
+     */
+    static final class StringDictionary {
+        
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[16];
+        
+        int encode(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = codes.size() + 1;
+                String[] current = values;
+                if (code == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[code] = value;
+                values = current;
+                codes.put(value, code);
+            }
+            return code;
+        }
+        
+        String decode(int code) {
+            return code == 0 ? null : values[code];
+        }
+        
+        StringDictionary copy() {
+            StringDictionary copy = new StringDictionary();
+            copy.codes.putAll(codes);
+            copy.values = values.clone();
+            return copy;
+        }
+    }
+}
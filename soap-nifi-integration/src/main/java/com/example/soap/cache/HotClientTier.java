@@ -0,0 +1,334 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Niveau chaud du stockage hiérarchisé : les clients les plus demandés, conservés en objets sur le tas,
+ * selon la politique W-TinyLFU. Une petite fenêtre LRU (1 % de la capacité) accueille les nouveaux venus ;
+ * à sa sortie, un candidat n'entre dans la zone principale (SLRU probatoire puis protégée) que si sa
+ * fréquence estimée dépasse celle de la victime. Les fréquences sont estimées par un Count-Min Sketch
+ * à compteurs de 4 bits, divisés par deux périodiquement pour oublier les anciennes tendances.
+ * Les lectures ne bloquent jamais : si le verrou de la politique est pris, leur prise en compte est abandonnée.
+ */
+final class HotClientTier {
+    
+    private static final byte WINDOW = 0;
+    private static final byte PROBATION = 1;
+    private static final byte PROTECTED = 2;
+    private static final byte REMOVED = 3;
+    
+    private final TieredStorage stats;
+    private final ConcurrentHashMap<Long, Node> nodes;
+    private final FrequencySketch sketch;
+    
+    // Politique : listes d'accès (la plus ancienne entrée en tête) modifiées sous le verrou
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final Node window = new Node(0L, null);
+    private final Node probation = new Node(0L, null);
+    private final Node protectedQueue = new Node(0L, null);
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+    private int windowSize;
+    private int probationSize;
+    private int protectedSize;
+    
+    // Incrémenté après chaque écriture : une lecture commencée avant ne peut plus admettre sa version
+    private volatile long writes;
+    
+    HotClientTier(int capacity, TieredStorage stats) {
+        this.stats = stats;
+        this.nodes = new ConcurrentHashMap<>(Math.min(capacity, 1 << 16));
+        this.sketch = new FrequencySketch(capacity);
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = capacity - windowCapacity;
+        this.protectedCapacity = mainCapacity * 4 / 5;
+        for (Node sentinel : new Node[] {window, probation, protectedQueue}) {
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+        }
+    }
+    
+    /**
+     * Client conservé dans le niveau chaud, ou null ; l'accès compte pour la politique
+     */
+    Client get(long id) {
+        Node node = nodes.get(id);
+        if (policyLock.tryLock()) {
+            try {
+                sketch.increment(id);
+                if (node != null && node.queue != REMOVED) {
+                    onHit(node);
+                }
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return node == null ? null : node.client;
+    }
+    
+    /**
+     * Marque de version à relever avant de lire le niveau inférieur, puis à passer à {@link #admit}
+     */
+    long writeStamp() {
+        return writes;
+    }
+    
+    /**
+     * Propose un client lu dans le niveau inférieur ; ignoré si une écriture a eu lieu depuis la lecture
+     */
+    void admit(long id, Client client, long writeStamp) {
+        policyLock.lock();
+        try {
+            if (writes != writeStamp || nodes.containsKey(id)) {
+                return;
+            }
+            Node node = new Node(id, client);
+            nodes.put(id, node);
+            link(window, node, WINDOW);
+            windowSize++;
+            evict();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+    
+    /**
+     * Remplace la version conservée après une écriture dans le niveau inférieur, sans admettre le client
+     */
+    void update(long id, Client client) {
+        policyLock.lock();
+        try {
+            writes++;
+            Node node = nodes.get(id);
+            if (node != null) {
+                node.client = client;
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+    
+    void invalidate(long id) {
+        policyLock.lock();
+        try {
+            writes++;
+            Node node = nodes.get(id);
+            if (node != null) {
+                discard(node);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+    
+    int size() {
+        return nodes.size();
+    }
+    
+    /**
+     * Copie pour la génération suivante : mêmes clients aux mêmes places des files, mêmes fréquences
+     */
+    HotClientTier copy() {
+        policyLock.lock();
+        try {
+            HotClientTier copy = new HotClientTier(windowCapacity + mainCapacity, stats);
+            sketch.copyTo(copy.sketch);
+            copyQueue(window, copy, copy.window, WINDOW);
+            copyQueue(probation, copy, copy.probation, PROBATION);
+            copyQueue(protectedQueue, copy, copy.protectedQueue, PROTECTED);
+            copy.windowSize = windowSize;
+            copy.probationSize = probationSize;
+            copy.protectedSize = protectedSize;
+            return copy;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+    
+    private static void copyQueue(Node queue, HotClientTier target, Node targetQueue, byte type) {
+        for (Node node = queue.next; node != queue; node = node.next) {
+            Node copy = new Node(node.id, node.client);
+            target.nodes.put(node.id, copy);
+            link(targetQueue, copy, type);
+        }
+    }
+    
+    // ---- Politique W-TinyLFU ----
+    
+    private void onHit(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                unlink(node);
+                link(window, node, WINDOW);
+                break;
+            case PROBATION:
+                // Deuxième accès dans la zone principale : promotion en zone protégée
+                unlink(node);
+                probationSize--;
+                link(protectedQueue, node, PROTECTED);
+                protectedSize++;
+                if (protectedSize > protectedCapacity) {
+                    Node demoted = protectedQueue.next;
+                    unlink(demoted);
+                    protectedSize--;
+                    link(probation, demoted, PROBATION);
+                    probationSize++;
+                }
+                break;
+            case PROTECTED:
+                unlink(node);
+                link(protectedQueue, node, PROTECTED);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    /**
+     * Fait sortir de la fenêtre les entrées en trop ; chacune affronte la plus ancienne entrée
+     * probatoire quand la zone principale est pleine
+     */
+    private void evict() {
+        while (windowSize > windowCapacity) {
+            Node candidate = window.next;
+            unlink(candidate);
+            windowSize--;
+            link(probation, candidate, PROBATION);
+            probationSize++;
+            if (probationSize + protectedSize <= mainCapacity) {
+                continue;
+            }
+            // Zone probatoire réduite au candidat : il affronte la plus ancienne entrée protégée
+            Node victim = probation.next != candidate ? probation.next : protectedQueue.next;
+            if (sketch.frequency(candidate.id) > sketch.frequency(victim.id)) {
+                discard(victim);
+                stats.recordEviction();
+            } else {
+                discard(candidate);
+                stats.recordRejection();
+            }
+        }
+    }
+    
+    private void discard(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                windowSize--;
+                break;
+            case PROBATION:
+                probationSize--;
+                break;
+            case PROTECTED:
+                protectedSize--;
+                break;
+            default:
+                return;
+        }
+        unlink(node);
+        node.queue = REMOVED;
+        nodes.remove(node.id, node);
+    }
+    
+    private static void link(Node queue, Node node, byte type) {
+        Node last = queue.previous;
+        node.previous = last;
+        node.next = queue;
+        last.next = node;
+        queue.previous = node;
+        node.queue = type;
+    }
+    
+    private static void unlink(Node node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+    }
+    
+    private static final class Node {
+        
+        final long id;
+        volatile Client client;
+        Node previous;
+        Node next;
+        byte queue;
+        
+        Node(long id, Client client) {
+            this.id = id;
+            this.client = client;
+        }
+    }
+    
+    /**
+     * Count-Min Sketch à 4 lignes de compteurs de 4 bits, seize compteurs par long.
+     * Après dix incréments par case, tous les compteurs sont divisés par deux.
+     */
+    static final class FrequencySketch {
+        
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+        
+        FrequencySketch(int capacity) {
+            int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            this.table = new long[size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * size;
+        }
+        
+        int frequency(long key) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long hash = hash(key, i);
+                int shift = (int) (hash >>> 60) << 2;
+                frequency = Math.min(frequency, (int) (table[(int) hash & mask] >>> shift) & 0xF);
+            }
+            return frequency;
+        }
+        
+        void increment(long key) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                long hash = hash(key, i);
+                int index = (int) hash & mask;
+                int shift = (int) (hash >>> 60) << 2;
+                if (((table[index] >>> shift) & 0xF) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+        
+        void copyTo(FrequencySketch target) {
+            System.arraycopy(table, 0, target.table, 0, table.length);
+            target.additions = additions;
+        }
+        
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions >>>= 1;
+        }
+        
+        private static long hash(long key, int row) {
+            long hash = (key + SEEDS[row]) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 31;
+            hash *= 0xbf58476d1ce4e5b9L;
+            return hash ^ (hash >>> 29);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.soap.cache;
+
+import java.util.Arrays;
+
+/**
+ * Liste triée d'ordinaux compressée, utilisée comme liste de postings d'un index inversé.
+ * Les ordinaux sont rangés par blocs : le premier de chaque bloc en clair, les suivants en écarts
+ * varint (un octet pour un écart inférieur à 128), soit trois à quatre fois moins de mémoire
+ * qu'un tableau d'int pour une liste dense. Une lecture localise son bloc par dichotomie sur les
+ * premiers ordinaux et ne décode que lui ; une insertion ou une suppression ne réencode que son bloc.
+ * Une liste peut être partagée par deux générations du cache : seul l'index qui la possède la modifie
+ * en place, les autres la copient avant leur première modification.
+ * Non thread-safe : l'appelant assure la synchronisation.
+ */
+final class IntPostingList {
+    
+    // Ordinaux par bloc rempli en fin de liste ; un bloc agrandi par des insertions est scindé au double
+    private static final int BLOCK_SIZE = 64;
+    private static final int MAX_BLOCK_SIZE = 2 * BLOCK_SIZE;
+    
+    private static final int[] NO_INTS = new int[0];
+    private static final byte[] NO_BYTES = new byte[0];
+    
+    private final Object owner;
+    
+    // Par bloc : premier ordinal, nombre d'ordinaux et début de ses écarts dans data
+    private int[] firsts = NO_INTS;
+    private int[] counts = NO_INTS;
+    private int[] offsets = NO_INTS;
+    private int blocks;
+    
+    // Écarts de tous les blocs, bout à bout
+    private byte[] data = NO_BYTES;
+    private int length;
+    
+    private int size;
+    
+    // Dernier ordinal de la liste, pour l'ajout en fin
+    private int last;
+    
+    IntPostingList(Object owner) {
+        this.owner = owner;
+    }
+    
+    boolean isOwnedBy(Object index) {
+        return owner == index;
+    }
+    
+    /**
+     * Copie modifiable par un autre index
+     */
+    IntPostingList copyFor(Object index) {
+        IntPostingList copy = new IntPostingList(index);
+        copy.firsts = Arrays.copyOf(firsts, blocks);
+        copy.counts = Arrays.copyOf(counts, blocks);
+        copy.offsets = Arrays.copyOf(offsets, blocks);
+        copy.blocks = blocks;
+        copy.data = Arrays.copyOf(data, length);
+        copy.length = length;
+        copy.size = size;
+        copy.last = last;
+        return copy;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Ajoute un ordinal ; l'ajout en fin de liste (ordinaux croissants) est le cas courant
+     */
+    void add(int value) {
+        if (size == 0 || value > last) {
+            append(value);
+            return;
+        }
+        int block = Math.max(0, blockOf(value));
+        int count = counts[block];
+        int[] values = decode(block);
+        int index = Arrays.binarySearch(values, 0, count, value);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+        System.arraycopy(values, index, values, index + 1, count - index);
+        values[index] = value;
+        size++;
+        replaceBlock(block, values, count + 1);
+    }
+    
+    boolean remove(int value) {
+        int block = size == 0 || value > last ? -1 : blockOf(value);
+        if (block < 0) {
+            return false;
+        }
+        int count = counts[block];
+        int[] values = decode(block);
+        int index = Arrays.binarySearch(values, 0, count, value);
+        if (index < 0) {
+            return false;
+        }
+        size--;
+        if (count == 1) {
+            removeBlock(block);
+        } else {
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            replaceBlock(block, values, count - 1);
+        }
+        if (value == last) {
+            last = size == 0 ? 0 : decode(blocks - 1)[counts[blocks - 1] - 1];
+        }
+        return true;
+    }
+    
+    boolean contains(int value) {
+        int block = size == 0 || value > last ? -1 : blockOf(value);
+        if (block < 0) {
+            return false;
+        }
+        return Arrays.binarySearch(decode(block), 0, counts[block], value) >= 0;
+    }
+    
+    /**
+     * Ajuste les tableaux à la taille exacte une fois l'index construit
+     */
+    void trim() {
+        if (firsts.length != blocks) {
+            firsts = blocks == 0 ? NO_INTS : Arrays.copyOf(firsts, blocks);
+            counts = blocks == 0 ? NO_INTS : Arrays.copyOf(counts, blocks);
+            offsets = blocks == 0 ? NO_INTS : Arrays.copyOf(offsets, blocks);
+        }
+        if (data.length != length) {
+            data = length == 0 ? NO_BYTES : Arrays.copyOf(data, length);
+        }
+    }
+    
+    /**
+     * Intersection d'ordinaux triés avec une liste : seuls les blocs qui peuvent contenir un candidat sont décodés
+     */
+    static int[] intersect(int[] candidates, int candidateCount, IntPostingList other) {
+        int[] result = new int[Math.min(candidateCount, other.size)];
+        int count = 0;
+        int[] values = new int[MAX_BLOCK_SIZE];
+        int block = -1;
+        int blockCount = 0;
+        int from = 0;
+        for (int i = 0; i < candidateCount && candidates[i] <= other.last; i++) {
+            int candidate = candidates[i];
+            if (block < 0 || (block + 1 < other.blocks && other.firsts[block + 1] <= candidate)) {
+                int next = other.blockOf(candidate);
+                if (next < 0) {
+                    continue;
+                }
+                block = next;
+                blockCount = other.decode(block, values, 0);
+                from = 0;
+            }
+            int index = Arrays.binarySearch(values, from, blockCount, candidate);
+            if (index >= 0) {
+                result[count++] = candidate;
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    
+    int[] toArray() {
+        int[] values = new int[size];
+        copyInto(values, 0);
+        return values;
+    }
+    
+    /**
+     * Décode les ordinaux dans {@code target} à partir de {@code position} et retourne la position suivante
+     */
+    int copyInto(int[] target, int position) {
+        for (int block = 0; block < blocks; block++) {
+            position = decode(block, target, position);
+        }
+        return position;
+    }
+    
+    private void append(int value) {
+        if (blocks == 0 || counts[blocks - 1] >= BLOCK_SIZE) {
+            insertBlock(blocks, value, 1, length);
+        } else {
+            ensureData(length + 5);
+            length = writeVarInt(data, length, value - last);
+            counts[blocks - 1]++;
+        }
+        last = value;
+        size++;
+    }
+    
+    /**
+     * Dernier bloc dont le premier ordinal ne dépasse pas la valeur, ou -1
+     */
+    private int blockOf(int value) {
+        int low = 0;
+        int high = blocks - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firsts[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+    
+    /**
+     * Ordinaux du bloc, dans un tableau avec une place libre pour une insertion
+     */
+    private int[] decode(int block) {
+        int[] values = new int[counts[block] + 1];
+        decode(block, values, 0);
+        return values;
+    }
+    
+    private int decode(int block, int[] target, int position) {
+        int value = firsts[block];
+        target[position++] = value;
+        int offset = offsets[block];
+        for (int i = 1; i < counts[block]; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += delta;
+            target[position++] = value;
+        }
+        return position;
+    }
+    
+    /**
+     * Réencode un bloc avec ses nouveaux ordinaux, en le scindant en deux s'il dépasse la taille maximale
+     */
+    private void replaceBlock(int block, int[] values, int count) {
+        int split = count > MAX_BLOCK_SIZE ? count / 2 : count;
+        byte[] encoded = new byte[(count - 1) * 5];
+        int firstLength = encode(values, 0, split, encoded, 0);
+        int encodedLength = split < count ? encode(values, split, count, encoded, firstLength) : firstLength;
+        int start = offsets[block];
+        splice(block, start, blockEnd(block), encoded, encodedLength);
+        firsts[block] = values[0];
+        counts[block] = split;
+        if (split < count) {
+            insertBlock(block + 1, values[split], count - split, start + firstLength);
+        }
+    }
+    
+    private static int encode(int[] values, int from, int to, byte[] target, int position) {
+        for (int i = from + 1; i < to; i++) {
+            position = writeVarInt(target, position, values[i] - values[i - 1]);
+        }
+        return position;
+    }
+    
+    private static int writeVarInt(byte[] target, int position, int value) {
+        while ((value & ~0x7f) != 0) {
+            target[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        target[position++] = (byte) value;
+        return position;
+    }
+    
+    private int blockEnd(int block) {
+        return block + 1 < blocks ? offsets[block + 1] : length;
+    }
+    
+    /**
+     * Remplace les octets [start, end) du bloc et décale les blocs suivants
+     */
+    private void splice(int block, int start, int end, byte[] encoded, int encodedLength) {
+        int delta = encodedLength - (end - start);
+        ensureData(length + delta);
+        System.arraycopy(data, end, data, end + delta, length - end);
+        System.arraycopy(encoded, 0, data, start, encodedLength);
+        length += delta;
+        for (int i = block + 1; i < blocks; i++) {
+            offsets[i] += delta;
+        }
+        if (length < data.length / 4 && data.length > 64) {
+            data = Arrays.copyOf(data, Math.max(64, length * 2));
+        }
+    }
+    
+    private void insertBlock(int index, int first, int count, int offset) {
+        if (blocks == firsts.length) {
+            int capacity = Math.max(4, blocks + (blocks >> 1));
+            firsts = Arrays.copyOf(firsts, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+        System.arraycopy(firsts, index, firsts, index + 1, blocks - index);
+        System.arraycopy(counts, index, counts, index + 1, blocks - index);
+        System.arraycopy(offsets, index, offsets, index + 1, blocks - index);
+        firsts[index] = first;
+        counts[index] = count;
+        offsets[index] = offset;
+        blocks++;
+    }
+    
+    private void removeBlock(int block) {
+        splice(block, offsets[block], blockEnd(block), NO_BYTES, 0);
+        System.arraycopy(firsts, block + 1, firsts, block, blocks - block - 1);
+        System.arraycopy(counts, block + 1, counts, block, blocks - block - 1);
+        System.arraycopy(offsets, block + 1, offsets, block, blocks - block - 1);
+        blocks--;
+    }
+    
+    private void ensureData(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(16, Math.max(capacity, data.length + (data.length >> 1))));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.soap.cache;
+
+import java.util.Arrays;
+
+/**
+ * Table de hachage à adressage ouvert long -> int, sans objets intermédiaires.
+ * Non thread-safe : l'appelant assure la synchronisation.
+ */
+final class LongIntHashMap {
+    
+    static final int MISSING = -1;
+    
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+    
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+    
+    // La clé sentinelle est stockée à part
+    private boolean hasEmptyKey;
+    private int emptyKeyValue = MISSING;
+    
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+    
+    /**
+     * Copie indépendante, par simple duplication des tableaux
+     */
+    LongIntHashMap copy() {
+        LongIntHashMap copy = new LongIntHashMap(0);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.mask = mask;
+        copy.resizeThreshold = resizeThreshold;
+        copy.hasEmptyKey = hasEmptyKey;
+        copy.emptyKeyValue = emptyKeyValue;
+        return copy;
+    }
+    
+    int get(long key) {
+        if (key == EMPTY) {
+            return hasEmptyKey ? emptyKeyValue : MISSING;
+        }
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                return values[slot];
+            }
+            if (current == EMPTY) {
+                return MISSING;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /**
+     * Associe la valeur à la clé et retourne l'ancienne valeur ou {@link #MISSING}
+     */
+    int put(long key, int value) {
+        if (key == EMPTY) {
+            int previous = hasEmptyKey ? emptyKeyValue : MISSING;
+            if (!hasEmptyKey) {
+                size++;
+            }
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return previous;
+        }
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (current == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size >= resizeThreshold) {
+                    resize(keys.length << 1);
+                }
+                return MISSING;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /**
+     * Supprime la clé (suppression par décalage arrière, sans pierre tombale)
+     */
+    int remove(long key) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) {
+                return MISSING;
+            }
+            hasEmptyKey = false;
+            size--;
+            return emptyKeyValue;
+        }
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                return MISSING;
+            }
+            if (current == key) {
+                int previous = values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Mémoire occupée par les tableaux, en octets
+     */
+    long footprintBytes() {
+        return (long) keys.length * Long.BYTES + (long) values.length * Integer.BYTES;
+    }
+    
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long current = keys[slot];
+            if (current == EMPTY) {
+                break;
+            }
+            int ideal = slot(current);
+            // Déplace l'entrée si sa position idéale ne se trouve pas entre le trou et elle
+            if (((slot - ideal) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = current;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+    
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+    
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.soap.cache;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Table de hachage à adressage ouvert long -> objet, sans boxing des clés.
+ * Non thread-safe : l'appelant assure la synchronisation.
+ */
+final class LongObjectHashMap<V> {
+    
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.6f;
+    
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+    
+    // La clé sentinelle est stockée à part
+    private boolean hasEmptyKey;
+    private V emptyKeyValue;
+    
+    LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+    
+    /**
+     * Copie indépendante, par simple duplication des tableaux ; les valeurs sont partagées
+     */
+    LongObjectHashMap<V> copy() {
+        LongObjectHashMap<V> copy = new LongObjectHashMap<>(0);
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.size = size;
+        copy.mask = mask;
+        copy.resizeThreshold = resizeThreshold;
+        copy.hasEmptyKey = hasEmptyKey;
+        copy.emptyKeyValue = emptyKeyValue;
+        return copy;
+    }
+    
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (key == EMPTY) {
+            return emptyKeyValue;
+        }
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                return (V) values[slot];
+            }
+            if (current == EMPTY) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /**
+     * Associe la valeur (non nulle) à la clé et retourne l'ancienne valeur ou null
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key == EMPTY) {
+            V previous = emptyKeyValue;
+            if (!hasEmptyKey) {
+                size++;
+            }
+            hasEmptyKey = true;
+            emptyKeyValue = value;
+            return previous;
+        }
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (current == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size >= resizeThreshold) {
+                    resize(keys.length << 1);
+                }
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    /**
+     * Supprime la clé (suppression par décalage arrière, sans pierre tombale)
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        if (key == EMPTY) {
+            if (!hasEmptyKey) {
+                return null;
+            }
+            V previous = emptyKeyValue;
+            hasEmptyKey = false;
+            emptyKeyValue = null;
+            size--;
+            return previous;
+        }
+        int slot = slot(key);
+        while (true) {
+            long current = keys[slot];
+            if (current == EMPTY) {
+                return null;
+            }
+            if (current == key) {
+                V previous = (V) values[slot];
+                shiftBack(slot);
+                size--;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<V> action) {
+        if (hasEmptyKey) {
+            action.accept(emptyKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                action.accept((V) values[i]);
+            }
+        }
+    }
+    
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long current = keys[slot];
+            if (current == EMPTY) {
+                break;
+            }
+            int ideal = slot(current);
+            // Déplace l'entrée si sa position idéale ne se trouve pas entre le trou et elle
+            if (((slot - ideal) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = current;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+    }
+    
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+    
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+    
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = slot(key);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,677 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Stockage hors tas : les enregistrements, encodés comme dans {@link CompactClientStore}, sont écrits
+ * dans des segments d'un fichier temporaire projeté en mémoire ; seuls les index id -> ligne et email
+ * restent sur le tas. Les champs sont décodés directement depuis la projection, sans copie
+ * intermédiaire de l'enregistrement, et l'email recherché est comparé en place.
+ * Le fichier est supprimé dès son ouverture : l'espace disque est rendu quand la génération
+ * n'est plus référencée et que ses projections sont libérées par le GC.
+ */
+final class MappedClientStore implements ClientStore {
+    
+    private static final int MIN_SEGMENT_SIZE = 1 << 20;
+    private static final int MAX_SEGMENT_SIZE = 1 << 26;
+    // Estimation de la taille d'un enregistrement pour dimensionner le premier segment
+    private static final int RECORD_SIZE_HINT = 128;
+    private static final float EMAIL_LOAD_FACTOR = 0.6f;
+    
+    // Nombre de clients matérialisés par prise du verrou de lecture lors d'un parcours
+    private static final int ITERATION_CHUNK = 1024;
+    
+    // Ferme le fichier d'une génération abandonnée sans attendre l'arrêt de l'application
+    private static final Cleaner CLEANER = Cleaner.create();
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private final Path directory;
+    private final MappedFile file;
+    
+    private final LongIntHashMap rowById;
+    private long[] idByRow;
+    private long[] addressByRow;
+    private int rowCount;
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+    private volatile int size;
+    
+    // Segments projetés ; une adresse code le segment (32 bits de poids fort) et la position
+    private MappedByteBuffer[] segments = new MappedByteBuffer[4];
+    private int segmentCount;
+    private int segmentUsed;
+    private int nextSegmentSize;
+    private long fileLength;
+    private volatile long mappedBytes;
+    private long liveBytes;
+    private long garbageBytes;
+    
+    private final CompactClientStore.StringDictionary villes;
+    private final CompactClientStore.StringDictionary codesPostaux;
+    
+    // Index email : ligne + 1 par case (0 = vide) et empreinte de l'email en minuscules
+    private int[] emailRows;
+    private int[] emailHashes;
+    private int emailCount;
+    private int emailMask;
+    
+    // Tampon d'encodage, utilisé sous le verrou d'écriture
+    private byte[] scratch = new byte[512];
+    
+    MappedClientStore(int expectedSize, Path directory) {
+        int capacity = Math.max(16, expectedSize);
+        this.directory = directory;
+        this.file = new MappedFile();
+        CLEANER.register(this, file);
+        this.rowById = new LongIntHashMap(capacity);
+        this.idByRow = new long[capacity];
+        this.addressByRow = new long[capacity];
+        this.nextSegmentSize = segmentSize((long) capacity * RECORD_SIZE_HINT);
+        this.villes = new CompactClientStore.StringDictionary();
+        this.codesPostaux = new CompactClientStore.StringDictionary();
+        allocateEmailTable(Integer.highestOneBit(Math.max(16, (int) (capacity / EMAIL_LOAD_FACTOR)) - 1) << 1);
+        openFile();
+    }
+    
+    /**
+     * Copie : les segments déjà écrits sont partagés, leurs projections restant valides après la fermeture
+     * du fichier de l'original ; la copie écrit ses nouveaux enregistrements dans son propre fichier,
+     * à partir d'un nouveau segment
+     */
+    private MappedClientStore(MappedClientStore source) {
+        this.directory = source.directory;
+        this.file = new MappedFile();
+        CLEANER.register(this, file);
+        this.rowById = source.rowById.copy();
+        this.idByRow = source.idByRow.clone();
+        this.addressByRow = source.addressByRow.clone();
+        this.rowCount = source.rowCount;
+        this.freeRows = source.freeRows.clone();
+        this.freeRowCount = source.freeRowCount;
+        this.size = source.size;
+        this.segments = source.segments.clone();
+        this.segmentCount = source.segmentCount;
+        // Segment courant considéré plein : sa fin reste à l'original
+        this.segmentUsed = segmentCount > 0 ? segments[segmentCount - 1].capacity() : 0;
+        this.nextSegmentSize = source.nextSegmentSize;
+        this.mappedBytes = source.mappedBytes;
+        this.liveBytes = source.liveBytes;
+        this.garbageBytes = source.garbageBytes;
+        this.villes = source.villes.copy();
+        this.codesPostaux = source.codesPostaux.copy();
+        this.emailRows = source.emailRows.clone();
+        this.emailHashes = source.emailHashes.clone();
+        this.emailCount = source.emailCount;
+        this.emailMask = source.emailMask;
+        openFile();
+    }
+    
+    @Override
+    public Client get(long id) {
+        lock.readLock().lock();
+        try {
+            int row = rowById.get(id);
+            return row == LongIntHashMap.MISSING ? null : materialize(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public Client getByEmail(String normalizedEmail) {
+        lock.readLock().lock();
+        try {
+            int row = findEmail(normalizedEmail);
+            return row < 0 ? null : materialize(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Id du client dont l'email en minuscules est celui donné, ou null, sans matérialiser le client
+     */
+    Long idByEmail(String normalizedEmail) {
+        lock.readLock().lock();
+        try {
+            int row = findEmail(normalizedEmail);
+            return row < 0 ? null : idByRow[row];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public Client put(Client client) {
+        lock.writeLock().lock();
+        try {
+            int length = encode(client);
+            long id = client.getId();
+            int row = rowById.get(id);
+            Client previous = null;
+            if (row == LongIntHashMap.MISSING) {
+                row = allocateRow();
+                idByRow[row] = id;
+                rowById.put(id, row);
+                size++;
+            } else {
+                previous = materialize(row);
+                if (previous.getEmail() != null) {
+                    removeEmail(row, CompactClientStore.emailHash(previous.getEmail()));
+                }
+                int previousLength = recordLength(addressByRow[row]);
+                liveBytes -= previousLength;
+                garbageBytes += previousLength;
+            }
+            addressByRow[row] = append(length);
+            liveBytes += length;
+            if (client.getEmail() != null) {
+                insertEmail(row, CompactClientStore.emailHash(client.getEmail()), client.getEmail());
+            }
+            compactIfNeeded();
+            return previous;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public Client remove(long id) {
+        lock.writeLock().lock();
+        try {
+            int row = rowById.remove(id);
+            if (row == LongIntHashMap.MISSING) {
+                return null;
+            }
+            Client removed = materialize(row);
+            if (removed.getEmail() != null) {
+                removeEmail(row, CompactClientStore.emailHash(removed.getEmail()));
+            }
+            int length = recordLength(addressByRow[row]);
+            liveBytes -= length;
+            garbageBytes += length;
+            releaseRow(row);
+            size--;
+            compactIfNeeded();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Octets projetés en mémoire par les segments en service
+     */
+    long mappedBytes() {
+        return mappedBytes;
+    }
+    
+    /**
+     * Parcours faiblement cohérent, par tranches, pour ne pas bloquer les écrivains
+     * pendant toute la durée du traitement
+     */
+    @Override
+    public void forEach(Consumer<Client> action) {
+        List<Client> chunk = new ArrayList<>(ITERATION_CHUNK);
+        int row = 0;
+        while (true) {
+            lock.readLock().lock();
+            try {
+                for (; row < rowCount && chunk.size() < ITERATION_CHUNK; row++) {
+                    if (isLive(row)) {
+                        chunk.add(materialize(row));
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (chunk.isEmpty()) {
+                return;
+            }
+            chunk.forEach(action);
+            chunk.clear();
+        }
+    }
+    
+    @Override
+    public void forEachId(LongConsumer action) {
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                if (isLive(row)) {
+                    action.accept(idByRow[row]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Seuls les index sur le tas sont réduits : la fin inutilisée du dernier segment
+     * n'occupe pas de mémoire tant qu'elle n'est pas écrite
+     */
+    @Override
+    public void trim() {
+        lock.writeLock().lock();
+        try {
+            idByRow = Arrays.copyOf(idByRow, Math.max(16, rowCount));
+            addressByRow = Arrays.copyOf(addressByRow, Math.max(16, rowCount));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public MappedClientStore copy() {
+        lock.readLock().lock();
+        try {
+            return new MappedClientStore(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private boolean isLive(int row) {
+        return rowById.get(idByRow[row]) == row;
+    }
+    
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if (rowCount == idByRow.length) {
+            int capacity = rowCount + (rowCount >> 1);
+            idByRow = Arrays.copyOf(idByRow, capacity);
+            addressByRow = Arrays.copyOf(addressByRow, capacity);
+        }
+        return rowCount++;
+    }
+    
+    private void releaseRow(int row) {
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+        }
+        freeRows[freeRowCount++] = row;
+    }
+    
+    // ---- Fichier projeté ----
+    
+    private static int segmentSize(long bytes) {
+        long size = Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, bytes));
+        return Integer.highestOneBit((int) size - 1) << 1;
+    }
+    
+    /**
+     * Ouvre un nouveau fichier temporaire, supprimé aussitôt quand le système le permet
+     */
+    private void openFile() {
+        try {
+            Files.createDirectories(directory);
+            Path path = Files.createTempFile(directory, "clients-", ".mapped");
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                Files.delete(path);
+            } catch (IOException e) {
+                // Windows : un fichier ouvert ne peut pas être supprimé
+                path.toFile().deleteOnExit();
+            }
+            file.replace(channel);
+            fileLength = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create mapped client store in " + directory, e);
+        }
+    }
+    
+    private MappedByteBuffer mapSegment(int capacity) {
+        try {
+            MappedByteBuffer segment = file.channel.map(FileChannel.MapMode.READ_WRITE, fileLength, capacity);
+            fileLength += capacity;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map client store segment", e);
+        }
+    }
+    
+    /**
+     * Canal du fichier projeté, fermé quand le stockage devient inaccessible ;
+     * les projections restent valides après la fermeture
+     */
+    private static final class MappedFile implements Runnable {
+        
+        private volatile FileChannel channel;
+        
+        void replace(FileChannel next) throws IOException {
+            FileChannel previous = channel;
+            channel = next;
+            if (previous != null) {
+                previous.close();
+            }
+        }
+        
+        @Override
+        public void run() {
+            try {
+                replace(null);
+            } catch (IOException ignored) {
+                // Rien à faire : le descripteur est libéré avec le processus
+            }
+        }
+    }
+    
+    // ---- Encodage des enregistrements ----
+    
+    /**
+     * Encode le client dans le tampon de l'écrivain et retourne la longueur de l'enregistrement
+     */
+    private int encode(Client client) {
+        int position = 0;
+        position = writeString(position, client.getNom());
+        position = writeString(position, client.getPrenom());
+        position = writeString(position, client.getEmail());
+        position = writeString(position, client.getTelephone());
+        position = writeString(position, client.getAdresse());
+        position = writeVarInt(position, villes.encode(client.getVille()));
+        position = writeVarInt(position, codesPostaux.encode(client.getCodePostal()));
+        return position;
+    }
+    
+    private int writeString(int position, String value) {
+        if (value == null) {
+            return writeVarInt(position, 0);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        position = writeVarInt(position, bytes.length + 1);
+        ensureScratch(position + bytes.length);
+        System.arraycopy(bytes, 0, scratch, position, bytes.length);
+        return position + bytes.length;
+    }
+    
+    private int writeVarInt(int position, int value) {
+        ensureScratch(position + 5);
+        while ((value & ~0x7F) != 0) {
+            scratch[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        scratch[position++] = (byte) value;
+        return position;
+    }
+    
+    private void ensureScratch(int capacity) {
+        if (capacity > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(capacity, scratch.length * 2));
+        }
+    }
+    
+    /**
+     * Copie l'enregistrement encodé à la fin du segment courant et retourne son adresse
+     */
+    private long append(int length) {
+        if (segmentCount == 0 || segmentUsed + length > segments[segmentCount - 1].capacity()) {
+            if (segmentCount == segments.length) {
+                segments = Arrays.copyOf(segments, segmentCount * 2);
+            }
+            // Segments de taille croissante ; un enregistrement plus grand qu'un segment occupe le sien
+            int capacity = Math.max(nextSegmentSize, length);
+            segments[segmentCount++] = mapSegment(capacity);
+            mappedBytes += capacity;
+            nextSegmentSize = segmentSize((long) nextSegmentSize * 2);
+            segmentUsed = 0;
+        }
+        long address = ((long) (segmentCount - 1) << 32) | segmentUsed;
+        ByteBuffer target = segments[segmentCount - 1].duplicate();
+        target.position(segmentUsed);
+        target.put(scratch, 0, length);
+        segmentUsed += length;
+        return address;
+    }
+    
+    /**
+     * Réécrit les enregistrements vivants dans un nouveau fichier quand plus de la moitié
+     * de l'espace est occupé par des versions remplacées ou supprimées
+     */
+    private void compactIfNeeded() {
+        if (garbageBytes < MIN_SEGMENT_SIZE || garbageBytes < liveBytes) {
+            return;
+        }
+        MappedByteBuffer[] oldSegments = segments;
+        segments = new MappedByteBuffer[4];
+        segmentCount = 0;
+        segmentUsed = 0;
+        mappedBytes = 0;
+        nextSegmentSize = segmentSize(liveBytes + (liveBytes >> 2));
+        openFile();
+        for (int row = 0; row < rowCount; row++) {
+            if (isLive(row)) {
+                long address = addressByRow[row];
+                ByteBuffer segment = oldSegments[(int) (address >>> 32)];
+                int offset = (int) address;
+                int length = recordLength(segment, offset);
+                ensureScratch(length);
+                for (int i = 0; i < length; i++) {
+                    scratch[i] = segment.get(offset + i);
+                }
+                addressByRow[row] = append(length);
+            }
+        }
+        garbageBytes = 0;
+    }
+    
+    // ---- Décodage ----
+    
+    private Client materialize(int row) {
+        long address = addressByRow[row];
+        ByteBuffer segment = segments[(int) (address >>> 32)];
+        Cursor cursor = new Cursor((int) address);
+        Client client = new Client();
+        client.setId(idByRow[row]);
+        client.setNom(readString(segment, cursor));
+        client.setPrenom(readString(segment, cursor));
+        client.setEmail(readString(segment, cursor));
+        client.setTelephone(readString(segment, cursor));
+        client.setAdresse(readString(segment, cursor));
+        client.setVille(villes.decode(readVarInt(segment, cursor)));
+        client.setCodePostal(codesPostaux.decode(readVarInt(segment, cursor)));
+        return client;
+    }
+    
+    /**
+     * Compare l'email de la ligne à l'email en minuscules donné, octet par octet dans le segment
+     * tant qu'il est en ASCII, en décodant la chaîne sinon
+     */
+    private boolean emailEquals(int row, String normalizedEmail) {
+        long address = addressByRow[row];
+        ByteBuffer segment = segments[(int) (address >>> 32)];
+        Cursor cursor = new Cursor((int) address);
+        skipString(segment, cursor);
+        skipString(segment, cursor);
+        int start = cursor.position;
+        int length = readVarInt(segment, cursor) - 1;
+        // Un caractère occupe au moins un octet en UTF-8
+        if (length < normalizedEmail.length()) {
+            return false;
+        }
+        if (length == normalizedEmail.length()) {
+            int i = 0;
+            for (; i < length; i++) {
+                byte b = segment.get(cursor.position + i);
+                if (b < 0) {
+                    break;
+                }
+                if (Character.toLowerCase((char) b) != Character.toLowerCase(normalizedEmail.charAt(i))) {
+                    return false;
+                }
+            }
+            if (i == length) {
+                return true;
+            }
+        }
+        cursor.position = start;
+        return CompactClientStore.equalsLowerCase(readString(segment, cursor), normalizedEmail);
+    }
+    
+    private int recordLength(long address) {
+        return recordLength(segments[(int) (address >>> 32)], (int) address);
+    }
+    
+    private static int recordLength(ByteBuffer segment, int offset) {
+        Cursor cursor = new Cursor(offset);
+        for (int i = 0; i < 5; i++) {
+            skipString(segment, cursor);
+        }
+        readVarInt(segment, cursor);
+        readVarInt(segment, cursor);
+        return cursor.position - offset;
+    }
+    
+    private static String readString(ByteBuffer segment, Cursor cursor) {
+        int length = readVarInt(segment, cursor) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = segment.get(cursor.position + i);
+        }
+        cursor.position += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void skipString(ByteBuffer segment, Cursor cursor) {
+        int length = readVarInt(segment, cursor) - 1;
+        if (length > 0) {
+            cursor.position += length;
+        }
+    }
+    
+    private static int readVarInt(ByteBuffer segment, Cursor cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = segment.get(cursor.position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+    
+    private static final class Cursor {
+        
+        int position;
+        
+        Cursor(int position) {
+            this.position = position;
+        }
+    }
+    
+    // ---- Index email ----
+    
+    private int findEmail(String normalizedEmail) {
+        int hash = CompactClientStore.emailHash(normalizedEmail);
+        int slot = hash & emailMask;
+        while (emailRows[slot] != 0) {
+            int row = emailRows[slot] - 1;
+            if (emailHashes[slot] == hash && emailEquals(row, normalizedEmail)) {
+                return row;
+            }
+            slot = (slot + 1) & emailMask;
+        }
+        return -1;
+    }
+    
+    private void insertEmail(int row, int hash, String email) {
+        if (emailCount + 1 > emailRows.length * EMAIL_LOAD_FACTOR) {
+            resizeEmailTable(emailRows.length << 1);
+        }
+        int slot = hash & emailMask;
+        while (emailRows[slot] != 0) {
+            // Même email qu'un autre client : le dernier écrit gagne, comme pour l'index objet
+            if (emailHashes[slot] == hash && emailEquals(emailRows[slot] - 1, email)) {
+                emailRows[slot] = row + 1;
+                return;
+            }
+            slot = (slot + 1) & emailMask;
+        }
+        emailRows[slot] = row + 1;
+        emailHashes[slot] = hash;
+        emailCount++;
+    }
+    
+    /**
+     * Retire l'entrée email de la ligne si elle pointe encore vers elle (décalage arrière)
+     */
+    private void removeEmail(int row, int hash) {
+        int slot = hash & emailMask;
+        while (emailRows[slot] != 0) {
+            if (emailRows[slot] == row + 1) {
+                shiftBackEmail(slot);
+                emailCount--;
+                return;
+            }
+            slot = (slot + 1) & emailMask;
+        }
+    }
+    
+    private void shiftBackEmail(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & emailMask;
+            if (emailRows[slot] == 0) {
+                break;
+            }
+            int ideal = emailHashes[slot] & emailMask;
+            if (((slot - ideal) & emailMask) >= ((slot - gap) & emailMask)) {
+                emailRows[gap] = emailRows[slot];
+                emailHashes[gap] = emailHashes[slot];
+                gap = slot;
+            }
+        }
+        emailRows[gap] = 0;
+    }
+    
+    private void allocateEmailTable(int capacity) {
+        emailRows = new int[capacity];
+        emailHashes = new int[capacity];
+        emailMask = capacity - 1;
+    }
+    
+    private void resizeEmailTable(int capacity) {
+        int[] oldRows = emailRows;
+        int[] oldHashes = emailHashes;
+        allocateEmailTable(capacity);
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] != 0) {
+                int slot = oldHashes[i] & emailMask;
+                while (emailRows[slot] != 0) {
+                    slot = (slot + 1) & emailMask;
+                }
+                emailRows[slot] = oldRows[i];
+                emailHashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.soap.cache;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Index inversé de n-grammes (n entre 1 et 4) sur un champ texte normalisé en minuscules.
+ * Chaque n-gramme est codé sur un long, clé primitive de la table, et pointe vers une liste
+ * compressée d'ordinaux.
+ * Une copie partage les listes avec l'original ; chacun copie une liste partagée avant de la modifier.
+ * Non thread-safe : l'appelant assure la synchronisation.
+ */
+final class NGramIndex {
+    
+    static final int MAX_GRAM_SIZE = 4;
+    
+    private static final int[] NONE = new int[0];
+    
+    private final int gramSize;
+    private final long gramMask;
+    private LongObjectHashMap<IntPostingList> postings = new LongObjectHashMap<>(16);
+    
+    // Propriétaire des listes modifiables en place, renouvelé à chaque copie
+    private Object owner = new Object();
+    
+    NGramIndex(int gramSize) {
+        if (gramSize < 1 || gramSize > MAX_GRAM_SIZE) {
+            throw new IllegalArgumentException("N-gram size must be between 1 and " + MAX_GRAM_SIZE + ": " + gramSize);
+        }
+        this.gramSize = gramSize;
+        this.gramMask = gramSize == MAX_GRAM_SIZE ? -1L : (1L << (16 * gramSize)) - 1;
+    }
+    
+    int getGramSize() {
+        return gramSize;
+    }
+    
+    void add(int ordinal, String value) {
+        if (value == null || value.length() < gramSize) {
+            return;
+        }
+        long gram = 0;
+        for (int i = 0; i < value.length(); i++) {
+            gram = ((gram << 16) | Character.toLowerCase(value.charAt(i))) & gramMask;
+            if (i >= gramSize - 1) {
+                writable(gram).add(ordinal);
+            }
+        }
+    }
+    
+    void remove(int ordinal, String value) {
+        if (value == null || value.length() < gramSize) {
+            return;
+        }
+        long gram = 0;
+        for (int i = 0; i < value.length(); i++) {
+            gram = ((gram << 16) | Character.toLowerCase(value.charAt(i))) & gramMask;
+            if (i >= gramSize - 1) {
+                IntPostingList list = postings.get(gram);
+                if (list == null || !list.contains(ordinal)) {
+                    continue;
+                }
+                if (list.size() == 1) {
+                    postings.remove(gram);
+                } else {
+                    writable(gram).remove(ordinal);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Liste du n-gramme modifiable par cet index : créée si absente, copiée si elle est partagée
+     */
+    private IntPostingList writable(long gram) {
+        IntPostingList list = postings.get(gram);
+        if (list == null || !list.isOwnedBy(owner)) {
+            list = list == null ? new IntPostingList(owner) : list.copyFor(owner);
+            postings.put(gram, list);
+        }
+        return list;
+    }
+    
+    /**
+     * Copie pour la génération suivante, en temps proportionnel au nombre de n-grammes :
+     * les listes deviennent partagées et ne sont plus modifiées en place ni par l'une ni par l'autre
+     */
+    NGramIndex copy() {
+        NGramIndex copy = new NGramIndex(gramSize);
+        copy.postings = postings.copy();
+        owner = new Object();
+        return copy;
+    }
+    
+    /**
+     * Ordinaux candidats (triés) pour une sous-chaîne déjà normalisée,
+     * ou null si la requête est plus courte qu'un n-gramme et impose un parcours complet.
+     * Les candidats doivent être vérifiés : deux n-grammes présents ne garantissent pas la sous-chaîne.
+     */
+    int[] candidates(String normalizedQuery) {
+        if (normalizedQuery.length() < gramSize) {
+            return null;
+        }
+        int gramCount = normalizedQuery.length() - gramSize + 1;
+        IntPostingList[] lists = new IntPostingList[gramCount];
+        long gram = 0;
+        for (int i = 0; i < normalizedQuery.length(); i++) {
+            gram = ((gram << 16) | normalizedQuery.charAt(i)) & gramMask;
+            if (i >= gramSize - 1) {
+                IntPostingList list = postings.get(gram);
+                if (list == null) {
+                    return NONE;
+                }
+                lists[i - gramSize + 1] = list;
+            }
+        }
+        
+        // Intersection en partant de la liste la plus sélective
+        Arrays.sort(lists, Comparator.comparingInt(IntPostingList::size));
+        int[] result = lists[0].toArray();
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            if (lists[i] != lists[i - 1]) {
+                result = IntPostingList.intersect(result, result.length, lists[i]);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Réduit les listes de postings à leur taille exacte après une construction complète
+     */
+    void trim() {
+        postings.forEachValue(IntPostingList::trim);
+    }
+    
+    int gramCount() {
+        return postings.size();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Stockage objet : les instances Client sont conservées telles quelles,
+ * indexées par id et par email en minuscules.
+ */
+final class ObjectClientStore implements ClientStore {
+    
+    // Clients par id
+    private final Map<Long, Client> clients;
+    
+    // Index par email (en minuscules)
+    private final Map<String, Client> emailIndex;
+    
+    ObjectClientStore(int expectedSize) {
+        this.clients = new ConcurrentHashMap<>(Math.max(16, expectedSize));
+        this.emailIndex = new ConcurrentHashMap<>(Math.max(16, expectedSize));
+    }
+    
+    @Override
+    public Client get(long id) {
+        return clients.get(id);
+    }
+    
+    @Override
+    public Client getByEmail(String normalizedEmail) {
+        return emailIndex.get(normalizedEmail);
+    }
+    
+    @Override
+    public Client put(Client client) {
+        Client previous = clients.put(client.getId(), client);
+        if (previous != null && previous.getEmail() != null
+                && !previous.getEmail().equalsIgnoreCase(client.getEmail())) {
+            emailIndex.remove(ClientCacheSnapshot.normalizeEmail(previous.getEmail()), previous);
+        }
+        if (client.getEmail() != null) {
+            emailIndex.put(ClientCacheSnapshot.normalizeEmail(client.getEmail()), client);
+        }
+        return previous;
+    }
+    
+    @Override
+    public Client remove(long id) {
+        Client removed = clients.remove(id);
+        if (removed != null && removed.getEmail() != null) {
+            emailIndex.remove(ClientCacheSnapshot.normalizeEmail(removed.getEmail()), removed);
+        }
+        return removed;
+    }
+    
+    @Override
+    public int size() {
+        return clients.size();
+    }
+    
+    @Override
+    public void forEach(Consumer<Client> action) {
+        clients.values().forEach(action);
+    }
+    
+    @Override
+    public void forEachId(LongConsumer action) {
+        for (Long id : clients.keySet()) {
+            action.accept(id);
+        }
+    }
+    
+    @Override
+    public void trim() {
+        // Les tables de hachage standard ne se réduisent pas
+    }
+    
+    /**
+     * Les instances Client sont partagées : un client inchangé garde son identité d'une génération à l'autre
+     */
+    @Override
+    public ClientStore copy() {
+        ObjectClientStore copy = new ObjectClientStore(clients.size());
+        copy.clients.putAll(clients);
+        copy.emailIndex.putAll(emailIndex);
+        return copy;
+    }
+}
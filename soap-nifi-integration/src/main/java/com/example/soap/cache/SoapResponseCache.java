@@ -0,0 +1,291 @@
+package com.example.soap.cache;
+
+import com.example.soap.metrics.SoapMetricsService;
+import io.micrometer.core.instrument.Counter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache des réponses SOAP déjà sérialisées (corps XML complet) des opérations de lecture
+ * getClientById, getClientByEmail et getAllClients.
+ *
+ * Une réponse est capturée avec la génération du cache de clients et l'horloge des mutations lues
+ * avant l'appel du service. Elle reste valide tant que la génération n'a pas changé et qu'aucune
+ * mutation n'a touché sa clé depuis : les mutations marquent les clés de l'id, de l'email et de
+ * getAllClients après l'écriture dans le cache de clients.
+ *
+ * La taille totale est bornée en octets ; l'éviction suit l'algorithme CLOCK (seconde chance).
+ */
+@Component
+public class SoapResponseCache {
+    
+    public static final String GET_CLIENT_BY_ID = "getClientById";
+    public static final String GET_CLIENT_BY_EMAIL = "getClientByEmail";
+    public static final String GET_ALL_CLIENTS = "getAllClients";
+    
+    private static final String[] OPERATIONS = {GET_CLIENT_BY_ID, GET_CLIENT_BY_EMAIL, GET_ALL_CLIENTS};
+    
+    // Au-delà, les marques de mutation sont remplacées par un plancher global
+    private static final int MAX_MUTATION_MARKS = 100_000;
+    
+    private final ClientCacheService cacheService;
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Anneau CLOCK : chaque clé y figure au plus une fois
+    private final Queue<String> clock = new ConcurrentLinkedQueue<>();
+    private final Set<String> clockKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final AtomicLong totalBytes = new AtomicLong();
+    
+    // Horloge logique des mutations, dernière mutation par clé et plancher de validité
+    private final AtomicLong mutationClock = new AtomicLong();
+    private final ConcurrentHashMap<String, Long> mutationMarks = new ConcurrentHashMap<>();
+    private volatile long mutationFloor;
+    
+    private final Map<String, Counter> hits = new HashMap<>();
+    private final Map<String, Counter> misses = new HashMap<>();
+    private final Counter evictions;
+    
+    public SoapResponseCache(ClientCacheService cacheService, SoapMetricsService metricsService,
+                             @Value("${soap.response-cache.enabled:true}") boolean enabled,
+                             @Value("${soap.response-cache.max-bytes:67108864}") long maxBytes,
+                             @Value("${soap.response-cache.max-entry-bytes:16777216}") int maxEntryBytes) {
+        this.cacheService = cacheService;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = (int) Math.min(maxEntryBytes, maxBytes);
+        for (String operation : OPERATIONS) {
+            hits.put(operation, metricsService.responseCacheLookups(operation, "hit"));
+            misses.put(operation, metricsService.responseCacheLookups(operation, "miss"));
+        }
+        this.evictions = metricsService.responseCacheEvictions();
+        metricsService.registerGauge("soap_response_cache_bytes",
+            "Size of the serialized SOAP responses held in cache", this, cache -> cache.totalBytes.get());
+        metricsService.registerGauge("soap_response_cache_entries",
+            "Number of serialized SOAP responses held in cache", this, cache -> cache.entries.size());
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Clé de cache d'un appel, ou null si l'opération ou ses paramètres ne sont pas mis en cache
+     */
+    public static String key(String operation, Object parameter) {
+        if (GET_ALL_CLIENTS.equals(operation)) {
+            return GET_ALL_CLIENTS;
+        }
+        if (GET_CLIENT_BY_ID.equals(operation) && parameter instanceof Long) {
+            return idKey((Long) parameter);
+        }
+        if (GET_CLIENT_BY_EMAIL.equals(operation) && parameter instanceof String) {
+            return emailKey((String) parameter);
+        }
+        return null;
+    }
+    
+    private static String idKey(Long id) {
+        return GET_CLIENT_BY_ID + ':' + id;
+    }
+    
+    private static String emailKey(String email) {
+        return GET_CLIENT_BY_EMAIL + ':' + ClientCacheSnapshot.normalizeEmail(email);
+    }
+    
+    /**
+     * Réponse sérialisée valide pour cette clé, ou null
+     */
+    public byte[] get(String operation, String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && !isValid(key, entry.generation, entry.stamp)) {
+            remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.get(operation).increment();
+            return null;
+        }
+        entry.referenced = true;
+        hits.get(operation).increment();
+        return entry.body;
+    }
+    
+    /**
+     * Ouvre la capture d'une réponse ; à appeler avant l'appel du service
+     */
+    public Capture startCapture(String key) {
+        return new Capture(key, cacheService.getGeneration(), mutationClock.get());
+    }
+    
+    /**
+     * Conserve la réponse capturée, sauf si elle est trop grande ou déjà périmée
+     */
+    public void put(Capture capture, byte[] body) {
+        if (body.length > maxEntryBytes || !isValid(capture.key, capture.generation, capture.stamp)) {
+            return;
+        }
+        Entry entry = new Entry(capture.generation, capture.stamp, body);
+        Entry previous = entries.put(capture.key, entry);
+        totalBytes.addAndGet(body.length - (previous != null ? previous.body.length : 0));
+        offerClock(capture.key);
+        evictIfNeeded();
+    }
+    
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+    
+    /**
+     * Invalide les réponses qui dépendent de ce client (par id, par email et liste complète) ;
+     * à appeler après chaque écriture, avec l'état avant et après la mutation
+     */
+    public void invalidateClient(Long id, String email) {
+        if (!enabled) {
+            return;
+        }
+        long mark = mutationClock.incrementAndGet();
+        if (id != null) {
+            mark(idKey(id), mark);
+        }
+        if (email != null) {
+            mark(emailKey(email), mark);
+        }
+        mark(GET_ALL_CLIENTS, mark);
+        
+        if (mutationMarks.size() > MAX_MUTATION_MARKS) {
+            // Le plancher couvre toutes les marques effacées : les réponses antérieures deviennent invalides
+            mutationFloor = mutationClock.get();
+            mutationMarks.clear();
+        }
+    }
+    
+    private void mark(String key, long mark) {
+        mutationMarks.merge(key, mark, Math::max);
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+    
+    /**
+     * Une réponse capturée est valide si la génération n'a pas changé et si aucune mutation de sa clé
+     * n'a été marquée après le début de sa capture
+     */
+    private boolean isValid(String key, long generation, long stamp) {
+        if (generation != cacheService.getGeneration() || stamp < mutationFloor) {
+            return false;
+        }
+        Long mark = mutationMarks.get(key);
+        return mark == null || stamp >= mark;
+    }
+    
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            totalBytes.addAndGet(-entry.body.length);
+        }
+    }
+    
+    /**
+     * Libère de la place en parcourant les clés dans l'ordre d'insertion : une entrée consultée depuis
+     * le dernier passage a une seconde chance, les autres et les entrées périmées sont retirées
+     */
+    private void evictIfNeeded() {
+        // Les clés des entrées invalidées restent dans l'anneau jusqu'à leur passage : purge si elles dominent
+        boolean purge = clockSize.get() > 2 * entries.size() + 1024;
+        if ((totalBytes.get() <= maxBytes && !purge) || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            if (purge) {
+                for (int i = clockSize.get(); i > 0; i--) {
+                    String key = pollClock();
+                    if (key == null) {
+                        break;
+                    }
+                    if (entries.containsKey(key)) {
+                        offerClock(key);
+                    }
+                }
+            }
+            String key;
+            while (totalBytes.get() > maxBytes && (key = pollClock()) != null) {
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    continue;
+                }
+                if (!isValid(key, entry.generation, entry.stamp)) {
+                    remove(key, entry);
+                } else if (entry.referenced) {
+                    entry.referenced = false;
+                    offerClock(key);
+                } else {
+                    remove(key, entry);
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+    
+    private void offerClock(String key) {
+        if (clockKeys.add(key)) {
+            clock.offer(key);
+            clockSize.incrementAndGet();
+        }
+    }
+    
+    private String pollClock() {
+        String key = clock.poll();
+        if (key != null) {
+            clockKeys.remove(key);
+            clockSize.decrementAndGet();
+        }
+        return key;
+    }
+    
+    /**
+     * Réponse en cours de capture : clé, génération et horloge des mutations lues avant l'appel
+     */
+    public static final class Capture {
+        
+        private final String key;
+        private final long generation;
+        private final long stamp;
+        
+        Capture(String key, long generation, long stamp) {
+            this.key = key;
+            this.generation = generation;
+            this.stamp = stamp;
+        }
+    }
+    
+    private static final class Entry {
+        
+        final long generation;
+        final long stamp;
+        final byte[] body;
+        volatile boolean referenced;
+        
+        Entry(long generation, long stamp, byte[] body) {
+            this.generation = generation;
+            this.stamp = stamp;
+            this.body = body;
+        }
+    }
+}
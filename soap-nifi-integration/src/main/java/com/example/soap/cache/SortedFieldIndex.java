@@ -0,0 +1,120 @@
+package com.example.soap.cache;
+
+import java.util.Arrays;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Index secondaire trié d'un champ : valeur normalisée -> liste triée d'ordinaux.
+ * Répond aux critères d'égalité, de préfixe et d'intervalle par un parcours de plage de clés.
+ * Comme pour {@link NGramIndex}, une copie partage les listes jusqu'à leur première modification.
+ * Non thread-safe : l'appelant assure la synchronisation.
+ */
+final class SortedFieldIndex {
+    
+    private final TreeMap<String, IntPostingList> postings = new TreeMap<>();
+    
+    // Propriétaire des listes modifiables en place, renouvelé à chaque copie
+    private Object owner = new Object();
+    
+    void add(int ordinal, String value) {
+        if (value != null) {
+            writable(ClientQuery.normalize(value)).add(ordinal);
+        }
+    }
+    
+    void remove(int ordinal, String value) {
+        if (value == null) {
+            return;
+        }
+        String key = ClientQuery.normalize(value);
+        IntPostingList list = postings.get(key);
+        if (list == null || !list.contains(ordinal)) {
+            return;
+        }
+        if (list.size() == 1) {
+            postings.remove(key);
+        } else {
+            writable(key).remove(ordinal);
+        }
+    }
+    
+    private IntPostingList writable(String key) {
+        IntPostingList list = postings.get(key);
+        if (list == null || !list.isOwnedBy(owner)) {
+            list = list == null ? new IntPostingList(owner) : list.copyFor(owner);
+            postings.put(key, list);
+        }
+        return list;
+    }
+    
+    /**
+     * Copie pour la génération suivante, en temps proportionnel au nombre de valeurs distinctes
+     */
+    SortedFieldIndex copy() {
+        SortedFieldIndex copy = new SortedFieldIndex();
+        copy.postings.putAll(postings);
+        owner = new Object();
+        return copy;
+    }
+    
+    void trim() {
+        for (IntPostingList list : postings.values()) {
+            list.trim();
+        }
+    }
+    
+    /**
+     * Nombre d'ordinaux correspondant au critère ; le décompte s'arrête dès qu'il dépasse {@code cap}
+     */
+    int count(ClientQuery.Term term, int cap) {
+        int count = 0;
+        for (IntPostingList list : range(term).values()) {
+            count += list.size();
+            if (count > cap) {
+                break;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Ordinaux (triés) correspondant au critère ; un ordinal n'a qu'une valeur par champ, donc pas de doublon
+     */
+    int[] ordinals(ClientQuery.Term term) {
+        NavigableMap<String, IntPostingList> range = range(term);
+        if (range.size() == 1) {
+            return range.firstEntry().getValue().toArray();
+        }
+        int size = 0;
+        for (IntPostingList list : range.values()) {
+            size += list.size();
+        }
+        int[] ordinals = new int[size];
+        int count = 0;
+        for (IntPostingList list : range.values()) {
+            count = list.copyInto(ordinals, count);
+        }
+        Arrays.sort(ordinals);
+        return ordinals;
+    }
+    
+    private NavigableMap<String, IntPostingList> range(ClientQuery.Term term) {
+        switch (term.operator) {
+            case EQUALS:
+                return postings.subMap(term.value, true, term.value, true);
+            case PREFIX:
+                return postings.subMap(term.value, true, term.value + Character.MAX_VALUE, true);
+            default:
+                if (term.from != null && term.to != null) {
+                    return term.from.compareTo(term.to) > 0
+                        ? new TreeMap<>()
+                        : postings.subMap(term.from, true, term.to, true);
+                }
+                if (term.from != null) {
+                    return postings.tailMap(term.from, true);
+                }
+                return term.to != null ? postings.headMap(term.to, true) : postings;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Stockage hiérarchisé : tous les clients sont écrits dans le stockage projeté hors tas,
+ * les plus demandés sont en plus conservés en objets dans un niveau chaud borné.
+ * Une lecture absente du niveau chaud est servie par le stockage projeté puis proposée au niveau chaud.
+ * Les parcours lisent le stockage projeté sans toucher au niveau chaud.
+ */
+final class TieredClientStore implements ClientStore {
+    
+    private final TieredStorage stats;
+    private final MappedClientStore mapped;
+    private final HotClientTier hot;
+    
+    TieredClientStore(int expectedSize, TieredStorage storage) {
+        this.stats = storage;
+        this.mapped = new MappedClientStore(expectedSize, storage.getDirectory());
+        this.hot = new HotClientTier(storage.getHotCapacity(), storage);
+    }
+    
+    private TieredClientStore(TieredClientStore source) {
+        this.stats = source.stats;
+        this.mapped = source.mapped.copy();
+        this.hot = source.hot.copy();
+    }
+    
+    @Override
+    public Client get(long id) {
+        Client client = hot.get(id);
+        if (client != null) {
+            stats.recordHot(true);
+            return client;
+        }
+        stats.recordHot(false);
+        long writeStamp = hot.writeStamp();
+        client = mapped.get(id);
+        stats.recordMapped(client != null);
+        if (client != null) {
+            hot.admit(id, client, writeStamp);
+        }
+        return client;
+    }
+    
+    /**
+     * L'email est résolu par l'index du stockage projeté, le client par les deux niveaux
+     */
+    @Override
+    public Client getByEmail(String normalizedEmail) {
+        Long id = mapped.idByEmail(normalizedEmail);
+        if (id == null) {
+            return null;
+        }
+        Client client = get(id);
+        if (client != null && CompactClientStore.equalsLowerCase(client.getEmail(), normalizedEmail)) {
+            return client;
+        }
+        // Email modifié entre les deux lectures
+        return mapped.getByEmail(normalizedEmail);
+    }
+    
+    @Override
+    public Client put(Client client) {
+        Client previous = mapped.put(client);
+        hot.update(client.getId(), client);
+        return previous;
+    }
+    
+    @Override
+    public Client remove(long id) {
+        Client removed = mapped.remove(id);
+        hot.invalidate(id);
+        return removed;
+    }
+    
+    @Override
+    public int size() {
+        return mapped.size();
+    }
+    
+    @Override
+    public void forEach(Consumer<Client> action) {
+        mapped.forEach(action);
+    }
+    
+    @Override
+    public void forEachId(LongConsumer action) {
+        mapped.forEachId(action);
+    }
+    
+    @Override
+    public void trim() {
+        mapped.trim();
+    }
+    
+    /**
+     * Le niveau chaud est recopié avec ses fréquences : un rechargement incrémental ne le refroidit pas
+     */
+    @Override
+    public ClientStore copy() {
+        return new TieredClientStore(this);
+    }
+    
+    int hotSize() {
+        return hot.size();
+    }
+    
+    long mappedBytes() {
+        return mapped.mappedBytes();
+    }
+}
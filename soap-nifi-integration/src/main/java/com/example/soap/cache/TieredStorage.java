@@ -0,0 +1,87 @@
+package com.example.soap.cache;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Réglages et compteurs du stockage hiérarchisé, partagés par toutes les générations du cache
+ * pour que les métriques restent continues d'un rechargement complet à l'autre
+ */
+final class TieredStorage {
+    
+    private final int hotCapacity;
+    private final Path directory;
+    
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder hotMisses = new LongAdder();
+    private final LongAdder mappedHits = new LongAdder();
+    private final LongAdder mappedMisses = new LongAdder();
+    
+    // Sorties du niveau chaud : victime remplacée par un candidat plus fréquent, ou candidat refusé
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    
+    TieredStorage(int hotCapacity, Path directory) {
+        if (hotCapacity < 2) {
+            throw new IllegalArgumentException("Hot tier capacity must be at least 2: " + hotCapacity);
+        }
+        this.hotCapacity = hotCapacity;
+        this.directory = directory;
+    }
+    
+    int getHotCapacity() {
+        return hotCapacity;
+    }
+    
+    Path getDirectory() {
+        return directory;
+    }
+    
+    void recordHot(boolean hit) {
+        (hit ? hotHits : hotMisses).increment();
+    }
+    
+    void recordMapped(boolean hit) {
+        (hit ? mappedHits : mappedMisses).increment();
+    }
+    
+    void recordEviction() {
+        evictions.increment();
+    }
+    
+    void recordRejection() {
+        rejections.increment();
+    }
+    
+    long hotHits() {
+        return hotHits.sum();
+    }
+    
+    long hotMisses() {
+        return hotMisses.sum();
+    }
+    
+    long mappedHits() {
+        return mappedHits.sum();
+    }
+    
+    long mappedMisses() {
+        return mappedMisses.sum();
+    }
+    
+    long evictions() {
+        return evictions.sum();
+    }
+    
+    long rejections() {
+        return rejections.sum();
+    }
+    
+    /**
+     * Part des lectures servies par un niveau parmi celles qui lui sont parvenues, 0 sans lecture
+     */
+    static double hitRatio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
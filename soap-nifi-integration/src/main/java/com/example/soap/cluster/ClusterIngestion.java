@@ -0,0 +1,61 @@
+package com.example.soap.cluster;
+
+import com.example.soap.model.Client;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Lecture d'un export NiFi en mode cluster : chaque instance lit l'export complet mais ne garde
+ * que ses clients, et relève au passage les routes des emails dont elle a la charge.
+ * Utilisable depuis plusieurs threads (partitions lues en parallèle).
+ */
+public final class ClusterIngestion {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClusterIngestion.class);
+    
+    private final ClusterMembership membership;
+    private final Map<String, Long> emailRoutes = new ConcurrentHashMap<>();
+    private final LongAdder foreign = new LongAdder();
+    
+    ClusterIngestion(ClusterMembership membership) {
+        this.membership = membership;
+    }
+    
+    /**
+     * Enveloppe le consommateur des clients lus ; inchangé hors mode cluster
+     */
+    public Consumer<Client> filter(Consumer<Client> sink) {
+        if (!membership.isEnabled()) {
+            return sink;
+        }
+        return client -> {
+            Long id = client.getId();
+            if (id != null && client.getEmail() != null && membership.ownsEmail(client.getEmail())) {
+                emailRoutes.put(ClusterMembership.normalizeEmail(client.getEmail()), id);
+            }
+            // Un client sans id est transmis pour être compté comme ignoré par le builder
+            if (id == null || membership.owns(id)) {
+                sink.accept(client);
+            } else {
+                foreign.increment();
+            }
+        };
+    }
+    
+    /**
+     * Publie la table de routage email une fois l'export chargé dans le cache
+     */
+    public void complete() {
+        if (!membership.isEnabled()) {
+            return;
+        }
+        membership.publishEmailRoutes(emailRoutes);
+        logger.info("Cluster shard loaded: {} clients left to other nodes, {} email routes held by {}",
+            foreign.sum(), emailRoutes.size(), membership.getSelf());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.soap.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Topologie du mode cluster (cluster.enabled) : liste des instances, instance locale
+ * et attribution des clients par hachage cohérent de leur id.
+ * Tient aussi la table de routage secondaire email -> id pour les emails dont le hachage
+ * revient à cette instance ; elle est reconstruite à chaque export NiFi.
+ */
+@Component
+public class ClusterMembership {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMembership.class);
+    
+    private final boolean enabled;
+    private final String self;
+    private final List<String> nodes;
+    private final ConsistentHashRing ring;
+    
+    private volatile Map<String, Long> emailRoutes = new ConcurrentHashMap<>();
+    
+    public ClusterMembership(@Value("${cluster.enabled:false}") boolean enabled,
+                             @Value("${cluster.nodes:}") String nodes,
+                             @Value("${cluster.self:}") String self,
+                             @Value("${cluster.virtual-nodes:128}") int virtualNodes) {
+        this.enabled = enabled;
+        this.self = normalizeNode(self);
+        List<String> nodeList = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            String normalized = normalizeNode(node);
+            if (!normalized.isEmpty() && !nodeList.contains(normalized)) {
+                nodeList.add(normalized);
+            }
+        }
+        this.nodes = Collections.unmodifiableList(nodeList);
+        
+        if (enabled) {
+            if (!nodeList.contains(this.self)) {
+                throw new IllegalArgumentException("cluster.self (" + self + ") must be one of cluster.nodes: " + nodes);
+            }
+            if (virtualNodes <= 0) {
+                throw new IllegalArgumentException("cluster.virtual-nodes must be positive: " + virtualNodes);
+            }
+            this.ring = new ConsistentHashRing(nodeList, virtualNodes);
+            logger.info("Cluster mode: node {} of {}, {} virtual nodes each", this.self, nodeList, virtualNodes);
+        } else {
+            this.ring = null;
+        }
+    }
+    
+    private static String normalizeNode(String node) {
+        String trimmed = node.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public String getSelf() {
+        return self;
+    }
+    
+    /**
+     * Toutes les instances, dans l'ordre de cluster.nodes (identique sur chaque instance)
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+    
+    public boolean isSelf(String node) {
+        return self.equals(node);
+    }
+    
+    /**
+     * Instance propriétaire d'un client ; l'instance locale hors mode cluster
+     */
+    public String ownerOf(long id) {
+        return enabled ? ring.ownerOf(ConsistentHashRing.hash(id)) : self;
+    }
+    
+    public boolean owns(long id) {
+        return !enabled || self.equals(ownerOf(id));
+    }
+    
+    /**
+     * Instance qui tient la route d'un email
+     */
+    public String emailOwnerOf(String email) {
+        return enabled ? ring.ownerOf(ConsistentHashRing.hash(normalizeEmail(email))) : self;
+    }
+    
+    boolean ownsEmail(String email) {
+        return !enabled || self.equals(emailOwnerOf(email));
+    }
+    
+    /**
+     * Id du client routé pour cet email, ou null si la route est inconnue
+     */
+    public Long routeEmail(String email) {
+        return email == null ? null : emailRoutes.get(normalizeEmail(email));
+    }
+    
+    /**
+     * Enregistre la route d'un email créé ou modifié par une mutation SOAP
+     */
+    public void putEmailRoute(String email, Long id) {
+        if (email != null && id != null && ownsEmail(email)) {
+            emailRoutes.put(normalizeEmail(email), id);
+        }
+    }
+    
+    int getEmailRouteCount() {
+        return emailRoutes.size();
+    }
+    
+    void publishEmailRoutes(Map<String, Long> routes) {
+        emailRoutes = routes;
+    }
+    
+    /**
+     * Démarre l'ingestion d'un export : filtre les clients des autres instances et collecte les routes email
+     */
+    public ClusterIngestion newIngestion() {
+        return new ClusterIngestion(this);
+    }
+    
+    /**
+     * Même normalisation que l'index email du cache
+     */
+    static String normalizeEmail(String email) {
+        return email.toLowerCase();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.soap.cluster;
+
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.jws.WebService;
+import java.util.List;
+
+/**
+ * Opérations internes entre instances du cluster, publiées sous /internal/ClusterPeer
+ */
+@WebService
+public interface ClusterPeerService {
+    
+    @WebMethod
+    Long routeEmail(@WebParam(name = "email") String email);
+    
+    @WebMethod
+    void putEmailRoutes(@WebParam(name = "email") List<String> emails, @WebParam(name = "id") List<Long> ids);
+    
+}
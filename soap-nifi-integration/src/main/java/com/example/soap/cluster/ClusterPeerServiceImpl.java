@@ -0,0 +1,30 @@
+package com.example.soap.cluster;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.jws.WebService;
+import java.util.List;
+
+@Service
+@WebService(endpointInterface = "com.example.soap.cluster.ClusterPeerService")
+public class ClusterPeerServiceImpl implements ClusterPeerService {
+    
+    @Autowired
+    private ClusterMembership membership;
+    
+    @Override
+    public Long routeEmail(String email) {
+        return membership.routeEmail(email);
+    }
+    
+    @Override
+    public void putEmailRoutes(List<String> emails, List<Long> ids) {
+        if (emails == null || ids == null) {
+            return;
+        }
+        for (int i = 0; i < Math.min(emails.size(), ids.size()); i++) {
+            membership.putEmailRoute(emails.get(i), ids.get(i));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.soap.cluster;
+
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.service.ClientSoapService;
+import com.example.soap.service.ClientSoapServiceImpl;
+import io.micrometer.core.instrument.Timer;
+import org.apache.cxf.Bus;
+import org.apache.cxf.frontend.ClientProxy;
+import org.apache.cxf.jaxws.JaxWsProxyFactoryBean;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Accès aux services des instances du cluster : l'instance locale est appelée directement,
+ * les autres par des clients SOAP vers leurs endpoints internes, qui ne relaient jamais
+ * les appels (pas de boucle entre instances). Les appels diffusés partent en parallèle.
+ */
+@Component
+public class ClusterPeers implements DisposableBean {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClusterPeers.class);
+    
+    private final ClusterMembership membership;
+    private final Map<String, ClientSoapService> services = new HashMap<>();
+    private final Map<String, ClusterPeerService> peerServices = new HashMap<>();
+    
+    // Timers des appels par instance, résolus avec la liste des instances : succès puis erreur
+    private final Map<String, Timer[]> callTimers = new HashMap<>();
+    private final ExecutorService scatterExecutor;
+    
+    public ClusterPeers(ClusterMembership membership, SoapMetricsService metricsService, Bus bus,
+                        ClientSoapServiceImpl localService, ClusterPeerServiceImpl localPeerService,
+                        @Value("${cxf.path:/services}") String cxfPath,
+                        @Value("${cluster.timeout-ms:5000}") long timeoutMillis,
+                        @Value("${cluster.scatter-threads:16}") int scatterThreads) {
+        this.membership = membership;
+        services.put(membership.getSelf(), localService);
+        peerServices.put(membership.getSelf(), localPeerService);
+        if (membership.isEnabled()) {
+            for (String node : membership.getNodes()) {
+                if (!membership.isSelf(node)) {
+                    String base = node + cxfPath + "/internal/";
+                    services.put(node, proxy(bus, ClientSoapService.class, base + "ClientService", timeoutMillis));
+                    peerServices.put(node, proxy(bus, ClusterPeerService.class, base + "ClusterPeer", timeoutMillis));
+                }
+            }
+            AtomicInteger threadCount = new AtomicInteger();
+            this.scatterExecutor = Executors.newFixedThreadPool(scatterThreads, runnable -> {
+                Thread thread = new Thread(runnable, "cluster-scatter-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.scatterExecutor = null;
+        }
+        for (String node : services.keySet()) {
+            callTimers.put(node, new Timer[] {
+                metricsService.clusterCallTimer(node, "success"),
+                metricsService.clusterCallTimer(node, "error")
+            });
+        }
+    }
+    
+    private static <T> T proxy(Bus bus, Class<T> serviceClass, String address, long timeoutMillis) {
+        JaxWsProxyFactoryBean factory = new JaxWsProxyFactoryBean();
+        factory.setBus(bus);
+        factory.setServiceClass(serviceClass);
+        factory.setAddress(address);
+        T proxy = serviceClass.cast(factory.create());
+        
+        HTTPClientPolicy policy = new HTTPClientPolicy();
+        policy.setConnectionTimeout(timeoutMillis);
+        policy.setReceiveTimeout(timeoutMillis);
+        ((HTTPConduit) ClientProxy.getClient(proxy).getConduit()).setClient(policy);
+        logger.info("Cluster peer endpoint: {}", address);
+        return proxy;
+    }
+    
+    @Override
+    public void destroy() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Appelle le service client d'une instance ; une erreur distante est remontée avec le nom de l'instance
+     */
+    public <T> T call(String node, Function<ClientSoapService, T> call) {
+        return invoke(node, services.get(node), call);
+    }
+    
+    /**
+     * Appelle les opérations internes d'une instance
+     */
+    public <T> T callPeer(String node, Function<ClusterPeerService, T> call) {
+        return invoke(node, peerServices.get(node), call);
+    }
+    
+    /**
+     * Appelle chaque instance listée en parallèle, l'instance locale sur le thread courant ;
+     * les résultats sont rendus dans l'ordre des instances. Échoue si une instance échoue.
+     */
+    public <T> List<T> scatter(List<String> nodes, NodeCall<T> call) {
+        List<Future<T>> remote = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            remote.add(membership.isSelf(node) ? null
+                : scatterExecutor.submit(() -> call(node, service -> call.apply(node, service))));
+        }
+        List<T> results = new ArrayList<>(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            String node = nodes.get(i);
+            results.add(remote.get(i) == null
+                ? call(node, service -> call.apply(node, service))
+                : join(node, remote.get(i)));
+        }
+        return results;
+    }
+    
+    /**
+     * Appelle toutes les instances du cluster
+     */
+    public <T> List<T> scatter(Function<ClientSoapService, T> call) {
+        return scatter(membership.getNodes(), (node, service) -> call.apply(service));
+    }
+    
+    private <S, T> T invoke(String node, S service, Function<S, T> call) {
+        if (service == null) {
+            throw new IllegalArgumentException("Unknown cluster node: " + node);
+        }
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.apply(service);
+            success = true;
+            return result;
+        } catch (RuntimeException e) {
+            if (membership.isSelf(node)) {
+                throw e;
+            }
+            throw new IllegalStateException("Cluster node " + node + " failed: " + e.getMessage(), e);
+        } finally {
+            callTimers.get(node)[success ? 0 : 1].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    private static <T> T join(String node, Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for cluster node " + node, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Cluster node " + node + " failed: " + cause, cause);
+        }
+    }
+    
+    /**
+     * Appel adressé à une instance donnée
+     */
+    @FunctionalInterface
+    public interface NodeCall<T> {
+        T apply(String node, ClientSoapService service);
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.soap.cluster;
+
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientBatchResult;
+import com.example.soap.model.ClientPage;
+import com.example.soap.model.ClientSearchCriteria;
+import com.example.soap.service.ClientExportDataHandler;
+import com.example.soap.service.ClientSoapService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.activation.DataHandler;
+import javax.jws.WebService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Service SOAP public en mode cluster : relaie chaque appel vers l'instance propriétaire
+ * du client, et diffuse les lectures globales (getAllClients, searchClients) à toutes les instances.
+ * getClientByEmail passe par la table de routage de l'instance chargée de l'email, puis
+ * interroge toutes les instances si la route est absente ou périmée.
+ */
+@Service
+@WebService(endpointInterface = "com.example.soap.service.ClientSoapService")
+public class ClusterRoutingService implements ClientSoapService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRoutingService.class);
+    
+    @Autowired
+    private ClusterMembership membership;
+    
+    @Autowired
+    private ClusterPeers peers;
+    
+    @Autowired
+    private ClientCacheService cacheService;
+    
+    // Dernier id temporaire attribué par cette instance
+    private final AtomicLong lastTemporaryId = new AtomicLong();
+    
+    @Value("${soap.page.max-size:1000}")
+    private int maxPageSize;
+    
+    @Value("${soap.search.max-results:1000}")
+    private int maxSearchResults;
+    
+    @Override
+    public List<Client> getAllClients() {
+        return concat(peers.scatter(ClientSoapService::getAllClients));
+    }
+    
+    @Override
+    public Client getClientById(Long id) {
+        if (id == null) {
+            return null;
+        }
+        return peers.call(membership.ownerOf(id), service -> service.getClientById(id));
+    }
+    
+    @Override
+    public Client getClientByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        Long id = peers.callPeer(membership.emailOwnerOf(email), peer -> peer.routeEmail(email));
+        if (id != null) {
+            Client client = getClientById(id);
+            if (client != null && email.equalsIgnoreCase(client.getEmail())) {
+                return client;
+            }
+        }
+        // Route absente (mutation rejouée depuis le journal) ou périmée (email modifié)
+        for (Client client : peers.scatter(service -> service.getClientByEmail(email))) {
+            if (client != null && email.equalsIgnoreCase(client.getEmail())) {
+                updateEmailRoutes(Collections.singletonList(client));
+                return client;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public List<Client> searchClients(String ville, String nom) {
+        return concat(peers.scatter(service -> service.searchClients(ville, nom)));
+    }
+    
+    /**
+     * Chaque instance rend ses meilleurs résultats, triés ; leur fusion est tronquée à la limite demandée
+     */
+    @Override
+    public List<Client> findClients(ClientSearchCriteria criteria) {
+        ClientSearchCriteria query = criteria != null ? criteria : new ClientSearchCriteria();
+        int limit = query.getLimit() <= 0 ? maxSearchResults : Math.min(query.getLimit(), maxSearchResults);
+        List<Client> merged = concat(peers.scatter(service -> service.findClients(query)));
+        Comparator<Client> order = ClientCacheService.resultOrder(query);
+        merged.sort(order);
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+    
+    @Override
+    public Client createClient(Client client) {
+        if (client.getId() == null) {
+            client.setId(nextTemporaryId());
+        }
+        Client created = peers.call(membership.ownerOf(client.getId()), service -> service.createClient(client));
+        updateEmailRoutes(Collections.singletonList(created));
+        return created;
+    }
+    
+    @Override
+    public Client updateClient(Long id, Client client) {
+        if (id == null) {
+            return null;
+        }
+        Client updated = peers.call(membership.ownerOf(id), service -> service.updateClient(id, client));
+        if (updated != null) {
+            updateEmailRoutes(Collections.singletonList(updated));
+        }
+        return updated;
+    }
+    
+    @Override
+    public boolean deleteClient(Long id) {
+        if (id == null) {
+            return false;
+        }
+        return peers.call(membership.ownerOf(id), service -> service.deleteClient(id));
+    }
+    
+    @Override
+    public List<ClientBatchResult> getClientsByIds(List<Long> ids) {
+        return routeBatch(nonNull(ids), id -> id,
+            id -> ClientBatchResult.failure(null, "Client not found"), ClientSoapService::getClientsByIds);
+    }
+    
+    @Override
+    public List<ClientBatchResult> createClients(List<Client> clients) {
+        for (Client client : nonNull(clients)) {
+            if (client != null && client.getId() == null) {
+                client.setId(nextTemporaryId());
+            }
+        }
+        List<ClientBatchResult> results = routeBatch(nonNull(clients), client -> client == null ? null : client.getId(),
+            client -> ClientBatchResult.failure(null, "Missing client"), ClientSoapService::createClients);
+        updateEmailRoutes(successfulClients(results));
+        return results;
+    }
+    
+    @Override
+    public List<ClientBatchResult> updateClients(List<Client> clients) {
+        List<ClientBatchResult> results = routeBatch(nonNull(clients), client -> client == null ? null : client.getId(),
+            client -> ClientBatchResult.failure(null, "Missing client id"), ClientSoapService::updateClients);
+        updateEmailRoutes(successfulClients(results));
+        return results;
+    }
+    
+    @Override
+    public List<ClientBatchResult> deleteClients(List<Long> ids) {
+        return routeBatch(nonNull(ids), id -> id,
+            id -> ClientBatchResult.failure(null, "Client not found"), ClientSoapService::deleteClients);
+    }
+    
+    /**
+     * Pagination instance par instance : le curseur {@code <rang de l'instance>:<curseur local>}
+     * reprend sur l'instance en cours, puis passe à la suivante quand elle est épuisée.
+     * La génération renvoyée est celle de la dernière instance lue.
+     */
+    @Override
+    public ClientPage getClientsPage(String cursor, int limit) {
+        int pageSize = limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
+        List<String> nodes = membership.getNodes();
+        int nodeIndex = 0;
+        String nodeCursor = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            int separator = cursor.indexOf(':');
+            try {
+                nodeIndex = Integer.parseInt(cursor.substring(0, Math.max(0, separator)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+            if (nodeIndex < 0 || nodeIndex >= nodes.size()) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            nodeCursor = cursor.substring(separator + 1);
+        }
+        
+        List<Client> clients = new ArrayList<>(pageSize);
+        long generation = 0L;
+        while (nodeIndex < nodes.size() && clients.size() < pageSize) {
+            String from = nodeCursor;
+            int remaining = pageSize - clients.size();
+            ClientPage page = peers.call(nodes.get(nodeIndex), service -> service.getClientsPage(from, remaining));
+            clients.addAll(page.getClients());
+            generation = page.getGeneration();
+            if (page.getNextCursor() == null) {
+                nodeIndex++;
+                nodeCursor = null;
+            } else {
+                nodeCursor = page.getNextCursor();
+            }
+        }
+        String nextCursor = nodeIndex < nodes.size() ? nodeIndex + ":" + (nodeCursor != null ? nodeCursor : "") : null;
+        return new ClientPage(clients, nextCursor, generation);
+    }
+    
+    /**
+     * Export de toutes les instances : le cache local est parcouru directement,
+     * les autres instances page par page pendant l'écriture de la pièce jointe
+     */
+    @Override
+    public DataHandler exportClients() {
+        return new ClientExportDataHandler(cacheService::getGeneration, this::forEachClusterClient);
+    }
+    
+    private void forEachClusterClient(Consumer<Client> action) {
+        for (String node : membership.getNodes()) {
+            if (membership.isSelf(node)) {
+                cacheService.forEachClient(action);
+                continue;
+            }
+            String cursor = null;
+            do {
+                String from = cursor;
+                ClientPage page = peers.call(node, service -> service.getClientsPage(from, maxPageSize));
+                page.getClients().forEach(action);
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        }
+    }
+    
+    /**
+     * Regroupe un lot par instance propriétaire, envoie les sous-lots en parallèle et
+     * remet les résultats dans l'ordre du lot ; un élément sans id est rejeté sans appel
+     */
+    private <T> List<ClientBatchResult> routeBatch(List<T> batch, Function<T, Long> idOf,
+            Function<T, ClientBatchResult> missingId, BiFunction<ClientSoapService, List<T>, List<ClientBatchResult>> call) {
+        ClientBatchResult[] results = new ClientBatchResult[batch.size()];
+        Map<String, List<Integer>> positionsByNode = new LinkedHashMap<>();
+        Map<String, List<T>> itemsByNode = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            T item = batch.get(i);
+            Long id = idOf.apply(item);
+            if (id == null) {
+                results[i] = missingId.apply(item);
+                continue;
+            }
+            String owner = membership.ownerOf(id);
+            positionsByNode.computeIfAbsent(owner, key -> new ArrayList<>()).add(i);
+            itemsByNode.computeIfAbsent(owner, key -> new ArrayList<>()).add(item);
+        }
+        
+        List<String> owners = new ArrayList<>(positionsByNode.keySet());
+        List<List<ClientBatchResult>> nodeResults = peers.scatter(owners,
+            (node, service) -> call.apply(service, itemsByNode.get(node)));
+        for (int n = 0; n < owners.size(); n++) {
+            List<Integer> positions = positionsByNode.get(owners.get(n));
+            List<ClientBatchResult> partial = nodeResults.get(n);
+            for (int i = 0; i < positions.size(); i++) {
+                results[positions.get(i)] = partial.get(i);
+            }
+        }
+        return Arrays.asList(results);
+    }
+    
+    /**
+     * Transmet les routes des emails créés ou modifiés aux instances qui les tiennent ;
+     * une route manquée n'est qu'un détour par la diffusion, l'échec est seulement journalisé
+     */
+    private void updateEmailRoutes(List<Client> clients) {
+        Map<String, List<Client>> byEmailOwner = new LinkedHashMap<>();
+        for (Client client : clients) {
+            if (client != null && client.getEmail() != null && client.getId() != null) {
+                byEmailOwner.computeIfAbsent(membership.emailOwnerOf(client.getEmail()), key -> new ArrayList<>()).add(client);
+            }
+        }
+        for (Map.Entry<String, List<Client>> entry : byEmailOwner.entrySet()) {
+            List<String> emails = new ArrayList<>(entry.getValue().size());
+            List<Long> ids = new ArrayList<>(entry.getValue().size());
+            for (Client client : entry.getValue()) {
+                emails.add(client.getEmail());
+                ids.add(client.getId());
+            }
+            try {
+                peers.callPeer(entry.getKey(), peer -> {
+                    peer.putEmailRoutes(emails, ids);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                logger.warn("Cannot update {} email routes: {}", emails.size(), e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Id temporaire basé sur l'horloge, dont le reste modulo le nombre d'instances est le rang
+     * de cette instance : deux instances ne peuvent pas attribuer le même id
+     */
+    private long nextTemporaryId() {
+        int nodeCount = membership.getNodes().size();
+        int rank = membership.getNodes().indexOf(membership.getSelf());
+        long now = System.currentTimeMillis();
+        return lastTemporaryId.accumulateAndGet(now, (last, candidate) -> {
+            long next = Math.max(last + 1, candidate);
+            return next + Math.floorMod(rank - next, nodeCount);
+        });
+    }
+    
+    private static List<Client> successfulClients(List<ClientBatchResult> results) {
+        List<Client> clients = new ArrayList<>(results.size());
+        for (ClientBatchResult result : results) {
+            if (result.isSuccess()) {
+                clients.add(result.getClient());
+            }
+        }
+        return clients;
+    }
+    
+    private static List<Client> concat(List<List<Client>> parts) {
+        int size = 0;
+        for (List<Client> part : parts) {
+            size += part != null ? part.size() : 0;
+        }
+        List<Client> clients = new ArrayList<>(size);
+        for (List<Client> part : parts) {
+            if (part != null) {
+                clients.addAll(part);
+            }
+        }
+        return clients;
+    }
+    
+    private static <T> List<T> nonNull(List<T> items) {
+        return items != null ? items : Collections.emptyList();
+    }
+}
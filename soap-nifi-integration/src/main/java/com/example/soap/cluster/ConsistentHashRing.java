@@ -0,0 +1,75 @@
+package com.example.soap.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Anneau de hachage cohérent : chaque instance y place {@code virtualNodes} points,
+ * une clé appartient à l'instance du premier point qui la suit sur l'anneau.
+ * Ajouter ou retirer une instance ne déplace que les clés de ses propres plages.
+ */
+final class ConsistentHashRing {
+    
+    private final long[] points;
+    private final String[] owners;
+    
+    ConsistentHashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one node");
+        }
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // En cas de collision, le premier point placé est conservé
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            points[index] = point.getKey();
+            owners[index] = point.getValue();
+            index++;
+        }
+    }
+    
+    /**
+     * Instance propriétaire d'une clé déjà hachée
+     */
+    String ownerOf(long keyHash) {
+        int index = Arrays.binarySearch(points, keyHash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+    
+    /**
+     * Mélange final de MurmurHash3 : des ids consécutifs sont répartis sur tout l'anneau
+     */
+    static long hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    /**
+     * FNV-1a 64 bits sur les octets UTF-8, suivi du même mélange final
+     */
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+}
@@ -1,14 +1,33 @@
 package com.example.soap.config;
 
+import com.example.soap.cache.SoapResponseCache;
+import com.example.soap.cluster.ClusterMembership;
+import com.example.soap.cluster.ClusterPeerServiceImpl;
+import com.example.soap.cluster.ClusterRoutingService;
+import com.example.soap.interceptor.ConcurrencyLimitInterceptor;
+import com.example.soap.interceptor.FastInfosetThresholdOutInterceptor;
+import com.example.soap.interceptor.MtomOperationInterceptor;
+import com.example.soap.interceptor.PhaseTimingInterceptor;
+import com.example.soap.interceptor.ResponseCacheInterceptor;
+import com.example.soap.interceptor.ResponseSizeInterceptor;
+import com.example.soap.interceptor.SlowRequestInterceptor;
+import com.example.soap.invocation.InvocationPools;
+import com.example.soap.metrics.SlowRequestRecorder;
+import com.example.soap.metrics.SoapMetricsService;
 import com.example.soap.service.ClientSoapService;
 import com.example.soap.service.ClientSoapServiceImpl;
 import org.apache.cxf.Bus;
+import org.apache.cxf.interceptor.FIStaxInInterceptor;
 import org.apache.cxf.jaxws.EndpointImpl;
+import org.apache.cxf.transport.common.gzip.GZIPFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import javax.xml.ws.Endpoint;
+import java.util.Collections;
 
 @Configuration
 public class CxfConfig {
@@ -19,10 +38,129 @@ public class CxfConfig {
     @Autowired
     private ClientSoapServiceImpl clientSoapService;
     
+    @Autowired
+    private SoapMetricsService metricsService;
+    
+    @Autowired
+    private SoapResponseCache responseCache;
+    
+    @Autowired
+    private InvocationPools invocationPools;
+    
+    @Autowired
+    private SlowRequestRecorder slowRequestRecorder;
+    
+    @Autowired
+    private ClusterMembership clusterMembership;
+    
+    @Autowired
+    private ClusterRoutingService clusterRoutingService;
+    
+    @Autowired
+    private ClusterPeerServiceImpl clusterPeerService;
+    
+    @Value("${soap.monitoring.phases.enabled:true}")
+    private boolean phaseTimingEnabled;
+    
+    @Value("${soap.compression.gzip.enabled:true}")
+    private boolean gzipEnabled;
+    
+    @Value("${soap.compression.gzip.threshold-bytes:1024}")
+    private int gzipThreshold;
+    
+    @Value("${soap.encoding.fastinfoset.enabled:true}")
+    private boolean fastInfosetEnabled;
+    
+    @Value("${soap.encoding.fastinfoset.threshold-bytes:8192}")
+    private int fastInfosetThreshold;
+    
     @Bean
     public Endpoint endpoint() {
-        EndpointImpl endpoint = new EndpointImpl(bus, clientSoapService);
+        // En mode cluster, l'endpoint public relaie vers l'instance propriétaire de chaque client
+        Object implementor = clusterMembership.isEnabled() ? clusterRoutingService : clientSoapService;
+        EndpointImpl endpoint = new EndpointImpl(bus, implementor);
+        // L'export en flux est envoyé en pièce jointe MTOM
+        endpoint.getOutInterceptors().add(new MtomOperationInterceptor(Collections.singleton("exportClients")));
+        // Opérations exécutées sur leurs pools dédiés, admises par une limite de concurrence adaptative
+        if (invocationPools.isAsyncEnabled()) {
+            endpoint.setExecutor(invocationPools);
+        }
+        ConcurrencyLimitInterceptor concurrencyLimit = new ConcurrencyLimitInterceptor(invocationPools);
+        endpoint.getInInterceptors().add(concurrencyLimit);
+        endpoint.getOutInterceptors().add(concurrencyLimit.getRelease());
+        endpoint.getOutFaultInterceptors().add(concurrencyLimit.getRelease());
+        addSlowRequestRecorder(endpoint);
+        // Durée de chaque étape CXF (lecture, désérialisation, exécution, sérialisation, envoi) et tailles échangées
+        if (phaseTimingEnabled) {
+            PhaseTimingInterceptor phaseTiming = new PhaseTimingInterceptor(metricsService);
+            endpoint.getInInterceptors().addAll(phaseTiming.getInMarks());
+            endpoint.getOutInterceptors().addAll(phaseTiming.getOutMarks());
+            endpoint.getOutFaultInterceptors().addAll(phaseTiming.getOutMarks());
+        }
+        
+        // Compression gzip négociée par Accept-Encoding / Content-Encoding
+        if (gzipEnabled) {
+            GZIPFeature gzip = new GZIPFeature();
+            gzip.setThreshold(gzipThreshold);
+            endpoint.getFeatures().add(gzip);
+        }
+        // Fast Infoset négocié par Accept: application/fastinfoset
+        if (fastInfosetEnabled) {
+            endpoint.getInInterceptors().add(new FIStaxInInterceptor());
+            FastInfosetThresholdOutInterceptor fastInfoset = new FastInfosetThresholdOutInterceptor(fastInfosetThreshold);
+            endpoint.getOutInterceptors().add(fastInfoset.getSizeEstimate());
+            endpoint.getOutInterceptors().add(fastInfoset);
+        }
+        ResponseSizeInterceptor responseSize = new ResponseSizeInterceptor(metricsService);
+        endpoint.getOutInterceptors().add(responseSize);
+        endpoint.getOutInterceptors().add(responseSize.getPayloadCounter());
+        // Réponses sérialisées des lectures servies depuis le cache, là où les mutations les invalident
+        if (!clusterMembership.isEnabled()) {
+            addResponseCache(endpoint);
+        }
+        
         endpoint.publish("/ClientService");
         return endpoint;
     }
+    
+    /**
+     * Service local d'une instance du cluster, appelé par les autres instances ; ne relaie jamais.
+     * Sans pools ni limite de concurrence : un appel diffusé ne doit pas attendre derrière les appels publics.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+    public Endpoint internalEndpoint() {
+        EndpointImpl endpoint = new EndpointImpl(bus, clientSoapService);
+        addSlowRequestRecorder(endpoint);
+        addResponseCache(endpoint);
+        endpoint.publish("/internal/ClientService");
+        return endpoint;
+    }
+    
+    @Bean
+    @ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+    public Endpoint clusterPeerEndpoint() {
+        EndpointImpl endpoint = new EndpointImpl(bus, clusterPeerService);
+        endpoint.publish("/internal/ClusterPeer");
+        return endpoint;
+    }
+    
+    // Appels tracés en événements JFR, les plus lents conservés pour /actuator/slowrequests
+    private void addSlowRequestRecorder(EndpointImpl endpoint) {
+        if (slowRequestRecorder.isEnabled()) {
+            SlowRequestInterceptor slowRequests = new SlowRequestInterceptor(slowRequestRecorder);
+            endpoint.getInInterceptors().add(slowRequests);
+            endpoint.getOutInterceptors().add(slowRequests.getResult());
+            endpoint.getOutInterceptors().add(slowRequests.getCompletion());
+            endpoint.getOutFaultInterceptors().add(slowRequests.getFaultCompletion());
+        }
+    }
+    
+    private void addResponseCache(EndpointImpl endpoint) {
+        if (responseCache.isEnabled()) {
+            ResponseCacheInterceptor responseCacheInterceptor = new ResponseCacheInterceptor(responseCache, metricsService);
+            endpoint.getInInterceptors().add(responseCacheInterceptor);
+            endpoint.getOutInterceptors().add(responseCacheInterceptor.getCapture());
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.example.soap.interceptor;
+
+import com.example.soap.invocation.InvocationPool;
+import com.example.soap.invocation.InvocationPools;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.model.BindingOperationInfo;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Admission des appels SOAP par la limite de concurrence du pool de leur opération.
+ * Un appel au-delà de la limite reçoit immédiatement une faute SOAP au lieu d'attendre un thread.
+ * La place est rendue une fois la réponse envoyée ou la faute traitée ; les hits du cache de réponses,
+ * servis avant cet intercepteur, ne sont pas limités.
+ */
+public class ConcurrencyLimitInterceptor extends AbstractPhaseInterceptor<Message> {
+    
+    private static final String PERMIT = ConcurrencyLimitInterceptor.class.getName() + ".permit";
+    
+    private final InvocationPools pools;
+    private final ReleaseInterceptor release = new ReleaseInterceptor();
+    
+    public ConcurrencyLimitInterceptor(InvocationPools pools) {
+        super(Phase.PRE_INVOKE);
+        addAfter(ResponseCacheInterceptor.class.getName());
+        this.pools = pools;
+    }
+    
+    /**
+     * Intercepteur à enregistrer en sortie et en sortie de faute, qui rend la place de l'appel
+     */
+    public ReleaseInterceptor getRelease() {
+        return release;
+    }
+    
+    @Override
+    public void handleMessage(Message message) {
+        Exchange exchange = message.getExchange();
+        BindingOperationInfo operation = exchange.getBindingOperationInfo();
+        if (operation == null) {
+            return;
+        }
+        InvocationPool pool = pools.poolFor(operation.getName().getLocalPart());
+        exchange.put(InvocationPool.class, pool);
+        if (!pool.tryAcquire()) {
+            pools.recordRejection(pool);
+            throw new Fault(new RejectedExecutionException("Server busy: concurrency limit of pool '"
+                + pool.getName() + "' reached, retry later"));
+        }
+        exchange.put(PERMIT, pool);
+    }
+    
+    @Override
+    public void handleFault(Message message) {
+        releasePermit(message.getExchange());
+    }
+    
+    private static void releasePermit(Exchange exchange) {
+        InvocationPool pool = (InvocationPool) exchange.remove(PERMIT);
+        if (pool != null) {
+            pool.release();
+        }
+    }
+    
+    /**
+     * Ouvre la chaîne sortante : la place est rendue à la fin de la chaîne, ou au déroulement
+     * si l'envoi échoue (client déconnecté, erreur d'écriture)
+     */
+    public static final class ReleaseInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        private final ReleaseEndingInterceptor ending = new ReleaseEndingInterceptor();
+        
+        ReleaseInterceptor() {
+            super(Phase.SETUP);
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            message.getInterceptorChain().add(ending);
+        }
+        
+        @Override
+        public void handleFault(Message message) {
+            releasePermit(message.getExchange());
+        }
+    }
+    
+    static final class ReleaseEndingInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        ReleaseEndingInterceptor() {
+            super(Phase.SETUP_ENDING);
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            releasePermit(message.getExchange());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.soap.interceptor;
+
+import org.apache.cxf.interceptor.FIStaxOutInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+import java.util.Collection;
+
+/**
+ * Encode la réponse en Fast Infoset, pour les clients qui l'acceptent, seulement si sa taille
+ * estimée dépasse le seuil : la taille réelle n'est connue qu'après le choix de l'encodage,
+ * elle est donc estimée à partir du nombre d'éléments retournés.
+ */
+public class FastInfosetThresholdOutInterceptor extends FIStaxOutInterceptor {
+    
+    // Taille moyenne d'un client sérialisé en XML
+    static final int AVERAGE_ITEM_BYTES = 250;
+    
+    private static final String ESTIMATED_SIZE = FastInfosetThresholdOutInterceptor.class.getName() + ".estimatedSize";
+    
+    private final int thresholdBytes;
+    private final SizeEstimateInterceptor sizeEstimate = new SizeEstimateInterceptor();
+    
+    public FastInfosetThresholdOutInterceptor(int thresholdBytes) {
+        this.thresholdBytes = thresholdBytes;
+    }
+    
+    /**
+     * Intercepteur à enregistrer avec celui-ci, qui estime la taille avant l'encapsulation JAX-WS
+     */
+    public SizeEstimateInterceptor getSizeEstimate() {
+        return sizeEstimate;
+    }
+    
+    @Override
+    public void handleMessage(Message message) {
+        Object estimatedSize = message.get(ESTIMATED_SIZE);
+        if (estimatedSize instanceof Long && (Long) estimatedSize >= thresholdBytes) {
+            super.handleMessage(message);
+        }
+    }
+    
+    public static final class SizeEstimateInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        SizeEstimateInterceptor() {
+            super(Phase.SETUP);
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            MessageContentsList contents = MessageContentsList.getContentsList(message);
+            if (contents == null) {
+                return;
+            }
+            long items = 0;
+            for (Object part : contents) {
+                if (part instanceof Collection) {
+                    items += ((Collection<?>) part).size();
+                } else if (part != null) {
+                    items++;
+                }
+            }
+            message.put(ESTIMATED_SIZE, items * AVERAGE_ITEM_BYTES);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.soap.interceptor;
+
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.model.BindingOperationInfo;
+
+import java.util.Set;
+
+/**
+ * Active MTOM uniquement pour les réponses des opérations listées (ex. export en flux),
+ * afin que les autres opérations conservent des réponses SOAP simples.
+ */
+public class MtomOperationInterceptor extends AbstractPhaseInterceptor<Message> {
+    
+    private final Set<String> operations;
+    
+    public MtomOperationInterceptor(Set<String> operations) {
+        super(Phase.SETUP);
+        this.operations = operations;
+    }
+    
+    @Override
+    public void handleMessage(Message message) {
+        BindingOperationInfo operation = message.getExchange().getBindingOperationInfo();
+        if (operation != null && operations.contains(operation.getName().getLocalPart())) {
+            message.put(Message.MTOM_ENABLED, Boolean.TRUE);
+        }
+    }
+}
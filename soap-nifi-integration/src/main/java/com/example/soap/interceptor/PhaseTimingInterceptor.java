@@ -0,0 +1,179 @@
+package com.example.soap.interceptor;
+
+import com.example.soap.metrics.SoapMetricsService;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.model.BindingOperationInfo;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Découpe la durée d'un appel SOAP par étape de traitement CXF. Un marqueur placé en tête de la première
+ * phase de chaque étape clôt l'étape précédente ; les durées sont publiées avec la taille de la requête
+ * et de la réponse à la fin de la chaîne sortante, une fois l'opération connue.
+ * Le XML étant lu en flux, la lecture du corps de la requête est comptée dans l'étape qui le consomme
+ * (parse puis unmarshal). Les hits du cache de réponses, servis sans chaîne sortante complète,
+ * ne sont pas mesurés.
+ */
+public class PhaseTimingInterceptor extends AbstractPhaseInterceptor<Message> {
+    
+    private static final String TIMELINE = PhaseTimingInterceptor.class.getName() + ".timeline";
+    
+    /**
+     * Étapes mesurées et phases CXF qui les ouvrent
+     */
+    enum Stage {
+        // Réception : décompression, ouverture du lecteur XML
+        RECEIVE("receive", Phase.RECEIVE),
+        // Lecture de l'enveloppe et des en-têtes SOAP
+        PARSE("parse", Phase.READ),
+        // Désérialisation JAXB des paramètres
+        UNMARSHAL("unmarshal", Phase.UNMARSHAL),
+        // Admission, attente d'un thread du pool et exécution du service
+        INVOKE("invoke", Phase.PRE_INVOKE),
+        // Encapsulation du résultat, ouverture du flux de réponse, début de l'enveloppe
+        PREPARE("prepare", Phase.SETUP),
+        // Sérialisation JAXB du résultat
+        MARSHAL("marshal", Phase.PRE_MARSHAL),
+        // Fin de l'enveloppe, compression et envoi sur le réseau
+        SEND("send", Phase.POST_PROTOCOL);
+        
+        private final String tag;
+        private final String phase;
+        
+        Stage(String tag, String phase) {
+            this.tag = tag;
+            this.phase = phase;
+        }
+    }
+    
+    private static final Stage[] STAGES = Stage.values();
+    private static final String[] STAGE_TAGS = Arrays.stream(STAGES).map(stage -> stage.tag).toArray(String[]::new);
+    
+    private final SoapMetricsService metricsService;
+    private final List<Interceptor<? extends Message>> inMarks;
+    private final List<Interceptor<? extends Message>> outMarks;
+    private final CompletionInterceptor completion = new CompletionInterceptor();
+    
+    public PhaseTimingInterceptor(SoapMetricsService metricsService) {
+        super(Stage.RECEIVE.phase);
+        addBefore("*");
+        this.metricsService = metricsService;
+        this.inMarks = Arrays.asList(this, new StageMark(Stage.PARSE), new StageMark(Stage.UNMARSHAL),
+            new StageMark(Stage.INVOKE));
+        this.outMarks = Arrays.asList(new OutStartMark(), new StageMark(Stage.MARSHAL), new StageMark(Stage.SEND));
+    }
+    
+    /**
+     * Intercepteurs à enregistrer en entrée, dont celui-ci
+     */
+    public List<Interceptor<? extends Message>> getInMarks() {
+        return inMarks;
+    }
+    
+    /**
+     * Intercepteurs à enregistrer en sortie et en sortie de faute
+     */
+    public List<Interceptor<? extends Message>> getOutMarks() {
+        return outMarks;
+    }
+    
+    @Override
+    public void handleMessage(Message message) {
+        Timeline timeline = new Timeline();
+        InputStream in = message.getContent(InputStream.class);
+        if (in != null) {
+            timeline.request = new CountingInputStream(in);
+            message.setContent(InputStream.class, timeline.request);
+        }
+        message.getExchange().put(TIMELINE, timeline);
+    }
+    
+    /**
+     * Durées cumulées par étape d'un appel et étape en cours
+     */
+    static final class Timeline {
+        
+        private final long[] stageNanos = new long[STAGES.length];
+        private int stage = Stage.RECEIVE.ordinal();
+        private long markNanos = System.nanoTime();
+        private CountingInputStream request;
+        
+        void mark(Stage next) {
+            long now = System.nanoTime();
+            stageNanos[stage] += now - markNanos;
+            stage = next.ordinal();
+            markNanos = now;
+        }
+        
+        void close() {
+            long now = System.nanoTime();
+            stageNanos[stage] += now - markNanos;
+            markNanos = now;
+        }
+    }
+    
+    static class StageMark extends AbstractPhaseInterceptor<Message> {
+        
+        private final Stage stage;
+        
+        StageMark(Stage stage) {
+            super(StageMark.class.getName() + "." + stage.tag, stage.phase);
+            addBefore("*");
+            this.stage = stage;
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            Timeline timeline = (Timeline) message.getExchange().get(TIMELINE);
+            if (timeline != null) {
+                timeline.mark(stage);
+            }
+        }
+    }
+    
+    /**
+     * Ouvre la chaîne sortante : la mesure est publiée à la fin de la chaîne, flux de réponse fermé
+     */
+    final class OutStartMark extends StageMark {
+        
+        OutStartMark() {
+            super(Stage.PREPARE);
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            super.handleMessage(message);
+            message.getInterceptorChain().add(completion);
+        }
+    }
+    
+    final class CompletionInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        CompletionInterceptor() {
+            super(Phase.SETUP_ENDING);
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            Timeline timeline = (Timeline) exchange.remove(TIMELINE);
+            BindingOperationInfo operation = exchange.getBindingOperationInfo();
+            if (timeline == null || operation == null) {
+                return;
+            }
+            timeline.close();
+            String methodName = operation.getName().getLocalPart();
+            metricsService.recordPhases(methodName, STAGE_TAGS, timeline.stageNanos);
+            metricsService.recordPayloadSizes(methodName,
+                timeline.request != null ? timeline.request.getByteCount() : -1,
+                ResponseSizeInterceptor.wireBytes(message));
+        }
+    }
+}
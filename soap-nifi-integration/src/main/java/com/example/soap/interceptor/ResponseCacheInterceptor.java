@@ -0,0 +1,236 @@
+package com.example.soap.interceptor;
+
+import com.example.soap.cache.SoapResponseCache;
+import com.example.soap.metrics.SoapMethodMeters;
+import com.example.soap.metrics.SoapMetricsService;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.Interceptor;
+import org.apache.cxf.interceptor.InterceptorChain;
+import org.apache.cxf.interceptor.MessageSenderInterceptor;
+import org.apache.cxf.interceptor.OutgoingChainInterceptor;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.transport.common.gzip.GZIPOutInterceptor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Sert les opérations de lecture depuis {@link SoapResponseCache}. Sur un hit, l'appel du service
+ * et la sérialisation JAXB sont sautés : comme WSDLGetInterceptor pour le WSDL, la chaîne sortante
+ * est réduite à l'envoi (gzip et mesure de taille compris) et le corps stocké est écrit tel quel.
+ * Sur un miss, la réponse sérialisée par CXF est capturée au passage.
+ * Les échanges en Fast Infoset ne passent pas par le cache.
+ */
+public class ResponseCacheInterceptor extends AbstractPhaseInterceptor<Message> {
+    
+    private static final String CAPTURE = ResponseCacheInterceptor.class.getName() + ".capture";
+    private static final String CACHED_BODY = ResponseCacheInterceptor.class.getName() + ".body";
+    
+    private final SoapResponseCache responseCache;
+    private final Map<String, SoapMethodMeters> cachedOperations = new HashMap<>();
+    private final CaptureInterceptor capture = new CaptureInterceptor();
+    private final CachedBodyWriter cachedBodyWriter = new CachedBodyWriter();
+    
+    public ResponseCacheInterceptor(SoapResponseCache responseCache, SoapMetricsService metricsService) {
+        super(Phase.PRE_INVOKE);
+        this.responseCache = responseCache;
+        // Les hits n'atteignent pas l'aspect de monitoring : ils sont comptés ici pour la même méthode
+        for (String operation : new String[] {SoapResponseCache.GET_CLIENT_BY_ID,
+                SoapResponseCache.GET_CLIENT_BY_EMAIL, SoapResponseCache.GET_ALL_CLIENTS}) {
+            cachedOperations.put(operation, metricsService.methodMeters(operation));
+        }
+    }
+    
+    /**
+     * Intercepteur sortant à enregistrer avec celui-ci, qui capture les réponses des miss
+     */
+    public CaptureInterceptor getCapture() {
+        return capture;
+    }
+    
+    @Override
+    public void handleMessage(Message message) {
+        Exchange exchange = message.getExchange();
+        BindingOperationInfo operation = exchange.getBindingOperationInfo();
+        if (operation == null || isFastInfoset(message)) {
+            return;
+        }
+        String operationName = operation.getName().getLocalPart();
+        SoapMethodMeters meters = cachedOperations.get(operationName);
+        if (meters == null) {
+            return;
+        }
+        MessageContentsList parameters = MessageContentsList.getContentsList(message);
+        String key = SoapResponseCache.key(operationName,
+            parameters != null && !parameters.isEmpty() ? parameters.get(0) : null);
+        if (key == null) {
+            return;
+        }
+        
+        long startNanos = System.nanoTime();
+        byte[] body = responseCache.get(operationName, key);
+        if (body == null) {
+            exchange.put(CAPTURE, responseCache.startCapture(key));
+            return;
+        }
+        sendCachedBody(message, body);
+        meters.recordCacheHit(System.nanoTime() - startNanos);
+        if (parameters != null && meters.isTrackingArguments()) {
+            meters.recordArguments(parameters.toArray());
+        }
+    }
+    
+    /**
+     * Remplace l'appel du service par une chaîne sortante qui écrit directement le corps stocké
+     */
+    private void sendCachedBody(Message message, byte[] body) {
+        Exchange exchange = message.getExchange();
+        Endpoint endpoint = exchange.getEndpoint();
+        Message out = endpoint.getBinding().createMessage(new MessageImpl());
+        out.setExchange(exchange);
+        out.setInterceptorChain(OutgoingChainInterceptor.getOutInterceptorChain(exchange));
+        exchange.setOutMessage(out);
+        out.put(Message.CONTENT_TYPE, "text/xml");
+        out.put(Message.ENCODING, StandardCharsets.UTF_8.name());
+        out.put(CACHED_BODY, body);
+        
+        InterceptorChain chain = out.getInterceptorChain();
+        Iterator<Interceptor<? extends Message>> iterator = chain.iterator();
+        while (iterator.hasNext()) {
+            Interceptor<? extends Message> interceptor = iterator.next();
+            if (!isSendingInterceptor(interceptor)) {
+                chain.remove(interceptor);
+            }
+        }
+        chain.add(cachedBodyWriter);
+        
+        exchange.put(Message.RESPONSE_CODE, HttpURLConnection.HTTP_OK);
+        // Saute l'appel du service et passe directement à l'envoi de la réponse
+        message.getInterceptorChain().doInterceptStartingAt(message, OutgoingChainInterceptor.class.getName());
+    }
+    
+    /**
+     * Intercepteurs conservés pour un hit : ouverture du flux de réponse, compression et mesure de taille
+     */
+    private static boolean isSendingInterceptor(Interceptor<?> interceptor) {
+        return interceptor instanceof MessageSenderInterceptor
+            || interceptor instanceof GZIPOutInterceptor
+            || interceptor instanceof ResponseSizeInterceptor
+            || interceptor instanceof ResponseSizeInterceptor.PayloadCounterInterceptor;
+    }
+    
+    private static boolean isFastInfoset(Message message) {
+        Object accept = message.get(Message.ACCEPT_CONTENT_TYPE);
+        Object contentType = message.get(Message.CONTENT_TYPE);
+        return accept != null && accept.toString().contains("fastinfoset")
+            || contentType != null && contentType.toString().contains("fastinfoset");
+    }
+    
+    /**
+     * Écrit le corps stocké dans le flux de réponse préparé par MessageSenderInterceptor
+     */
+    static final class CachedBodyWriter extends AbstractPhaseInterceptor<Message> {
+        
+        CachedBodyWriter() {
+            super(Phase.WRITE);
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            byte[] body = (byte[]) message.get(CACHED_BODY);
+            OutputStream out = message.getContent(OutputStream.class);
+            try {
+                out.write(body);
+                out.flush();
+            } catch (IOException e) {
+                throw new Fault(e);
+            }
+        }
+    }
+    
+    public final class CaptureInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        CaptureInterceptor() {
+            super(Phase.PREPARE_SEND);
+            addAfter(GZIPOutInterceptor.class.getName());
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            SoapResponseCache.Capture capture = (SoapResponseCache.Capture) message.getExchange().get(CAPTURE);
+            OutputStream out = message.getContent(OutputStream.class);
+            if (capture != null && out != null) {
+                message.setContent(OutputStream.class, new CapturingOutputStream(out, message, capture));
+            }
+        }
+    }
+    
+    /**
+     * Recopie la réponse non compressée ; elle est conservée à la fermeture si elle est complète,
+     * sans faute, et dans la limite de taille d'une entrée
+     */
+    private final class CapturingOutputStream extends FilterOutputStream {
+        
+        private final Message message;
+        private final SoapResponseCache.Capture capture;
+        private UnsynchronizedByteArrayOutputStream copy = new UnsynchronizedByteArrayOutputStream();
+        private boolean closed;
+        
+        CapturingOutputStream(OutputStream out, Message message, SoapResponseCache.Capture capture) {
+            super(out);
+            this.message = message;
+            this.capture = capture;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (reserve(1)) {
+                copy.write(b);
+            }
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (reserve(len)) {
+                copy.write(b, off, len);
+            }
+        }
+        
+        private boolean reserve(int length) {
+            if (copy != null && copy.size() + length > responseCache.getMaxEntryBytes()) {
+                copy = null;
+            }
+            return copy != null;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            super.close();
+            Exchange exchange = message.getExchange();
+            if (copy != null && exchange.getOutFaultMessage() == null && message.getContent(Exception.class) == null
+                    && !isFastInfoset(message)) {
+                responseCache.put(capture, copy.toByteArray());
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.soap.interceptor;
+
+import com.example.soap.metrics.SoapMetricsService;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.interceptor.MessageSenderInterceptor;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.transport.common.gzip.GZIPOutInterceptor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mesure la taille des réponses avant et après compression gzip.
+ * Un premier compteur entoure le flux réseau (avant {@link GZIPOutInterceptor}),
+ * un second le flux écrit par CXF (après) ; les deux tailles sont publiées à la fermeture.
+ */
+public class ResponseSizeInterceptor extends AbstractPhaseInterceptor<Message> {
+    
+    private static final String WIRE_COUNTER = ResponseSizeInterceptor.class.getName() + ".wire";
+    
+    private final SoapMetricsService metricsService;
+    private final PayloadCounterInterceptor payloadCounter = new PayloadCounterInterceptor();
+    
+    public ResponseSizeInterceptor(SoapMetricsService metricsService) {
+        super(Phase.PREPARE_SEND);
+        addAfter(MessageSenderInterceptor.class.getName());
+        addBefore(GZIPOutInterceptor.class.getName());
+        this.metricsService = metricsService;
+    }
+    
+    /**
+     * Octets de la réponse effectivement écrits sur le réseau jusqu'ici, -1 si la réponse n'est pas mesurée
+     */
+    public static long wireBytes(Message message) {
+        CountingOutputStream wire = message != null ? (CountingOutputStream) message.get(WIRE_COUNTER) : null;
+        return wire != null ? wire.getByteCount() : -1;
+    }
+    
+    /**
+     * Intercepteur à enregistrer avec celui-ci, placé après la compression
+     */
+    public PayloadCounterInterceptor getPayloadCounter() {
+        return payloadCounter;
+    }
+    
+    @Override
+    public void handleMessage(Message message) {
+        OutputStream out = message.getContent(OutputStream.class);
+        if (out != null) {
+            CountingOutputStream wire = new CountingOutputStream(out);
+            message.put(WIRE_COUNTER, wire);
+            message.setContent(OutputStream.class, wire);
+        }
+    }
+    
+    public final class PayloadCounterInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        PayloadCounterInterceptor() {
+            super(Phase.PREPARE_SEND);
+            addAfter(GZIPOutInterceptor.class.getName());
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            CountingOutputStream wire = (CountingOutputStream) message.get(WIRE_COUNTER);
+            OutputStream out = message.getContent(OutputStream.class);
+            if (wire != null && out != null) {
+                message.setContent(OutputStream.class, new CountingOutputStream(out) {
+                    @Override
+                    public void close() throws IOException {
+                        // La fermeture vide le flux gzip : la taille réseau est alors définitive
+                        super.close();
+                        metricsService.recordResponseSize(encoding(message), compression(message),
+                            getByteCount(), wire.getByteCount());
+                    }
+                });
+            }
+        }
+    }
+    
+    private static String encoding(Message message) {
+        Object contentType = message.get(Message.CONTENT_TYPE);
+        return contentType != null && contentType.toString().contains("fastinfoset") ? "fastinfoset" : "xml";
+    }
+    
+    private static String compression(Message message) {
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>) message.get(Message.PROTOCOL_HEADERS));
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if ("Content-Encoding".equalsIgnoreCase(header.getKey())
+                        && header.getValue() != null && header.getValue().contains("gzip")) {
+                    return "gzip";
+                }
+            }
+        }
+        return "none";
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.soap.interceptor;
+
+import com.example.soap.metrics.SlowRequestRecorder;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.service.model.BindingOperationInfo;
+
+/**
+ * Trace chaque appel SOAP admis pour l'enregistreur des appels lents : ouverte avant l'exécution
+ * (après la limite de concurrence), le résultat est noté à l'ouverture de la chaîne sortante, avant
+ * son encapsulation et sa sérialisation, et la trace est close une fois la réponse ou la faute sérialisée.
+ * Les hits du cache de réponses ne sont pas tracés.
+ */
+public class SlowRequestInterceptor extends AbstractPhaseInterceptor<Message> {
+    
+    private static final String TRACE = SlowRequestInterceptor.class.getName() + ".trace";
+    
+    private final SlowRequestRecorder recorder;
+    private final ResultInterceptor result = new ResultInterceptor();
+    private final CompletionInterceptor completion = new CompletionInterceptor(false);
+    private final CompletionInterceptor faultCompletion = new CompletionInterceptor(true);
+    
+    public SlowRequestInterceptor(SlowRequestRecorder recorder) {
+        super(Phase.PRE_INVOKE);
+        addAfter(ConcurrencyLimitInterceptor.class.getName());
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Intercepteurs à enregistrer en sortie : résultat disponible, puis réponse sérialisée
+     */
+    public ResultInterceptor getResult() {
+        return result;
+    }
+    
+    public CompletionInterceptor getCompletion() {
+        return completion;
+    }
+    
+    /**
+     * Intercepteur à enregistrer en sortie de faute
+     */
+    public CompletionInterceptor getFaultCompletion() {
+        return faultCompletion;
+    }
+    
+    @Override
+    public void handleMessage(Message message) {
+        BindingOperationInfo operation = message.getExchange().getBindingOperationInfo();
+        if (operation != null) {
+            message.getExchange().put(TRACE, recorder.start(operation.getName().getLocalPart(),
+                MessageContentsList.getContentsList(message)));
+        }
+    }
+    
+    public static final class ResultInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        ResultInterceptor() {
+            super(Phase.SETUP);
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            SlowRequestRecorder.RequestTrace trace = (SlowRequestRecorder.RequestTrace) message.getExchange().get(TRACE);
+            if (trace != null) {
+                trace.result(MessageContentsList.getContentsList(message));
+            }
+        }
+    }
+    
+    public final class CompletionInterceptor extends AbstractPhaseInterceptor<Message> {
+        
+        private final boolean fault;
+        
+        CompletionInterceptor(boolean fault) {
+            super(Phase.POST_MARSHAL);
+            this.fault = fault;
+        }
+        
+        @Override
+        public void handleMessage(Message message) {
+            complete(message.getExchange(), fault);
+        }
+    }
+    
+    private void complete(Exchange exchange, boolean fault) {
+        SlowRequestRecorder.RequestTrace trace = (SlowRequestRecorder.RequestTrace) exchange.remove(TRACE);
+        if (trace != null) {
+            recorder.complete(trace, fault);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.soap.invocation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limite de concurrence adaptative par gradient de latence.
+ * La latence courante est comparée à une moyenne longue : tant qu'elle reste dans la tolérance,
+ * la limite croît d'une marge de file d'attente (racine de la limite) ; quand elle se dégrade,
+ * la limite est réduite proportionnellement, au plus de moitié par échantillon.
+ * Les admissions sont sans verrou, seule la mise à jour de la limite est synchronisée.
+ */
+public final class GradientConcurrencyLimiter {
+    
+    // Poids d'un échantillon dans la moyenne longue, et lissage des changements de limite
+    private static final double LONG_WINDOW_WEIGHT = 1.0 / 600;
+    private static final double SMOOTHING = 0.2;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inflight = new AtomicInteger();
+    
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longLatency;
+    
+    public GradientConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limit bounds: " + minLimit + ".." + maxLimit);
+        }
+        if (tolerance < 1.0) {
+            throw new IllegalArgumentException("Latency tolerance must be at least 1: " + tolerance);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+    
+    /**
+     * Admet une requête si la limite courante le permet ; chaque admission doit être suivie d'un release
+     */
+    public boolean tryAcquire() {
+        int current = inflight.get();
+        while (current < limit) {
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            current = inflight.get();
+        }
+        return false;
+    }
+    
+    public void release() {
+        inflight.decrementAndGet();
+    }
+    
+    /**
+     * Ajuste la limite à partir de la latence d'un appel terminé
+     */
+    public synchronized void onSample(long latencyNanos) {
+        if (latencyNanos <= 0) {
+            return;
+        }
+        double shortLatency = latencyNanos;
+        if (longLatency == 0) {
+            longLatency = shortLatency;
+        } else {
+            longLatency += (shortLatency - longLatency) * LONG_WINDOW_WEIGHT;
+            // Après une longue dégradation, la moyenne longue revient vers la latence courante
+            if (longLatency > shortLatency * 2) {
+                longLatency *= 0.95;
+            }
+        }
+        // Une limite à peine utilisée ne dit rien de la capacité : elle n'est pas augmentée
+        if (inflight.get() < estimatedLimit / 2 && shortLatency <= longLatency * tolerance) {
+            return;
+        }
+        
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        limit = (int) estimatedLimit;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public int getInflight() {
+        return inflight.get();
+    }
+    
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+}
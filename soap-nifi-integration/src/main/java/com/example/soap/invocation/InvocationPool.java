@@ -0,0 +1,85 @@
+package com.example.soap.invocation;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool d'exécution d'un groupe d'opérations SOAP, avec sa limite de concurrence.
+ * La limite couvre l'appel complet, de l'admission à l'envoi de la réponse ; la file d'attente
+ * des threads est bornée par la limite maximale.
+ */
+public final class InvocationPool implements Executor {
+    
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final GradientConcurrencyLimiter limiter;
+    private final boolean limitEnabled;
+    
+    InvocationPool(String name, int threads, GradientConcurrencyLimiter limiter, boolean limitEnabled) {
+        this.name = name;
+        this.limiter = limiter;
+        this.limitEnabled = limitEnabled;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(limiter.getMaxLimit()), new PoolThreadFactory(name));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public GradientConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+    
+    ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+    
+    /**
+     * Admet un appel ; toujours accepté quand la limite est désactivée
+     */
+    public boolean tryAcquire() {
+        return !limitEnabled || limiter.tryAcquire();
+    }
+    
+    public void release() {
+        if (limitEnabled) {
+            limiter.release();
+        }
+    }
+    
+    void onLatency(long latencyNanos) {
+        limiter.onSample(latencyNanos);
+    }
+    
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+    
+    void shutdown() {
+        executor.shutdown();
+    }
+    
+    private static final class PoolThreadFactory implements ThreadFactory {
+        
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+        
+        PoolThreadFactory(String poolName) {
+            this.prefix = "soap-" + poolName + "-";
+        }
+        
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.soap.invocation;
+
+import com.example.soap.metrics.SoapMetricsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Tags;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Pools d'exécution des opérations SOAP, configurés par soap.invocation.pools :
+ * chaque pool nommé isole ses opérations (soap.invocation.pool.&lt;nom&gt;.operations) avec son propre
+ * nombre de threads et sa propre limite de concurrence ; les autres opérations vont au pool default.
+ * Utilisé comme exécuteur de l'endpoint, il route chaque appel vers le pool de son opération.
+ */
+@Component
+public class InvocationPools implements Executor, DisposableBean {
+    
+    public static final String DEFAULT_POOL = "default";
+    
+    private static final Logger logger = LoggerFactory.getLogger(InvocationPools.class);
+    
+    private final SoapMetricsService metricsService;
+    private final boolean asyncEnabled;
+    private final boolean limitEnabled;
+    private final Map<String, InvocationPool> pools = new LinkedHashMap<>();
+    private final Map<String, InvocationPool> configuredOperations = new HashMap<>();
+    private final ConcurrentHashMap<String, InvocationPool> poolsByOperation = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejections = new HashMap<>();
+    
+    public InvocationPools(SoapMetricsService metricsService, Environment environment) {
+        this.metricsService = metricsService;
+        this.asyncEnabled = environment.getProperty("soap.invocation.async.enabled", Boolean.class, true);
+        this.limitEnabled = environment.getProperty("soap.invocation.limit.enabled", Boolean.class, true);
+        
+        createPool(DEFAULT_POOL, environment);
+        for (String name : environment.getProperty("soap.invocation.pools", String[].class, new String[0])) {
+            String poolName = name.trim();
+            if (poolName.isEmpty() || pools.containsKey(poolName)) {
+                continue;
+            }
+            InvocationPool pool = createPool(poolName, environment);
+            String key = "soap.invocation.pool." + poolName + ".operations";
+            for (String operation : environment.getProperty(key, String[].class, new String[0])) {
+                configuredOperations.put(operation.trim(), pool);
+            }
+        }
+    }
+    
+    private InvocationPool createPool(String name, Environment environment) {
+        String prefix = "soap.invocation.pool." + name + ".";
+        int threads = environment.getProperty(prefix + "threads", Integer.class, 16);
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(
+            limitProperty(environment, prefix, "initial", Integer.class, 20),
+            limitProperty(environment, prefix, "min", Integer.class, 2),
+            limitProperty(environment, prefix, "max", Integer.class, 200),
+            limitProperty(environment, prefix, "tolerance", Double.class, 1.5));
+        InvocationPool pool = new InvocationPool(name, threads, limiter, limitEnabled);
+        pools.put(name, pool);
+        
+        Tags tags = Tags.of("pool", name);
+        metricsService.registerGauge("soap_concurrency_limit", "Current adaptive concurrency limit of a SOAP invocation pool",
+            tags, limiter, GradientConcurrencyLimiter::getLimit);
+        metricsService.registerGauge("soap_concurrency_inflight", "SOAP calls admitted and not yet answered",
+            tags, limiter, GradientConcurrencyLimiter::getInflight);
+        metricsService.registerGauge("soap_invocation_queue_size", "SOAP invocations waiting for a pool thread",
+            tags, pool.getExecutor(), executor -> executor.getQueue().size());
+        rejections.put(name, metricsService.rejectedRequests(name));
+        logger.info("SOAP invocation pool '{}': {} threads, initial concurrency limit {} (max {})",
+            name, threads, limiter.getLimit(), limiter.getMaxLimit());
+        return pool;
+    }
+    
+    /**
+     * Propriété de limite propre au pool, sinon commune (soap.invocation.limit.*)
+     */
+    private static <T> T limitProperty(Environment environment, String poolPrefix, String name, Class<T> type,
+            T defaultValue) {
+        T common = environment.getProperty("soap.invocation.limit." + name, type, defaultValue);
+        return environment.getProperty(poolPrefix + "limit." + name, type, common);
+    }
+    
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+    
+    /**
+     * Pool d'une opération ; à la première résolution, la limite du pool est branchée
+     * sur les durées mesurées par SoapMetricsService pour cette opération
+     */
+    public InvocationPool poolFor(String operation) {
+        InvocationPool pool = poolsByOperation.get(operation);
+        if (pool != null) {
+            return pool;
+        }
+        return poolsByOperation.computeIfAbsent(operation, key -> {
+            InvocationPool resolved = configuredOperations.getOrDefault(key, pools.get(DEFAULT_POOL));
+            if (limitEnabled) {
+                metricsService.methodMeters(key).setLatencyListener(resolved::onLatency);
+            }
+            return resolved;
+        });
+    }
+    
+    /**
+     * Compte un appel refusé par la limite de concurrence de son pool
+     */
+    public void recordRejection(InvocationPool pool) {
+        rejections.get(pool.getName()).increment();
+    }
+    
+    /**
+     * Exécute l'invocation du service sur le pool retenu à l'admission (ConcurrencyLimitInterceptor),
+     * sinon sur le pool de l'opération en cours
+     */
+    @Override
+    public void execute(Runnable invocation) {
+        Message message = PhaseInterceptorChain.getCurrentMessage();
+        InvocationPool pool = null;
+        if (message != null) {
+            Exchange exchange = message.getExchange();
+            pool = exchange.get(InvocationPool.class);
+            if (pool == null && exchange.getBindingOperationInfo() != null) {
+                pool = poolFor(exchange.getBindingOperationInfo().getName().getLocalPart());
+            }
+        }
+        (pool != null ? pool : pools.get(DEFAULT_POOL)).execute(invocation);
+    }
+    
+    @Override
+    public void destroy() {
+        pools.values().forEach(InvocationPool::shutdown);
+    }
+}
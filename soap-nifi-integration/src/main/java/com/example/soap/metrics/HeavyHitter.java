@@ -0,0 +1,30 @@
+package com.example.soap.metrics;
+
+/**
+ * Clé fréquente d'une opération : fréquence estimée (majorant) et erreur maximale de l'estimation ;
+ * la fréquence réelle est comprise entre {@code count - error} et {@code count}.
+ */
+public class HeavyHitter {
+    
+    private final String key;
+    private final long count;
+    private final long error;
+    
+    public HeavyHitter(String key, long count, long error) {
+        this.key = key;
+        this.count = count;
+        this.error = error;
+    }
+    
+    public String getKey() {
+        return key;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public long getError() {
+        return error;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.soap.metrics;
+
+import com.example.soap.model.ClientCriterion;
+import com.example.soap.model.ClientSearchCriteria;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clés les plus demandées par opération SOAP (ids, emails, termes de recherche), estimées
+ * par un sketch Space-Saving en mémoire fixe. Alimenté par les métriques de chaque méthode,
+ * pour les appels exécutés comme pour ceux servis par le cache de réponses ; lu par l'endpoint Actuator heavyhitters et, sous forme
+ * bornée (comptes par rang, sans les clés), par Prometheus.
+ */
+@Component
+public class HeavyHitterTracker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(HeavyHitterTracker.class);
+    
+    // Classement recalculé au plus une fois par seconde pour les jauges Prometheus
+    private static final long TOP_REFRESH_NANOS = 1_000_000_000L;
+    
+    private final boolean enabled;
+    private final int prometheusTop;
+    private final Map<String, Operation> operations = new LinkedHashMap<>();
+    
+    public HeavyHitterTracker(SoapMetricsService metricsService, Environment environment) {
+        this.enabled = environment.getProperty("soap.heavy-hitters.enabled", Boolean.class, true);
+        int capacity = environment.getProperty("soap.heavy-hitters.capacity", Integer.class, 1024);
+        int stripes = environment.getProperty("soap.heavy-hitters.stripes", Integer.class, 8);
+        this.prometheusTop = environment.getProperty("soap.heavy-hitters.prometheus-top", Integer.class, 10);
+        if (!enabled) {
+            return;
+        }
+        String[] names = environment.getProperty("soap.heavy-hitters.operations", String[].class,
+            new String[] {"getClientById", "getClientByEmail", "searchClients", "findClients"});
+        for (String name : names) {
+            String operationName = name.trim();
+            if (!operationName.isEmpty() && !operations.containsKey(operationName)) {
+                Operation operation = new Operation(operationName, new SpaceSavingSketch(capacity, stripes));
+                operations.put(operationName, operation);
+                metricsService.methodMeters(operationName).setArgumentsListener(operation::record);
+                registerGauges(metricsService, operation);
+            }
+        }
+        logger.info("Tracking heavy hitters for {} ({} keys each, {} stripes)", operations.keySet(), capacity, stripes);
+    }
+    
+    private void registerGauges(SoapMetricsService metricsService, Operation operation) {
+        for (int rank = 1; rank <= prometheusTop; rank++) {
+            int index = rank - 1;
+            metricsService.registerGauge("soap_heavy_hitter_count",
+                "Estimated request count of the n-th most frequent key of a SOAP operation",
+                Tags.of("method", operation.name, "rank", Integer.toString(rank)), operation,
+                op -> op.rankCount(index));
+        }
+        metricsService.registerGauge("soap_heavy_hitter_top_share",
+            "Share of the tracked requests going to the most frequent keys of a SOAP operation",
+            Tags.of("method", operation.name), operation, Operation::topShare);
+    }
+    
+    /**
+     * Clés les plus fréquentes de chaque opération suivie
+     */
+    public Map<String, List<HeavyHitter>> top(int k) {
+        Map<String, List<HeavyHitter>> top = new LinkedHashMap<>();
+        for (Operation operation : operations.values()) {
+            top.put(operation.name, operation.sketch.top(k));
+        }
+        return top;
+    }
+    
+    public List<HeavyHitter> top(String operation, int k) {
+        Operation tracked = operations.get(operation);
+        return tracked != null ? tracked.sketch.top(k) : Collections.emptyList();
+    }
+    
+    /**
+     * Vieillissement périodique : les comptes sont divisés par deux
+     */
+    @Scheduled(fixedDelayString = "${soap.heavy-hitters.decay-interval-ms:300000}",
+               initialDelayString = "${soap.heavy-hitters.decay-interval-ms:300000}")
+    public void decay() {
+        for (Operation operation : operations.values()) {
+            operation.sketch.decay();
+        }
+    }
+    
+    /**
+     * Sketch d'une opération et extraction de ses clés à partir des paramètres de l'appel
+     */
+    private final class Operation {
+        
+        private final String name;
+        private final SpaceSavingSketch sketch;
+        private volatile List<HeavyHitter> cachedTop = Collections.emptyList();
+        private volatile long cachedAtNanos;
+        
+        Operation(String name, SpaceSavingSketch sketch) {
+            this.name = name;
+            this.sketch = sketch;
+            this.cachedAtNanos = System.nanoTime() - TOP_REFRESH_NANOS;
+        }
+        
+        /**
+         * Compte les clés d'un appel : l'id ou l'email, chaque terme d'une recherche
+         */
+        void record(Object[] arguments) {
+            Object first = arguments.length == 0 ? null : arguments[0];
+            switch (name) {
+                case "getClientByEmail":
+                    if (first != null) {
+                        sketch.offer(first.toString().toLowerCase());
+                    }
+                    break;
+                case "searchClients":
+                    offerTerm("ville", first);
+                    offerTerm("nom", arguments.length > 1 ? arguments[1] : null);
+                    break;
+                case "findClients":
+                    if (first instanceof ClientSearchCriteria && ((ClientSearchCriteria) first).getCriteria() != null) {
+                        for (ClientCriterion criterion : ((ClientSearchCriteria) first).getCriteria()) {
+                            if (criterion != null) {
+                                sketch.offer(criterion.toString().toLowerCase());
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    sketch.offer(String.valueOf(first));
+            }
+        }
+        
+        private void offerTerm(String field, Object value) {
+            if (value != null && !value.toString().isEmpty()) {
+                sketch.offer(field + ":" + value.toString().toLowerCase());
+            }
+        }
+        
+        private List<HeavyHitter> cachedTop() {
+            long now = System.nanoTime();
+            if (now - cachedAtNanos >= TOP_REFRESH_NANOS) {
+                cachedTop = sketch.top(prometheusTop);
+                cachedAtNanos = now;
+            }
+            return cachedTop;
+        }
+        
+        double rankCount(int index) {
+            List<HeavyHitter> top = cachedTop();
+            return index < top.size() ? top.get(index).getCount() : 0;
+        }
+        
+        double topShare() {
+            long total = sketch.total();
+            if (total == 0) {
+                return 0;
+            }
+            long sum = 0;
+            for (HeavyHitter hitter : cachedTop()) {
+                sum += hitter.getCount();
+            }
+            return Math.min(1.0, (double) sum / total);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.soap.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoint Actuator /actuator/heavyhitters : clés les plus demandées par opération,
+ * avec leur fréquence estimée et l'erreur maximale ({@code ?limit=} pour la taille du classement)
+ */
+@Component
+@Endpoint(id = "heavyhitters")
+public class HeavyHittersEndpoint {
+    
+    private static final int DEFAULT_LIMIT = 20;
+    
+    private final HeavyHitterTracker tracker;
+    
+    public HeavyHittersEndpoint(HeavyHitterTracker tracker) {
+        this.tracker = tracker;
+    }
+    
+    @ReadOperation
+    public Map<String, List<HeavyHitter>> heavyHitters(@Nullable Integer limit) {
+        return tracker.top(limit != null ? limit : DEFAULT_LIMIT);
+    }
+    
+    @ReadOperation
+    public List<HeavyHitter> operation(@Selector String operation, @Nullable Integer limit) {
+        return tracker.top(operation, limit != null ? limit : DEFAULT_LIMIT);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.soap.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Temps CPU et octets alloués par le thread courant, lus sur le ThreadMXBean de la JVM HotSpot.
+ * La mesure s'active et se coupe à chaud (endpoint Actuator resourceaccounting) ; désactivée,
+ * elle ne coûte qu'une lecture de champ volatile par appel.
+ */
+@Component
+public class ResourceAccounting {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ResourceAccounting.class);
+    
+    private final SoapMetricsService metricsService;
+    
+    // Null si la JVM ne fournit pas la mesure par thread du CPU et des allocations
+    private final com.sun.management.ThreadMXBean threads;
+    
+    private volatile boolean enabled;
+    
+    public ResourceAccounting(SoapMetricsService metricsService, Environment environment) {
+        this.metricsService = metricsService;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threads = bean instanceof com.sun.management.ThreadMXBean
+                && bean.isCurrentThreadCpuTimeSupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+            ? (com.sun.management.ThreadMXBean) bean
+            : null;
+        setEnabled(environment.getProperty("soap.monitoring.resource-accounting.enabled", Boolean.class, false));
+    }
+    
+    public boolean isSupported() {
+        return threads != null;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Active ou coupe la mesure ; retourne l'état effectif, toujours faux si la JVM ne la fournit pas
+     */
+    public synchronized boolean setEnabled(boolean enable) {
+        if (enable && threads == null) {
+            logger.warn("Per-thread CPU time and allocation accounting is not supported by this JVM");
+            return false;
+        }
+        if (enable && !enabled) {
+            threads.setThreadCpuTimeEnabled(true);
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+        if (enable != enabled) {
+            logger.info("Per-operation CPU time and allocation accounting {}", enable ? "enabled" : "disabled");
+        }
+        enabled = enable;
+        return enabled;
+    }
+    
+    /**
+     * Temps CPU consommé par le thread courant depuis son démarrage, -1 si indisponible
+     */
+    public long currentThreadCpuNanos() {
+        return threads.getCurrentThreadCpuTime();
+    }
+    
+    /**
+     * Octets alloués par le thread courant depuis son démarrage, -1 si indisponible
+     */
+    public long currentThreadAllocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    /**
+     * Mesure démarrée sur le thread courant, ou null si la mesure est désactivée
+     */
+    public Span start() {
+        if (!enabled) {
+            return null;
+        }
+        Span span = new Span();
+        span.resume();
+        return span;
+    }
+    
+    /**
+     * Publie la consommation d'une phase de rechargement, arrêtant la mesure si elle est en cours
+     */
+    public void recordReload(String phase, Span span) {
+        if (span != null) {
+            span.stop();
+            recordReload(phase, span.cpuNanos, span.allocatedBytes);
+        }
+    }
+    
+    public void recordReload(String phase, long cpuNanos, long allocatedBytes) {
+        metricsService.recordReloadResources(phase, cpuNanos, allocatedBytes);
+    }
+    
+    /**
+     * Consommation cumulée sur un ou plusieurs intervalles d'exécution d'un même thread
+     */
+    public final class Span {
+        
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long cpuStart = -1;
+        private long allocatedStart = -1;
+        
+        public void resume() {
+            cpuStart = currentThreadCpuNanos();
+            allocatedStart = currentThreadAllocatedBytes();
+        }
+        
+        public void stop() {
+            if (cpuStart >= 0 && allocatedStart >= 0) {
+                long cpu = currentThreadCpuNanos();
+                long allocated = currentThreadAllocatedBytes();
+                if (cpu >= 0 && allocated >= 0) {
+                    cpuNanos += cpu - cpuStart;
+                    allocatedBytes += allocated - allocatedStart;
+                }
+            }
+            cpuStart = -1;
+            allocatedStart = -1;
+        }
+        
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+        
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
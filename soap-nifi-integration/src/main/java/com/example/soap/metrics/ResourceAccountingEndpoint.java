@@ -0,0 +1,38 @@
+package com.example.soap.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoint Actuator /actuator/resourceaccounting : état de la mesure du CPU et des allocations,
+ * activée ou coupée sans redémarrage par un POST {@code {"enabled": true}}
+ */
+@Component
+@Endpoint(id = "resourceaccounting")
+public class ResourceAccountingEndpoint {
+    
+    private final ResourceAccounting accounting;
+    
+    public ResourceAccountingEndpoint(ResourceAccounting accounting) {
+        this.accounting = accounting;
+    }
+    
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("supported", accounting.isSupported());
+        status.put("enabled", accounting.isEnabled());
+        return status;
+    }
+    
+    @WriteOperation
+    public Map<String, Object> configure(boolean enabled) {
+        accounting.setEnabled(enabled);
+        return status();
+    }
+}
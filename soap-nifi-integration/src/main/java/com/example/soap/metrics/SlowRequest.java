@@ -0,0 +1,72 @@
+package com.example.soap.metrics;
+
+import java.time.Instant;
+
+/**
+ * Appel SOAP retenu parmi les plus lents de sa fenêtre
+ */
+public class SlowRequest {
+    
+    private final String operation;
+    private final long startedAtMillis;
+    private final long durationNanos;
+    private final long invocationNanos;
+    private final long serializationNanos;
+    private final int parametersHash;
+    private final int resultSize;
+    private final long cacheGeneration;
+    private final boolean fault;
+    
+    SlowRequest(String operation, long startedAtMillis, long durationNanos, long invocationNanos,
+            long serializationNanos, int parametersHash, int resultSize, long cacheGeneration, boolean fault) {
+        this.operation = operation;
+        this.startedAtMillis = startedAtMillis;
+        this.durationNanos = durationNanos;
+        this.invocationNanos = invocationNanos;
+        this.serializationNanos = serializationNanos;
+        this.parametersHash = parametersHash;
+        this.resultSize = resultSize;
+        this.cacheGeneration = cacheGeneration;
+        this.fault = fault;
+    }
+    
+    long durationNanos() {
+        return durationNanos;
+    }
+    
+    public String getOperation() {
+        return operation;
+    }
+    
+    public String getStartedAt() {
+        return Instant.ofEpochMilli(startedAtMillis).toString();
+    }
+    
+    public double getDurationMs() {
+        return durationNanos / 1_000_000.0;
+    }
+    
+    public double getInvocationMs() {
+        return invocationNanos / 1_000_000.0;
+    }
+    
+    public double getSerializationMs() {
+        return serializationNanos / 1_000_000.0;
+    }
+    
+    public String getParametersHash() {
+        return Integer.toHexString(parametersHash);
+    }
+    
+    public int getResultSize() {
+        return resultSize;
+    }
+    
+    public long getCacheGeneration() {
+        return cacheGeneration;
+    }
+    
+    public boolean isFault() {
+        return fault;
+    }
+}
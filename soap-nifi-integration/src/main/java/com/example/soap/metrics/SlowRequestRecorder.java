@@ -0,0 +1,272 @@
+package com.example.soap.metrics;
+
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.model.ClientPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Enregistreur des appels SOAP lents : chaque appel tracé émet un {@link SoapRequestEvent} JFR,
+ * et les appels les plus lents de chaque fenêtre de temps sont conservés dans un anneau de fenêtres
+ * sans verrou, lu par l'endpoint Actuator slowrequests.
+ * Un appel plus rapide que le plus lent déjà retenu dans une fenêtre pleine ne coûte qu'une comparaison.
+ */
+@Component
+public class SlowRequestRecorder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SlowRequestRecorder.class);
+    
+    private final ClientCacheService cacheService;
+    private final boolean enabled;
+    private final int perWindow;
+    private final long windowMillis;
+    private final AtomicReferenceArray<Window> windows;
+    
+    public SlowRequestRecorder(ClientCacheService cacheService, Environment environment) {
+        this.cacheService = cacheService;
+        this.enabled = environment.getProperty("soap.slow-requests.enabled", Boolean.class, true);
+        this.perWindow = Math.max(1, environment.getProperty("soap.slow-requests.per-window", Integer.class, 20));
+        this.windowMillis = Math.max(1000L, environment.getProperty("soap.slow-requests.window-ms", Long.class, 60000L));
+        this.windows = new AtomicReferenceArray<>(Math.max(1,
+            environment.getProperty("soap.slow-requests.windows", Integer.class, 10)));
+        if (enabled) {
+            logger.info("Recording the {} slowest SOAP requests per {} s window ({} windows kept)",
+                perWindow, windowMillis / 1000, windows.length());
+        }
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Début d'un appel, une fois admis et avant son exécution
+     */
+    public RequestTrace start(String operation, List<?> parameters) {
+        return new RequestTrace(operation, parameters);
+    }
+    
+    /**
+     * Fin d'un appel : réponse ou faute sérialisée
+     */
+    public void complete(RequestTrace trace, boolean fault) {
+        long endNanos = System.nanoTime();
+        long durationNanos = endNanos - trace.startNanos;
+        long resultNanos = trace.resultNanos != 0 ? trace.resultNanos : endNanos;
+        long invocationNanos = resultNanos - trace.startNanos;
+        long serializationNanos = endNanos - resultNanos;
+        
+        SoapRequestEvent event = trace.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = trace.operation;
+            event.parametersHash = trace.parametersHash();
+            event.resultSize = trace.resultSize;
+            event.cacheGeneration = cacheService.getGeneration();
+            event.invocationTime = invocationNanos;
+            event.serializationTime = serializationNanos;
+            event.fault = fault;
+            event.commit();
+        }
+        
+        Window window = window(trace.startedAtMillis);
+        if (window != null && window.admits(durationNanos)) {
+            window.offer(new SlowRequest(trace.operation, trace.startedAtMillis, durationNanos, invocationNanos,
+                serializationNanos, trace.parametersHash(), trace.resultSize, cacheService.getGeneration(), fault));
+        }
+    }
+    
+    /**
+     * Fenêtres conservées, de la plus récente à la plus ancienne, avec leurs appels du plus lent au plus rapide
+     */
+    public List<Map<String, Object>> windows(String operation) {
+        long oldestEpoch = System.currentTimeMillis() / windowMillis - windows.length() + 1;
+        List<Window> retained = new ArrayList<>();
+        for (int i = 0; i < windows.length(); i++) {
+            Window window = windows.get(i);
+            if (window != null && window.epoch >= oldestEpoch) {
+                retained.add(window);
+            }
+        }
+        retained.sort((a, b) -> Long.compare(b.epoch, a.epoch));
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Window window : retained) {
+            List<SlowRequest> requests = window.requests(operation);
+            if (operation != null && requests.isEmpty()) {
+                continue;
+            }
+            Map<String, Object> view = new LinkedHashMap<>();
+            view.put("start", Instant.ofEpochMilli(window.epoch * windowMillis).toString());
+            view.put("end", Instant.ofEpochMilli((window.epoch + 1) * windowMillis).toString());
+            view.put("requests", requests);
+            result.add(view);
+        }
+        return result;
+    }
+    
+    /**
+     * Fenêtre d'un instant : l'emplacement de l'anneau est réattribué par CAS quand sa fenêtre est périmée
+     */
+    private Window window(long timeMillis) {
+        long epoch = timeMillis / windowMillis;
+        int index = (int) (epoch % windows.length());
+        Window window = windows.get(index);
+        while (window == null || window.epoch < epoch) {
+            Window fresh = new Window(epoch, perWindow);
+            if (windows.compareAndSet(index, window, fresh)) {
+                return fresh;
+            }
+            window = windows.get(index);
+        }
+        // Appel commencé dans une fenêtre déjà recyclée : trop ancien pour être conservé
+        return window.epoch == epoch ? window : null;
+    }
+    
+    private static int resultSize(List<?> result) {
+        Object value = result != null && !result.isEmpty() ? result.get(0) : null;
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        if (value instanceof ClientPage) {
+            return ((ClientPage) value).getClients().size();
+        }
+        return 1;
+    }
+    
+    /**
+     * Appel en cours : instants de début et de disponibilité du résultat, événement JFR ouvert
+     */
+    public static final class RequestTrace {
+        
+        private final String operation;
+        private final List<?> parameters;
+        private final long startedAtMillis = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final SoapRequestEvent event = new SoapRequestEvent();
+        private long resultNanos;
+        private int resultSize;
+        private int parametersHash;
+        private boolean hashed;
+        
+        RequestTrace(String operation, List<?> parameters) {
+            this.operation = operation;
+            this.parameters = parameters;
+            event.begin();
+        }
+        
+        /**
+         * Résultat de l'appel disponible, avant sa sérialisation
+         */
+        public void result(List<?> result) {
+            resultNanos = System.nanoTime();
+            resultSize = resultSize(result);
+        }
+        
+        /**
+         * Empreinte des paramètres, calculée seulement pour un appel retenu ou un événement validé
+         */
+        int parametersHash() {
+            if (!hashed) {
+                int hash = 1;
+                if (parameters != null) {
+                    for (Object parameter : parameters) {
+                        hash = 31 * hash + String.valueOf(parameter).hashCode();
+                    }
+                }
+                parametersHash = hash;
+                hashed = true;
+            }
+            return parametersHash;
+        }
+    }
+    
+    /**
+     * Les appels les plus lents d'une fenêtre : emplacements remplis dans l'ordre, puis le plus rapide
+     * retenu est remplacé par CAS ; {@code floorNanos} évite de parcourir les emplacements pour un appel
+     * trop rapide
+     */
+    private static final class Window {
+        
+        private final long epoch;
+        private final AtomicReferenceArray<SlowRequest> slots;
+        private final AtomicInteger filled = new AtomicInteger();
+        private volatile long floorNanos;
+        
+        Window(long epoch, int size) {
+            this.epoch = epoch;
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+        
+        boolean admits(long durationNanos) {
+            return durationNanos > floorNanos || filled.get() < slots.length();
+        }
+        
+        void offer(SlowRequest request) {
+            int index = filled.get();
+            while (index < slots.length()) {
+                if (filled.compareAndSet(index, index + 1)) {
+                    slots.set(index, request);
+                    if (index == slots.length() - 1) {
+                        updateFloor();
+                    }
+                    return;
+                }
+                index = filled.get();
+            }
+            while (true) {
+                int fastest = -1;
+                SlowRequest fastestRequest = null;
+                for (int i = 0; i < slots.length(); i++) {
+                    SlowRequest slot = slots.get(i);
+                    if (slot != null && (fastestRequest == null || slot.durationNanos() < fastestRequest.durationNanos())) {
+                        fastest = i;
+                        fastestRequest = slot;
+                    }
+                }
+                if (fastestRequest == null || fastestRequest.durationNanos() >= request.durationNanos()) {
+                    return;
+                }
+                if (slots.compareAndSet(fastest, fastestRequest, request)) {
+                    updateFloor();
+                    return;
+                }
+            }
+        }
+        
+        private void updateFloor() {
+            long floor = Long.MAX_VALUE;
+            for (int i = 0; i < slots.length(); i++) {
+                SlowRequest slot = slots.get(i);
+                // Emplacement réservé mais pas encore écrit : tout appel reste admis
+                floor = Math.min(floor, slot != null ? slot.durationNanos() : 0L);
+            }
+            floorNanos = floor;
+        }
+        
+        List<SlowRequest> requests(String operation) {
+            List<SlowRequest> requests = new ArrayList<>(slots.length());
+            for (int i = 0; i < slots.length(); i++) {
+                SlowRequest slot = slots.get(i);
+                if (slot != null && (operation == null || operation.equals(slot.getOperation()))) {
+                    requests.add(slot);
+                }
+            }
+            requests.sort((a, b) -> Long.compare(b.durationNanos(), a.durationNanos()));
+            return requests;
+        }
+    }
+}
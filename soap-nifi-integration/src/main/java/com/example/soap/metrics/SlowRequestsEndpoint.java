@@ -0,0 +1,34 @@
+package com.example.soap.metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Endpoint Actuator /actuator/slowrequests : appels les plus lents de chaque fenêtre conservée,
+ * pour toutes les opérations ou pour une seule
+ */
+@Component
+@Endpoint(id = "slowrequests")
+public class SlowRequestsEndpoint {
+    
+    private final SlowRequestRecorder recorder;
+    
+    public SlowRequestsEndpoint(SlowRequestRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    @ReadOperation
+    public List<Map<String, Object>> slowRequests() {
+        return recorder.windows(null);
+    }
+    
+    @ReadOperation
+    public List<Map<String, Object>> operation(@Selector String operation) {
+        return recorder.windows(operation);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.soap.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Compteurs et timer d'une méthode SOAP, résolus une seule fois puis réutilisés à chaque appel
+ * sans recherche ni allocation.
+ */
+public final class SoapMethodMeters {
+    
+    private final String methodName;
+    private final MeterRegistry meterRegistry;
+    private final Counter globalRequestCounter;
+    private final Counter globalErrorCounter;
+    private final Counter requestCounter;
+    private final Timer responseTimer;
+    
+    // Un compteur par type d'exception, créé à la première erreur de ce type
+    private final ConcurrentHashMap<Class<?>, Counter> errorCounters = new ConcurrentHashMap<>();
+    
+    // Notifié de chaque durée d'exécution, pour ajuster la limite de concurrence de la méthode
+    private volatile LongConsumer latencyListener;
+    
+    // Temps CPU et octets alloués par appel, créés à la première mesure
+    private volatile Timer cpuTimer;
+    private volatile DistributionSummary allocationSummary;
+    
+    // Notifié des paramètres de chaque appel, pour suivre les clés les plus demandées
+    private volatile Consumer<Object[]> argumentsListener;
+    
+    SoapMethodMeters(String methodName, MeterRegistry meterRegistry, Counter globalRequestCounter,
+            Counter globalErrorCounter) {
+        this.methodName = methodName;
+        this.meterRegistry = meterRegistry;
+        this.globalRequestCounter = globalRequestCounter;
+        this.globalErrorCounter = globalErrorCounter;
+        this.requestCounter = Counter.builder("soap_requests_by_method_total")
+            .tag("method", methodName)
+            .description("Number of SOAP calls by method")
+            .register(meterRegistry);
+        this.responseTimer = Timer.builder("soap_response_time_seconds")
+            .tag("method", methodName)
+            .description("SOAP method response time in seconds")
+            .publishPercentileHistogram(true)
+            .register(meterRegistry);
+    }
+    
+    public String getMethodName() {
+        return methodName;
+    }
+    
+    public void recordRequest() {
+        globalRequestCounter.increment();
+        requestCounter.increment();
+    }
+    
+    public void setLatencyListener(LongConsumer latencyListener) {
+        this.latencyListener = latencyListener;
+    }
+    
+    public void setArgumentsListener(Consumer<Object[]> argumentsListener) {
+        this.argumentsListener = argumentsListener;
+    }
+    
+    /**
+     * Vrai si les paramètres des appels sont suivis : à tester avant de les préparer pour {@link #recordArguments}
+     */
+    public boolean isTrackingArguments() {
+        return argumentsListener != null;
+    }
+    
+    /**
+     * Paramètres d'un appel, exécuté ou servi depuis le cache de réponses
+     */
+    public void recordArguments(Object[] arguments) {
+        Consumer<Object[]> listener = argumentsListener;
+        if (listener != null && arguments != null) {
+            listener.accept(arguments);
+        }
+    }
+    
+    public void recordDuration(long durationNanos) {
+        responseTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        LongConsumer listener = latencyListener;
+        if (listener != null) {
+            listener.accept(durationNanos);
+        }
+    }
+    
+    /**
+     * Temps CPU et octets alloués par le thread qui a exécuté l'appel
+     */
+    public void recordResourceUsage(long cpuNanos, long allocatedBytes) {
+        Timer timer = cpuTimer;
+        DistributionSummary summary = allocationSummary;
+        if (timer == null || summary == null) {
+            timer = Timer.builder("soap_cpu_time_seconds")
+                .tag("method", methodName)
+                .description("Thread CPU time consumed by a SOAP method invocation")
+                .publishPercentileHistogram(true)
+                .register(meterRegistry);
+            summary = DistributionSummary.builder("soap_allocated_bytes")
+                .tag("method", methodName)
+                .baseUnit("bytes")
+                .description("Heap bytes allocated by the thread running a SOAP method invocation")
+                .publishPercentileHistogram(true)
+                .register(meterRegistry);
+            cpuTimer = timer;
+            allocationSummary = summary;
+        }
+        timer.record(cpuNanos, TimeUnit.NANOSECONDS);
+        summary.record(allocatedBytes);
+    }
+    
+    /**
+     * Appel servi depuis le cache de réponses : compté et chronométré, mais pas signalé
+     * à la limite de concurrence puisqu'il n'a pas été exécuté
+     */
+    public void recordCacheHit(long durationNanos) {
+        recordRequest();
+        responseTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Compte une erreur une seule fois, globalement et par type d'exception
+     */
+    public void recordError(Throwable error) {
+        globalErrorCounter.increment();
+        Class<?> errorType = error.getClass();
+        Counter errorCounter = errorCounters.get(errorType);
+        if (errorCounter == null) {
+            errorCounter = errorCounters.computeIfAbsent(errorType, type ->
+                Counter.builder("soap_errors_by_method_total")
+                    .tag("method", methodName)
+                    .tag("error_type", type.getSimpleName())
+                    .description("Number of SOAP errors by method")
+                    .register(meterRegistry)
+            );
+        }
+        errorCounter.increment();
+    }
+}
@@ -1,30 +1,77 @@
 package com.example.soap.metrics;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
 
 @Component
 public class SoapMetricsService {
     
+    // Bornes fixes des histogrammes par étape et par taille : quelques séries par méthode au lieu de la centaine
+    // de buckets d'un histogramme de percentiles
+    private static final Duration[] PHASE_BUCKETS = {
+        Duration.ofNanos(100_000), Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10),
+        Duration.ofMillis(25), Duration.ofMillis(50), Duration.ofMillis(100), Duration.ofMillis(250),
+        Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofSeconds(5)
+    };
+    private static final double[] PAYLOAD_BUCKETS = {
+        1024, 4096, 16384, 65536, 262144, 1048576, 4194304, 16777216, 67108864
+    };
+    
     private final MeterRegistry meterRegistry;
-    private final ConcurrentHashMap<String, Counter> requestCounters;
-    private final ConcurrentHashMap<String, Counter> errorCounters;
-    private final ConcurrentHashMap<String, Timer> responseTimers;
+    private final ConcurrentHashMap<String, SoapMethodMeters> methodMeters;
+    private final ConcurrentHashMap<String, DistributionSummary> batchSizes;
+    private final ConcurrentHashMap<String, DistributionSummary[]> responseSizes;
+    private final ConcurrentHashMap<String, Timer[]> phaseTimers;
+    private final ConcurrentHashMap<String, DistributionSummary[]> payloadSizes;
+    private final ConcurrentHashMap<String, Timer> reloadCpuTimers;
+    private final ConcurrentHashMap<String, DistributionSummary> reloadAllocations;
+    private final ConcurrentHashMap<String, Counter> exportsSkipped;
+    private final ConcurrentHashMap<String, Counter> exportsRejected;
     
     // Compteur global
     private final Counter globalRequestCounter;
     private final Counter globalErrorCounter;
     
+    // Publication des générations du cache
+    private final Timer cacheBuildTimer;
+    private final Timer cacheSwapTimer;
+    private final Timer cacheDeltaTimer;
+    private final Timer snapshotWriteTimer;
+    private final Counter deltaInsertCounter;
+    private final Counter deltaUpdateCounter;
+    private final Counter deltaDeleteCounter;
+    
+    // Journal des mutations
+    private final Timer journalCommitTimer;
+    private final Timer journalSyncTimer;
+    private final DistributionSummary journalBatchSize;
+    
+    // Empreinte des exports NiFi
+    private final Counter exportChecksumBytes;
+    private final Timer exportChecksumTimer;
+    
     public SoapMetricsService(MeterRegistry meterRegistry) {
         this.meterRegistry = meterRegistry;
-        this.requestCounters = new ConcurrentHashMap<>();
-        this.errorCounters = new ConcurrentHashMap<>();
-        this.responseTimers = new ConcurrentHashMap<>();
+        this.methodMeters = new ConcurrentHashMap<>();
+        this.batchSizes = new ConcurrentHashMap<>();
+        this.responseSizes = new ConcurrentHashMap<>();
+        this.phaseTimers = new ConcurrentHashMap<>();
+        this.payloadSizes = new ConcurrentHashMap<>();
+        this.reloadCpuTimers = new ConcurrentHashMap<>();
+        this.reloadAllocations = new ConcurrentHashMap<>();
+        this.exportsSkipped = new ConcurrentHashMap<>();
+        this.exportsRejected = new ConcurrentHashMap<>();
         
         // Initialiser les compteurs globaux
         this.globalRequestCounter = Counter.builder("soap_requests_total")
@@ -34,68 +81,261 @@ public class SoapMetricsService {
         this.globalErrorCounter = Counter.builder("soap_errors_total")
             .description("Total number of SOAP errors")
             .register(meterRegistry);
+            
+        this.cacheBuildTimer = Timer.builder("soap_cache_build_seconds")
+            .description("Time spent building a new cache generation off to the side")
+            .register(meterRegistry);
+            
+        this.cacheSwapTimer = Timer.builder("soap_cache_swap_seconds")
+            .description("Time spent publishing a new cache generation")
+            .register(meterRegistry);
+            
+        this.cacheDeltaTimer = Timer.builder("soap_cache_delta_seconds")
+            .description("Time spent computing and applying an incremental cache reload")
+            .register(meterRegistry);
+            
+        this.snapshotWriteTimer = Timer.builder("soap_cache_snapshot_write_seconds")
+            .description("Time spent writing the binary cache snapshot")
+            .register(meterRegistry);
+        this.deltaInsertCounter = deltaCounter("insert");
+        this.deltaUpdateCounter = deltaCounter("update");
+        this.deltaDeleteCounter = deltaCounter("delete");
+        
+        this.journalCommitTimer = Timer.builder("soap_journal_commit_seconds")
+            .description("Time from a SOAP mutation to its durable write in the mutation journal")
+            .publishPercentileHistogram(true)
+            .register(meterRegistry);
+        this.journalSyncTimer = Timer.builder("soap_journal_sync_seconds")
+            .description("Time spent writing and syncing one group commit of the mutation journal")
+            .register(meterRegistry);
+        this.journalBatchSize = DistributionSummary.builder("soap_journal_batch_records")
+            .description("Number of mutations made durable by one journal sync")
+            .publishPercentileHistogram(true)
+            .register(meterRegistry);
+            
+        this.exportChecksumBytes = Counter.builder("soap_export_checksum_bytes")
+            .baseUnit("bytes")
+            .description("Bytes of NiFi exports read to compute their content checksum")
+            .register(meterRegistry);
+        this.exportChecksumTimer = Timer.builder("soap_export_checksum_seconds")
+            .description("Time spent computing the content checksum of NiFi exports")
+            .register(meterRegistry);
     }
     
-    // Méthodes pour les métriques par méthode
-    public void incrementRequest(String methodName) {
-        globalRequestCounter.increment();
-        
-        // Compteur par méthode
-        Counter methodCounter = requestCounters.computeIfAbsent(methodName, key ->
-            Counter.builder("soap_requests_by_method_total")
+    // Compteurs et timer d'une méthode SOAP, à résoudre une fois et à conserver par l'appelant
+    public SoapMethodMeters methodMeters(String methodName) {
+        return methodMeters.computeIfAbsent(methodName, key ->
+            new SoapMethodMeters(key, meterRegistry, globalRequestCounter, globalErrorCounter));
+    }
+    
+    // Enregistre la taille d'un lot traité par une opération groupée
+    public void recordBatchSize(String methodName, int size) {
+        batchSizes.computeIfAbsent(methodName, key ->
+            DistributionSummary.builder("soap_batch_size")
                 .tag("method", key)
-                .description("Number of SOAP calls by method")
+                .description("Number of items per SOAP batch call")
+                .publishPercentileHistogram(true)
                 .register(meterRegistry)
-        );
-        methodCounter.increment();
+        ).record(size);
     }
     
-    public void incrementError(String methodName, String errorType) {
-        globalErrorCounter.increment();
-        
-        String key = methodName + "_" + errorType;
-        Counter errorCounter = errorCounters.computeIfAbsent(key, k ->
-            Counter.builder("soap_errors_by_method_total")
-                .tag("method", methodName)
-                .tag("error_type", errorType)
-                .description("Number of SOAP errors by method")
-                .register(meterRegistry)
+    // Enregistre la taille d'une réponse avant compression (payload) et telle qu'envoyée (wire)
+    public void recordResponseSize(String encoding, String compression, long payloadBytes, long wireBytes) {
+        DistributionSummary[] summaries = responseSizes.computeIfAbsent(encoding + "_" + compression, key ->
+            new DistributionSummary[] {
+                responseSizeSummary("soap_response_payload_bytes", "SOAP response size before compression", encoding, compression),
+                responseSizeSummary("soap_response_wire_bytes", "SOAP response size as sent on the wire", encoding, compression)
+            }
         );
-        errorCounter.increment();
+        summaries[0].record(payloadBytes);
+        summaries[1].record(wireBytes);
     }
     
-    public Timer.Sample startTimer() {
-        return Timer.start(meterRegistry);
+    private DistributionSummary responseSizeSummary(String name, String description, String encoding, String compression) {
+        return DistributionSummary.builder(name)
+            .tag("encoding", encoding)
+            .tag("compression", compression)
+            .baseUnit("bytes")
+            .description(description)
+            .register(meterRegistry);
     }
     
-    public void stopTimer(Timer.Sample sample, String methodName) {
-        if (sample != null) {
-            Timer timer = getOrCreateTimer(methodName);
-            sample.stop(timer);
+    // Enregistre le temps passé par un appel dans chaque étape de traitement CXF, dans l'ordre des noms d'étapes
+    public void recordPhases(String methodName, String[] phases, long[] phaseNanos) {
+        Timer[] timers = phaseTimers.computeIfAbsent(methodName, key -> {
+            Timer[] resolved = new Timer[phases.length];
+            for (int i = 0; i < phases.length; i++) {
+                resolved[i] = Timer.builder("soap_phase_seconds")
+                    .tag("method", key)
+                    .tag("phase", phases[i])
+                    .description("Time spent by SOAP calls in each CXF processing phase")
+                    .serviceLevelObjectives(PHASE_BUCKETS)
+                    .register(meterRegistry);
+            }
+            return resolved;
+        });
+        for (int i = 0; i < timers.length; i++) {
+            timers[i].record(phaseNanos[i], TimeUnit.NANOSECONDS);
         }
     }
     
-    // Méthode utilitaire pour obtenir ou créer un Timer
-    private Timer getOrCreateTimer(String methodName) {
-        return responseTimers.computeIfAbsent(methodName, key ->
-            Timer.builder("soap_response_time_seconds")
-                .tag("method", key)
-                .description("SOAP method response time in seconds")
-                .publishPercentileHistogram(true)
-                .register(meterRegistry)
+    // Enregistre la taille d'une requête et de sa réponse telles que reçue et envoyée, par opération
+    public void recordPayloadSizes(String methodName, long requestBytes, long responseBytes) {
+        DistributionSummary[] summaries = payloadSizes.computeIfAbsent(methodName, key ->
+            new DistributionSummary[] {
+                payloadSizeSummary("soap_request_bytes", "SOAP request size as received, by method", key),
+                payloadSizeSummary("soap_response_bytes", "SOAP response size as sent, by method", key)
+            }
         );
+        if (requestBytes >= 0) {
+            summaries[0].record(requestBytes);
+        }
+        if (responseBytes >= 0) {
+            summaries[1].record(responseBytes);
+        }
     }
     
-    // Méthode utilitaire pour enregistrer une requête complète
-    public void recordRequest(String methodName, long startTime, boolean success) {
-        // NE PAS appeler incrementRequest ici car il est déjà appelé dans l'Aspect
-        
-        if (!success) {
-            incrementError(methodName, "runtime_error");
-        }
-        
-        long duration = System.currentTimeMillis() - startTime;
-        Timer timer = getOrCreateTimer(methodName);
-        timer.record(duration, TimeUnit.MILLISECONDS);
+    private DistributionSummary payloadSizeSummary(String name, String description, String methodName) {
+        return DistributionSummary.builder(name)
+            .tag("method", methodName)
+            .baseUnit("bytes")
+            .description(description)
+            .serviceLevelObjectives(PAYLOAD_BUCKETS)
+            .register(meterRegistry);
+    }
+    
+    // Enregistre le temps CPU et les octets alloués par une phase de rechargement du cache (read, merge, publish)
+    public void recordReloadResources(String phase, long cpuNanos, long allocatedBytes) {
+        reloadCpuTimers.computeIfAbsent(phase, key ->
+            Timer.builder("soap_reload_cpu_time_seconds")
+                .tag("phase", key)
+                .description("Thread CPU time consumed by a cache reload phase")
+                .register(meterRegistry)
+        ).record(cpuNanos, TimeUnit.NANOSECONDS);
+        reloadAllocations.computeIfAbsent(phase, key ->
+            DistributionSummary.builder("soap_reload_allocated_bytes")
+                .tag("phase", key)
+                .baseUnit("bytes")
+                .description("Heap bytes allocated by a cache reload phase")
+                .register(meterRegistry)
+        ).record(allocatedBytes);
+    }
+    
+    // Enregistre le calcul de l'empreinte d'un export NiFi : octets lus et durée, pour en suivre le débit
+    public void recordExportChecksum(long bytes, long durationNanos) {
+        exportChecksumBytes.increment(bytes);
+        exportChecksumTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    // Compte un export NiFi non rechargé car identique à la génération publiée
+    public void recordExportSkipped(String reason) {
+        exportsSkipped.computeIfAbsent(reason, key ->
+            Counter.builder("soap_export_skipped_total")
+                .tag("reason", key)
+                .description("NiFi exports not reloaded because the cache already holds their content")
+                .register(meterRegistry)
+        ).increment();
+    }
+    
+    // Compte un export NiFi rejeté avant publication (incomplet, incohérent avec son marqueur, réécrit)
+    public void recordExportRejected(String reason) {
+        exportsRejected.computeIfAbsent(reason, key ->
+            Counter.builder("soap_export_rejected_total")
+                .tag("reason", key)
+                .description("NiFi exports rejected before publication, current cache kept")
+                .register(meterRegistry)
+        ).increment();
+    }
+    
+    // Enregistre la construction et la publication d'une génération du cache
+    public void recordCacheSwap(long buildNanos, long swapNanos) {
+        cacheBuildTimer.record(buildNanos, TimeUnit.NANOSECONDS);
+        cacheSwapTimer.record(swapNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    // Enregistre un rechargement incrémental du cache
+    public void recordCacheDelta(int inserts, int updates, int deletes, long durationNanos) {
+        deltaInsertCounter.increment(inserts);
+        deltaUpdateCounter.increment(updates);
+        deltaDeleteCounter.increment(deletes);
+        cacheDeltaTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    // Enregistre l'écriture du snapshot binaire du cache
+    public void recordSnapshotWrite(long durationNanos) {
+        snapshotWriteTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    // Enregistre un group commit du journal des mutations : nombre de mutations et durée d'écriture
+    public void recordJournalBatch(int records, long syncNanos) {
+        journalBatchSize.record(records);
+        journalSyncTimer.record(syncNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    // Enregistre le délai entre une mutation et sa persistance dans le journal
+    public void recordJournalCommit(long latencyNanos) {
+        journalCommitTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    private Counter deltaCounter(String type) {
+        return Counter.builder("soap_cache_delta_records_total")
+            .tag("type", type)
+            .description("Number of clients applied by incremental cache reloads")
+            .register(meterRegistry);
+    }
+    
+    // Compteur des consultations du cache de réponses sérialisées, par opération et résultat (hit, miss)
+    public Counter responseCacheLookups(String methodName, String result) {
+        return Counter.builder("soap_response_cache_requests_total")
+            .tag("method", methodName)
+            .tag("result", result)
+            .description("Lookups in the serialized SOAP response cache")
+            .register(meterRegistry);
+    }
+    
+    // Compteur des réponses retirées du cache pour libérer de la place
+    public Counter responseCacheEvictions() {
+        return Counter.builder("soap_response_cache_evictions_total")
+            .description("Serialized SOAP responses evicted to stay within the cache size")
+            .register(meterRegistry);
+    }
+    
+    // Compteur des appels refusés par la limite de concurrence d'un pool d'exécution
+    public Counter rejectedRequests(String pool) {
+        return Counter.builder("soap_requests_rejected_total")
+            .tag("pool", pool)
+            .description("SOAP calls rejected by the adaptive concurrency limit")
+            .register(meterRegistry);
+    }
+    
+    // Timer des appels vers une instance du cluster pour un résultat (success, error),
+    // à résoudre une fois par instance à la construction du cluster et à conserver par l'appelant
+    public Timer clusterCallTimer(String node, String outcome) {
+        return Timer.builder("soap_cluster_calls_seconds")
+            .tag("node", node)
+            .tag("outcome", outcome)
+            .description("Calls forwarded to cluster nodes, including scatter/gather fan-out")
+            .register(meterRegistry);
+    }
+    
+    // Enregistre une jauge lue à la demande sur l'objet fourni
+    public <T> void registerGauge(String name, String description, T target, ToDoubleFunction<T> value) {
+        registerGauge(name, description, Tags.empty(), target, value);
+    }
+    
+    public <T> void registerGauge(String name, String description, Tags tags, T target, ToDoubleFunction<T> value) {
+        Gauge.builder(name, target, value)
+            .tags(tags)
+            .description(description)
+            .register(meterRegistry);
+    }
+    
+    // Enregistre un compteur cumulatif lu à la demande sur l'objet fourni
+    public <T> void registerFunctionCounter(String name, String description, Tags tags, T target,
+                                            ToDoubleFunction<T> count) {
+        FunctionCounter.builder(name, target, count)
+            .tags(tags)
+            .description(description)
+            .register(meterRegistry);
     }
 }
\ No newline at end of file
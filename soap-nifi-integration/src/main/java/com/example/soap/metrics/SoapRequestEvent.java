@@ -0,0 +1,46 @@
+package com.example.soap.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Événement JFR émis pour chaque appel SOAP tracé. Sans enregistrement JFR en cours, l'événement
+ * n'est pas validé et ses champs ne sont pas calculés ; le seuil se règle comme pour les événements
+ * du JDK, par exemple {@code com.example.soap.Request#threshold=20 ms}.
+ */
+@Name("com.example.soap.Request")
+@Label("SOAP Request")
+@Category({"SOAP", "Requests"})
+@Description("SOAP call, from invocation admission to the end of response serialization")
+@StackTrace(false)
+class SoapRequestEvent extends jdk.jfr.Event {
+    
+    @Label("Operation")
+    String operation;
+    
+    @Label("Parameters Hash")
+    @Description("Hash of the call parameters, stable for identical parameters")
+    int parametersHash;
+    
+    @Label("Result Size")
+    @Description("Number of clients returned, 1 for a single value, 0 for none")
+    int resultSize;
+    
+    @Label("Cache Generation")
+    long cacheGeneration;
+    
+    @Label("Invocation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long invocationTime;
+    
+    @Label("Serialization Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long serializationTime;
+    
+    @Label("Fault")
+    boolean fault;
+}
@@ -0,0 +1,151 @@
+package com.example.soap.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Top-K approché en mémoire fixe (algorithme Space-Saving) : au plus {@code capacity} clés suivies ;
+ * une clé nouvelle remplace la moins fréquente et hérite de son compte comme erreur maximale.
+ * Les clés sont réparties par hachage sur des segments indépendants, chacun avec son propre verrou,
+ * pour que les appels concurrents ne se disputent pas un verrou unique.
+ */
+final class SpaceSavingSketch {
+    
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final LongAdder total = new LongAdder();
+    
+    SpaceSavingSketch(int capacity, int stripeCount) {
+        int count = Integer.highestOneBit(Math.max(1, stripeCount));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(Math.max(1, capacity / count));
+        }
+        this.stripeMask = count - 1;
+    }
+    
+    void offer(String key) {
+        total.increment();
+        int hash = key.hashCode();
+        stripes[(hash ^ (hash >>> 16)) & stripeMask].offer(key);
+    }
+    
+    /**
+     * Nombre total de clés observées depuis le dernier vieillissement
+     */
+    long total() {
+        return total.sum();
+    }
+    
+    /**
+     * Les {@code k} clés les plus fréquentes, par fréquence estimée décroissante.
+     * Chaque clé n'appartient qu'à un segment : les segments sont fusionnés sans recalcul.
+     */
+    List<HeavyHitter> top(int k) {
+        List<HeavyHitter> all = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.collect(all);
+        }
+        all.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return all.size() > k ? new ArrayList<>(all.subList(0, k)) : all;
+    }
+    
+    /**
+     * Divise tous les comptes par deux, pour que le classement suive le trafic récent
+     */
+    void decay() {
+        for (Stripe stripe : stripes) {
+            stripe.decay();
+        }
+        long current = total.sumThenReset();
+        total.add(current / 2);
+    }
+    
+    /**
+     * Segment du sketch : compteurs dans un tas-min indexé (le moins fréquent à la racine),
+     * retrouvés par clé dans une table ; incrément et remplacement en O(log capacité)
+     */
+    private static final class Stripe {
+        
+        private final Counter[] heap;
+        private final Map<String, Counter> counters;
+        private int size;
+        
+        Stripe(int capacity) {
+            this.heap = new Counter[capacity];
+            this.counters = new HashMap<>(capacity * 2);
+        }
+        
+        synchronized void offer(String key) {
+            Counter counter = counters.get(key);
+            if (counter == null) {
+                if (size < heap.length) {
+                    counter = new Counter(key, size);
+                    heap[size++] = counter;
+                    counters.put(key, counter);
+                } else {
+                    // Remplace la clé la moins fréquente, dont le compte devient l'erreur de la nouvelle
+                    counter = heap[0];
+                    counters.remove(counter.key);
+                    counter.key = key;
+                    counter.error = counter.count;
+                    counters.put(key, counter);
+                }
+            }
+            counter.count++;
+            siftDown(counter.index);
+        }
+        
+        synchronized void collect(List<HeavyHitter> out) {
+            for (int i = 0; i < size; i++) {
+                Counter counter = heap[i];
+                out.add(new HeavyHitter(counter.key, counter.count, counter.error));
+            }
+        }
+        
+        synchronized void decay() {
+            for (int i = 0; i < size; i++) {
+                heap[i].count >>= 1;
+                heap[i].error >>= 1;
+            }
+            // Diviser tous les comptes par deux conserve l'ordre du tas
+        }
+        
+        private void siftDown(int index) {
+            Counter counter = heap[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                    child++;
+                }
+                if (heap[child].count >= counter.count) {
+                    break;
+                }
+                heap[index] = heap[child];
+                heap[index].index = index;
+                index = child;
+            }
+            heap[index] = counter;
+            counter.index = index;
+        }
+    }
+    
+    private static final class Counter {
+        
+        String key;
+        long count;
+        long error;
+        int index;
+        
+        Counter(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.soap.metrics;
+
+import java.util.function.Consumer;
+
+/**
+ * Résultat d'une méthode SOAP dont le contenu n'est produit qu'à l'écriture de la réponse
+ * (pièce jointe MTOM écrite en flux) : l'appel n'est terminé qu'à la fermeture de ce flux.
+ */
+public interface StreamedResponse {
+    
+    /**
+     * Enregistre l'action appelée une seule fois, à la fin de l'écriture, avec l'erreur rencontrée ou null
+     */
+    void whenWritten(Consumer<Throwable> completion);
+}
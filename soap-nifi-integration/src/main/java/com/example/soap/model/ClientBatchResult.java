@@ -0,0 +1,66 @@
+package com.example.soap.model;
+
+import java.io.Serializable;
+
+/**
+ * Résultat d'un élément d'une opération groupée : le client traité ou l'erreur rencontrée.
+ */
+public class ClientBatchResult implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private Long id;
+    private Client client;
+    private boolean success;
+    private String error;
+    
+    public ClientBatchResult() {
+    }
+    
+    public static ClientBatchResult success(Long id, Client client) {
+        ClientBatchResult result = new ClientBatchResult();
+        result.id = id;
+        result.client = client;
+        result.success = true;
+        return result;
+    }
+    
+    public static ClientBatchResult failure(Long id, String error) {
+        ClientBatchResult result = new ClientBatchResult();
+        result.id = id;
+        result.error = error;
+        return result;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Client getClient() {
+        return client;
+    }
+    
+    public void setClient(Client client) {
+        this.client = client;
+    }
+    
+    public boolean isSuccess() {
+        return success;
+    }
+    
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.soap.model;
+
+import java.io.Serializable;
+
+/**
+ * Critère de la recherche multicritère sur un champ, insensible à la casse :
+ * égalité ({@code value}), préfixe ({@code value}) ou intervalle inclusif ({@code from} / {@code to},
+ * l'une des bornes pouvant manquer).
+ */
+public class ClientCriterion implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public enum Operator {
+        EQUALS,
+        PREFIX,
+        RANGE
+    }
+    
+    private ClientField field;
+    private Operator operator;
+    private String value;
+    private String from;
+    private String to;
+    
+    public ClientCriterion() {
+    }
+    
+    public ClientCriterion(ClientField field, Operator operator, String value) {
+        this.field = field;
+        this.operator = operator;
+        this.value = value;
+    }
+    
+    public ClientField getField() {
+        return field;
+    }
+    
+    public void setField(ClientField field) {
+        this.field = field;
+    }
+    
+    public Operator getOperator() {
+        return operator;
+    }
+    
+    public void setOperator(Operator operator) {
+        this.operator = operator;
+    }
+    
+    public String getValue() {
+        return value;
+    }
+    
+    public void setValue(String value) {
+        this.value = value;
+    }
+    
+    public String getFrom() {
+        return from;
+    }
+    
+    public void setFrom(String from) {
+        this.from = from;
+    }
+    
+    public String getTo() {
+        return to;
+    }
+    
+    public void setTo(String to) {
+        this.to = to;
+    }
+    
+    @Override
+    public String toString() {
+        return operator == Operator.RANGE
+            ? field + " in [" + from + ", " + to + "]"
+            : field + " " + operator + " " + value;
+    }
+}
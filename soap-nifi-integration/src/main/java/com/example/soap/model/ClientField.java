@@ -0,0 +1,45 @@
+package com.example.soap.model;
+
+/**
+ * Champs d'un client utilisables comme critère ou clé de tri de la recherche multicritère.
+ */
+public enum ClientField {
+    
+    NOM,
+    PRENOM,
+    VILLE,
+    CODE_POSTAL,
+    TELEPHONE;
+    
+    /**
+     * Valeur du champ pour ce client
+     */
+    public String read(Client client) {
+        switch (this) {
+            case NOM:
+                return client.getNom();
+            case PRENOM:
+                return client.getPrenom();
+            case VILLE:
+                return client.getVille();
+            case CODE_POSTAL:
+                return client.getCodePostal();
+            default:
+                return client.getTelephone();
+        }
+    }
+    
+    /**
+     * Accepte le nom de la constante (CODE_POSTAL) ou celui de la propriété (codePostal)
+     */
+    public static ClientField parse(String name) {
+        String normalized = name.trim();
+        for (ClientField field : values()) {
+            if (field.name().equalsIgnoreCase(normalized)
+                    || field.name().replace("_", "").equalsIgnoreCase(normalized)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown client field: " + name);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.soap.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page de clients renvoyée par la pagination par curseur.
+ * Le curseur est opaque et lié à la génération du cache sur laquelle la pagination a commencé.
+ */
+public class ClientPage implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private List<Client> clients = new ArrayList<>();
+    
+    // Curseur de la page suivante, null sur la dernière page
+    private String nextCursor;
+    
+    private long generation;
+    
+    public ClientPage() {
+    }
+    
+    public ClientPage(List<Client> clients, String nextCursor, long generation) {
+        this.clients = clients;
+        this.nextCursor = nextCursor;
+        this.generation = generation;
+    }
+    
+    public List<Client> getClients() {
+        return clients;
+    }
+    
+    public void setClients(List<Client> clients) {
+        this.clients = clients;
+    }
+    
+    public String getNextCursor() {
+        return nextCursor;
+    }
+    
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+    
+    public long getGeneration() {
+        return generation;
+    }
+    
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.soap.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requête de la recherche multicritère : critères combinés par ET, tri et nombre maximal de résultats.
+ * Sans clé de tri, les clients sont rendus par id croissant.
+ */
+public class ClientSearchCriteria implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private List<ClientCriterion> criteria = new ArrayList<>();
+    private ClientField sortBy;
+    private boolean descending;
+    // 0 : limite maximale du serveur (soap.search.max-results)
+    private int limit;
+    
+    public ClientSearchCriteria() {
+    }
+    
+    public List<ClientCriterion> getCriteria() {
+        return criteria;
+    }
+    
+    public void setCriteria(List<ClientCriterion> criteria) {
+        this.criteria = criteria;
+    }
+    
+    public ClientField getSortBy() {
+        return sortBy;
+    }
+    
+    public void setSortBy(ClientField sortBy) {
+        this.sortBy = sortBy;
+    }
+    
+    public boolean isDescending() {
+        return descending;
+    }
+    
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+    
+    @Override
+    public String toString() {
+        return criteria + (sortBy != null ? " sorted by " + sortBy + (descending ? " desc" : "") : "")
+            + (limit > 0 ? " limit " + limit : "");
+    }
+}
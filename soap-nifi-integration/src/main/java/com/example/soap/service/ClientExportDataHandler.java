@@ -0,0 +1,177 @@
+package com.example.soap.service;
+
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.metrics.StreamedResponse;
+import com.example.soap.model.Client;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Pièce jointe MTOM qui écrit les clients du cache en XML directement dans la réponse,
+ * au fil du parcours du cache, sans construire de liste ni d'enveloppe SOAP en mémoire.
+ * L'export n'est terminé qu'une fois la pièce jointe écrite : c'est alors qu'il est chronométré.
+ */
+public class ClientExportDataHandler extends DataHandler implements StreamedResponse {
+    
+    static final String CONTENT_TYPE = "application/xml";
+    
+    private static final QName ROOT = new QName("clients");
+    private static final QName CLIENT = new QName("client");
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static volatile JAXBContext jaxbContext;
+    
+    private final LongSupplier generation;
+    private final Consumer<Consumer<Client>> clients;
+    
+    // Action de fin d'écriture, retirée à son premier appel
+    private final AtomicReference<Consumer<Throwable>> completion;
+    
+    public ClientExportDataHandler(ClientCacheService cacheService) {
+        this(cacheService::getGeneration, cacheService::forEachClient);
+    }
+    
+    /**
+     * Export d'une source quelconque : {@code clients} passe chaque client à exporter au consommateur reçu
+     */
+    public ClientExportDataHandler(LongSupplier generation, Consumer<Consumer<Client>> clients) {
+        this(generation, clients, new AtomicReference<>());
+    }
+    
+    private ClientExportDataHandler(LongSupplier generation, Consumer<Consumer<Client>> clients,
+            AtomicReference<Consumer<Throwable>> completion) {
+        super(new ExportDataSource(generation, clients, completion));
+        this.generation = generation;
+        this.clients = clients;
+        this.completion = completion;
+    }
+    
+    @Override
+    public void whenWritten(Consumer<Throwable> action) {
+        completion.set(action);
+    }
+    
+    /**
+     * Appelé par CXF lors de l'écriture de la pièce jointe : les clients sont marshallés un par un
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try {
+            write(generation, clients, out);
+        } catch (IOException e) {
+            complete(completion, e);
+            throw e;
+        }
+        complete(completion, null);
+    }
+    
+    private static void complete(AtomicReference<Consumer<Throwable>> completion, Throwable error) {
+        Consumer<Throwable> action = completion.getAndSet(null);
+        if (action != null) {
+            action.accept(error);
+        }
+    }
+    
+    static void write(LongSupplier generation, Consumer<Consumer<Client>> clients, OutputStream out) throws IOException {
+        try {
+            Marshaller marshaller = context().createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+            writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+            writer.writeStartElement(ROOT.getLocalPart());
+            writer.writeAttribute("generation", Long.toString(generation.getAsLong()));
+            clients.accept(client -> {
+                try {
+                    marshaller.marshal(new JAXBElement<>(CLIENT, Client.class, client), writer);
+                } catch (JAXBException e) {
+                    throw new IllegalStateException("Cannot marshal client " + client.getId(), e);
+                }
+            });
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (JAXBException | XMLStreamException | IllegalStateException e) {
+            throw new IOException("Client export failed: " + e.getMessage(), e);
+        }
+    }
+    
+    private static JAXBContext context() throws JAXBException {
+        JAXBContext context = jaxbContext;
+        if (context == null) {
+            context = JAXBContext.newInstance(Client.class);
+            jaxbContext = context;
+        }
+        return context;
+    }
+    
+    /**
+     * Source de repli pour les consommateurs qui lisent un flux plutôt que d'appeler writeTo
+     */
+    private static final class ExportDataSource implements DataSource {
+        
+        private final LongSupplier generation;
+        private final Consumer<Consumer<Client>> clients;
+        private final AtomicReference<Consumer<Throwable>> completion;
+        
+        ExportDataSource(LongSupplier generation, Consumer<Consumer<Client>> clients,
+                AtomicReference<Consumer<Throwable>> completion) {
+            this.generation = generation;
+            this.clients = clients;
+            this.completion = completion;
+        }
+        
+        /**
+         * Flux de l'export mis en mémoire ; l'écriture est terminée à la fermeture du flux par le consommateur
+         */
+        @Override
+        public InputStream getInputStream() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try {
+                write(generation, clients, buffer);
+            } catch (IOException e) {
+                complete(completion, e);
+                throw e;
+            }
+            return new ByteArrayInputStream(buffer.toByteArray()) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    complete(completion, null);
+                }
+            };
+        }
+        
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Client export is read-only");
+        }
+        
+        @Override
+        public String getContentType() {
+            return CONTENT_TYPE;
+        }
+        
+        @Override
+        public String getName() {
+            return "clients.xml";
+        }
+    }
+}
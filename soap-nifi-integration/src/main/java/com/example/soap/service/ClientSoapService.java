@@ -1,31 +1,61 @@
-package com.example.soap.service;
-
-import com.example.soap.model.Client;
-
-import javax.jws.WebMethod;
-import javax.jws.WebParam;
-import javax.jws.WebService;
-import java.util.List;
-
-@WebService
-public interface ClientSoapService {
-    
-    @WebMethod
-    List<Client> getAllClients();
-    
-    @WebMethod
-    Client getClientById(@WebParam(name = "id") Long id);
-    
-    @WebMethod
-    Client getClientByEmail(@WebParam(name = "email") String email);
-    
-    @WebMethod
-    Client createClient(@WebParam(name = "client") Client client);
-    
-    @WebMethod
-    Client updateClient(@WebParam(name = "id") Long id, @WebParam(name = "client") Client client);
-    
-    @WebMethod
-    boolean deleteClient(@WebParam(name = "id") Long id);
-    
-}
+package com.example.soap.service;
+
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientBatchResult;
+import com.example.soap.model.ClientPage;
+import com.example.soap.model.ClientSearchCriteria;
+
+import javax.activation.DataHandler;
+import javax.jws.WebMethod;
+import javax.jws.WebParam;
+import javax.jws.WebService;
+import javax.xml.bind.annotation.XmlMimeType;
+import java.util.List;
+
+@WebService
+public interface ClientSoapService {
+    
+    @WebMethod
+    List<Client> getAllClients();
+    
+    @WebMethod
+    Client getClientById(@WebParam(name = "id") Long id);
+    
+    @WebMethod
+    Client getClientByEmail(@WebParam(name = "email") String email);
+    
+    @WebMethod
+    List<Client> searchClients(@WebParam(name = "ville") String ville, @WebParam(name = "nom") String nom);
+    
+    @WebMethod
+    List<Client> findClients(@WebParam(name = "criteria") ClientSearchCriteria criteria);
+    
+    @WebMethod
+    Client createClient(@WebParam(name = "client") Client client);
+    
+    @WebMethod
+    Client updateClient(@WebParam(name = "id") Long id, @WebParam(name = "client") Client client);
+    
+    @WebMethod
+    boolean deleteClient(@WebParam(name = "id") Long id);
+    
+    @WebMethod
+    List<ClientBatchResult> getClientsByIds(@WebParam(name = "id") List<Long> ids);
+    
+    @WebMethod
+    List<ClientBatchResult> createClients(@WebParam(name = "client") List<Client> clients);
+    
+    @WebMethod
+    List<ClientBatchResult> updateClients(@WebParam(name = "client") List<Client> clients);
+    
+    @WebMethod
+    List<ClientBatchResult> deleteClients(@WebParam(name = "id") List<Long> ids);
+    
+    @WebMethod
+    ClientPage getClientsPage(@WebParam(name = "cursor") String cursor, @WebParam(name = "limit") int limit);
+    
+    @WebMethod
+    @XmlMimeType("application/xml")
+    DataHandler exportClients();
+    
+}
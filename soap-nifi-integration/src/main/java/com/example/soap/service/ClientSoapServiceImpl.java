@@ -2,20 +2,50 @@ package com.example.soap.service;
 
 import com.example.soap.annotation.MonitorSoapMethod;
 import com.example.soap.cache.ClientCacheService;
+import com.example.soap.cache.SoapResponseCache;
+import com.example.soap.metrics.SoapMetricsService;
 import com.example.soap.model.Client;
+import com.example.soap.model.ClientBatchResult;
+import com.example.soap.model.ClientPage;
+import com.example.soap.model.ClientSearchCriteria;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.activation.DataHandler;
 import javax.jws.WebService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @WebService(endpointInterface = "com.example.soap.service.ClientSoapService")
 public class ClientSoapServiceImpl implements ClientSoapService {
     
+    // Erreur d'un élément de lot dont la mutation n'a pu être journalisée : le cache ne l'a pas appliquée
+    private static final String NOT_PERSISTED = "Mutation could not be persisted";
+    
     @Autowired
     private ClientCacheService cacheService;
     
+    @Autowired
+    private SoapMetricsService metricsService;
+    
+    @Autowired
+    private SoapResponseCache responseCache;
+    
+    // Dernier id temporaire attribué, pour rester unique au sein d'un lot
+    private final AtomicLong lastTemporaryId = new AtomicLong();
+    
+    @Value("${soap.page.max-size:1000}")
+    private int maxPageSize;
+    
+    @Value("${soap.search.max-results:1000}")
+    private int maxSearchResults;
+    
     @Override
     @MonitorSoapMethod("getAllClients")
     public List<Client> getAllClients() {
@@ -34,6 +64,18 @@ public class ClientSoapServiceImpl implements ClientSoapService {
         return cacheService.getClientByEmail(email);
     }
     
+    @Override
+    @MonitorSoapMethod("searchClients")
+    public List<Client> searchClients(String ville, String nom) {
+        return cacheService.searchClients(ville, nom);
+    }
+    
+    @Override
+    @MonitorSoapMethod("findClients")
+    public List<Client> findClients(ClientSearchCriteria criteria) {
+        return cacheService.findClients(criteria != null ? criteria : new ClientSearchCriteria(), maxSearchResults);
+    }
+    
     @Override
     @MonitorSoapMethod("createClient")
     public Client createClient(Client client) {
@@ -41,9 +83,10 @@ public class ClientSoapServiceImpl implements ClientSoapService {
         // On ajoute juste au cache (temporaire jusqu'au prochain reload)
         if (client.getId() == null) {
             // Générer un ID temporaire
-            client.setId(System.currentTimeMillis());
+            client.setId(nextTemporaryId());
         }
-        cacheService.putClient(client);
+        invalidate(cacheService.putClient(client));
+        invalidate(client);
         return client;
     }
     
@@ -52,15 +95,10 @@ public class ClientSoapServiceImpl implements ClientSoapService {
     public Client updateClient(Long id, Client client) {
         Client existingClient = cacheService.getClientById(id);
         if (existingClient != null) {
-            existingClient.setNom(client.getNom());
-            existingClient.setPrenom(client.getPrenom());
-            existingClient.setEmail(client.getEmail());
-            existingClient.setTelephone(client.getTelephone());
-            existingClient.setAdresse(client.getAdresse());
-            existingClient.setVille(client.getVille());
-            existingClient.setCodePostal(client.getCodePostal());
-            cacheService.putClient(existingClient);
-            return existingClient;
+            Client updatedClient = withChanges(existingClient, client);
+            invalidate(cacheService.putClient(updatedClient));
+            invalidate(updatedClient);
+            return updatedClient;
         }
         return null;
     }
@@ -68,6 +106,176 @@ public class ClientSoapServiceImpl implements ClientSoapService {
     @Override
     @MonitorSoapMethod("deleteClient")
     public boolean deleteClient(Long id) {
-        return cacheService.deleteClient(id);
+        Client removed = cacheService.removeClient(id);
+        invalidate(removed);
+        return removed != null;
+    }
+    
+    @Override
+    @MonitorSoapMethod("getClientsByIds")
+    public List<ClientBatchResult> getClientsByIds(List<Long> ids) {
+        List<Long> batch = nonNull(ids);
+        metricsService.recordBatchSize("getClientsByIds", batch.size());
+        
+        List<ClientBatchResult> results = new ArrayList<>(batch.size());
+        for (Long id : batch) {
+            Client client = cacheService.getClientById(id);
+            results.add(client != null
+                ? ClientBatchResult.success(id, client)
+                : ClientBatchResult.failure(id, "Client not found"));
+        }
+        return results;
+    }
+    
+    @Override
+    @MonitorSoapMethod("createClients")
+    public List<ClientBatchResult> createClients(List<Client> clients) {
+        List<Client> batch = nonNull(clients);
+        metricsService.recordBatchSize("createClients", batch.size());
+        
+        List<ClientBatchResult> results = new ArrayList<>(batch.size());
+        List<Client> created = new ArrayList<>(batch.size());
+        for (Client client : batch) {
+            if (client == null) {
+                results.add(ClientBatchResult.failure(null, "Missing client"));
+                continue;
+            }
+            if (client.getId() == null) {
+                client.setId(nextTemporaryId());
+            }
+            created.add(client);
+            results.add(ClientBatchResult.success(client.getId(), client));
+        }
+        putClients(created, results);
+        return results;
+    }
+    
+    @Override
+    @MonitorSoapMethod("updateClients")
+    public List<ClientBatchResult> updateClients(List<Client> clients) {
+        List<Client> batch = nonNull(clients);
+        metricsService.recordBatchSize("updateClients", batch.size());
+        
+        List<ClientBatchResult> results = new ArrayList<>(batch.size());
+        List<Client> updated = new ArrayList<>(batch.size());
+        for (Client client : batch) {
+            if (client == null || client.getId() == null) {
+                results.add(ClientBatchResult.failure(null, "Missing client id"));
+                continue;
+            }
+            Client existingClient = cacheService.getClientById(client.getId());
+            if (existingClient == null) {
+                results.add(ClientBatchResult.failure(client.getId(), "Client not found"));
+                continue;
+            }
+            Client updatedClient = withChanges(existingClient, client);
+            updated.add(updatedClient);
+            results.add(ClientBatchResult.success(client.getId(), updatedClient));
+        }
+        putClients(updated, results);
+        return results;
+    }
+    
+    @Override
+    @MonitorSoapMethod("deleteClients")
+    public List<ClientBatchResult> deleteClients(List<Long> ids) {
+        List<Long> batch = nonNull(ids);
+        metricsService.recordBatchSize("deleteClients", batch.size());
+        
+        Set<Long> failed = new HashSet<>();
+        Set<Long> removed = new HashSet<>();
+        for (Client client : cacheService.deleteClients(batch, failed)) {
+            removed.add(client.getId());
+            invalidate(client);
+        }
+        List<ClientBatchResult> results = new ArrayList<>(batch.size());
+        for (Long id : batch) {
+            if (failed.contains(id)) {
+                results.add(ClientBatchResult.failure(id, NOT_PERSISTED));
+            } else {
+                // Un id répété n'est supprimé qu'une fois : ses occurrences suivantes ne le trouvent plus
+                results.add(removed.remove(id)
+                    ? ClientBatchResult.success(id, null)
+                    : ClientBatchResult.failure(id, "Client not found"));
+            }
+        }
+        return results;
+    }
+    
+    @Override
+    @MonitorSoapMethod("getClientsPage")
+    public ClientPage getClientsPage(String cursor, int limit) {
+        int pageSize = limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
+        return cacheService.getClientsPage(cursor, pageSize);
+    }
+    
+    @Override
+    @MonitorSoapMethod("exportClients")
+    public DataHandler exportClients() {
+        // Les clients sont écrits pendant la sérialisation de la réponse, pas ici
+        return new ClientExportDataHandler(cacheService);
+    }
+    
+    /**
+     * Publie un lot de clients déjà présents dans {@code results} comme succès ; le résultat
+     * d'un client dont la mutation n'a pu être journalisée devient une erreur
+     */
+    private void putClients(List<Client> clients, List<ClientBatchResult> results) {
+        Set<Long> failed = new HashSet<>();
+        for (Client previous : cacheService.putClients(clients, failed)) {
+            invalidate(previous);
+        }
+        for (Client client : clients) {
+            if (!failed.contains(client.getId())) {
+                invalidate(client);
+            }
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < results.size(); i++) {
+            Long id = results.get(i).getId();
+            if (results.get(i).isSuccess() && failed.contains(id)) {
+                results.set(i, ClientBatchResult.failure(id, NOT_PERSISTED));
+            }
+        }
+    }
+    
+    /**
+     * Nouvelle version du client existant portant les champs modifiables des changements.
+     * Le client en cache n'est pas modifié : le stockage et l'index en retirent ainsi les anciennes clés.
+     */
+    private Client withChanges(Client existingClient, Client changes) {
+        Client updatedClient = new Client();
+        updatedClient.setId(existingClient.getId());
+        updatedClient.setNom(changes.getNom());
+        updatedClient.setPrenom(changes.getPrenom());
+        updatedClient.setEmail(changes.getEmail());
+        updatedClient.setTelephone(changes.getTelephone());
+        updatedClient.setAdresse(changes.getAdresse());
+        updatedClient.setVille(changes.getVille());
+        updatedClient.setCodePostal(changes.getCodePostal());
+        return updatedClient;
+    }
+    
+    /**
+     * Id temporaire basé sur l'horloge, strictement croissant même pour des créations simultanées
+     */
+    private long nextTemporaryId() {
+        long now = System.currentTimeMillis();
+        return lastTemporaryId.accumulateAndGet(now, (last, candidate) -> Math.max(last + 1, candidate));
+    }
+    
+    /**
+     * Retire du cache de réponses les lectures qui renvoient ce client ; sans effet pour null
+     */
+    private void invalidate(Client client) {
+        if (client != null) {
+            responseCache.invalidateClient(client.getId(), client.getEmail());
+        }
+    }
+    
+    private static <T> List<T> nonNull(List<T> items) {
+        return items != null ? items : Collections.emptyList();
     }
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.example.soap.watcher;
+
+import com.example.soap.model.Client;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+
+/**
+ * Lecture en flux d'un export NiFi (tableau JSON de clients).
+ * Les clients sont transmis un par un au consommateur, sans liste intermédiaire ;
+ * un enregistrement invalide est ignoré sans interrompre la lecture du fichier.
+ */
+public class ClientJsonStreamReader {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ClientJsonStreamReader.class);
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private final ObjectReader clientReader;
+    private final int progressInterval;
+    
+    public ClientJsonStreamReader(ObjectMapper objectMapper, int progressInterval) {
+        this.clientReader = objectMapper.readerFor(Client.class);
+        this.progressInterval = Math.max(1, progressInterval);
+    }
+    
+    /**
+     * Lit le fichier et transmet chaque client valide au consommateur
+     */
+    public IngestionReport read(File file, Consumer<Client> sink) throws IOException {
+        IngestionReport report = new IngestionReport(file.getName(), file.length());
+        
+        try (CountingInputStream in = new CountingInputStream(
+                 new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE));
+             MappingIterator<Client> iterator = clientReader.readValues((InputStream) in)) {
+             
+            while (true) {
+                Client client;
+                try {
+                    if (!iterator.hasNextValue()) {
+                        break;
+                    }
+                    client = iterator.nextValue();
+                } catch (JsonMappingException e) {
+                    // Enregistrement invalide : l'itérateur se resynchronise sur l'élément suivant
+                    report.recordMalformed(in.getByteCount());
+                    logger.warn("Skipping malformed record in {} at {}: {}",
+                        file.getName(), e.getLocation(), e.getOriginalMessage());
+                    continue;
+                }
+                
+                sink.accept(client);
+                report.recordRead(in.getByteCount());
+                
+                if (report.getRecords() % progressInterval == 0) {
+                    logger.info("Ingesting {}: {} records, {} bytes ({}%), {} records/s",
+                        file.getName(), report.getRecords(), report.getBytesRead(),
+                        String.format("%.1f", report.getProgressPercent()),
+                        String.format("%.0f", report.getRecordsPerSecond()));
+                }
+            }
+            report.finish(in.getByteCount());
+        }
+        
+        return report;
+    }
+}
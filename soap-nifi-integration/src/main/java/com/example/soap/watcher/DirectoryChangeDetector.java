@@ -0,0 +1,326 @@
+package com.example.soap.watcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Détection des nouveaux exports NiFi par événements {@link WatchService}, avec repli sur un balayage.
+ * Un fichier n'est livré qu'une fois complet (taille et date stables, ou marqueur de fin d'écriture présent)
+ * et une rafale de fichiers est regroupée en un seul rechargement du plus récent.
+ * Tant que les événements sont reçus, le balayage ne liste le répertoire que si sa date a changé :
+ * une création ou un renommage perdu la modifie, les réécritures sont signalées par événements.
+ */
+public class DirectoryChangeDetector {
+    
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryChangeDetector.class);
+    
+    // Résolution des dates de certains systèmes de fichiers : une date plus récente peut encore changer
+    private static final long DIRECTORY_TIME_GRANULARITY_MILLIS = 2_000;
+    
+    private final Path directory;
+    private final PathMatcher matcher;
+    private final PathMatcher manifestMatcher;
+    private final long stabilityMillis;
+    private final String readyMarkerSuffix;
+    private final Consumer<Path> onReady;
+    
+    // Fichiers candidats en attente de stabilisation
+    private final Map<Path, FileState> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean settleScheduled = new AtomicBoolean();
+    
+    // Thread unique : les rechargements sont sérialisés
+    private final ScheduledExecutorService reloadExecutor;
+    
+    private volatile WatchService watchService;
+    private volatile Thread watchThread;
+    private volatile long lastDeliveredModified = Long.MIN_VALUE;
+    private volatile Path lastDelivered;
+    
+    // Date du répertoire relevée au dernier listage, heure de ce listage et nombre de listages
+    private long listedDirectoryModified = Long.MIN_VALUE;
+    private long listedAtMillis;
+    private final AtomicLong listings = new AtomicLong();
+    
+    public DirectoryChangeDetector(Path directory, String globPattern, long stabilityMillis,
+                                   String readyMarkerSuffix, Consumer<Path> onReady) {
+        this(directory, globPattern, null, stabilityMillis, readyMarkerSuffix, onReady);
+    }
+    
+    /**
+     * Surveille aussi les manifestes d'exports partitionnés, livrés comme les fichiers de données
+     */
+    public DirectoryChangeDetector(Path directory, String globPattern, String manifestPattern, long stabilityMillis,
+                                   String readyMarkerSuffix, Consumer<Path> onReady) {
+        this.directory = directory;
+        this.matcher = directory.getFileSystem().getPathMatcher("glob:" + globPattern);
+        this.manifestMatcher = manifestPattern == null || manifestPattern.isEmpty() ? null
+            : directory.getFileSystem().getPathMatcher("glob:" + manifestPattern);
+        this.stabilityMillis = Math.max(1, stabilityMillis);
+        this.readyMarkerSuffix = readyMarkerSuffix == null ? "" : readyMarkerSuffix;
+        this.onReady = onReady;
+        this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "nifi-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Démarre la surveillance par événements ; en cas d'échec, seul le balayage périodique reste actif
+     */
+    public void start() {
+        try {
+            WatchService service = directory.getFileSystem().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchService = service;
+            Thread thread = new Thread(this::watchLoop, "nifi-watch");
+            thread.setDaemon(true);
+            watchThread = thread;
+            thread.start();
+            logger.info("Watching {} for {} events", directory, matcher);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("WatchService unavailable for {}, relying on polling: {}", directory, e.getMessage());
+        }
+    }
+    
+    public boolean isWatching() {
+        return watchThread != null && watchThread.isAlive();
+    }
+    
+    /**
+     * Indique le fichier déjà chargé (démarrage ou rechargement forcé) pour ne pas le relivrer
+     */
+    public void markDelivered(Path file) {
+        try {
+            lastDeliveredModified = Files.getLastModifiedTime(file).toMillis();
+            lastDelivered = file;
+        } catch (IOException e) {
+            logger.debug("Cannot stat {}: {}", file, e.getMessage());
+        }
+    }
+    
+    /**
+     * Balayage de repli : enregistre les fichiers plus récents que le dernier livré.
+     * Sans effet sur un répertoire inchangé depuis le dernier listage tant que les événements sont reçus.
+     */
+    public void scan() {
+        scan(false);
+    }
+    
+    private synchronized void scan(boolean force) {
+        long now = System.currentTimeMillis();
+        long directoryModified;
+        try {
+            directoryModified = Files.getLastModifiedTime(directory).toMillis();
+        } catch (IOException e) {
+            logger.warn("Cannot scan {}: {}", directory, e.getMessage());
+            return;
+        }
+        if (!force && isWatching() && directoryModified == listedDirectoryModified
+                && directoryModified + DIRECTORY_TIME_GRANULARITY_MILLIS < listedAtMillis) {
+            logger.debug("{} unchanged since last scan", directory);
+            return;
+        }
+        listings.incrementAndGet();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, this::matches)) {
+            for (Path file : stream) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.lastModifiedTime().toMillis() > lastDeliveredModified && !file.equals(lastDelivered)) {
+                    pending.putIfAbsent(file, new FileState());
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot scan {}: {}", directory, e.getMessage());
+            return;
+        }
+        listedDirectoryModified = directoryModified;
+        listedAtMillis = now;
+        if (!pending.isEmpty()) {
+            scheduleSettle();
+        }
+    }
+    
+    /**
+     * Nombre de balayages qui ont listé le répertoire
+     */
+    long getListings() {
+        return listings.get();
+    }
+    
+    /**
+     * Cherche le fichier le plus récent correspondant au motif
+     */
+    public Path findLatest() {
+        Path latest = null;
+        long latestModified = Long.MIN_VALUE;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, this::matches)) {
+            for (Path file : stream) {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (modified > latestModified) {
+                    latest = file;
+                    latestModified = modified;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot list {}: {}", directory, e.getMessage());
+        }
+        return latest;
+    }
+    
+    public void stop() {
+        Thread thread = watchThread;
+        watchThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                logger.debug("Error closing watch service: {}", e.getMessage());
+            }
+        }
+        reloadExecutor.shutdownNow();
+    }
+    
+    private boolean matches(Path file) {
+        Path name = file.getFileName();
+        return matcher.matches(name) || (manifestMatcher != null && manifestMatcher.matches(name));
+    }
+    
+    private void watchLoop() {
+        while (watchThread == Thread.currentThread()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            
+            boolean overflow = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                    continue;
+                }
+                onEvent((Path) event.context());
+            }
+            if (!key.reset()) {
+                logger.warn("Watch key for {} is no longer valid, relying on polling", directory);
+                return;
+            }
+            
+            if (overflow) {
+                // Des événements ont été perdus : rattrapage par un listage complet
+                reloadExecutor.execute(() -> scan(true));
+            } else if (!pending.isEmpty()) {
+                scheduleSettle();
+            }
+        }
+    }
+    
+    private void onEvent(Path name) {
+        String fileName = name.toString();
+        if (!readyMarkerSuffix.isEmpty() && fileName.endsWith(readyMarkerSuffix)) {
+            name = Paths.get(fileName.substring(0, fileName.length() - readyMarkerSuffix.length()));
+        }
+        if (matches(name)) {
+            pending.putIfAbsent(directory.resolve(name), new FileState());
+        }
+    }
+    
+    private void scheduleSettle() {
+        if (settleScheduled.compareAndSet(false, true)) {
+            reloadExecutor.schedule(this::settle, stabilityMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Vérifie les candidats : livre le plus récent des fichiers complets, ignore les plus anciens
+     */
+    private void settle() {
+        settleScheduled.set(false);
+        
+        Path newest = null;
+        long newestModified = lastDeliveredModified;
+        int ready = 0;
+        boolean waiting = false;
+        
+        for (Iterator<Map.Entry<Path, FileState>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, FileState> entry = it.next();
+            Path file = entry.getKey();
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Fichier supprimé ou renommé entre-temps
+                it.remove();
+                continue;
+            }
+            
+            if (!isComplete(file, entry.getValue(), attributes)) {
+                waiting = true;
+                continue;
+            }
+            
+            it.remove();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (modified > newestModified || (newest == null && modified == newestModified && !file.equals(lastDelivered))) {
+                newest = file;
+                newestModified = modified;
+            }
+            ready++;
+        }
+        
+        if (newest != null) {
+            if (ready > 1) {
+                logger.info("Coalesced {} new files into one reload of {}", ready, newest.getFileName());
+            }
+            lastDeliveredModified = newestModified;
+            lastDelivered = newest;
+            try {
+                onReady.accept(newest);
+            } catch (RuntimeException e) {
+                logger.error("Error reloading {}: {}", newest.getFileName(), e.getMessage(), e);
+            }
+        }
+        
+        if (waiting) {
+            scheduleSettle();
+        }
+    }
+    
+    private boolean isComplete(Path file, FileState state, BasicFileAttributes attributes) {
+        if (!readyMarkerSuffix.isEmpty()) {
+            return Files.exists(file.resolveSibling(file.getFileName() + readyMarkerSuffix));
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        boolean stable = state.size == size && state.modified == modified;
+        state.size = size;
+        state.modified = modified;
+        return stable;
+    }
+    
+    /**
+     * Dernière taille et date observées d'un candidat
+     */
+    private static final class FileState {
+        long size = -1;
+        long modified = -1;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.soap.watcher;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32C;
+
+/**
+ * Empreinte CRC32C du contenu d'un export, calculée en flux sur le fichier projeté en mémoire par fenêtres
+ * de 64 Mo : les octets ne sont pas copiés sur le tas. Relève aussi la fin du fichier, un export NiFi
+ * étant un tableau JSON dont le dernier caractère significatif est {@code ]}, et la taille et la date
+ * du fichier pour détecter une réécriture pendant la lecture.
+ */
+final class ExportChecksum {
+    
+    private static final long WINDOW_BYTES = 64L << 20;
+    
+    private final long bytes;
+    private final long crc;
+    private final boolean terminated;
+    private final long modified;
+    private final long nanos;
+    
+    private ExportChecksum(long bytes, long crc, boolean terminated, long modified, long nanos) {
+        this.bytes = bytes;
+        this.crc = crc;
+        this.terminated = terminated;
+        this.modified = modified;
+        this.nanos = nanos;
+    }
+    
+    static ExportChecksum of(Path file) throws IOException {
+        long start = System.nanoTime();
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        CRC32C crc = new CRC32C();
+        boolean terminated = false;
+        long bytes;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            bytes = channel.size();
+            for (long position = 0; position < bytes; position += WINDOW_BYTES) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(WINDOW_BYTES, bytes - position));
+                if (position + WINDOW_BYTES >= bytes) {
+                    terminated = endsWithArray(window);
+                }
+                crc.update(window);
+            }
+        }
+        return new ExportChecksum(bytes, crc.getValue(), terminated, attributes.lastModifiedTime().toMillis(),
+            System.nanoTime() - start);
+    }
+    
+    /**
+     * Dernier octet hors espaces blancs de la fenêtre finale égal à {@code ]}
+     */
+    private static boolean endsWithArray(MappedByteBuffer window) {
+        for (int i = window.limit() - 1; i >= 0; i--) {
+            byte b = window.get(i);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b == ']';
+            }
+        }
+        return false;
+    }
+    
+    long getBytes() {
+        return bytes;
+    }
+    
+    long getNanos() {
+        return nanos;
+    }
+    
+    boolean isTerminated() {
+        return terminated;
+    }
+    
+    /**
+     * Empreinte hexadécimale, indépendante du nom du fichier
+     */
+    String hex() {
+        return String.format("%08x", crc);
+    }
+    
+    /**
+     * Vrai si le fichier a changé de taille ou de date depuis le calcul de l'empreinte
+     */
+    boolean changedSince(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return attributes.size() != bytes || attributes.lastModifiedTime().toMillis() != modified;
+    }
+    
+    /**
+     * Compare l'empreinte au marqueur de fin d'écriture, s'il en décrit le contenu :
+     * {@code {"bytes": 1234, "crc32c": "9a3f12bc"}} (champs facultatifs) ou la seule taille.
+     * Retourne la raison du rejet, ou null si le marqueur est absent, vide ou concordant.
+     */
+    String verifySidecar(Path marker, ObjectMapper objectMapper) throws IOException {
+        if (marker == null || !Files.isRegularFile(marker) || Files.size(marker) == 0) {
+            return null;
+        }
+        JsonNode sidecar = objectMapper.readTree(marker.toFile());
+        JsonNode expectedBytes = sidecar.isNumber() ? sidecar : sidecar.path("bytes");
+        if (expectedBytes.isNumber() && expectedBytes.asLong() != bytes) {
+            return "size_mismatch";
+        }
+        JsonNode expectedCrc = sidecar.path("crc32c");
+        if (expectedCrc.isTextual() && !expectedCrc.asText().trim().equalsIgnoreCase(hex())) {
+            return "checksum_mismatch";
+        }
+        return null;
+    }
+}
@@ -1,8 +1,12 @@
 package com.example.soap.watcher;
 
+import com.example.soap.cache.ClientCacheBuilder;
 import com.example.soap.cache.ClientCacheService;
-import com.example.soap.model.Client;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.example.soap.cache.ClientDelta;
+import com.example.soap.cluster.ClusterIngestion;
+import com.example.soap.cluster.ClusterMembership;
+import com.example.soap.metrics.ResourceAccounting;
+import com.example.soap.metrics.SoapMetricsService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.slf4j.Logger;
@@ -13,29 +17,82 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.*;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class FileWatcherService {
     
     private static final Logger logger = LoggerFactory.getLogger(FileWatcherService.class);
     
+    // Taille moyenne d'un client sérialisé, pour pré-dimensionner le cache
+    private static final int AVERAGE_RECORD_BYTES = 200;
+    
     @Value("${nifi.output.directory:C:/nifi-1/output}")
     private String nifiOutputDirectory;
     
     @Value("${nifi.file.pattern:clients_*.json}")
     private String filePattern;
     
+    @Value("${nifi.ingest.progress-interval:100000}")
+    private int progressInterval;
+    
+    @Value("${nifi.reload.incremental:true}")
+    private boolean incrementalReload;
+    
+    @Value("${nifi.watch.stability-ms:500}")
+    private long stabilityMillis;
+    
+    @Value("${nifi.watch.ready-marker-suffix:}")
+    private String readyMarkerSuffix;
+    
+    @Value("${nifi.partition.manifest-pattern:clients_*.manifest}")
+    private String manifestPattern;
+    
+    @Value("${nifi.partition.require-manifest:true}")
+    private boolean requireManifest;
+    
+    // 0 : un thread de lecture par processeur
+    @Value("${nifi.ingest.parallelism:0}")
+    private int ingestParallelism;
+    
+    @Value("${nifi.reload.skip-unchanged:true}")
+    private boolean skipUnchanged;
+    
+    @Value("${nifi.verify.trailer:true}")
+    private boolean verifyTrailer;
+    
     @Autowired
     private ClientCacheService cacheService;
     
+    @Autowired
+    private ClusterMembership clusterMembership;
+    
+    @Autowired
+    private ResourceAccounting resourceAccounting;
+    
+    @Autowired
+    private SoapMetricsService metricsService;
+    
     private final ObjectMapper objectMapper;
-    private File lastProcessedFile;
+    private ClientJsonStreamReader streamReader;
+    private DirectoryChangeDetector detector;
+    private ForkJoinPool ingestPool;
+    private volatile File lastProcessedFile;
+    // Empreinte du dernier export partitionné traité, pour ne pas le recharger à chaque fichier livré
+    private String lastProcessedExport;
+    // Empreinte du contenu de la dernière génération publiée depuis un export, indépendante des noms de fichiers
+    private volatile String loadedContent;
     
     public FileWatcherService() {
         this.objectMapper = new ObjectMapper();
@@ -51,6 +108,10 @@ public class FileWatcherService {
         logger.info("Monitoring directory: {}", nifiOutputDirectory);
         logger.info("File pattern: {}", filePattern);
         
+        streamReader = new ClientJsonStreamReader(objectMapper, progressInterval);
+        ingestPool = new ForkJoinPool(ingestParallelism > 0
+            ? ingestParallelism : Runtime.getRuntime().availableProcessors());
+            
         // Créer le répertoire s'il n'existe pas
         File directory = new File(nifiOutputDirectory);
         if (!directory.exists()) {
@@ -62,15 +123,37 @@ public class FileWatcherService {
             }
         }
         
-        // Charger le fichier le plus récent
-        loadLatestFile();
+        detector = new DirectoryChangeDetector(directory.toPath(), filePattern, manifestPattern,
+            stabilityMillis, readyMarkerSuffix, this::onFileReady);
+            
+        // Charger le snapshot binaire s'il est à jour, sinon le fichier le plus récent ;
+        // en mode cluster l'export est toujours relu pour reconstruire la table de routage email
+        if (clusterMembership.isEnabled() || !loadSnapshot()) {
+            loadLatestFile();
+        }
+        
+        // Surveiller les nouveaux fichiers par événements
+        detector.start();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (detector != null) {
+            detector.stop();
+        }
+        if (ingestPool != null) {
+            ingestPool.shutdownNow();
+        }
     }
     
     /**
-     * Vérifie périodiquement s'il y a de nouveaux fichiers (toutes les 10 secondes)
+     * Balayage de repli, au cas où des événements du WatchService seraient perdus ou indisponibles
      */
-    @Scheduled(fixedDelay = 10000, initialDelay = 5000)
+    @Scheduled(fixedDelayString = "${nifi.watch.poll-interval-ms:60000}", initialDelay = 5000)
     public void checkForNewFiles() {
+        if (detector == null) {
+            return;
+        }
         logger.debug("Checking for new files in {}", nifiOutputDirectory);
         
         File directory = new File(nifiOutputDirectory);
@@ -79,69 +162,347 @@ public class FileWatcherService {
             return;
         }
         
-        File latestFile = getLatestFile(directory);
-        
-        if (latestFile != null && !latestFile.equals(lastProcessedFile)) {
-            logger.info("New file detected: {}", latestFile.getName());
-            processFile(latestFile);
-            lastProcessedFile = latestFile;
+        detector.scan();
+    }
+    
+    /**
+     * Appelé sur le thread de rechargement quand un nouveau fichier complet est détecté
+     */
+    private void onFileReady(Path path) {
+        logger.info("New file detected: {}", path.getFileName());
+        process(path);
+    }
+    
+    /**
+     * Charge le snapshot binaire du cache au démarrage s'il n'est pas plus ancien que le dernier export
+     */
+    private synchronized boolean loadSnapshot() {
+        Path latest = detector.findLatest();
+        long newestSourceModified = latest != null ? latest.toFile().lastModified() : 0L;
+        if (!cacheService.loadSnapshot(newestSourceModified)) {
+            return false;
+        }
+        if (latest != null) {
+            lastProcessedFile = latest.toFile();
+            detector.markDelivered(latest);
         }
+        return true;
     }
     
     /**
      * Charge le fichier le plus récent au démarrage
      */
-    private void loadLatestFile() {
-        File directory = new File(nifiOutputDirectory);
-        File latestFile = getLatestFile(directory);
+    private synchronized void loadLatestFile() {
+        Path latest = detector.findLatest();
         
-        if (latestFile != null) {
-            logger.info("Loading latest file: {}", latestFile.getName());
-            processFile(latestFile);
-            lastProcessedFile = latestFile;
+        if (latest != null) {
+            logger.info("Loading latest file: {}", latest.getFileName());
+            process(latest);
+            detector.markDelivered(latest);
         } else {
             logger.warn("No files found in directory: {}", nifiOutputDirectory);
         }
     }
     
     /**
-     * Trouve le fichier le plus récent correspondant au pattern
+     * Traite un fichier livré : export en un seul fichier, ou partition / manifeste d'un export partitionné
      */
-    private File getLatestFile(File directory) {
-        File[] files = directory.listFiles((dir, name) -> 
-            name.matches(filePattern.replace("*", ".*"))
-        );
-        
-        if (files == null || files.length == 0) {
-            return null;
+    private synchronized void process(Path path) {
+        if (PartitionedExport.exportName(path) == null) {
+            // Un fichier rejeté ou illisible ne remplace pas le dernier fichier chargé
+            if (processFile(path.toFile())) {
+                lastProcessedFile = path.toFile();
+            }
+            return;
+        }
+        try {
+            PartitionedExport export = PartitionedExport.resolve(path, objectMapper, requireManifest);
+            if (export == null) {
+                return;
+            }
+            String fingerprint = fingerprint(export);
+            if (fingerprint.equals(lastProcessedExport)) {
+                logger.debug("Partitioned export {} already loaded", export.getName());
+                return;
+            }
+            // Un export rejeté n'est relu que si ses fichiers ou son manifeste changent
+            lastProcessedExport = fingerprint;
+            List<ExportChecksum> checksums = checksums(export);
+            if (checksums == null) {
+                return;
+            }
+            List<Path> partitions = export.getPartitions();
+            if (isLoaded(checksumContent(checksums), export.getName()) || processExport(export, checksums)) {
+                lastProcessedFile = partitions.get(partitions.size() - 1).toFile();
+            }
+        } catch (IOException e) {
+            logger.error("Error processing partitioned export {}: {}", path.getFileName(), e.getMessage(), e);
         }
-        
-        // Trier par date de modification (plus récent en premier)
-        return Arrays.stream(files)
-            .max(Comparator.comparingLong(File::lastModified))
-            .orElse(null);
     }
     
     /**
-     * Traite un fichier JSON et met à jour le cache
+     * Traite un fichier JSON et met à jour le cache.
+     * Retourne true si le cache reflète le fichier : publié, ou contenu identique déjà publié.
      */
-    private void processFile(File file) {
+    private synchronized boolean processFile(File file) {
         try {
             logger.info("Processing file: {}", file.getAbsolutePath());
             
-            // Lire le fichier JSON
-            List<Client> clients = objectMapper.readValue(file, new TypeReference<List<Client>>() {});
+            // Contenu vérifié et comparé à la génération publiée avant toute désérialisation
+            ExportChecksum checksum = checksum(file.toPath());
+            if (checksum == null) {
+                return false;
+            }
+            String content = checksum.hex() + ':' + checksum.getBytes();
+            if (isLoaded(content, file.getName())) {
+                return true;
+            }
+            
+            // Lire le fichier JSON en flux, client par client
+            ClientCacheBuilder builder = new ClientCacheBuilder(estimateRecordCount(file.length()));
+            ClusterIngestion ingestion = clusterMembership.newIngestion();
+            ResourceAccounting.Span read = resourceAccounting.start();
+            IngestionReport report = streamReader.read(file, ingestion.filter(builder::add));
+            resourceAccounting.recordReload("read", read);
             
-            logger.info("Loaded {} clients from file", clients.size());
+            logger.info("Loaded {} clients from file ({})", builder.size(), report);
             
-            // Mettre à jour le cache
-            cacheService.reloadCache(clients);
+            if (builder.size() == 0 && report.getMalformed() > 0) {
+                logger.error("No valid client in {}, keeping current cache", file.getName());
+                return false;
+            }
+            if (checksum.changedSince(file.toPath())) {
+                reject(file.getName(), "modified");
+                return false;
+            }
             
-            logger.info("Cache updated successfully with {} clients", clients.size());
+            publish(builder);
+            ingestion.complete();
+            loadedContent = content;
+            return true;
             
         } catch (IOException e) {
             logger.error("Error processing file {}: {}", file.getName(), e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    /**
+     * Lit les partitions en parallèle, chacune dans son propre builder, puis les fusionne dans
+     * l'ordre des partitions : pour un id présent dans plusieurs partitions, la dernière gagne.
+     * Chaque partition est fusionnée dès que les précédentes le sont, puis abandonnée ; les lectures
+     * ne prennent qu'une fenêtre d'avance sur la fusion, qui borne les partitions lues en attente.
+     * Retourne false si l'export est rejeté et le cache courant conservé.
+     */
+    private boolean processExport(PartitionedExport export, List<ExportChecksum> checksums) throws IOException {
+        List<Path> partitions = export.getPartitions();
+        long totalBytes = export.totalBytes();
+        logger.info("Processing partitioned export {}: {} partitions, {} bytes, parallelism {}",
+            export.getName(), partitions.size(), totalBytes, ingestPool.getParallelism());
+            
+        long start = System.nanoTime();
+        ClusterIngestion ingestion = clusterMembership.newIngestion();
+        // Une lecture de plus que le pool n'a de threads : il reste occupé pendant la fusion d'une partition
+        int window = ingestPool.getParallelism() + 1;
+        Deque<Future<PartitionResult>> reads = new ArrayDeque<>(window);
+        int submitted = 0;
+        while (submitted < Math.min(window, partitions.size())) {
+            reads.add(submitRead(partitions.get(submitted++), ingestion));
+        }
+        
+        ClientCacheBuilder builder = new ClientCacheBuilder(estimateRecordCount(totalBytes));
+        long records = 0;
+        long malformed = 0;
+        long mergeNanos = 0;
+        // Lectures mesurées sur les threads du pool et cumulées ; fusions mesurées sur ce thread
+        long readCpuNanos = 0;
+        long readAllocatedBytes = 0;
+        ResourceAccounting.Span merge = resourceAccounting.start();
+        while (!reads.isEmpty()) {
+            if (merge != null) {
+                merge.stop();
+            }
+            PartitionResult result = join(reads.poll());
+            if (submitted < partitions.size()) {
+                reads.add(submitRead(partitions.get(submitted++), ingestion));
+            }
+            logger.info("Loaded partition ({})", result.report);
+            records += result.report.getRecords();
+            malformed += result.report.getMalformed();
+            if (result.read != null) {
+                readCpuNanos += result.read.getCpuNanos();
+                readAllocatedBytes += result.read.getAllocatedBytes();
+            }
+            if (merge != null) {
+                merge.resume();
+            }
+            long mergeStart = System.nanoTime();
+            builder.merge(result.builder);
+            mergeNanos += System.nanoTime() - mergeStart;
+        }
+        if (merge != null) {
+            resourceAccounting.recordReload("read", readCpuNanos, readAllocatedBytes);
+            resourceAccounting.recordReload("merge", merge);
+        }
+        logger.info("Loaded {} clients from {} partitions in {} ms (merge {} ms): {} records, {} malformed, {} duplicates",
+            builder.size(), partitions.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            TimeUnit.NANOSECONDS.toMillis(mergeNanos), records, malformed, builder.getDuplicates());
+            
+        long expected = export.getExpectedRecords();
+        if (expected >= 0 && records + malformed != expected) {
+            logger.error("Partitioned export {} holds {} records but its manifest announces {}, keeping current cache",
+                export.getName(), records + malformed, expected);
+            return false;
+        }
+        if (builder.size() == 0 && malformed > 0) {
+            logger.error("No valid client in partitioned export {}, keeping current cache", export.getName());
+            return false;
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            if (checksums.get(i).changedSince(partitions.get(i))) {
+                reject(partitions.get(i).getFileName(), "modified");
+                return false;
+            }
+        }
+        
+        publish(builder);
+        ingestion.complete();
+        loadedContent = checksumContent(checksums);
+        return true;
+    }
+    
+    /**
+     * Empreinte d'un fichier livré, ou null s'il est rejeté : tableau JSON non terminé (fichier en cours
+     * d'écriture ou tronqué) ou contenu différent de celui annoncé par son marqueur de fin d'écriture
+     */
+    private ExportChecksum checksum(Path file) throws IOException {
+        ExportChecksum checksum = ExportChecksum.of(file);
+        metricsService.recordExportChecksum(checksum.getBytes(), checksum.getNanos());
+        String rejection = null;
+        if (verifyTrailer && !checksum.isTerminated()) {
+            rejection = "truncated";
+        } else if (!readyMarkerSuffix.isEmpty()) {
+            rejection = checksum.verifySidecar(file.resolveSibling(file.getFileName() + readyMarkerSuffix),
+                objectMapper);
+        }
+        if (rejection != null) {
+            reject(file.getFileName(), rejection);
+            return null;
+        }
+        return checksum;
+    }
+    
+    /**
+     * Empreintes des partitions, calculées en parallèle, ou null si l'une d'elles est rejetée
+     */
+    private List<ExportChecksum> checksums(PartitionedExport export) throws IOException {
+        List<Future<ExportChecksum>> tasks = new ArrayList<>();
+        for (Path partition : export.getPartitions()) {
+            tasks.add(ingestPool.submit(() -> checksum(partition)));
+        }
+        List<ExportChecksum> checksums = new ArrayList<>(tasks.size());
+        boolean rejected = false;
+        for (Future<ExportChecksum> task : tasks) {
+            ExportChecksum checksum = join(task);
+            rejected |= checksum == null;
+            checksums.add(checksum);
         }
+        return rejected ? null : checksums;
+    }
+    
+    private static String checksumContent(List<ExportChecksum> checksums) {
+        StringBuilder content = new StringBuilder();
+        for (ExportChecksum checksum : checksums) {
+            content.append(checksum.hex()).append(':').append(checksum.getBytes()).append('|');
+        }
+        return content.toString();
+    }
+    
+    /**
+     * Vrai si le contenu est celui de la génération publiée : NiFi réémet souvent un export identique
+     * sous un nouveau nom, le relire ne ferait que recharger les mêmes clients
+     */
+    private boolean isLoaded(String content, String name) {
+        if (!skipUnchanged || !content.equals(loadedContent)) {
+            return false;
+        }
+        logger.info("Export {} has the same content as the published cache, skipping reload", name);
+        metricsService.recordExportSkipped("unchanged");
+        return true;
+    }
+    
+    private void reject(Path name, String reason) {
+        reject(name.toString(), reason);
+    }
+    
+    private void reject(String name, String reason) {
+        logger.warn("Rejecting export {} ({}), keeping current cache", name, reason);
+        metricsService.recordExportRejected(reason);
+    }
+    
+    private Future<PartitionResult> submitRead(Path partition, ClusterIngestion ingestion) {
+        return ingestPool.submit(() -> readPartition(partition.toFile(), ingestion));
+    }
+    
+    private PartitionResult readPartition(File partition, ClusterIngestion ingestion) throws IOException {
+        ResourceAccounting.Span read = resourceAccounting.start();
+        ClientCacheBuilder partBuilder = new ClientCacheBuilder(estimateRecordCount(partition.length()));
+        IngestionReport report = streamReader.read(partition, ingestion.filter(partBuilder::add));
+        if (read != null) {
+            read.stop();
+        }
+        return new PartitionResult(partBuilder, report, read);
+    }
+    
+    private static <T> T join(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading partitions", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Partition read failed: " + cause, cause);
+        }
+    }
+    
+    private static String fingerprint(PartitionedExport export) {
+        StringBuilder fingerprint = new StringBuilder(export.getName()).append('#').append(export.getExpectedRecords());
+        for (Path partition : export.getPartitions()) {
+            File file = partition.toFile();
+            fingerprint.append('|').append(file.length()).append(':').append(file.lastModified());
+        }
+        return fingerprint.toString();
+    }
+    
+    /**
+     * Publie un export lu dans le cache, par différence ou en remplacement complet
+     */
+    private void publish(ClientCacheBuilder builder) {
+        ResourceAccounting.Span publish = resourceAccounting.start();
+        if (incrementalReload) {
+            ClientDelta delta = cacheService.reloadIncremental(builder);
+            if (delta.isFullReload()) {
+                logger.info("Cache updated successfully with {} clients", builder.size());
+            } else {
+                logger.info("Cache updated successfully with {} clients: {} inserted, {} updated, {} deleted",
+                    builder.size(), delta.getInsertCount(), delta.getUpdateCount(), delta.getDeleteCount());
+            }
+        } else {
+            cacheService.reloadCache(builder);
+            logger.info("Cache updated successfully with {} clients", builder.size());
+        }
+        resourceAccounting.recordReload("publish", publish);
+    }
+    
+    /**
+     * Estime le nombre d'enregistrements pour dimensionner le builder
+     */
+    private int estimateRecordCount(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE / 2, bytes / AVERAGE_RECORD_BYTES);
     }
     
     /**
@@ -149,7 +510,11 @@ public class FileWatcherService {
      */
     public void forceReload() {
         logger.info("Force reload requested");
-        loadLatestFile();
+        // Un rechargement forcé relit l'export même si son contenu est déjà publié
+        loadedContent = null;
+        if (detector != null) {
+            loadLatestFile();
+        }
     }
     
     /**
@@ -164,4 +529,20 @@ public class FileWatcherService {
         }
         return "No file processed yet";
     }
+    
+    /**
+     * Partition lue, avec son rapport d'ingestion et la consommation de sa lecture (null si non mesurée)
+     */
+    private static final class PartitionResult {
+        
+        private final ClientCacheBuilder builder;
+        private final IngestionReport report;
+        private final ResourceAccounting.Span read;
+        
+        PartitionResult(ClientCacheBuilder builder, IngestionReport report, ResourceAccounting.Span read) {
+            this.builder = builder;
+            this.report = report;
+            this.read = read;
+        }
+    }
 }
\ No newline at end of file
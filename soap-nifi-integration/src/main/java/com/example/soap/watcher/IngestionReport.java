@@ -0,0 +1,75 @@
+package com.example.soap.watcher;
+
+/**
+ * Statistiques d'ingestion d'un fichier NiFi : enregistrements lus, rejetés et octets consommés.
+ */
+public class IngestionReport {
+    
+    private final String fileName;
+    private final long fileSize;
+    private final long startNanos;
+    private long records;
+    private long malformed;
+    private long bytesRead;
+    private long elapsedNanos;
+    
+    public IngestionReport(String fileName, long fileSize) {
+        this.fileName = fileName;
+        this.fileSize = fileSize;
+        this.startNanos = System.nanoTime();
+    }
+    
+    void recordRead(long bytesRead) {
+        this.records++;
+        this.bytesRead = bytesRead;
+    }
+    
+    void recordMalformed(long bytesRead) {
+        this.malformed++;
+        this.bytesRead = bytesRead;
+    }
+    
+    void finish(long bytesRead) {
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = System.nanoTime() - startNanos;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public long getFileSize() {
+        return fileSize;
+    }
+    
+    public long getRecords() {
+        return records;
+    }
+    
+    public long getMalformed() {
+        return malformed;
+    }
+    
+    public long getBytesRead() {
+        return bytesRead;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - startNanos;
+    }
+    
+    public double getRecordsPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed > 0 ? records * 1_000_000_000d / elapsed : 0d;
+    }
+    
+    public double getProgressPercent() {
+        return fileSize > 0 ? Math.min(100d, bytesRead * 100d / fileSize) : 0d;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: %d records, %d malformed, %d bytes in %d ms (%.0f records/s)",
+            fileName, records, malformed, bytesRead, getElapsedNanos() / 1_000_000, getRecordsPerSecond());
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.soap.watcher;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Export NiFi découpé en partitions ({@code clients_<ts>_part-003.json}) formant un même ensemble.
+ * L'ensemble est décrit par un manifeste {@code clients_<ts>.manifest}, écrit après les partitions :
+ * {@code {"partitions": ["clients_<ts>_part-000.json", ...], "records": 1000000}} (records facultatif).
+ * Sans manifeste exigé, l'ensemble est complet quand ses numéros de partition se suivent sans trou
+ * depuis 0, une seule fois chacun ; seul le manifeste garantit qu'aucune dernière partition ne manque.
+ */
+final class PartitionedExport {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedExport.class);
+    
+    static final String MANIFEST_SUFFIX = ".manifest";
+    
+    private static final Pattern PARTITION = Pattern.compile("(.+)_part-(\\d+)\\.json");
+    
+    private final String name;
+    private final List<Path> partitions;
+    private final long expectedRecords;
+    
+    private PartitionedExport(String name, List<Path> partitions, long expectedRecords) {
+        this.name = name;
+        this.partitions = partitions;
+        this.expectedRecords = expectedRecords;
+    }
+    
+    /**
+     * Nom de l'ensemble d'une partition ou d'un manifeste, ou null pour un export en un seul fichier
+     */
+    static String exportName(Path file) {
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(MANIFEST_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - MANIFEST_SUFFIX.length());
+        }
+        Matcher matcher = PARTITION.matcher(fileName);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+    
+    /**
+     * Résout l'ensemble auquel appartient le fichier ; retourne null s'il n'est pas encore complet
+     */
+    static PartitionedExport resolve(Path file, ObjectMapper objectMapper, boolean requireManifest) throws IOException {
+        String name = exportName(file);
+        Path directory = file.toAbsolutePath().getParent();
+        Path manifest = directory.resolve(name + MANIFEST_SUFFIX);
+        if (Files.isRegularFile(manifest)) {
+            return fromManifest(name, directory, manifest, objectMapper);
+        }
+        if (requireManifest) {
+            logger.info("Partitioned export {}: waiting for its manifest {}", name, manifest.getFileName());
+            return null;
+        }
+        return fromListing(name, directory);
+    }
+    
+    private static PartitionedExport fromManifest(String name, Path directory, Path manifest,
+            ObjectMapper objectMapper) throws IOException {
+        JsonNode root = objectMapper.readTree(manifest.toFile());
+        JsonNode names = root.path("partitions");
+        if (!names.isArray() || names.size() == 0) {
+            throw new IOException("Manifest " + manifest.getFileName() + " lists no partitions");
+        }
+        List<Path> partitions = new ArrayList<>(names.size());
+        for (JsonNode partitionName : names) {
+            Path partition = directory.resolve(partitionName.asText());
+            if (!Files.isRegularFile(partition)) {
+                logger.info("Partitioned export {}: waiting for partition {}", name, partition.getFileName());
+                return null;
+            }
+            partitions.add(partition);
+        }
+        long expectedRecords = root.path("records").asLong(-1);
+        return new PartitionedExport(name, partitions, expectedRecords);
+    }
+    
+    private static PartitionedExport fromListing(String name, Path directory) throws IOException {
+        List<Path> partitions = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name + "_part-*.json")) {
+            for (Path partition : stream) {
+                if (name.equals(exportName(partition))) {
+                    partitions.add(partition);
+                }
+            }
+        }
+        if (partitions.isEmpty()) {
+            return null;
+        }
+        partitions.sort(Comparator.comparingInt(PartitionedExport::partitionIndex));
+        // La i-ème partition porte le numéro i : l'ensemble commence à 0 et compte autant
+        // de partitions que son plus grand numéro plus un, sans trou ni doublon
+        for (int i = 0; i < partitions.size(); i++) {
+            int index = partitionIndex(partitions.get(i));
+            if (index > i) {
+                logger.info("Partitioned export {}: partition {} is missing, waiting", name, i);
+                return null;
+            }
+            if (index < i) {
+                logger.warn("Partitioned export {}: partition {} is numbered twice ({} and {}), waiting",
+                    name, index, partitions.get(i - 1).getFileName(), partitions.get(i).getFileName());
+                return null;
+            }
+        }
+        return new PartitionedExport(name, partitions, -1);
+    }
+    
+    private static int partitionIndex(Path partition) {
+        Matcher matcher = PARTITION.matcher(partition.getFileName().toString());
+        return matcher.matches() ? Integer.parseInt(matcher.group(2)) : -1;
+    }
+    
+    String getName() {
+        return name;
+    }
+    
+    /**
+     * Partitions dans l'ordre du manifeste (ou de leur numéro) : pour un id en double, la dernière gagne
+     */
+    List<Path> getPartitions() {
+        return partitions;
+    }
+    
+    /**
+     * Nombre total d'enregistrements annoncé par le manifeste, ou -1
+     */
+    long getExpectedRecords() {
+        return expectedRecords;
+    }
+    
+    long totalBytes() {
+        long total = 0;
+        for (Path partition : partitions) {
+            total += partition.toFile().length();
+        }
+        return total;
+    }
+}
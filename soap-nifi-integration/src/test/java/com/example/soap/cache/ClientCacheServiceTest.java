@@ -0,0 +1,228 @@
+package com.example.soap.cache;
+
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientCriterion;
+import com.example.soap.model.ClientField;
+import com.example.soap.model.ClientPage;
+import com.example.soap.model.ClientSearchCriteria;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Rechargements incrémentaux du cache : lignes modifiées, identité des clients inchangés, publication atomique
+ * des deltas comme des lots de mutations SOAP
+ */
+public class ClientCacheServiceTest {
+    
+    private static final int CLIENTS = 100;
+    
+    // Ids des clients ajoutés par le test concurrent et écart avec leur partenaire
+    private static final long ADDED = 1_000;
+    private static final long PARTNER_OFFSET = 10_000;
+    
+    private ClientCacheService cacheService;
+    
+    @Before
+    public void setUp() {
+        cacheService = new ClientCacheService(new SoapMetricsService(new SimpleMeterRegistry()), 0.5, 3,
+            "codePostal,ville,nom", "objects", 100, System.getProperty("java.io.tmpdir"), false, "", false, "");
+        cacheService.reloadCache(clients("V1"));
+    }
+    
+    @Test
+    public void incrementalReloadAppliesOnlyChangedClients() {
+        Client untouched = cacheService.getClientById(10L);
+        long generation = cacheService.getGeneration();
+        ClientPage firstPage = cacheService.getClientsPage(null, 10);
+        
+        List<Client> export = clients("V1");
+        export.remove(0);
+        export.get(3).setNom("Kabore");
+        export.add(ClientCacheSnapshotTest.client(CLIENTS + 1L, "Nouveau", "Ouagadougou"));
+        ClientDelta delta = cacheService.reloadIncremental(new ClientCacheBuilder(export.size()).addAll(export));
+        
+        assertFalse(delta.isFullReload());
+        assertEquals(1, delta.getInsertCount());
+        assertEquals(1, delta.getUpdateCount());
+        assertEquals(1, delta.getDeleteCount());
+        assertEquals(CLIENTS - 2, delta.getUnchangedCount());
+        assertEquals(generation + 1, cacheService.getGeneration());
+        
+        assertSame(untouched, cacheService.getClientById(10L));
+        assertNull(cacheService.getClientById(1L));
+        assertEquals("Kabore", cacheService.getClientById(5L).getNom());
+        assertEquals(Long.valueOf(5L), cacheService.searchClients(null, "Kabo").get(0).getId());
+        assertFalse(ClientCacheSnapshotTest.ids(cacheService.searchClients(null, "Nom5")).contains(5L));
+        assertEquals(Long.valueOf(CLIENTS + 1L), cacheService.getClientByEmail("nouveau101@example.com").getId());
+        // Le delta publie une nouvelle génération : la pagination commencée avant lui expire
+        try {
+            cacheService.getClientsPage(firstPage.getNextCursor(), 10);
+            fail("A cursor issued before the delta should expire");
+        } catch (IllegalStateException expected) {
+            // Pagination à reprendre depuis le début
+        }
+        assertEquals(cacheService.getGeneration(), cacheService.getClientsPage(null, 10).getGeneration());
+    }
+    
+    @Test
+    public void tooManyChangesFallBackToFullReload() {
+        List<Client> export = clients("V1");
+        for (int i = 0; i < 60; i++) {
+            export.get(i).setAdresse("Changée");
+        }
+        ClientDelta delta = cacheService.reloadIncremental(new ClientCacheBuilder(export.size()).addAll(export));
+        
+        assertTrue(delta.isFullReload());
+        assertEquals("Changée", cacheService.getClientById(1L).getAdresse());
+        assertEquals(CLIENTS, cacheService.getCacheSize());
+    }
+    
+    @Test
+    public void readersNeverSeeAHalfAppliedDelta() throws Exception {
+        Set<Integer> observed = ConcurrentHashMap.newKeySet();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                int updated = 0;
+                for (Client client : cacheService.getAllClients()) {
+                    if (client.getPrenom().equals("V2")) {
+                        updated++;
+                    }
+                }
+                observed.add(updated);
+            }
+        });
+        reader.start();
+        try {
+            for (int reload = 0; reload < 200; reload++) {
+                List<Client> export = clients(reload % 2 == 0 ? "V1" : "V2");
+                // 40 % des clients changent à chaque rechargement, sous le seuil du rechargement complet
+                for (Client client : export.subList(40, CLIENTS)) {
+                    client.setPrenom("V1");
+                }
+                assertFalse(cacheService.reloadIncremental(new ClientCacheBuilder(CLIENTS).addAll(export)).isFullReload());
+            }
+        } finally {
+            running.set(false);
+            reader.join();
+        }
+        for (int count : observed) {
+            assertTrue("Partial generation observed: " + count + " updated clients", count == 0 || count == 40);
+        }
+    }
+    
+    @Test
+    public void readersSeeEachSoapBatchWhole() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        ClientSearchCriteria byNom = new ClientSearchCriteria();
+        byNom.setCriteria(Collections.singletonList(
+            new ClientCriterion(ClientField.NOM, ClientCriterion.Operator.PREFIX, "Nom")));
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            Thread reader = new Thread(() -> {
+                while (running.get() && failure.get() == null) {
+                    checkPairs(failure, "all", cacheService.getAllClients());
+                    checkPairs(failure, "search", cacheService.searchClients(null, "Nom"));
+                    checkPairs(failure, "find", cacheService.findClients(byNom, 100_000));
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        try {
+            // Chaque lot modifie ensemble un client et son partenaire ; les ajouts font grossir l'overlay
+            for (int n = 0; n < 3_000; n++) {
+                long id = 1 + n % (CLIENTS / 2);
+                cacheService.putClients(Arrays.asList(pairClient(id, "W" + n), pairClient(partner(id), "W" + n)));
+                long added = ADDED + n;
+                cacheService.putClients(Arrays.asList(pairClient(added, "A" + n), pairClient(partner(added), "A" + n)));
+                if (n % 3 != 0) {
+                    cacheService.deleteClients(Arrays.asList(added, partner(added)));
+                }
+                if (n % 1_000 == 999) {
+                    cacheService.reloadIncremental(new ClientCacheBuilder(CLIENTS).addAll(clients("V1")));
+                }
+            }
+        } finally {
+            running.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        assertNull(failure.get());
+        
+        // Les ajouts de l'overlay prolongent la pagination, y compris pendant son intégration à la base
+        List<Client> all = cacheService.getAllClients();
+        assertEquals(all.size(), cacheService.getCacheSize());
+        List<Client> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            ClientPage page = cacheService.getClientsPage(cursor, 97);
+            paged.addAll(page.getClients());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(ClientCacheSnapshotTest.ids(all), ClientCacheSnapshotTest.ids(paged));
+    }
+    
+    /**
+     * Un client et son partenaire sont toujours écrits dans le même lot : une lecture les voit ensemble
+     */
+    private static void checkPairs(AtomicReference<String> failure, String read, List<Client> clients) {
+        Map<Long, String> prenoms = new HashMap<>();
+        for (Client client : clients) {
+            if (prenoms.put(client.getId(), client.getPrenom()) != null) {
+                failure.compareAndSet(null, read + ": client " + client.getId() + " returned twice");
+            }
+        }
+        for (Map.Entry<Long, String> entry : prenoms.entrySet()) {
+            if (!entry.getValue().equals(prenoms.get(partner(entry.getKey())))) {
+                failure.compareAndSet(null, read + ": client " + entry.getKey() + " (" + entry.getValue()
+                    + ") seen without its partner (" + prenoms.get(partner(entry.getKey())) + ")");
+            }
+        }
+    }
+    
+    private static long partner(long id) {
+        if (id <= CLIENTS) {
+            return id <= CLIENTS / 2 ? id + CLIENTS / 2 : id - CLIENTS / 2;
+        }
+        return id < ADDED + PARTNER_OFFSET ? id + PARTNER_OFFSET : id - PARTNER_OFFSET;
+    }
+    
+    private static Client pairClient(long id, String prenom) {
+        Client client = ClientCacheSnapshotTest.client(id, "Nom" + id, "Ville" + (id % 7));
+        client.setPrenom(prenom);
+        return client;
+    }
+    
+    private static List<Client> clients(String prenom) {
+        List<Client> clients = new ArrayList<>(CLIENTS);
+        for (long id = 1; id <= CLIENTS; id++) {
+            Client client = ClientCacheSnapshotTest.client(id, "Nom" + id, "Ville" + (id % 7));
+            client.setPrenom(prenom);
+            clients.add(client);
+        }
+        return clients;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientCriterion;
+import com.example.soap.model.ClientField;
+import com.example.soap.model.ClientSearchCriteria;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Copie d'une génération pour un rechargement incrémental : la copie et l'original évoluent
+ * indépendamment, dans chaque mode de stockage
+ */
+@RunWith(Parameterized.class)
+public class ClientCacheSnapshotTest {
+    
+    private static final int CLIENTS = 20_000;
+    
+    @Parameterized.Parameters(name = "{0}")
+    public static List<ClientStore.Mode> modes() {
+        return Arrays.asList(ClientStore.Mode.values());
+    }
+    
+    @Parameterized.Parameter
+    public ClientStore.Mode mode;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private ClientCacheSnapshot original;
+    
+    @Before
+    public void setUp() {
+        ClientStore.Factory factory = mode.factory(new TieredStorage(100, folder.getRoot().toPath()));
+        ClientCacheBuilder builder = new ClientCacheBuilder(CLIENTS);
+        for (long id = 1; id <= CLIENTS; id++) {
+            builder.add(client(id, "Nom" + id, "Ville" + (id % 50)));
+        }
+        original = ClientCacheSnapshot.build(1, builder, 3, EnumSet.of(ClientField.NOM, ClientField.VILLE), factory);
+    }
+    
+    @Test
+    public void changesToTheCopyLeaveTheOriginalUntouched() {
+        ClientCacheSnapshot copy = original.copy();
+        
+        copy.put(client(1L, "Kabore", "Koudougou"));
+        copy.remove(2L);
+        copy.put(client(CLIENTS + 1L, "Nouveau", "Ville1"));
+        
+        assertEquals("Nom1", original.get(1L).getNom());
+        assertEquals(Long.valueOf(1L), original.getByEmail("client1@example.com").getId());
+        assertNull(original.getByEmail("kabore1@example.com"));
+        assertNotNull(original.get(2L));
+        assertNull(original.get(CLIENTS + 1L));
+        assertEquals(CLIENTS, original.size());
+        assertTrue(ids(original.search("Ville1", null)).contains(1L));
+        assertTrue(ids(original.find(query(ClientField.NOM, "Nom2"))).contains(2L));
+        assertTrue(original.search("Koudougou", null).isEmpty());
+        
+        assertEquals("Kabore", copy.get(1L).getNom());
+        assertNull(copy.getByEmail("client1@example.com"));
+        assertEquals(Long.valueOf(1L), copy.getByEmail("kabore1@example.com").getId());
+        assertNull(copy.get(2L));
+        assertEquals(CLIENTS, copy.size());
+        assertEquals(Collections.singletonList(1L), ids(copy.search("Koudougou", null)));
+        assertTrue(copy.find(query(ClientField.NOM, "Nom2")).isEmpty());
+        assertTrue(ids(copy.search("Ville1", null)).contains(CLIENTS + 1L));
+        assertFalse(ids(copy.search("Ville1", null)).contains(1L));
+    }
+    
+    @Test
+    public void changesToTheOriginalLeaveTheCopyUntouched() {
+        ClientCacheSnapshot copy = original.copy();
+        
+        original.put(client(3L, "Sawadogo", "Banfora"));
+        original.remove(4L);
+        
+        assertEquals("Nom3", copy.get(3L).getNom());
+        assertEquals(Long.valueOf(3L), copy.getByEmail("client3@example.com").getId());
+        assertTrue(copy.search("Banfora", null).isEmpty());
+        assertTrue(ids(copy.find(query(ClientField.NOM, "Nom4"))).contains(4L));
+        
+        assertEquals(Collections.singletonList(3L), ids(original.search("Banfora", "Sawa")));
+        assertTrue(original.find(query(ClientField.NOM, "Nom4")).isEmpty());
+    }
+    
+    @Test
+    public void soapWritesLeaveThePublishedGenerationUntouched() {
+        List<Client> replaced = new ArrayList<>();
+        List<Client> removed = new ArrayList<>();
+        ClientCacheSnapshot next = original
+            .withClients(Arrays.asList(client(1L, "Kabore", "Koudougou"), client(CLIENTS + 1L, "Nouveau", "Ville1")),
+                replaced)
+            .withoutClients(Arrays.asList(2L, 2L, CLIENTS + 5L), removed);
+            
+        assertEquals("Nom1", replaced.get(0).getNom());
+        assertNull(replaced.get(1));
+        assertEquals(Collections.singletonList(2L), ids(removed));
+        assertEquals("Nom1", original.get(1L).getNom());
+        assertNotNull(original.get(2L));
+        assertEquals(CLIENTS, original.size());
+        assertTrue(original.search("Koudougou", null).isEmpty());
+        
+        assertEquals(CLIENTS, next.size());
+        assertNull(next.get(2L));
+        assertNull(next.getByEmail("client1@example.com"));
+        assertEquals(Long.valueOf(1L), next.getByEmail("kabore1@example.com").getId());
+        assertEquals(Collections.singletonList(1L), ids(next.search("Koudougou", null)));
+        assertTrue(next.find(query(ClientField.NOM, "Nom2")).isEmpty());
+        assertEquals(Collections.singletonList(CLIENTS + 1L), ids(next.find(query(ClientField.NOM, "Nouveau"))));
+        
+        // Intégration de l'overlay à une copie de la base, puis report des écritures arrivées pendant la copie
+        ClientCacheSnapshot later = next.withoutClients(Collections.singletonList(CLIENTS + 1L), new ArrayList<>());
+        ClientCacheSnapshot rebased = later.rebase(next.copy(), next);
+        assertEquals(0, next.copy().overlaySize());
+        assertEquals(1, rebased.overlaySize());
+        assertEquals(CLIENTS - 1, rebased.size());
+        assertNull(rebased.get(CLIENTS + 1L));
+        assertEquals("Kabore", rebased.get(1L).getNom());
+        List<Client> page = new ArrayList<>();
+        assertEquals(-1, rebased.page(0, CLIENTS + 10, page));
+        assertEquals(CLIENTS - 1, page.size());
+    }
+    
+    @Test
+    public void copyKeepsOrdinalsAndGeneration() {
+        ClientCacheSnapshot copy = original.copy();
+        copy.remove(1L);
+        
+        List<Client> originalPage = new ArrayList<>();
+        List<Client> copyPage = new ArrayList<>();
+        int originalNext = original.page(10, 20, originalPage);
+        int copyNext = copy.page(10, 20, copyPage);
+        
+        assertEquals(original.getGeneration(), copy.getGeneration());
+        assertEquals(originalNext, copyNext);
+        assertEquals(ids(originalPage), ids(copyPage));
+    }
+    
+    @Test
+    public void objectsModeSharesUnchangedInstances() {
+        ClientCacheSnapshot copy = original.copy();
+        copy.put(client(1L, "Kabore", "Koudougou"));
+        if (mode == ClientStore.Mode.OBJECTS) {
+            assertSame(original.get(10L), copy.get(10L));
+        }
+        assertEquals(original.get(10L).getEmail(), copy.get(10L).getEmail());
+    }
+    
+    static Client client(long id, String nom, String ville) {
+        Client client = new Client(id, nom, "Awa", (nom.startsWith("Nom") ? "client" : nom.toLowerCase()) + id
+            + "@example.com");
+        client.setTelephone("70" + id);
+        client.setAdresse(id + " avenue Kwame Nkrumah");
+        client.setVille(ville);
+        client.setCodePostal("0" + (id % 10));
+        return client;
+    }
+    
+    static ClientQuery query(ClientField field, String value) {
+        ClientSearchCriteria criteria = new ClientSearchCriteria();
+        criteria.setCriteria(Collections.singletonList(new ClientCriterion(field, ClientCriterion.Operator.EQUALS, value)));
+        return new ClientQuery(criteria, 100);
+    }
+    
+    static List<Long> ids(List<Client> clients) {
+        List<Long> ids = new ArrayList<>();
+        for (Client client : clients) {
+            ids.add(client.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+}
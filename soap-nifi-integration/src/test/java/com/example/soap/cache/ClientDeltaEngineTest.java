@@ -0,0 +1,124 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientField;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Delta entre la génération publiée et un export : seules les lignes modifiées en sortent
+ */
+public class ClientDeltaEngineTest {
+    
+    private static final int CLIENTS = 50;
+    
+    private ClientCacheSnapshot current;
+    
+    @Before
+    public void setUp() {
+        ClientCacheBuilder builder = new ClientCacheBuilder(CLIENTS);
+        for (long id = 1; id <= CLIENTS; id++) {
+            builder.add(ClientCacheSnapshotTest.client(id, "Nom" + id, "Ville" + (id % 5)));
+        }
+        current = ClientCacheSnapshot.build(1, builder, 3, EnumSet.of(ClientField.VILLE),
+            ClientStore.Mode.OBJECTS.factory(null));
+    }
+    
+    @Test
+    public void identicalExportHasNoChange() {
+        ClientDelta delta = ClientDeltaEngine.diff(current.searchIndex(), export());
+        
+        assertEquals(0, delta.getChangeCount());
+        assertEquals(CLIENTS, delta.getUnchangedCount());
+    }
+    
+    @Test
+    public void onlyChangedRowsAreReported() {
+        Map<Long, Client> export = export();
+        export.remove(7L);
+        export.remove(8L);
+        export.get(3L).setTelephone("70000000");
+        Client added = ClientCacheSnapshotTest.client(CLIENTS + 1L, "Nouveau", "Kaya");
+        export.put(added.getId(), added);
+        
+        ClientDelta delta = ClientDeltaEngine.diff(current.searchIndex(), export);
+        
+        assertEquals(Collections.singletonList(added), delta.getInserts());
+        assertEquals(1, delta.getUpdateCount());
+        assertEquals(Long.valueOf(3L), delta.getUpdates().get(0).getId());
+        assertEquals(Arrays.asList(7L, 8L), delta.getDeletes());
+        assertEquals(CLIENTS - 3, delta.getUnchangedCount());
+        assertEquals(4, delta.getChangeCount());
+    }
+    
+    @Test
+    public void everyFieldTakesPartInTheContentHash() {
+        List<Consumer<Client>> changes = Arrays.asList(
+            client -> client.setNom("Autre"),
+            client -> client.setPrenom("Autre"),
+            client -> client.setEmail("autre@example.com"),
+            client -> client.setTelephone("Autre"),
+            client -> client.setAdresse("Autre"),
+            client -> client.setVille("Autre"),
+            client -> client.setCodePostal("Autre"));
+        for (Consumer<Client> change : changes) {
+            Map<Long, Client> export = export();
+            change.accept(export.get(1L));
+            
+            ClientDelta delta = ClientDeltaEngine.diff(current.searchIndex(), export);
+            
+            assertEquals(1, delta.getUpdateCount());
+            assertEquals(Long.valueOf(1L), delta.getUpdates().get(0).getId());
+        }
+    }
+    
+    @Test
+    public void contentHashTellsNullFromEmptyAndFieldBoundaries() {
+        Client empty = ClientCacheSnapshotTest.client(1L, "Nom1", "Ville1");
+        Client absent = ClientCacheSnapshotTest.client(1L, "Nom1", "Ville1");
+        empty.setAdresse("");
+        absent.setAdresse(null);
+        assertNotEquals(ClientDeltaEngine.contentHash(empty), ClientDeltaEngine.contentHash(absent));
+        
+        // Le même texte réparti autrement entre deux champs voisins
+        Client left = ClientCacheSnapshotTest.client(1L, "Nom1", "Ville1");
+        Client right = ClientCacheSnapshotTest.client(1L, "Nom1", "Ville1");
+        left.setVille("Bobo");
+        left.setCodePostal("01");
+        right.setVille("Bobo0");
+        right.setCodePostal("1");
+        assertNotEquals(ClientDeltaEngine.contentHash(left), ClientDeltaEngine.contentHash(right));
+    }
+    
+    @Test
+    public void updatedClientIsUnchangedOnTheNextDiff() {
+        Map<Long, Client> export = export();
+        export.get(4L).setAdresse("Secteur 15");
+        current.put(export.get(4L));
+        
+        ClientDelta delta = ClientDeltaEngine.diff(current.searchIndex(), export);
+        
+        assertEquals(0, delta.getChangeCount());
+        assertTrue(delta.getUpdates().isEmpty());
+    }
+    
+    private static Map<Long, Client> export() {
+        Map<Long, Client> export = new LinkedHashMap<>();
+        for (long id = 1; id <= CLIENTS; id++) {
+            export.put(id, ClientCacheSnapshotTest.client(id, "Nom" + id, "Ville" + (id % 5)));
+        }
+        return export;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.soap.cache;
+
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.model.Client;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Journal des mutations : relecture, rejet d'une fin corrompue, publication après persistance,
+ * compaction pendant un group commit et hors du moniteur du journal
+ */
+public class ClientMutationJournalTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final SoapMetricsService metricsService = new SoapMetricsService(new SimpleMeterRegistry());
+    
+    private ClientCacheService cacheService;
+    private ClientMutationJournal journal;
+    
+    @After
+    public void tearDown() throws Exception {
+        if (cacheService != null) {
+            cacheService.shutdown();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+    
+    @Test
+    public void replayKeepsTheLatestMutationOfEachClient() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.journal");
+        journal = ClientMutationJournal.open(path, metricsService);
+        journal.put(ClientCacheSnapshotTest.client(1L, "Nom1", "Ouagadougou"));
+        journal.put(ClientCacheSnapshotTest.client(2L, "Nom2", "Kaya"));
+        journal.put(ClientCacheSnapshotTest.client(1L, "Kabore", "Koudougou"));
+        journal.awaitDurable(journal.delete(2L));
+        journal.close();
+        
+        journal = ClientMutationJournal.open(path, metricsService);
+        Map<Long, ClientMutationJournal.Mutation> replayed = replayed(journal);
+        
+        assertEquals(2, replayed.size());
+        assertEquals("Kabore", replayed.get(1L).client.getNom());
+        assertEquals("Koudougou", replayed.get(1L).client.getVille());
+        assertEquals("kabore1@example.com", replayed.get(1L).client.getEmail());
+        assertTrue(replayed.get(2L).isDelete());
+    }
+    
+    @Test
+    public void corruptRecordIsDroppedWithTheRestOfTheFile() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.journal");
+        journal = ClientMutationJournal.open(path, metricsService);
+        journal.awaitDurable(journal.put(ClientCacheSnapshotTest.client(1L, "Nom1", "Ouagadougou")));
+        long firstRecordBytes = Files.size(path);
+        journal.awaitDurable(journal.put(ClientCacheSnapshotTest.client(2L, "Nom2", "Kaya")));
+        journal.close();
+        
+        // Un octet du second enregistrement change : son CRC32C ne correspond plus
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 1] ^= 0x5a;
+        Files.write(path, bytes);
+        
+        journal = ClientMutationJournal.open(path, metricsService);
+        assertEquals(Collections.singleton(1L), replayed(journal).keySet());
+        assertEquals(firstRecordBytes, Files.size(path));
+        
+        // Les écritures suivantes reprennent après le dernier enregistrement valide
+        journal.awaitDurable(journal.put(ClientCacheSnapshotTest.client(3L, "Nom3", "Dori")));
+        journal.close();
+        journal = ClientMutationJournal.open(path, metricsService);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L)), replayed(journal).keySet());
+    }
+    
+    @Test
+    public void truncatedRecordIsDroppedAtOpen() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.journal");
+        journal = ClientMutationJournal.open(path, metricsService);
+        journal.awaitDurable(journal.put(ClientCacheSnapshotTest.client(1L, "Nom1", "Ouagadougou")));
+        journal.close();
+        long validBytes = Files.size(path);
+        
+        // Arrêt brutal au milieu d'un enregistrement : l'en-tête annonce plus d'octets qu'il n'en reste
+        ByteBuffer partial = ByteBuffer.allocate(12).putInt(64).putInt(0x12345678).putInt(42);
+        Files.write(path, partial.array(), StandardOpenOption.APPEND);
+        
+        journal = ClientMutationJournal.open(path, metricsService);
+        assertEquals(Collections.singleton(1L), replayed(journal).keySet());
+        assertEquals(validBytes, Files.size(path));
+    }
+    
+    @Test
+    public void mutationIsPublishedOnlyOnceDurable() throws Exception {
+        cacheService = service();
+        ReentrantLock fileLock = field(field(cacheService, "journal"), "fileLock");
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer;
+        fileLock.lock();
+        try {
+            writer = new Thread(() -> {
+                try {
+                    cacheService.putClient(ClientCacheSnapshotTest.client(1L, "Nom1", "Ouagadougou"));
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            writer.start();
+            // Le thread de commit attend le fichier : la mutation est en file, pas encore persistée
+            while (!fileLock.hasQueuedThreads()) {
+                Thread.sleep(1);
+            }
+            assertNull(cacheService.getClientById(1L));
+        } finally {
+            fileLock.unlock();
+        }
+        writer.join();
+        assertNull(error.get());
+        assertEquals("Nom1", cacheService.getClientById(1L).getNom());
+    }
+    
+    @Test
+    public void failedJournalWriteIsNeverPublished() throws Exception {
+        cacheService = service();
+        FileChannel channel = field(field(cacheService, "journal"), "channel");
+        channel.close();
+        
+        try {
+            cacheService.putClient(ClientCacheSnapshotTest.client(1L, "Nom1", "Ouagadougou"));
+            fail("The journal write failure should be reported");
+        } catch (UncheckedIOException expected) {
+            // La mutation n'a pas été persistée
+        }
+        assertNull(cacheService.getClientById(1L));
+        assertEquals(0, cacheService.getCacheSize());
+    }
+    
+    @Test
+    public void compactionCoversTheBatchBeingCommitted() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.journal");
+        journal = ClientMutationJournal.open(path, metricsService);
+        ReentrantLock fileLock = field(journal, "fileLock");
+        Client absorbed = ClientCacheSnapshotTest.client(3L, "Ouedraogo", "Dori");
+        journal.awaitDurable(journal.put(absorbed));
+        
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reload;
+        long pendingTicket;
+        fileLock.lock();
+        try {
+            journal.put(ClientCacheSnapshotTest.client(1L, "Kabore", "Koudougou"));
+            // Lot pris par le thread de commit, bloqué sur le fichier
+            while (!fileLock.hasQueuedThreads()) {
+                Thread.sleep(1);
+            }
+            // Mutation restée dans la file du prochain commit
+            pendingTicket = journal.put(ClientCacheSnapshotTest.client(2L, "Sawadogo", "Banfora"));
+            
+            // L'export contient déjà la mutation persistée : elle est oubliée et le journal compacté
+            ClientCacheBuilder export = new ClientCacheBuilder(3).addAll(Arrays.asList(
+                ClientCacheSnapshotTest.client(1L, "Nom1", "Ville1"),
+                ClientCacheSnapshotTest.client(2L, "Nom2", "Ville2"),
+                ClientCacheSnapshotTest.client(3L, "Ouedraogo", "Dori")));
+            reload = new Thread(() -> {
+                try {
+                    journal.applyTo(export, true);
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            reload.start();
+            while (fileLock.getQueueLength() < 2) {
+                Thread.sleep(1);
+            }
+        } finally {
+            fileLock.unlock();
+        }
+        reload.join();
+        assertNull(error.get());
+        journal.awaitDurable(pendingTicket);
+        journal.close();
+        long compactedBytes = Files.size(path);
+        
+        // Ni le lot en cours ni la file ne sont réécrits après la compaction : aucun doublon à retirer
+        journal = ClientMutationJournal.open(path, metricsService);
+        List<Long> replayed = new ArrayList<>();
+        journal.forEach(mutation -> replayed.add(mutation.id));
+        assertEquals(Arrays.asList(1L, 2L), replayed);
+        assertEquals(compactedBytes, Files.size(path));
+    }
+    
+    @Test
+    public void compactionDoesNotHoldTheJournalMonitor() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.journal");
+        journal = ClientMutationJournal.open(path, metricsService);
+        ReentrantLock fileLock = field(journal, "fileLock");
+        journal.awaitDurable(journal.put(ClientCacheSnapshotTest.client(3L, "Ouedraogo", "Dori")));
+        ClientCacheBuilder export = new ClientCacheBuilder(3).addAll(Collections.singletonList(
+            ClientCacheSnapshotTest.client(3L, "Ouedraogo", "Dori")));
+            
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reload = new Thread(() -> {
+            try {
+                journal.applyTo(export, true);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        long ticket;
+        fileLock.lock();
+        try {
+            // Compaction en attente du fichier, comme pendant une écriture lente du fichier compacté
+            reload.start();
+            while (!fileLock.hasQueuedThread(reload)) {
+                Thread.sleep(1);
+            }
+            Thread writer = new Thread(() -> {
+                journal.put(ClientCacheSnapshotTest.client(1L, "Kabore", "Koudougou"));
+                journal.delete(2L);
+            });
+            writer.start();
+            writer.join(10_000);
+            assertFalse("Writes should not wait for the compaction", writer.isAlive());
+            ticket = journal.put(ClientCacheSnapshotTest.client(4L, "Zongo", "Kaya"));
+        } finally {
+            fileLock.unlock();
+        }
+        reload.join();
+        assertNull(error.get());
+        journal.awaitDurable(ticket);
+        journal.close();
+        
+        journal = ClientMutationJournal.open(path, metricsService);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L, 4L)), replayed(journal).keySet());
+    }
+    
+    private static Map<Long, ClientMutationJournal.Mutation> replayed(ClientMutationJournal journal) {
+        Map<Long, ClientMutationJournal.Mutation> mutations = new HashMap<>();
+        journal.forEach(mutation -> mutations.put(mutation.id, mutation));
+        return mutations;
+    }
+    
+    private ClientCacheService service() {
+        return new ClientCacheService(metricsService, 0.5, 3, "codePostal,ville,nom", "objects", 100,
+            folder.getRoot().getPath(), false, "", true, folder.getRoot().toPath().resolve("clients.journal").toString());
+    }
+    
+    @SuppressWarnings("unchecked")
+    static <T> T field(Object target, String name) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(target);
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientCriterion;
+import com.example.soap.model.ClientField;
+import com.example.soap.model.ClientSearchCriteria;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Maintenance des index au fil des écritures : n-grammes, emails, index triés, ordinaux et empreintes,
+ * listes de postings compressées et réutilisation des ordinaux libérés par un delta
+ */
+public class ClientSearchIndexTest {
+    
+    private static final String[] VILLES = {"Ouagadougou", "Bobo-Dioulasso", "Koudougou", "Banfora", "Kaya", "Dori"};
+    private static final String[] NOMS = {"Ouedraogo", "Sawadogo", "Kabore", "Traore", "Zongo", "Compaore"};
+    
+    private ClientCacheSnapshot snapshot;
+    
+    @Before
+    public void setUp() {
+        snapshot = ClientCacheSnapshot.empty(3, EnumSet.of(ClientField.NOM, ClientField.VILLE, ClientField.CODE_POSTAL),
+            ClientStore.Mode.OBJECTS.factory(null));
+    }
+    
+    @Test
+    public void updateMovesEveryIndexEntry() {
+        snapshot.put(client(1L, "Ouedraogo", "Ouagadougou", "01"));
+        snapshot.put(client(2L, "Sawadogo", "Ouagadougou", "01"));
+        int ordinal = snapshot.searchIndex().ordinal(1L);
+        
+        Client updated = client(1L, "Kabore", "Banfora", "09");
+        snapshot.put(updated);
+        
+        assertEquals(ordinal, snapshot.searchIndex().ordinal(1L));
+        assertEquals(ClientDeltaEngine.contentHash(updated), snapshot.searchIndex().contentHash(ordinal));
+        assertNull(snapshot.getByEmail("ouedraogo1@example.com"));
+        assertEquals(Long.valueOf(1L), snapshot.getByEmail("kabore1@example.com").getId());
+        assertTrue(snapshot.search(null, "Ouedra").isEmpty());
+        assertEquals(Collections.singletonList(2L), ClientCacheSnapshotTest.ids(snapshot.search("Ouaga", null)));
+        assertEquals(Collections.singletonList(1L), ClientCacheSnapshotTest.ids(snapshot.search("anfo", "abor")));
+        assertTrue(snapshot.find(ClientCacheSnapshotTest.query(ClientField.NOM, "Ouedraogo")).isEmpty());
+        assertEquals(Collections.singletonList(2L),
+            ClientCacheSnapshotTest.ids(snapshot.find(ClientCacheSnapshotTest.query(ClientField.CODE_POSTAL, "01"))));
+        assertEquals(Collections.singletonList(1L),
+            ClientCacheSnapshotTest.ids(snapshot.find(ClientCacheSnapshotTest.query(ClientField.VILLE, "banfora"))));
+    }
+    
+    @Test
+    public void removeClearsEntriesAndKeepsOtherOrdinals() {
+        for (long id = 1; id <= 5; id++) {
+            snapshot.put(client(id, NOMS[(int) id], "Kaya", "0" + id));
+        }
+        int ordinal = snapshot.searchIndex().ordinal(4L);
+        
+        snapshot.remove(2L);
+        snapshot.removeAll(Arrays.asList(3L, 42L));
+        
+        assertEquals(LongIntHashMap.MISSING, snapshot.searchIndex().ordinal(2L));
+        assertEquals(LongIntHashMap.MISSING, snapshot.searchIndex().ordinal(3L));
+        assertEquals(ordinal, snapshot.searchIndex().ordinal(4L));
+        assertEquals(Arrays.asList(1L, 4L, 5L), ClientCacheSnapshotTest.ids(snapshot.search("Kaya", null)));
+        assertTrue(snapshot.search(null, NOMS[2]).isEmpty());
+        assertTrue(snapshot.find(ClientCacheSnapshotTest.query(ClientField.CODE_POSTAL, "03")).isEmpty());
+        assertNull(snapshot.getByEmail(NOMS[2].toLowerCase() + "2@example.com"));
+        
+        List<Long> indexed = new ArrayList<>();
+        snapshot.searchIndex().forEachId(indexed::add);
+        assertEquals(Arrays.asList(1L, 4L, 5L), indexed);
+        
+        List<Client> page = new ArrayList<>();
+        assertEquals(-1, snapshot.page(0, 10, page));
+        assertEquals(Arrays.asList(1L, 4L, 5L), ClientCacheSnapshotTest.ids(page));
+    }
+    
+    @Test
+    public void randomWritesKeepIndexConsistentWithStore() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<Client> batch = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                batch.add(randomClient(random));
+            }
+            snapshot.putAll(batch);
+            snapshot.put(randomClient(random));
+            List<Long> removed = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                removed.add(1L + random.nextInt(300));
+            }
+            snapshot.removeAll(removed);
+            snapshot.remove(1L + random.nextInt(300));
+        }
+        
+        snapshot.forEach(client -> {
+            int ordinal = snapshot.searchIndex().ordinal(client.getId());
+            assertNotEquals(LongIntHashMap.MISSING, ordinal);
+            assertEquals(ClientDeltaEngine.contentHash(client), snapshot.searchIndex().contentHash(ordinal));
+            assertEquals(client.getId(), snapshot.getByEmail(client.getEmail()).getId());
+        });
+        Set<Long> indexed = new TreeSet<>();
+        snapshot.searchIndex().forEachId(indexed::add);
+        assertEquals(scan(client -> true), indexed);
+        
+        for (String ville : VILLES) {
+            String villePart = ville.substring(1, 4);
+            assertEquals(scan(client -> client.getVille().toLowerCase().contains(villePart.toLowerCase())),
+                new TreeSet<>(ClientCacheSnapshotTest.ids(snapshot.search(villePart, null))));
+            for (String nom : NOMS) {
+                String nomPart = nom.substring(2, 5);
+                assertEquals(scan(client -> client.getVille().toLowerCase().contains(villePart.toLowerCase())
+                        && client.getNom().toLowerCase().contains(nomPart.toLowerCase())),
+                    new TreeSet<>(ClientCacheSnapshotTest.ids(snapshot.search(villePart, nomPart))));
+            }
+            assertEquals(scan(client -> client.getVille().equalsIgnoreCase(ville)),
+                new TreeSet<>(ClientCacheSnapshotTest.ids(snapshot.find(query(ClientField.VILLE,
+                    ClientCriterion.Operator.EQUALS, ville)))));
+        }
+        for (int prefix = 0; prefix < 10; prefix++) {
+            String codePostal = String.valueOf(prefix);
+            assertEquals(scan(client -> client.getCodePostal().startsWith(codePostal)),
+                new TreeSet<>(ClientCacheSnapshotTest.ids(snapshot.find(query(ClientField.CODE_POSTAL,
+                    ClientCriterion.Operator.PREFIX, codePostal)))));
+        }
+    }
+    
+    @Test
+    public void compressedPostingsMatchASortedSet() {
+        Random random = new Random(7);
+        Object owner = new Object();
+        IntPostingList list = new IntPostingList(owner);
+        TreeSet<Integer> expected = new TreeSet<>();
+        // Ajouts en fin (cas courant), puis insertions et suppressions au milieu des blocs
+        for (int ordinal = 0; ordinal < 2_000; ordinal += 1 + random.nextInt(3)) {
+            list.add(ordinal);
+            expected.add(ordinal);
+        }
+        for (int i = 0; i < 6_000; i++) {
+            int ordinal = random.nextInt(i % 2 == 0 ? 2_500 : 300_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(ordinal), list.remove(ordinal));
+            } else {
+                list.add(ordinal);
+                expected.add(ordinal);
+            }
+        }
+        assertPostings(expected, list);
+        
+        // La copie d'un autre index est indépendante de l'original
+        IntPostingList copy = list.copyFor(new Object());
+        copy.add(400_000);
+        copy.remove(expected.first());
+        list.trim();
+        assertPostings(expected, list);
+        
+        int[] candidates = new int[5_000];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = i * 3;
+        }
+        List<Integer> intersection = new ArrayList<>();
+        for (int candidate : candidates) {
+            if (expected.contains(candidate)) {
+                intersection.add(candidate);
+            }
+        }
+        assertEquals(intersection, boxed(IntPostingList.intersect(candidates, candidates.length, list)));
+    }
+    
+    @Test
+    public void deltaReusesFreedOrdinals() {
+        for (long id = 1; id <= 100; id++) {
+            snapshot.put(client(id, NOMS[(int) (id % NOMS.length)], "Kaya", "01"));
+        }
+        // Les suppressions SOAP et les intégrations d'overlay n'attribuent que de nouveaux ordinaux
+        snapshot.removeAll(Arrays.asList(10L, 20L, 30L));
+        snapshot.put(client(101L, "Zongo", "Dori", "02"));
+        assertEquals(100, snapshot.searchIndex().ordinal(101L));
+        
+        ClientDelta delta = new ClientDelta();
+        delta.delete(40L);
+        for (long id = 102; id <= 105; id++) {
+            delta.insert(client(id, "Traore", "Banfora", "03"));
+        }
+        delta.update(client(1L, "Kabore", "Kaya", "01"));
+        snapshot.applyDelta(delta);
+        
+        Set<Integer> ordinals = new TreeSet<>();
+        for (long id = 102; id <= 105; id++) {
+            ordinals.add(snapshot.searchIndex().ordinal(id));
+        }
+        assertEquals(new TreeSet<>(Arrays.asList(9, 19, 29, 39)), ordinals);
+        assertEquals(Arrays.asList(102L, 103L, 104L, 105L),
+            ClientCacheSnapshotTest.ids(snapshot.search("Banfora", "Traore")).stream().sorted().collect(Collectors.toList()));
+        assertEquals(Long.valueOf(1L), snapshot.getByEmail("kabore1@example.com").getId());
+        
+        List<Client> page = new ArrayList<>();
+        assertEquals(-1, snapshot.page(0, 200, page));
+        assertEquals(101, page.size());
+    }
+    
+    private static void assertPostings(TreeSet<Integer> expected, IntPostingList list) {
+        assertEquals(expected.size(), list.size());
+        assertEquals(new ArrayList<>(expected), boxed(list.toArray()));
+        for (int ordinal = 0; ordinal < 3_000; ordinal++) {
+            assertEquals(expected.contains(ordinal), list.contains(ordinal));
+        }
+    }
+    
+    private static List<Integer> boxed(int[] values) {
+        List<Integer> boxed = new ArrayList<>(values.length);
+        for (int value : values) {
+            boxed.add(value);
+        }
+        return boxed;
+    }
+    
+    private Set<Long> scan(Predicate<Client> predicate) {
+        Set<Long> ids = new TreeSet<>();
+        snapshot.forEach(client -> {
+            if (predicate.test(client)) {
+                ids.add(client.getId());
+            }
+        });
+        return ids;
+    }
+    
+    private static Client randomClient(Random random) {
+        long id = 1L + random.nextInt(300);
+        String nom = NOMS[random.nextInt(NOMS.length)];
+        Client client = new Client(id, nom, "Awa", nom.toLowerCase() + id + (random.nextBoolean() ? "@example.com" : "@example.bf"));
+        client.setVille(VILLES[random.nextInt(VILLES.length)]);
+        client.setCodePostal(random.nextInt(10) + "" + random.nextInt(10));
+        return client;
+    }
+    
+    private static Client client(long id, String nom, String ville, String codePostal) {
+        Client client = new Client(id, nom, "Awa", nom.toLowerCase() + id + "@example.com");
+        client.setVille(ville);
+        client.setCodePostal(codePostal);
+        return client;
+    }
+    
+    private static ClientQuery query(ClientField field, ClientCriterion.Operator operator, String value) {
+        ClientSearchCriteria criteria = new ClientSearchCriteria();
+        criteria.setCriteria(Collections.singletonList(new ClientCriterion(field, operator, value)));
+        return new ClientQuery(criteria, 1_000);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Snapshot binaire : écriture au fil du parcours, relecture par fenêtres projetées, checksum
+ */
+public class ClientSnapshotFileTest {
+    
+    private static final int CLIENTS = 500;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void smallWindowsReadBackEveryClient() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.snapshot");
+        List<Client> clients = clients();
+        ClientSnapshotFile.write(path, 7, clients.size(), clients::forEach);
+        
+        // Fenêtres de 13 octets : les entiers, les longs et les chaînes tombent à cheval sur deux fenêtres
+        for (int windowSize : new int[] {13, 64, 4096, Integer.MAX_VALUE}) {
+            ClientCacheBuilder builder = ClientSnapshotFile.read(path, windowSize);
+            assertEquals(CLIENTS, builder.size());
+            for (Client client : clients) {
+                Client read = builder.getClients().get(client.getId());
+                assertEquals(client.getNom(), read.getNom());
+                assertEquals(client.getEmail(), read.getEmail());
+                assertEquals(client.getAdresse(), read.getAdresse());
+                assertEquals(client.getVille(), read.getVille());
+            }
+        }
+        assertNull(ClientSnapshotFile.read(path, 13).getClients().get(2L).getAdresse());
+    }
+    
+    @Test
+    public void corruptedContentIsRejected() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.snapshot");
+        List<Client> clients = clients();
+        ClientSnapshotFile.write(path, 7, clients.size(), clients::forEach);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 0x5a;
+        Files.write(path, bytes);
+        
+        try {
+            ClientSnapshotFile.read(path, 64);
+            fail("A corrupted snapshot should be rejected");
+        } catch (IOException expected) {
+            assertEquals("Snapshot checksum mismatch", expected.getMessage());
+        }
+    }
+    
+    @Test
+    public void countMismatchIsReported() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("clients.snapshot");
+        List<Client> clients = clients();
+        try {
+            ClientSnapshotFile.write(path, 7, clients.size() + 1, clients::forEach);
+            fail("A snapshot with fewer clients than announced should not be written");
+        } catch (IOException expected) {
+            // Le fichier précédent, s'il existe, est conservé
+        }
+        assertFalse(Files.exists(path));
+    }
+    
+    private static List<Client> clients() {
+        List<Client> clients = new ArrayList<>(CLIENTS);
+        for (long id = 1; id <= CLIENTS; id++) {
+            Client client = ClientCacheSnapshotTest.client(id, "Nom" + id, "Ville" + (id % 9));
+            if (id == 2) {
+                client.setAdresse(null);
+            }
+            clients.add(client);
+        }
+        return clients;
+    }
+}
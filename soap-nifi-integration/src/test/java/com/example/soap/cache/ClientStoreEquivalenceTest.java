@@ -0,0 +1,173 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Les modes compact et tiered répondent comme le mode objets à une même suite d'écritures :
+ * valeurs remplacées, lectures par id et par email, parcours, copies, lectures mêlées aux écritures
+ */
+@RunWith(Parameterized.class)
+public class ClientStoreEquivalenceTest {
+    
+    private static final int IDS = 500;
+    private static final int OPERATIONS = 5_000;
+    
+    private static final String[] VILLES = {"Ouagadougou", "Bobo-Dioulasso", "Dédougou", "Fada N'Gourma", "", null};
+    
+    @Parameterized.Parameters(name = "{0}")
+    public static List<ClientStore.Mode> modes() {
+        return Arrays.asList(ClientStore.Mode.COMPACT, ClientStore.Mode.TIERED);
+    }
+    
+    @Parameterized.Parameter
+    public ClientStore.Mode mode;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private ClientStore expected;
+    private ClientStore actual;
+    
+    @Before
+    public void setUp() {
+        expected = ClientStore.Mode.OBJECTS.factory(null).create(16);
+        // Niveau chaud réduit : la plupart des lectures tiered passent par le niveau projeté
+        actual = mode.factory(new TieredStorage(16, folder.getRoot().toPath())).create(16);
+    }
+    
+    @Test
+    public void sameWritesGiveSameReads() {
+        apply(new Random(42), expected, actual);
+        assertSameContent(expected, actual);
+        
+        expected.trim();
+        actual.trim();
+        assertSameContent(expected, actual);
+    }
+    
+    @Test
+    public void copiesStayEquivalent() {
+        apply(new Random(7), expected, actual);
+        ClientStore expectedCopy = expected.copy();
+        ClientStore actualCopy = actual.copy();
+        
+        apply(new Random(8), expectedCopy, actualCopy);
+        assertSameContent(expectedCopy, actualCopy);
+        // Les écritures sur les copies ne touchent pas les originaux
+        assertSameContent(expected, actual);
+    }
+    
+    @Test
+    public void readsDuringChurnStayEquivalent() {
+        Random random = new Random(11);
+        for (int i = 0; i < 4 * OPERATIONS; i++) {
+            // Lectures concentrées sur quelques clients : le niveau chaud admet, remplace et refuse sans cesse
+            long id = 1 + (random.nextInt(4) == 0 ? random.nextInt(IDS) : random.nextInt(32));
+            int operation = random.nextInt(20);
+            if (operation < 12) {
+                assertEquals(describe(expected.get(id)), describe(actual.get(id)));
+            } else if (operation < 14) {
+                String email = emails(id)[random.nextInt(2)];
+                assertEquals(email, describe(expected.getByEmail(email)), describe(actual.getByEmail(email)));
+            } else if (operation < 19) {
+                Client client = randomClient(random, id);
+                assertEquals(describe(expected.put(client)), describe(actual.put(copy(client))));
+            } else {
+                assertEquals(describe(expected.remove(id)), describe(actual.remove(id)));
+            }
+        }
+        assertSameContent(expected, actual);
+        if (actual instanceof TieredClientStore) {
+            assertTrue(((TieredClientStore) actual).hotSize() <= 16);
+        }
+    }
+    
+    /**
+     * Mêmes ajouts, remplacements et suppressions sur les deux stockages ; les valeurs retournées concordent
+     */
+    private static void apply(Random random, ClientStore expected, ClientStore actual) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            long id = 1 + random.nextInt(IDS);
+            if (random.nextInt(5) == 0) {
+                assertEquals(describe(expected.remove(id)), describe(actual.remove(id)));
+            } else {
+                Client client = randomClient(random, id);
+                assertEquals(describe(expected.put(client)), describe(actual.put(copy(client))));
+            }
+        }
+    }
+    
+    private static void assertSameContent(ClientStore expected, ClientStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (long id = 1; id <= IDS; id++) {
+            assertEquals(describe(expected.get(id)), describe(actual.get(id)));
+            // Email courant du client et emails qu'il a pu porter auparavant
+            for (String email : emails(id)) {
+                assertEquals(email, describe(expected.getByEmail(email)), describe(actual.getByEmail(email)));
+            }
+        }
+        assertEquals(contents(expected), contents(actual));
+        assertEquals(ids(expected), ids(actual));
+    }
+    
+    private static Set<String> contents(ClientStore store) {
+        Set<String> contents = new TreeSet<>();
+        store.forEach(client -> contents.add(describe(client)));
+        return contents;
+    }
+    
+    private static Set<Long> ids(ClientStore store) {
+        Set<Long> ids = new TreeSet<>();
+        store.forEachId(ids::add);
+        return ids;
+    }
+    
+    private static Client randomClient(Random random, long id) {
+        Client client = new Client(id, "Nom" + random.nextInt(100), random.nextBoolean() ? "Awa" : null,
+            emails(id)[random.nextInt(2)]);
+        client.setTelephone("+226 70 " + random.nextInt(100));
+        client.setAdresse(random.nextInt(3) == 0 ? null : random.nextInt(500) + " avenue Kwame Nkrumah");
+        client.setVille(VILLES[random.nextInt(VILLES.length)]);
+        client.setCodePostal(String.format("%02d BP %d", random.nextInt(13), random.nextInt(2000)));
+        return client;
+    }
+    
+    /**
+     * Copie du client à écrire dans le second stockage : les deux ne partagent pas l'instance
+     */
+    private static Client copy(Client source) {
+        Client copy = new Client(source.getId(), source.getNom(), source.getPrenom(), source.getEmail());
+        copy.setTelephone(source.getTelephone());
+        copy.setAdresse(source.getAdresse());
+        copy.setVille(source.getVille());
+        copy.setCodePostal(source.getCodePostal());
+        return copy;
+    }
+    
+    private static String[] emails(long id) {
+        return new String[] {"client" + id + "@example.bf", "autre" + id + "@example.bf"};
+    }
+    
+    private static String describe(Client client) {
+        if (client == null) {
+            return null;
+        }
+        return String.join("|", String.valueOf(client.getId()), client.getNom(), client.getPrenom(), client.getEmail(),
+            client.getTelephone(), client.getAdresse(), client.getVille(), client.getCodePostal());
+    }
+}
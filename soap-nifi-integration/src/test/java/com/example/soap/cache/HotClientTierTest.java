@@ -0,0 +1,138 @@
+package com.example.soap.cache;
+
+import com.example.soap.model.Client;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Niveau chaud W-TinyLFU : admission selon la fréquence estimée, vieillissement du sketch
+ */
+public class HotClientTierTest {
+    
+    private static final int CAPACITY = 100;
+    
+    @Test
+    public void coldCandidatesDoNotEvictFrequentClients() {
+        TieredStorage stats = new TieredStorage(CAPACITY, Paths.get("."));
+        HotClientTier tier = filledTier(stats);
+        
+        // Clients lus une seule fois, moins fréquents que toutes les victimes possibles
+        for (long id = 1_000; id < 1_050; id++) {
+            read(tier, id);
+        }
+        
+        assertEquals(CAPACITY, tier.size());
+        assertEquals(0, stats.evictions());
+        assertTrue(stats.rejections() >= 49);
+        for (long id = 1; id < CAPACITY; id++) {
+            assertNotNull("Frequent client " + id + " was evicted", tier.get(id));
+        }
+    }
+    
+    @Test
+    public void moreFrequentCandidateReplacesTheVictim() {
+        TieredStorage stats = new TieredStorage(CAPACITY, Paths.get("."));
+        HotClientTier tier = filledTier(stats);
+        
+        // Client déjà demandé plus souvent que les clients conservés avant de pouvoir être admis
+        for (int i = 0; i < 12; i++) {
+            assertNull(tier.get(1_000));
+        }
+        read(tier, 1_000);
+        // Sa sortie de la fenêtre le met en concurrence avec la plus ancienne entrée probatoire
+        read(tier, 1_001);
+        
+        assertNotNull(tier.get(1_000));
+        assertEquals(1, stats.evictions());
+        assertEquals(CAPACITY, tier.size());
+    }
+    
+    @Test
+    public void writesPreventStaleAdmissions() {
+        TieredStorage stats = new TieredStorage(CAPACITY, Paths.get("."));
+        HotClientTier tier = new HotClientTier(CAPACITY, stats);
+        long stamp = tier.writeStamp();
+        tier.update(1L, client(1L));
+        
+        // Version lue avant l'écriture : elle n'est pas admise
+        tier.admit(1L, client(1L), stamp);
+        assertNull(tier.get(1L));
+        
+        tier.admit(1L, client(1L), tier.writeStamp());
+        assertNotNull(tier.get(1L));
+        tier.invalidate(1L);
+        assertNull(tier.get(1L));
+        assertEquals(0, tier.size());
+    }
+    
+    @Test
+    public void sketchCountersAreHalvedPeriodically() {
+        HotClientTier.FrequencySketch sketch = new HotClientTier.FrequencySketch(16);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(1L);
+        }
+        // Compteurs de 4 bits : la fréquence sature à 15
+        assertEquals(15, sketch.frequency(1L));
+        
+        // Table de 16 longs : le vieillissement a lieu au plus tard à la 160e addition
+        int additions = 15;
+        long key = 1_000;
+        while (sketch.frequency(1L) == 15) {
+            sketch.increment(key++);
+            additions++;
+            assertTrue("Sketch was not aged after " + additions + " additions", additions <= 160);
+        }
+        assertEquals(7, sketch.frequency(1L));
+        assertTrue(sketch.frequency(key - 1) <= 1);
+    }
+    
+    @Test
+    public void copyKeepsEntriesAndFrequencies() {
+        TieredStorage stats = new TieredStorage(CAPACITY, Paths.get("."));
+        HotClientTier copy = filledTier(stats).copy();
+        
+        for (long id = 1_000; id < 1_050; id++) {
+            read(copy, id);
+        }
+        for (long id = 1; id < CAPACITY; id++) {
+            assertNotNull(copy.get(id));
+        }
+        assertEquals(0, stats.evictions());
+    }
+    
+    /**
+     * Niveau plein de clients lus chacun plusieurs fois
+     */
+    private static HotClientTier filledTier(TieredStorage stats) {
+        HotClientTier tier = new HotClientTier(CAPACITY, stats);
+        for (long id = 1; id <= CAPACITY; id++) {
+            read(tier, id);
+        }
+        for (int i = 0; i < 5; i++) {
+            for (long id = 1; id <= CAPACITY; id++) {
+                assertNotNull(tier.get(id));
+            }
+        }
+        assertEquals(CAPACITY, tier.size());
+        return tier;
+    }
+    
+    /**
+     * Lecture comme celle du stockage hiérarchisé : un défaut est servi par le niveau inférieur puis proposé
+     */
+    private static void read(HotClientTier tier, long id) {
+        if (tier.get(id) == null) {
+            tier.admit(id, client(id), tier.writeStamp());
+        }
+    }
+    
+    private static Client client(long id) {
+        return ClientCacheSnapshotTest.client(id, "Nom" + id, "Ville" + id);
+    }
+}
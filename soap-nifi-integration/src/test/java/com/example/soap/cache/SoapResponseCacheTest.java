@@ -0,0 +1,119 @@
+package com.example.soap.cache;
+
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.model.Client;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Cache des réponses sérialisées : invalidation par clé après une mutation, capture concurrente
+ * d'une mutation, changement de génération au rechargement
+ */
+public class SoapResponseCacheTest {
+    
+    private static final String BY_ID = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_ID, 1L);
+    private static final String BY_EMAIL = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_EMAIL, "Un@Example.bf");
+    private static final String ALL = SoapResponseCache.key(SoapResponseCache.GET_ALL_CLIENTS, null);
+    
+    private ClientCacheService cacheService;
+    private SoapResponseCache responseCache;
+    
+    @Before
+    public void setUp() {
+        SoapMetricsService metricsService = new SoapMetricsService(new SimpleMeterRegistry());
+        cacheService = new ClientCacheService(metricsService, 0.5, 3, "codePostal,ville,nom", "objects",
+            100, System.getProperty("java.io.tmpdir"), false, "", false, "");
+        cacheService.reloadCache(Arrays.asList(client(1L, "un@example.bf"), client(2L, "deux@example.bf")));
+        responseCache = new SoapResponseCache(cacheService, metricsService, true, 1 << 20, 1 << 16);
+    }
+    
+    @Test
+    public void mutationDropsOnlyTheKeysOfTheClient() {
+        String other = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_ID, 2L);
+        store(BY_ID, "un");
+        store(BY_EMAIL, "un par email");
+        store(ALL, "tous");
+        store(other, "deux");
+        assertArrayEquals(body("un"), responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, BY_ID));
+        
+        responseCache.invalidateClient(1L, "UN@example.bf");
+        
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, BY_ID));
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_EMAIL, BY_EMAIL));
+        assertNull(responseCache.get(SoapResponseCache.GET_ALL_CLIENTS, ALL));
+        assertArrayEquals(body("deux"), responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, other));
+        
+        // Réponse capturée après la mutation : de nouveau en cache
+        store(BY_ID, "un modifié");
+        assertArrayEquals(body("un modifié"), responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, BY_ID));
+    }
+    
+    @Test
+    public void captureRacingAMutationIsNotStored() {
+        // Le service a lu l'ancienne version avant la mutation, la réponse arrive après
+        SoapResponseCache.Capture capture = responseCache.startCapture(BY_ID);
+        cacheService.putClient(client(1L, "nouveau@example.bf"));
+        responseCache.invalidateClient(1L, "un@example.bf");
+        responseCache.put(capture, body("ancienne version"));
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, BY_ID));
+        
+        // Mutation arrivée pendant la capture, après le stockage de la réponse
+        capture = responseCache.startCapture(BY_EMAIL);
+        responseCache.put(capture, body("un par email"));
+        assertNotNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_EMAIL, BY_EMAIL));
+        SoapResponseCache.Capture late = responseCache.startCapture(BY_EMAIL);
+        responseCache.invalidateClient(1L, "un@example.bf");
+        responseCache.put(late, body("un par email"));
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_EMAIL, BY_EMAIL));
+    }
+    
+    @Test
+    public void reloadBumpsTheGeneration() {
+        store(BY_ID, "un");
+        SoapResponseCache.Capture pending = responseCache.startCapture(ALL);
+        long generation = cacheService.getGeneration();
+        
+        cacheService.reloadCache(Arrays.asList(client(1L, "un@example.bf"), client(3L, "trois@example.bf")));
+        
+        assertEquals(generation + 1, cacheService.getGeneration());
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, BY_ID));
+        // Réponse calculée sur la génération précédente
+        responseCache.put(pending, body("tous"));
+        assertNull(responseCache.get(SoapResponseCache.GET_ALL_CLIENTS, ALL));
+        
+        store(BY_ID, "un");
+        cacheService.reloadIncremental(new ClientCacheBuilder(2).addAll(Arrays.asList(
+            client(1L, "un@example.bf"), client(4L, "quatre@example.bf"))));
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, BY_ID));
+    }
+    
+    @Test
+    public void oversizedResponseIsNotStored() {
+        SoapResponseCache.Capture capture = responseCache.startCapture(ALL);
+        responseCache.put(capture, new byte[responseCache.getMaxEntryBytes() + 1]);
+        assertNull(responseCache.get(SoapResponseCache.GET_ALL_CLIENTS, ALL));
+    }
+    
+    private void store(String key, String response) {
+        responseCache.put(responseCache.startCapture(key), body(response));
+    }
+    
+    private static byte[] body(String response) {
+        return response.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static Client client(long id, String email) {
+        Client client = ClientCacheSnapshotTest.client(id, "Nom" + id, "Ouagadougou");
+        client.setEmail(email);
+        return client;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.soap.interceptor;
+
+import com.example.soap.invocation.InvocationPool;
+import com.example.soap.invocation.InvocationPools;
+import com.example.soap.metrics.SoapMetricsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.service.model.InterfaceInfo;
+import org.apache.cxf.service.model.ServiceInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import javax.xml.namespace.QName;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Admission par la limite du pool : faute immédiate au-delà de la limite, place rendue une seule fois
+ * à la fin de la réponse ou de la faute
+ */
+public class ConcurrencyLimitInterceptorTest {
+    
+    private static final String NAMESPACE = "http://soap.example.com/";
+    
+    private SimpleMeterRegistry registry;
+    private InvocationPools pools;
+    private ConcurrencyLimitInterceptor interceptor;
+    
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", Collections.singletonMap(
+            "soap.invocation.limit.initial", "2")));
+        pools = new InvocationPools(new SoapMetricsService(registry), environment);
+        interceptor = new ConcurrencyLimitInterceptor(pools);
+    }
+    
+    @After
+    public void tearDown() {
+        pools.destroy();
+    }
+    
+    @Test
+    public void callBeyondTheLimitGetsAFault() {
+        Message first = message("getClientById");
+        Message second = message("getClientById");
+        interceptor.handleMessage(first);
+        interceptor.handleMessage(second);
+        InvocationPool pool = first.getExchange().get(InvocationPool.class);
+        assertEquals(2, pool.getLimiter().getInflight());
+        
+        try {
+            interceptor.handleMessage(message("getClientById"));
+            fail("A call beyond the concurrency limit should be rejected");
+        } catch (Fault expected) {
+            assertTrue(expected.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(2, pool.getLimiter().getInflight());
+        assertEquals(1.0, registry.get("soap_requests_rejected_total").tag("pool", "default").counter().count(), 0.0);
+        
+        // La réponse du premier appel rend sa place
+        new ConcurrencyLimitInterceptor.ReleaseEndingInterceptor().handleMessage(first);
+        interceptor.handleMessage(message("getClientById"));
+        assertEquals(2, pool.getLimiter().getInflight());
+    }
+    
+    @Test
+    public void permitIsReleasedOnce() {
+        Message message = message("getClientById");
+        interceptor.handleMessage(message);
+        InvocationPool pool = message.getExchange().get(InvocationPool.class);
+        assertSame(pool, pools.poolFor("getClientById"));
+        
+        // Faute levée après l'admission, puis échec de l'envoi de la faute
+        interceptor.handleFault(message);
+        interceptor.getRelease().handleFault(message);
+        new ConcurrencyLimitInterceptor.ReleaseEndingInterceptor().handleMessage(message);
+        assertEquals(0, pool.getLimiter().getInflight());
+    }
+    
+    @Test
+    public void rejectedCallReleasesNothing() {
+        interceptor.handleMessage(message("getClientById"));
+        interceptor.handleMessage(message("getClientById"));
+        Message rejected = message("getClientById");
+        try {
+            interceptor.handleMessage(rejected);
+            fail("A call beyond the concurrency limit should be rejected");
+        } catch (Fault expected) {
+            // La faute traverse la chaîne sans place à rendre
+            interceptor.handleFault(rejected);
+        }
+        assertEquals(2, pools.poolFor("getClientById").getLimiter().getInflight());
+    }
+    
+    private static Message message(String operation) {
+        InterfaceInfo service = new InterfaceInfo(new ServiceInfo(), new QName(NAMESPACE, "ClientSoapService"));
+        Exchange exchange = new ExchangeImpl();
+        exchange.put(BindingOperationInfo.class,
+            new BindingOperationInfo(null, service.addOperation(new QName(NAMESPACE, operation))));
+        Message message = new MessageImpl();
+        message.setExchange(exchange);
+        exchange.setInMessage(message);
+        return message;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.soap.interceptor;
+
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.cache.SoapResponseCache;
+import com.example.soap.metrics.SoapMetricsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.service.model.InterfaceInfo;
+import org.apache.cxf.service.model.ServiceInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Capture des réponses des miss : conservée à la fermeture du flux, sauf si une mutation, une faute
+ * ou un rechargement est survenu depuis le début de l'appel
+ */
+public class ResponseCacheInterceptorTest {
+    
+    private static final String NAMESPACE = "http://soap.example.com/";
+    private static final String KEY = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_ID, 1L);
+    private static final byte[] RESPONSE = "<getClientByIdResponse/>".getBytes(StandardCharsets.UTF_8);
+    
+    private ClientCacheService cacheService;
+    private SoapResponseCache responseCache;
+    private ResponseCacheInterceptor interceptor;
+    
+    @Before
+    public void setUp() {
+        SoapMetricsService metricsService = new SoapMetricsService(new SimpleMeterRegistry());
+        cacheService = new ClientCacheService(metricsService, 0.5, 3, "codePostal,ville,nom", "objects",
+            100, System.getProperty("java.io.tmpdir"), false, "", false, "");
+        responseCache = new SoapResponseCache(cacheService, metricsService, true, 1 << 20, 1 << 16);
+        interceptor = new ResponseCacheInterceptor(responseCache, metricsService);
+    }
+    
+    @Test
+    public void missResponseIsCapturedOnClose() throws IOException {
+        Message out = invoke(1L);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        send(out, sent);
+        
+        assertArrayEquals(RESPONSE, sent.toByteArray());
+        assertArrayEquals(RESPONSE, responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, KEY));
+    }
+    
+    @Test
+    public void mutationDuringTheCallDiscardsTheCapture() throws IOException {
+        Message out = invoke(1L);
+        // Écriture concurrente du client entre l'appel du service et l'envoi de sa réponse
+        responseCache.invalidateClient(1L, "un@example.bf");
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        send(out, sent);
+        
+        assertArrayEquals(RESPONSE, sent.toByteArray());
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, KEY));
+    }
+    
+    @Test
+    public void reloadDuringTheCallDiscardsTheCapture() throws IOException {
+        Message out = invoke(1L);
+        cacheService.reloadCache(Collections.emptyList());
+        send(out, new ByteArrayOutputStream());
+        
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, KEY));
+    }
+    
+    @Test
+    public void faultIsNotCaptured() throws IOException {
+        Message out = invoke(1L);
+        out.getExchange().setOutFaultMessage(new MessageImpl());
+        send(out, new ByteArrayOutputStream());
+        
+        assertNull(responseCache.get(SoapResponseCache.GET_CLIENT_BY_ID, KEY));
+    }
+    
+    @Test
+    public void uncachedOperationIsIgnored() {
+        Message in = message("searchClients", "Ouaga");
+        interceptor.handleMessage(in);
+        Message out = new MessageImpl();
+        out.setExchange(in.getExchange());
+        OutputStream stream = new ByteArrayOutputStream();
+        out.setContent(OutputStream.class, stream);
+        interceptor.getCapture().handleMessage(out);
+        
+        assertEquals(stream, out.getContent(OutputStream.class));
+    }
+    
+    /**
+     * Passage d'un appel getClientById absent du cache par l'intercepteur d'entrée ; retourne le message sortant
+     */
+    private Message invoke(Long id) {
+        Message in = message(SoapResponseCache.GET_CLIENT_BY_ID, id);
+        interceptor.handleMessage(in);
+        Message out = new MessageImpl();
+        out.setExchange(in.getExchange());
+        in.getExchange().setOutMessage(out);
+        return out;
+    }
+    
+    private void send(Message out, OutputStream sent) throws IOException {
+        out.setContent(OutputStream.class, sent);
+        interceptor.getCapture().handleMessage(out);
+        OutputStream stream = out.getContent(OutputStream.class);
+        stream.write(RESPONSE, 0, 10);
+        stream.write(RESPONSE, 10, RESPONSE.length - 10);
+        stream.close();
+    }
+    
+    private static Message message(String operation, Object parameter) {
+        InterfaceInfo service = new InterfaceInfo(new ServiceInfo(), new QName(NAMESPACE, "ClientSoapService"));
+        Exchange exchange = new ExchangeImpl();
+        exchange.put(BindingOperationInfo.class,
+            new BindingOperationInfo(null, service.addOperation(new QName(NAMESPACE, operation))));
+        Message message = new MessageImpl();
+        message.setExchange(exchange);
+        exchange.setInMessage(message);
+        message.setContent(List.class, new MessageContentsList(parameter));
+        return message;
+    }
+}
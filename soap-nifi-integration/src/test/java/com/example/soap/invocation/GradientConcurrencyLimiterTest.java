@@ -0,0 +1,94 @@
+package com.example.soap.invocation;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Limite adaptative : refus au-delà de la limite, croissance sous latence stable, réduction
+ * quand la latence se dégrade
+ */
+public class GradientConcurrencyLimiterTest {
+    
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    @Test
+    public void callsBeyondTheLimitAreRejected() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(4, 1, 10, 1.5);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(4, limiter.getInflight());
+        
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+    
+    @Test
+    public void saturatedLimitGrowsUpToTheMaximum() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(10, 2, 50, 1.5);
+        int previous = limiter.getLimit();
+        for (int i = 0; i < 200; i++) {
+            saturate(limiter);
+            limiter.onSample(RTT);
+            assertTrue(limiter.getLimit() >= previous);
+            previous = limiter.getLimit();
+        }
+        assertEquals(50, limiter.getLimit());
+    }
+    
+    @Test
+    public void unusedLimitDoesNotGrow() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(10, 2, 50, 1.5);
+        assertTrue(limiter.tryAcquire());
+        for (int i = 0; i < 200; i++) {
+            limiter.onSample(RTT);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+    
+    @Test
+    public void degradedLatencyShrinksTheLimit() {
+        GradientConcurrencyLimiter limiter = new GradientConcurrencyLimiter(40, 2, 50, 1.5);
+        saturate(limiter);
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(RTT);
+        }
+        int stable = limiter.getLimit();
+        
+        // Latence décuplée : chaque échantillon réduit la limite, jamais sous le minimum
+        int previous = stable;
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(10 * RTT);
+            assertTrue(limiter.getLimit() <= previous);
+            assertTrue(limiter.getLimit() >= 2);
+            previous = limiter.getLimit();
+        }
+        assertTrue("Limit " + previous + " did not shrink from " + stable, previous < stable / 2);
+        // Plus d'admission tant que les appels en cours dépassent la limite réduite
+        assertFalse(limiter.tryAcquire());
+        
+        // La latence revenue à la normale, la limite croît de nouveau
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(RTT);
+        }
+        assertTrue(limiter.getLimit() > previous);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void toleranceBelowOneIsRejected() {
+        new GradientConcurrencyLimiter(10, 2, 50, 0.9);
+    }
+    
+    private static void saturate(GradientConcurrencyLimiter limiter) {
+        while (limiter.tryAcquire()) {
+            // Appels en cours jusqu'à la limite courante
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.soap.invocation;
+
+import com.example.soap.metrics.SoapMetricsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pools d'invocation : routage des opérations, limite propre à chaque pool, branchement sur les latences mesurées
+ */
+public class InvocationPoolsTest {
+    
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private InvocationPools pools;
+    
+    @After
+    public void tearDown() {
+        if (pools != null) {
+            pools.destroy();
+        }
+    }
+    
+    @Test
+    public void operationsAreRoutedToTheirPool() {
+        pools = pools(new HashMap<>());
+        
+        InvocationPool search = pools.poolFor("searchClients");
+        assertEquals("search", search.getName());
+        assertSame(search, pools.poolFor("findClients"));
+        assertEquals(InvocationPools.DEFAULT_POOL, pools.poolFor("getClientById").getName());
+        assertEquals(3, search.getLimiter().getLimit());
+        assertEquals(20, pools.poolFor("getClientById").getLimiter().getLimit());
+    }
+    
+    @Test
+    public void saturatedPoolRejectsWithoutAffectingOthers() {
+        pools = pools(new HashMap<>());
+        InvocationPool search = pools.poolFor("searchClients");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(search.tryAcquire());
+        }
+        assertFalse(search.tryAcquire());
+        pools.recordRejection(search);
+        
+        assertTrue(pools.poolFor("getClientById").tryAcquire());
+        assertEquals(1.0, registry.get("soap_requests_rejected_total").tag("pool", "search").counter().count(), 0.0);
+        assertEquals(3.0, registry.get("soap_concurrency_inflight").tag("pool", "search").gauge().value(), 0.0);
+    }
+    
+    @Test
+    public void measuredLatenciesDriveThePoolLimit() {
+        SoapMetricsService metricsService = new SoapMetricsService(registry);
+        pools = new InvocationPools(metricsService, environment(new HashMap<>()));
+        InvocationPool search = pools.poolFor("searchClients");
+        for (int i = 0; i < 3; i++) {
+            assertTrue(search.tryAcquire());
+        }
+        
+        // Durées enregistrées par SoapMetricsService pour l'opération du pool
+        for (int i = 0; i < 10; i++) {
+            metricsService.methodMeters("searchClients").recordDuration(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertTrue(search.getLimiter().getLimit() > 3);
+        assertEquals(20, pools.poolFor("getClientById").getLimiter().getLimit());
+    }
+    
+    @Test
+    public void disabledLimitAdmitsEveryCall() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("soap.invocation.limit.enabled", "false");
+        pools = pools(properties);
+        InvocationPool search = pools.poolFor("searchClients");
+        for (int i = 0; i < 10; i++) {
+            assertTrue(search.tryAcquire());
+        }
+        assertEquals(0, search.getLimiter().getInflight());
+    }
+    
+    private InvocationPools pools(Map<String, Object> properties) {
+        return new InvocationPools(new SoapMetricsService(registry), environment(properties));
+    }
+    
+    private static StandardEnvironment environment(Map<String, Object> overrides) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("soap.invocation.pools", "search");
+        properties.put("soap.invocation.pool.search.operations", "searchClients, findClients");
+        properties.put("soap.invocation.pool.search.threads", "2");
+        properties.put("soap.invocation.pool.search.limit.initial", "3");
+        properties.put("soap.invocation.pool.default.threads", "2");
+        properties.putAll(overrides);
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+        return environment;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.soap.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Clés les plus demandées par opération : extraction des clés des appels, classement, vieillissement, jauges
+ */
+public class HeavyHitterTrackerTest {
+    
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SoapMetricsService metricsService = new SoapMetricsService(registry);
+    
+    @Test
+    public void skewedCallsRankTheirKeys() {
+        HeavyHitterTracker tracker = tracker(new HashMap<>());
+        SoapMethodMeters meters = metricsService.methodMeters("getClientByEmail");
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            // Une clé sur deux vers trois emails, le reste réparti sur 2 000 emails
+            String email = random.nextBoolean() ? "HOT" + random.nextInt(3) + "@example.bf"
+                : "client" + random.nextInt(2_000) + "@example.bf";
+            meters.recordArguments(new Object[] {email});
+        }
+        
+        List<HeavyHitter> top = tracker.top("getClientByEmail", 3);
+        assertEquals(3, top.size());
+        for (HeavyHitter hitter : top) {
+            assertTrue(hitter.getKey(), hitter.getKey().startsWith("hot"));
+            // Environ 3 333 appels chacun ; l'erreur reste petite devant le compte
+            assertTrue(hitter.getCount() - hitter.getError() > 3_000);
+        }
+        assertEquals(top.get(0).getCount(),
+            registry.get("soap_heavy_hitter_count").tag("method", "getClientByEmail").tag("rank", "1").gauge().value(), 0.0);
+        double share = registry.get("soap_heavy_hitter_top_share").tag("method", "getClientByEmail").gauge().value();
+        assertTrue(String.valueOf(share), share > 0.5 && share <= 1.0);
+    }
+    
+    @Test
+    public void searchTermsAreCountedPerField() {
+        HeavyHitterTracker tracker = tracker(new HashMap<>());
+        SoapMethodMeters meters = metricsService.methodMeters("searchClients");
+        for (int i = 0; i < 10; i++) {
+            meters.recordArguments(new Object[] {"Ouaga", i % 2 == 0 ? "Kabore" : ""});
+        }
+        
+        List<HeavyHitter> top = tracker.top("searchClients", 5);
+        assertEquals(2, top.size());
+        assertEquals("ville:ouaga", top.get(0).getKey());
+        assertEquals(10, top.get(0).getCount());
+        assertEquals("nom:kabore", top.get(1).getKey());
+        assertEquals(5, top.get(1).getCount());
+    }
+    
+    @Test
+    public void decayHalvesEveryOperation() {
+        HeavyHitterTracker tracker = tracker(new HashMap<>());
+        for (int i = 0; i < 8; i++) {
+            metricsService.methodMeters("getClientById").recordArguments(new Object[] {42L});
+            metricsService.methodMeters("getClientByEmail").recordArguments(new Object[] {"un@example.bf"});
+        }
+        
+        tracker.decay();
+        
+        assertEquals(4, tracker.top("getClientById", 1).get(0).getCount());
+        assertEquals(4, tracker.top("getClientByEmail", 1).get(0).getCount());
+        tracker.decay();
+        tracker.decay();
+        tracker.decay();
+        assertEquals(0, tracker.top("getClientById", 1).get(0).getCount());
+    }
+    
+    @Test
+    public void disabledTrackerRecordsNothing() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("soap.heavy-hitters.enabled", "false");
+        HeavyHitterTracker tracker = tracker(properties);
+        metricsService.methodMeters("getClientById").recordArguments(new Object[] {42L});
+        
+        assertTrue(tracker.top(10).isEmpty());
+        assertTrue(tracker.top("getClientById", 10).isEmpty());
+    }
+    
+    private HeavyHitterTracker tracker(Map<String, Object> properties) {
+        properties.putIfAbsent("soap.heavy-hitters.capacity", "64");
+        properties.putIfAbsent("soap.heavy-hitters.stripes", "4");
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", properties));
+        return new HeavyHitterTracker(metricsService, environment);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.soap.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Space-Saving sur un flux fortement asymétrique : bornes d'erreur du top-K et vieillissement
+ */
+public class SpaceSavingSketchTest {
+    
+    private static final int KEYS = 5_000;
+    private static final int OFFERS = 200_000;
+    private static final int CAPACITY = 128;
+    private static final int STRIPES = 4;
+    
+    @Test
+    public void topKeysAreFoundWithinTheErrorBound() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY, STRIPES);
+        Map<String, Long> exact = offerZipf(sketch, new Random(42), OFFERS);
+        
+        assertEquals(OFFERS, sketch.total());
+        List<HeavyHitter> top = sketch.top(CAPACITY);
+        long tracked = 0;
+        // Erreur d'un segment bornée par son trafic divisé par sa capacité, donc par le trafic total
+        long maxError = OFFERS / (CAPACITY / STRIPES);
+        for (HeavyHitter hitter : top) {
+            long count = exact.getOrDefault(hitter.getKey(), 0L);
+            assertTrue(hitter.getKey(), hitter.getCount() >= count);
+            assertTrue(hitter.getKey(), hitter.getCount() - hitter.getError() <= count);
+            assertTrue(hitter.getKey(), hitter.getError() <= maxError);
+            tracked += hitter.getCount();
+        }
+        // Chaque offre incrémente exactement un compteur
+        assertEquals(OFFERS, tracked);
+        
+        // Les clés réellement les plus fréquentes sont en tête, avec une erreur faible devant leur compte
+        List<HeavyHitter> top5 = sketch.top(5);
+        for (int rank = 0; rank < 5; rank++) {
+            HeavyHitter hitter = top5.get(rank);
+            assertEquals("key" + rank, hitter.getKey());
+            assertTrue(hitter.getError() * 10 < hitter.getCount());
+        }
+        for (int i = 1; i < top.size(); i++) {
+            assertTrue(top.get(i - 1).getCount() >= top.get(i).getCount());
+        }
+    }
+    
+    @Test
+    public void decayHalvesCountsAndFollowsRecentTraffic() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(CAPACITY, STRIPES);
+        offerZipf(sketch, new Random(7), OFFERS);
+        List<HeavyHitter> before = sketch.top(3);
+        
+        sketch.decay();
+        
+        assertEquals(OFFERS / 2, sketch.total());
+        List<HeavyHitter> after = sketch.top(3);
+        for (int rank = 0; rank < 3; rank++) {
+            assertEquals(before.get(rank).getKey(), after.get(rank).getKey());
+            assertEquals(before.get(rank).getCount() / 2, after.get(rank).getCount());
+            assertEquals(before.get(rank).getError() / 2, after.get(rank).getError());
+        }
+        
+        // Une clé devenue dominante après le vieillissement dépasse l'ancien classement
+        long leader = after.get(0).getCount();
+        for (long i = 0; i <= leader; i++) {
+            sketch.offer("recent");
+        }
+        assertEquals("recent", sketch.top(1).get(0).getKey());
+    }
+    
+    /**
+     * Flux de clés selon une loi de Zipf d'exposant 1,1 : "key0" est la plus fréquente ; retourne les comptes exacts
+     */
+    private static Map<String, Long> offerZipf(SpaceSavingSketch sketch, Random random, int offers) {
+        double[] cumulative = new double[KEYS];
+        double sum = 0;
+        for (int i = 0; i < KEYS; i++) {
+            sum += 1 / Math.pow(i + 1, 1.1);
+            cumulative[i] = sum;
+        }
+        Map<String, Long> exact = new HashMap<>();
+        for (int i = 0; i < offers; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            String key = "key" + (index < 0 ? -index - 1 : index);
+            sketch.offer(key);
+            exact.merge(key, 1L, Long::sum);
+        }
+        return exact;
+    }
+}
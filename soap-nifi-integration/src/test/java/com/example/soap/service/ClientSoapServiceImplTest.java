@@ -0,0 +1,246 @@
+package com.example.soap.service;
+
+import com.example.soap.cache.ClientCacheService;
+import com.example.soap.cache.SoapResponseCache;
+import com.example.soap.metrics.SoapMetricsService;
+import com.example.soap.metrics.StreamedResponse;
+import com.example.soap.model.Client;
+import com.example.soap.model.ClientBatchResult;
+import com.example.soap.model.ClientCriterion;
+import com.example.soap.model.ClientField;
+import com.example.soap.model.ClientSearchCriteria;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Mises à jour de clients par le service SOAP : les anciennes clés (email, nom) ne doivent plus répondre,
+ * et chaque élément d'un lot reçoit son propre résultat
+ */
+public class ClientSoapServiceImplTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private ClientCacheService cacheService;
+    private SoapResponseCache responseCache;
+    private ClientSoapServiceImpl service;
+    
+    @Before
+    public void setUp() throws Exception {
+        SoapMetricsService metricsService = new SoapMetricsService(new SimpleMeterRegistry());
+        cacheService = new ClientCacheService(metricsService, 0.5, 3, "codePostal,ville,nom", "objects",
+            100, System.getProperty("java.io.tmpdir"), false, "", false, "");
+        service = new ClientSoapServiceImpl();
+        inject(service, "cacheService", cacheService);
+        inject(service, "metricsService", metricsService);
+        responseCache = new SoapResponseCache(cacheService, metricsService, true, 1 << 20, 1 << 16);
+        inject(service, "responseCache", responseCache);
+        inject(service, "maxSearchResults", 100);
+        
+        cacheService.putClients(Arrays.asList(
+            client(1L, "Ouedraogo", "ancien@example.com", "Ouagadougou"),
+            client(2L, "Sawadogo", "autre@example.com", "Bobo-Dioulasso")));
+    }
+    
+    @Test
+    public void updateClientMovesEmailKey() {
+        Client cached = cacheService.getClientById(1L);
+        
+        Client updated = service.updateClient(1L, client(null, "Ouedraogo", "nouveau@example.com", "Ouagadougou"));
+        
+        assertEquals("nouveau@example.com", updated.getEmail());
+        assertNull(service.getClientByEmail("ancien@example.com"));
+        assertEquals(Long.valueOf(1L), service.getClientByEmail("NOUVEAU@example.com").getId());
+        // La version publiée avant la mise à jour n'est pas modifiée
+        assertNotSame(cached, updated);
+        assertEquals("ancien@example.com", cached.getEmail());
+    }
+    
+    @Test
+    public void exportCompletesOnceTheAttachmentIsWritten() throws Exception {
+        StreamedResponse export = (StreamedResponse) service.exportClients();
+        AtomicInteger completions = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        export.whenWritten(e -> {
+            completions.incrementAndGet();
+            error.set(e);
+        });
+        assertEquals(0, completions.get());
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((ClientExportDataHandler) export).writeTo(out);
+        assertEquals(1, completions.get());
+        assertNull(error.get());
+        assertTrue(out.toString("UTF-8").contains("ancien@example.com"));
+    }
+    
+    @Test
+    public void updateClientsMovesEmailKeys() {
+        List<ClientBatchResult> results = service.updateClients(Arrays.asList(
+            client(1L, "Ouedraogo", "un@example.com", "Ouagadougou"),
+            client(2L, "Sawadogo", "deux@example.com", "Bobo-Dioulasso"),
+            client(3L, "Inconnu", "trois@example.com", "Koudougou")));
+            
+        assertEquals(3, results.size());
+        assertNull(service.getClientByEmail("ancien@example.com"));
+        assertNull(service.getClientByEmail("autre@example.com"));
+        assertEquals(Long.valueOf(1L), service.getClientByEmail("un@example.com").getId());
+        assertEquals(Long.valueOf(2L), service.getClientByEmail("deux@example.com").getId());
+        assertNull(service.getClientByEmail("trois@example.com"));
+    }
+    
+    @Test
+    public void updateClientRemovesOldSearchPostings() {
+        service.updateClient(1L, client(null, "Kabore", "ancien@example.com", "Koudougou"));
+        
+        assertTrue(service.searchClients("Ouaga", null).isEmpty());
+        assertTrue(service.searchClients(null, "Ouedra").isEmpty());
+        assertEquals(1, service.searchClients("Koudou", "Kabo").size());
+        assertTrue(service.findClients(equalsCriteria(ClientField.NOM, "Ouedraogo")).isEmpty());
+        assertEquals(1, service.findClients(equalsCriteria(ClientField.VILLE, "Koudougou")).size());
+    }
+    
+    @Test
+    public void writesInvalidateCachedResponses() {
+        String byId = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_ID, 1L);
+        String otherById = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_ID, 2L);
+        String oldEmail = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_EMAIL, "ancien@example.com");
+        String newEmail = SoapResponseCache.key(SoapResponseCache.GET_CLIENT_BY_EMAIL, "nouveau@example.com");
+        String all = SoapResponseCache.key(SoapResponseCache.GET_ALL_CLIENTS, null);
+        
+        // Création : seule la liste complète dépend d'un client encore inconnu
+        cacheResponses(byId, all);
+        service.createClient(client(3L, "Kabore", "kabore@example.com", "Koudougou"));
+        assertCached(byId);
+        assertNotCached(all);
+        
+        // Changement d'email : l'ancienne clé email est retirée avec la nouvelle
+        cacheResponses(byId, otherById, oldEmail, newEmail, all);
+        service.updateClient(1L, client(null, "Ouedraogo", "nouveau@example.com", "Ouagadougou"));
+        assertNotCached(byId, oldEmail, newEmail, all);
+        assertCached(otherById);
+        
+        cacheResponses(byId, otherById, newEmail, all);
+        service.deleteClient(1L);
+        assertNotCached(byId, newEmail, all);
+        assertCached(otherById);
+        
+        // Les lots invalident chaque client touché
+        cacheResponses(byId, otherById, all);
+        service.deleteClients(Arrays.asList(2L, 3L));
+        assertNotCached(otherById, all);
+        assertCached(byId);
+    }
+    
+    @Test
+    public void repeatedIdIsDeletedOnce() {
+        List<ClientBatchResult> results = service.deleteClients(Arrays.asList(1L, 1L, 3L));
+        
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("Client not found", results.get(1).getError());
+        assertFalse(results.get(2).isSuccess());
+        assertNull(service.getClientById(1L));
+        assertEquals(Long.valueOf(2L), service.getClientById(2L).getId());
+    }
+    
+    @Test
+    public void journalFailureIsReportedPerClient() throws Exception {
+        SoapMetricsService metricsService = new SoapMetricsService(new SimpleMeterRegistry());
+        cacheService = new ClientCacheService(metricsService, 0.5, 3, "codePostal,ville,nom", "objects", 100,
+            folder.getRoot().getPath(), false, "", true, folder.getRoot().toPath().resolve("clients.journal").toString());
+        inject(service, "cacheService", cacheService);
+        inject(service, "responseCache", new SoapResponseCache(cacheService, metricsService, true, 1 << 20, 1 << 16));
+        FileChannel channel = field(field(cacheService, "journal"), "channel");
+        channel.close();
+        
+        List<ClientBatchResult> results = service.createClients(Arrays.asList(
+            client(1L, "Ouedraogo", "un@example.com", "Ouagadougou"),
+            null,
+            client(2L, "Sawadogo", "deux@example.com", "Bobo-Dioulasso")));
+            
+        assertEquals(3, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(Long.valueOf(1L), results.get(0).getId());
+        assertEquals("Missing client", results.get(1).getError());
+        assertFalse(results.get(2).isSuccess());
+        assertEquals(Long.valueOf(2L), results.get(2).getId());
+        assertNull(service.getClientById(1L));
+        assertNull(service.getClientByEmail("deux@example.com"));
+        
+        results = service.deleteClients(Arrays.asList(1L, 2L));
+        assertEquals("Client not found", results.get(0).getError());
+        assertEquals("Client not found", results.get(1).getError());
+    }
+    
+    private void cacheResponses(String... keys) {
+        for (String key : keys) {
+            responseCache.put(responseCache.startCapture(key), key.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+    
+    private void assertCached(String... keys) {
+        for (String key : keys) {
+            assertNotNull(key, responseCache.get(operation(key), key));
+        }
+    }
+    
+    private void assertNotCached(String... keys) {
+        for (String key : keys) {
+            assertNull(key, responseCache.get(operation(key), key));
+        }
+    }
+    
+    private static String operation(String key) {
+        int separator = key.indexOf(':');
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+    
+    private static ClientSearchCriteria equalsCriteria(ClientField field, String value) {
+        ClientSearchCriteria criteria = new ClientSearchCriteria();
+        criteria.setCriteria(Collections.singletonList(
+            new ClientCriterion(field, ClientCriterion.Operator.EQUALS, value)));
+        return criteria;
+    }
+    
+    private static Client client(Long id, String nom, String email, String ville) {
+        Client client = new Client(id, nom, "Awa", email);
+        client.setVille(ville);
+        client.setCodePostal("01");
+        return client;
+    }
+    
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T field(Object target, String name) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(target);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.soap.watcher;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Détection des exports : livraison du plus récent fichier complet d'une rafale, marqueur de fin d'écriture,
+ * fichier déjà livré, balayage de repli sans listage d'un répertoire inchangé
+ */
+public class DirectoryChangeDetectorTest {
+    
+    private static final long STABILITY_MILLIS = 20;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final BlockingQueue<Path> delivered = new LinkedBlockingQueue<>();
+    private DirectoryChangeDetector detector;
+    
+    @After
+    public void tearDown() {
+        if (detector != null) {
+            detector.stop();
+        }
+    }
+    
+    @Test
+    public void burstIsDeliveredAsItsNewestFile() throws Exception {
+        detector = detector("");
+        write("clients-1.json", -3_000);
+        Path newest = write("clients-2.json", -2_000);
+        write("ignored.txt", -1_000);
+        
+        detector.scan();
+        
+        assertEquals(newest, delivered.poll(5, TimeUnit.SECONDS));
+        assertNull(delivered.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(newest, detector.findLatest());
+    }
+    
+    @Test
+    public void deliveredFileIsNotDeliveredAgain() throws Exception {
+        detector = detector("");
+        Path loaded = write("clients-1.json", -2_000);
+        detector.markDelivered(loaded);
+        
+        detector.scan();
+        assertNull(delivered.poll(200, TimeUnit.MILLISECONDS));
+        
+        Path next = write("clients-2.json", -1_000);
+        detector.scan();
+        assertEquals(next, delivered.poll(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void fileWaitsForItsReadyMarker() throws Exception {
+        detector = detector(".ready");
+        Path export = write("clients-1.json", -1_000);
+        
+        detector.scan();
+        assertNull(delivered.poll(200, TimeUnit.MILLISECONDS));
+        
+        write("clients-1.json.ready", 0);
+        assertEquals(export, delivered.poll(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void unchangedDirectoryIsNotListedWhileWatching() throws Exception {
+        detector = detector("");
+        detector.scan();
+        detector.scan();
+        // Sans événements, chaque balayage liste le répertoire
+        assertEquals(2, detector.getListings());
+        
+        detector.start();
+        assertTrue(detector.isWatching());
+        Path directory = folder.getRoot().toPath();
+        Files.setLastModifiedTime(directory, FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+        detector.scan();
+        detector.scan();
+        detector.scan();
+        assertEquals(3, detector.getListings());
+        
+        // Une création change la date du répertoire : le balayage suivant le liste
+        Path created = write("clients-1.json", -1_000);
+        detector.scan();
+        assertEquals(4, detector.getListings());
+        assertEquals(created, delivered.poll(5, TimeUnit.SECONDS));
+    }
+    
+    private DirectoryChangeDetector detector(String readyMarkerSuffix) {
+        return new DirectoryChangeDetector(folder.getRoot().toPath(), "clients-*.json", STABILITY_MILLIS,
+            readyMarkerSuffix, delivered::add);
+    }
+    
+    /**
+     * Fichier écrit avec une date décalée de {@code ageMillis} par rapport à maintenant
+     */
+    private Path write(String name, long ageMillis) throws IOException {
+        Path file = Files.write(folder.getRoot().toPath().resolve(name), "[]".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + ageMillis));
+        return file;
+    }
+}
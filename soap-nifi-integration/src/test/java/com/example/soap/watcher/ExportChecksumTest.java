@@ -0,0 +1,104 @@
+package com.example.soap.watcher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32C;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Empreinte d'un export : marqueur de fin d'écriture concordant, discordant ou absent, fin du tableau JSON,
+ * réécriture pendant la lecture
+ */
+public class ExportChecksumTest {
+    
+    private static final String CONTENT = "[{\"id\":1,\"nom\":\"Ouedraogo\"},{\"id\":2,\"nom\":\"Sawadogo\"}]\n";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Test
+    public void matchingSidecarIsAccepted() throws IOException {
+        Path export = write("clients.json", CONTENT);
+        ExportChecksum checksum = ExportChecksum.of(export);
+        
+        assertEquals(CONTENT.length(), checksum.getBytes());
+        assertEquals(crc32c(CONTENT), checksum.hex());
+        assertTrue(checksum.isTerminated());
+        assertNull(checksum.verifySidecar(write("full.ready",
+            "{\"bytes\": " + CONTENT.length() + ", \"crc32c\": \"" + checksum.hex().toUpperCase() + "\"}"), objectMapper));
+        // Champs facultatifs : taille seule, empreinte seule
+        assertNull(checksum.verifySidecar(write("size.ready", String.valueOf(CONTENT.length())), objectMapper));
+        assertNull(checksum.verifySidecar(write("crc.ready", "{\"crc32c\": \" " + checksum.hex() + " \"}"), objectMapper));
+    }
+    
+    @Test
+    public void mismatchingSidecarIsRejected() throws IOException {
+        ExportChecksum checksum = ExportChecksum.of(write("clients.json", CONTENT));
+        
+        assertEquals("size_mismatch", checksum.verifySidecar(write("size.ready",
+            String.valueOf(CONTENT.length() + 1)), objectMapper));
+        assertEquals("size_mismatch", checksum.verifySidecar(write("full.ready",
+            "{\"bytes\": 3, \"crc32c\": \"" + checksum.hex() + "\"}"), objectMapper));
+        assertEquals("checksum_mismatch", checksum.verifySidecar(write("crc.ready",
+            "{\"bytes\": " + CONTENT.length() + ", \"crc32c\": \"" + crc32c("[]") + "\"}"), objectMapper));
+    }
+    
+    @Test
+    public void missingOrEmptySidecarIsNotChecked() throws IOException {
+        ExportChecksum checksum = ExportChecksum.of(write("clients.json", CONTENT));
+        
+        assertNull(checksum.verifySidecar(null, objectMapper));
+        assertNull(checksum.verifySidecar(folder.getRoot().toPath().resolve("clients.json.ready"), objectMapper));
+        assertNull(checksum.verifySidecar(write("empty.ready", ""), objectMapper));
+    }
+    
+    @Test
+    public void truncatedArrayIsDetected() throws IOException {
+        assertTrue(ExportChecksum.of(write("spaces.json", "[{\"id\":1}] \r\n\t ")).isTerminated());
+        assertFalse(ExportChecksum.of(write("truncated.json", CONTENT.substring(0, CONTENT.length() / 2)))
+            .isTerminated());
+        assertFalse(ExportChecksum.of(write("blank.json", " \n")).isTerminated());
+        ExportChecksum empty = ExportChecksum.of(write("empty.json", ""));
+        assertFalse(empty.isTerminated());
+        assertEquals(0, empty.getBytes());
+    }
+    
+    @Test
+    public void checksumDependsOnContentOnly() throws IOException {
+        Path first = write("first.json", CONTENT);
+        Path second = write("second.json", CONTENT);
+        assertEquals(ExportChecksum.of(first).hex(), ExportChecksum.of(second).hex());
+        
+        ExportChecksum checksum = ExportChecksum.of(first);
+        assertFalse(checksum.changedSince(first));
+        // Réécriture de même taille : seule la date la révèle
+        Files.write(first, CONTENT.replace('1', '3').getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(first, FileTime.fromMillis(Files.getLastModifiedTime(second).toMillis() + 2_000));
+        assertTrue(checksum.changedSince(first));
+        assertTrue(checksum.changedSince(write("first.json", CONTENT + " ")));
+    }
+    
+    private Path write(String name, String content) throws IOException {
+        return Files.write(folder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String crc32c(String content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+}